@@ -0,0 +1,104 @@
+package com.shankyank.alexa.presenter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic catalogs and utterances for benchmarks.
+ */
+public final class BenchmarkCatalogs {
+    private static final String[] WORDS = {
+            "lambda", "serverless", "architecture", "pikachu", "where", "are", "you", "knock", "jokes", "for",
+            "dummies", "programming", "with", "alexa", "orange", "slice", "august", "enterprise", "fizzbuzz",
+            "situation", "foobar", "cloud", "native", "streams", "kafka", "spark", "java", "groovy", "testing",
+            "microservices", "containers", "kubernetes", "security", "quarterly", "review", "roadmap", "launch",
+            "retrospective", "onboarding", "keynote", "design", "patterns", "functional", "reactive", "data"
+    };
+
+    /**
+     * The kind of utterance to match against a catalog.
+     */
+    public enum Utterance {
+        /** The exact name of a presentation. */
+        EXACT,
+        /** A presentation name with a few character-level recognition errors. */
+        MISHEARD,
+        /** The last words of a presentation name followed by its first word, like "jokes knock". */
+        PARTIAL,
+        /** A single word of a presentation name, shared by many others, like "jokes". */
+        WORD,
+        /** Words that are not in any presentation name. */
+        UNKNOWN
+    }
+
+    private BenchmarkCatalogs() {
+    }
+
+    /**
+     * @param size the number of presentations
+     * @return a catalog of synthetic presentations with two to five word names
+     */
+    static List<Presentation> createPresentations(final int size) {
+        Random random = new Random(size);
+        List<Presentation> presentations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder name = new StringBuilder();
+            int words = 2 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    name.append(' ');
+                }
+                name.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            presentations.add(new Presentation(name.toString(), String.format("presentation-%06d.key", i)));
+        }
+        return presentations;
+    }
+
+    /**
+     * @param presentations the catalog
+     * @param utterance the kind of utterance
+     * @param count the number of utterances
+     * @return utterances of the requested kind
+     */
+    static String[] createUtterances(final List<Presentation> presentations, final Utterance utterance,
+                                     final int count) {
+        Random random = new Random(count);
+        String[] utterances = new String[count];
+        for (int i = 0; i < count; i++) {
+            String name = presentations.get(random.nextInt(presentations.size())).getName();
+            switch (utterance) {
+                case EXACT:
+                    utterances[i] = name;
+                    break;
+                case MISHEARD:
+                    utterances[i] = mishear(name, random);
+                    break;
+                case PARTIAL:
+                    utterances[i] = reorder(name);
+                    break;
+                case WORD:
+                    String[] words = name.split(" ");
+                    utterances[i] = words[random.nextInt(words.length)];
+                    break;
+                default:
+                    utterances[i] = "zebra umbrella " + random.nextInt(1000);
+            }
+        }
+        return utterances;
+    }
+
+    private static String reorder(final String name) {
+        int space = name.indexOf(' ');
+        return name.substring(space + 1) + ' ' + name.substring(0, space);
+    }
+
+    private static String mishear(final String name, final Random random) {
+        char[] chars = name.toCharArray();
+        for (int edits = 0; edits < 1 + name.length() / 10; edits++) {
+            chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
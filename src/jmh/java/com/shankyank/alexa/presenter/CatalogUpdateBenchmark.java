@@ -0,0 +1,73 @@
+package com.shankyank.alexa.presenter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures bringing an indexed catalog up to date after a few presentations
+ * change: applying the changes to the catalog and its index, against
+ * building the catalog and index again from the changed presentation list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogUpdateBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int catalogSize;
+
+    @Param({"1", "10", "100", "1000"})
+    public int changeCount;
+
+    private PresentationCatalog catalog;
+    private List<CatalogChange> changes;
+    private List<Presentation> changed;
+
+    @Setup(Level.Trial)
+    public void createCatalog() {
+        List<Presentation> presentations = BenchmarkCatalogs.createPresentations(catalogSize);
+        catalog = PresentationCatalog.of(presentations);
+        catalog.getIndex();
+        changes = new ArrayList<>(changeCount);
+        for (int i = 0; i < changeCount; i++) {
+            String name = presentations.get(i * (catalogSize / changeCount)).getName();
+            switch (i % 3) {
+                case 0:
+                    changes.add(CatalogChange.add(i + 1, name + " part two", "added-" + i + ".key", null));
+                    break;
+                case 1:
+                    changes.add(CatalogChange.rename(i + 1, name, name + " revisited"));
+                    break;
+                default:
+                    changes.add(CatalogChange.remove(i + 1, name));
+            }
+        }
+        changed = new ArrayList<>(catalog.apply(changes).getPresentations());
+    }
+
+    @Benchmark
+    public PresentationIndex applyChanges() {
+        return catalog.apply(changes).getIndex();
+    }
+
+    @Benchmark
+    public PresentationIndex rebuildCatalog() {
+        return PresentationIndex.build(PresentationCatalog.of(changed).getPresentations());
+    }
+}
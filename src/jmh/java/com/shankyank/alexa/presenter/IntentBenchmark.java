@@ -0,0 +1,98 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.slu.Intent;
+import com.amazon.speech.slu.Slot;
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.SessionStartedRequest;
+import com.amazon.speech.speechlet.SpeechletException;
+import com.amazon.speech.speechlet.SpeechletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures PresenterSpeechlet.onIntent end to end with a stub session
+ * initializer and presentation starter, so no AWS calls are made.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntentBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int catalogSize;
+
+    private PresenterSpeechlet speechlet;
+    private Session session;
+    private IntentRequest startRequest;
+    private IntentRequest unknownRequest;
+    private IntentRequest listRequest;
+
+    @Setup(Level.Trial)
+    public void createSpeechlet() throws SpeechletException {
+        List<Presentation> presentations = BenchmarkCatalogs.createPresentations(catalogSize);
+        speechlet = new PresenterSpeechlet(new SessionInitializer() {
+            @Override
+            public List<Presentation> getAvailablePresentations() {
+                return presentations;
+            }
+
+            @Override
+            public PresentationStarter getPresentationStarter() {
+                return (session, presentation) -> true;
+            }
+        });
+        session = Session.builder().withSessionId("benchmark-session").build();
+        speechlet.onSessionStarted(SessionStartedRequest.builder().withRequestId("benchmark")
+                .withTimestamp(new Date()).build(), session);
+
+        String name = BenchmarkCatalogs.createUtterances(presentations, BenchmarkCatalogs.Utterance.MISHEARD, 1)[0];
+        startRequest = createStartRequest(name);
+        unknownRequest = createStartRequest("zebra umbrella");
+        listRequest = createRequest(PresenterSpeechlet.LIST_PRESENTATIONS_INTENT, Collections.emptyMap());
+    }
+
+    @Benchmark
+    public SpeechletResponse startPresentation() throws SpeechletException {
+        return speechlet.onIntent(startRequest, session);
+    }
+
+    @Benchmark
+    public SpeechletResponse startUnknownPresentation() throws SpeechletException {
+        return speechlet.onIntent(unknownRequest, session);
+    }
+
+    @Benchmark
+    public SpeechletResponse listPresentations() throws SpeechletException {
+        return speechlet.onIntent(listRequest, session);
+    }
+
+    private static IntentRequest createStartRequest(final String name) {
+        Slot slot = Slot.builder().withName(PresenterSpeechlet.PRESENTATION_SLOT).withValue(name).build();
+        return createRequest(PresenterSpeechlet.START_PRESENTATION_INTENT,
+                Collections.singletonMap(PresenterSpeechlet.PRESENTATION_SLOT, slot));
+    }
+
+    private static IntentRequest createRequest(final String intentName, final Map<String, Slot> slots) {
+        Intent intent = Intent.builder().withName(intentName).withSlots(slots).build();
+        return IntentRequest.builder().withRequestId("benchmark").withTimestamp(new Date()).withIntent(intent).build();
+    }
+}
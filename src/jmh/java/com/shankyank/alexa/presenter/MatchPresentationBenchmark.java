@@ -0,0 +1,57 @@
+package com.shankyank.alexa.presenter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matching a spoken name against catalogs of increasing size. This is
+ * the work done by PresenterSpeechlet.matchPresentation once the catalog has
+ * been resolved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchPresentationBenchmark {
+    private static final int UTTERANCE_COUNT = 64;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int catalogSize;
+
+    @Param({"EXACT", "MISHEARD", "PARTIAL", "WORD", "UNKNOWN"})
+    public BenchmarkCatalogs.Utterance utterance;
+
+    private PresentationCatalog catalog;
+    private String[] utterances;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createCatalog() {
+        List<Presentation> presentations = BenchmarkCatalogs.createPresentations(catalogSize);
+        catalog = PresentationCatalog.of(presentations);
+        catalog.getIndex();
+        utterances = BenchmarkCatalogs.createUtterances(presentations, utterance, UTTERANCE_COUNT);
+    }
+
+    @Benchmark
+    public MatchedPresentation matchPresentation() {
+        String spokenName = utterances[next];
+        next = (next + 1) % utterances.length;
+        return catalog.getIndex().match(spokenName);
+    }
+}
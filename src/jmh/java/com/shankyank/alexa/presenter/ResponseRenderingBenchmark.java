@@ -0,0 +1,58 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.ui.SsmlOutputSpeech;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering the paged presentation list, serving a cached page and
+ * the SSML wrapper applied to every response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseRenderingBenchmark {
+    private static final SsmlTemplate STARTING = SsmlTemplate.compile("starting %s");
+
+    @Param({"3", "30", "300"})
+    public int catalogSize;
+
+    private PresentationCatalog catalog;
+    private String ssml;
+
+    @Setup(Level.Trial)
+    public void createCatalog() {
+        catalog = PresentationCatalog.of(BenchmarkCatalogs.createPresentations(catalogSize));
+        ssml = catalog.getPresentations().get(0).getSsml();
+    }
+
+    @Benchmark
+    public PresentationListing renderListing() {
+        return PresentationListing.render(catalog.getPresentations());
+    }
+
+    @Benchmark
+    public SsmlOutputSpeech renderPresentationList() {
+        return catalog.getListing().getSpeech(0);
+    }
+
+    @Benchmark
+    public SsmlOutputSpeech renderStartingPresentation() {
+        return STARTING.speech(ssml);
+    }
+}
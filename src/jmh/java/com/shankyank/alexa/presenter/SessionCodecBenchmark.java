@@ -0,0 +1,97 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.SpeechletException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.shankyank.alexa.presenter.Presentation.LIST_OF_PRESENTATIONS;
+
+/**
+ * Measures serializing and deserializing the catalog and the selected
+ * presentation stored in the session, with each session codec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionCodecBenchmark {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final SessionCodec JSON_CODEC = new JsonSessionCodec();
+    private static final SessionCodec COMPACT_CODEC = new CompactSessionCodec();
+
+    @Param({"10", "1000", "100000"})
+    public int catalogSize;
+
+    private List<Presentation> presentations;
+    private byte[] catalogJson;
+    private MatchedPresentation matched;
+    private String matchedJson;
+    private String matchedCompact;
+
+    @Setup(Level.Trial)
+    public void createCatalog() throws IOException, SpeechletException {
+        presentations = BenchmarkCatalogs.createPresentations(catalogSize);
+        catalogJson = JSON.writeValueAsBytes(presentations);
+        matched = new MatchedPresentation("lambda", 0.75, presentations.get(0));
+        matchedJson = JSON_CODEC.encode(matched);
+        matchedCompact = COMPACT_CODEC.encode(matched);
+    }
+
+    @Benchmark
+    public byte[] writeCatalog() throws IOException {
+        return JSON.writeValueAsBytes(presentations);
+    }
+
+    @Benchmark
+    public List<Presentation> readCatalog() throws IOException {
+        return JSON.readValue(catalogJson, LIST_OF_PRESENTATIONS);
+    }
+
+    @Benchmark
+    public PresentationTable streamCatalog() throws IOException {
+        return PresentationTable.read(new ByteArrayInputStream(catalogJson));
+    }
+
+    @Benchmark
+    public String versionCatalog() {
+        return PresentationCatalog.of(presentations).getVersion();
+    }
+
+    @Benchmark
+    public String writeMatchedPresentationJson() throws SpeechletException {
+        return JSON_CODEC.encode(matched);
+    }
+
+    @Benchmark
+    public MatchedPresentation readMatchedPresentationJson() throws SpeechletException {
+        return JSON_CODEC.decode(matchedJson);
+    }
+
+    @Benchmark
+    public String writeMatchedPresentationCompact() throws SpeechletException {
+        return COMPACT_CODEC.encode(matched);
+    }
+
+    @Benchmark
+    public MatchedPresentation readMatchedPresentationCompact() throws SpeechletException {
+        return COMPACT_CODEC.decode(matchedCompact);
+    }
+}
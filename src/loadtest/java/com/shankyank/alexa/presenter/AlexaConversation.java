@@ -0,0 +1,93 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the request envelopes of one Alexa session, carrying the session
+ * attributes of each response into the next request the way the Alexa
+ * service does.
+ */
+final class AlexaConversation {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final AtomicLong REQUEST_IDS = new AtomicLong();
+    private static final ThreadLocal<SimpleDateFormat> TIMESTAMP = ThreadLocal.withInitial(() -> {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    });
+
+    private final String sessionId;
+    private final String userId;
+    private JsonNode attributes = JSON.createObjectNode();
+    private boolean isNew = true;
+
+    /**
+     * @param sessionId the session ID
+     * @param userId the Alexa user ID
+     */
+    AlexaConversation(final String sessionId, final String userId) {
+        this.sessionId = sessionId;
+        this.userId = userId;
+    }
+
+    /**
+     * @return a LaunchRequest envelope
+     */
+    byte[] launch() throws IOException {
+        ObjectNode envelope = createEnvelope("LaunchRequest");
+        return JSON.writeValueAsBytes(envelope);
+    }
+
+    /**
+     * @param intent the intent name
+     * @param presentation the value of the presentation slot, or null for intents without one
+     * @return an IntentRequest envelope
+     */
+    byte[] intent(final String intent, final String presentation) throws IOException {
+        ObjectNode envelope = createEnvelope("IntentRequest");
+        ObjectNode slots = ((ObjectNode) envelope.get("request")).putObject("intent").put("name", intent).
+                putObject("slots");
+        if (presentation != null) {
+            slots.putObject(PresenterSpeechlet.PRESENTATION_SLOT).
+                    put("name", PresenterSpeechlet.PRESENTATION_SLOT).put("value", presentation);
+        }
+        return JSON.writeValueAsBytes(envelope);
+    }
+
+    /**
+     * Read a response envelope and keep its session attributes for the next request.
+     * @param response the response envelope
+     * @return the parsed response
+     */
+    JsonNode accept(final byte[] response) throws IOException {
+        JsonNode envelope = JSON.readTree(response);
+        JsonNode sessionAttributes = envelope.get("sessionAttributes");
+        attributes = sessionAttributes != null ? sessionAttributes : JSON.createObjectNode();
+        isNew = false;
+        return envelope;
+    }
+
+    private ObjectNode createEnvelope(final String type) {
+        ObjectNode envelope = JSON.createObjectNode();
+        envelope.put("version", "1.0");
+        ObjectNode session = envelope.putObject("session");
+        session.put("new", isNew);
+        session.put("sessionId", sessionId);
+        session.putObject("application").put("applicationId", "loadtest");
+        session.set("attributes", attributes);
+        session.putObject("user").put("userId", userId);
+        ObjectNode request = envelope.putObject("request");
+        request.put("type", type);
+        request.put("requestId", "loadtest-" + REQUEST_IDS.incrementAndGet());
+        request.put("timestamp", TIMESTAMP.get().format(new Date()));
+        return envelope;
+    }
+}
@@ -0,0 +1,26 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.Session;
+
+/**
+ * Presentation starter that succeeds after a delay, standing in for SNS in
+ * load tests.
+ */
+final class LatencyInjectingPresentationStarter implements PresentationStarter {
+    private static final long serialVersionUID = 1L;
+
+    private final long latencyMillis;
+
+    /**
+     * @param latencyMillis the delay added to every start
+     */
+    LatencyInjectingPresentationStarter(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public boolean startPresentation(final Session session, final MatchedPresentation presentation) {
+        LatencyInjectingSessionInitializer.pause(latencyMillis);
+        return true;
+    }
+}
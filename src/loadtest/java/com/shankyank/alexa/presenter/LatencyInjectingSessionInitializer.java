@@ -0,0 +1,53 @@
+package com.shankyank.alexa.presenter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session initializer that serves a fixed catalog and starter after a delay,
+ * standing in for S3 in load tests.
+ */
+final class LatencyInjectingSessionInitializer implements SessionInitializer {
+    private final List<Presentation> presentations;
+    private final PresentationStarter starter;
+    private final long latencyMillis;
+
+    /**
+     * @param presentations the catalog served to every user
+     * @param starter the presentation starter
+     * @param latencyMillis the delay added to every call
+     */
+    LatencyInjectingSessionInitializer(final List<Presentation> presentations, final PresentationStarter starter,
+                                       final long latencyMillis) {
+        this.presentations = PresentationTable.copyOf(presentations);
+        this.starter = starter;
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public List<Presentation> getAvailablePresentations() {
+        pause(latencyMillis);
+        return presentations;
+    }
+
+    @Override
+    public PresentationStarter getPresentationStarter() {
+        pause(latencyMillis);
+        return starter;
+    }
+
+    /**
+     * Sleep for a number of milliseconds, preserving the interrupt.
+     * @param millis the delay
+     */
+    static void pause(final long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Request latencies recorded by one load test thread, grouped by operation.
+ * Latencies are kept exactly so percentiles are not bucketed; the recorders
+ * of every thread are merged into one report when the run ends.
+ */
+final class LatencyReport {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    private final Map<String, Latencies> operations = new TreeMap<>();
+
+    /**
+     * @param operation the request type or intent name
+     * @param nanos the time the handler took
+     * @param failed true if the handler failed or returned no response
+     */
+    void record(final String operation, final long nanos, final boolean failed) {
+        operations.computeIfAbsent(operation, o -> new Latencies()).add(nanos, failed);
+    }
+
+    /**
+     * @param other latencies recorded by another thread
+     */
+    void merge(final LatencyReport other) {
+        other.operations.forEach((operation, latencies) ->
+                operations.computeIfAbsent(operation, o -> new Latencies()).addAll(latencies));
+    }
+
+    /**
+     * @param wallNanos the duration of the run
+     * @return the report as a text table
+     */
+    String format(final long wallNanos) {
+        StringBuilder report = new StringBuilder(String.format("%-24s %8s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "failed", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        Latencies total = new Latencies();
+        for (Map.Entry<String, Latencies> entry : operations.entrySet()) {
+            appendRow(report, entry.getKey(), entry.getValue(), wallNanos);
+            total.addAll(entry.getValue());
+        }
+        appendRow(report, "total", total, wallNanos);
+        return report.toString();
+    }
+
+    /**
+     * Write the report as JSON.
+     * @param file the report file
+     * @param wallNanos the duration of the run
+     * @param settings the settings of the run
+     */
+    void write(final File file, final long wallNanos, final Map<String, Object> settings) throws IOException {
+        ObjectNode report = JSON.createObjectNode();
+        report.set("settings", JSON.valueToTree(settings));
+        report.put("wallSeconds", wallNanos / 1e9);
+        ObjectNode results = report.putObject("operations");
+        Latencies total = new Latencies();
+        for (Map.Entry<String, Latencies> entry : operations.entrySet()) {
+            toJson(results.putObject(entry.getKey()), entry.getValue(), wallNanos);
+            total.addAll(entry.getValue());
+        }
+        toJson(report.putObject("total"), total, wallNanos);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        JSON.writerWithDefaultPrettyPrinter().writeValue(file, report);
+    }
+
+    private static void appendRow(final StringBuilder report, final String operation, final Latencies latencies,
+                                  final long wallNanos) {
+        long[] sorted = latencies.sorted();
+        report.append(String.format("%-24s %8d %8d %10.1f", operation, latencies.count, latencies.failures,
+                latencies.count / (wallNanos / 1e9)));
+        for (double percentile : PERCENTILES) {
+            report.append(String.format(" %10.3f", percentile(sorted, percentile) / 1e6));
+        }
+        report.append(String.format(" %10.3f%n", sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0.0));
+    }
+
+    private static void toJson(final ObjectNode node, final Latencies latencies, final long wallNanos) {
+        long[] sorted = latencies.sorted();
+        node.put("count", latencies.count);
+        node.put("failures", latencies.failures);
+        node.put("requestsPerSecond", latencies.count / (wallNanos / 1e9));
+        for (double percentile : PERCENTILES) {
+            node.put(String.format("p%.0fMillis", percentile), percentile(sorted, percentile) / 1e6);
+        }
+        node.put("maxMillis", sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0.0);
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    private static long percentile(final long[] sorted, final double percentile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * The latencies of one operation.
+     */
+    private static final class Latencies {
+        private long[] nanos = new long[256];
+        private int count;
+        private int failures;
+
+        private void add(final long latency, final boolean failed) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, 2 * count);
+            }
+            nanos[count++] = latency;
+            if (failed) {
+                failures++;
+            }
+        }
+
+        private void addAll(final Latencies other) {
+            if (count + other.count > nanos.length) {
+                nanos = Arrays.copyOf(nanos, Math.max(2 * nanos.length, count + other.count));
+            }
+            System.arraycopy(other.nanos, 0, nanos, count, other.count);
+            count += other.count;
+            failures += other.failures;
+        }
+
+        private long[] sorted() {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
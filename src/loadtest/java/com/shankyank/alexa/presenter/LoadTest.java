@@ -0,0 +1,231 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process load test of the Lambda request stream handler.
+ * <p>
+ * By default each worker thread plays whole sessions: a LaunchRequest,
+ * sometimes a ListPresentations and a NextIntent, a StartPresentation with
+ * an exact, misheard or unknown presentation name, and a YesIntent or
+ * NoIntent when the skill asks for confirmation, or a StartPresentation
+ * with one of the offered names when it asks which of two was meant. With {@code --replay} the
+ * workers instead send the recorded request envelopes in a file, one JSON
+ * envelope per line. S3 and SNS are replaced by stand-ins with configurable
+ * latency. The run prints p50/p95/p99 latency and throughput per operation
+ * and writes them as JSON with {@code --report}.
+ */
+public final class LoadTest {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final String LAUNCH = "LaunchRequest";
+    private static final String YES_INTENT = "AMAZON.YesIntent";
+    private static final String NO_INTENT = "AMAZON.NoIntent";
+    private static final String NEXT_INTENT = "AMAZON.NextIntent";
+
+    private final Map<String, Object> settings = new LinkedHashMap<>();
+    private final int threads;
+    private final int sessions;
+    private final int warmupSessions;
+    private final String[][] utterances;
+    private final List<byte[]> replay;
+    private final RequestStreamHandler handler;
+
+    private LoadTest(final Map<String, String> options) throws IOException {
+        threads = option(options, "threads", Runtime.getRuntime().availableProcessors());
+        sessions = option(options, "sessions", 2000);
+        warmupSessions = option(options, "warmup-sessions", 200);
+        int catalogSize = option(options, "catalog-size", 200);
+        long catalogLatencyMillis = option(options, "catalog-latency-ms", 0);
+        long publishLatencyMillis = option(options, "publish-latency-ms", 0);
+        String replayFile = options.remove("replay");
+        if (replayFile != null) {
+            settings.put("replay", replayFile);
+        }
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + options.keySet());
+        }
+
+        List<Presentation> presentations = BenchmarkCatalogs.createPresentations(catalogSize);
+        utterances = new String[BenchmarkCatalogs.Utterance.values().length][];
+        for (BenchmarkCatalogs.Utterance utterance : BenchmarkCatalogs.Utterance.values()) {
+            utterances[utterance.ordinal()] = BenchmarkCatalogs.createUtterances(presentations, utterance, 1000);
+        }
+        replay = replayFile != null ? readEnvelopes(new File(replayFile)) : null;
+        SessionInitializer initializer = new LatencyInjectingSessionInitializer(presentations,
+                new LatencyInjectingPresentationStarter(publishLatencyMillis), catalogLatencyMillis);
+        handler = new PresenterSpeechletRequestStreamHandler(
+                new PresenterSpeechlet(initializer, new MetricsRegistry()));
+    }
+
+    /**
+     * Options are given as {@code --name value}: {@code --threads},
+     * {@code --sessions}, {@code --warmup-sessions}, {@code --catalog-size},
+     * {@code --catalog-latency-ms}, {@code --publish-latency-ms},
+     * {@code --replay <file>} and {@code --report <file>}. When replaying,
+     * the session counts are numbers of requests.
+     */
+    public static void main(final String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --name value but found " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        String reportFile = options.remove("report");
+
+        LoadTest test = new LoadTest(options);
+        test.run(test.warmupSessions);
+        long start = System.nanoTime();
+        LatencyReport report = test.run(test.sessions);
+        long wallNanos = System.nanoTime() - start;
+
+        System.out.println(test.settings);
+        System.out.print(report.format(wallNanos));
+        if (reportFile != null) {
+            report.write(new File(reportFile), wallNanos, test.settings);
+            System.out.println("Report written to " + reportFile);
+        }
+    }
+
+    /**
+     * Play sessions, or replay requests, on every worker thread.
+     * @param count the number of sessions or replayed requests
+     * @return the latencies recorded by every thread
+     */
+    private LatencyReport run(final int count) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<LatencyReport>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                workers.add(pool.submit(() -> {
+                    LatencyReport report = new LatencyReport();
+                    Random random = new Random(seed);
+                    for (int n = next.getAndIncrement(); n < count; n = next.getAndIncrement()) {
+                        if (replay != null) {
+                            byte[] envelope = replay.get(n % replay.size());
+                            send(report, operationOf(envelope), envelope);
+                        } else {
+                            playSession(report, random, n);
+                        }
+                    }
+                    return report;
+                }));
+            }
+            LatencyReport report = new LatencyReport();
+            for (Future<LatencyReport> worker : workers) {
+                report.merge(worker.get());
+            }
+            return report;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void playSession(final LatencyReport report, final Random random, final int session)
+            throws IOException {
+        AlexaConversation conversation = new AlexaConversation("loadtest-session-" + session,
+                "loadtest-user-" + (session % 16));
+        conversation.accept(send(report, LAUNCH, conversation.launch()));
+        if (random.nextInt(5) == 0) {
+            String list = PresenterSpeechlet.LIST_PRESENTATIONS_INTENT;
+            conversation.accept(send(report, list, conversation.intent(list, null)));
+            conversation.accept(send(report, NEXT_INTENT, conversation.intent(NEXT_INTENT, null)));
+        }
+
+        String start = PresenterSpeechlet.START_PRESENTATION_INTENT;
+        JsonNode response = conversation.accept(send(report, start,
+                conversation.intent(start, utterance(random))));
+        if (response.path("response").path("shouldEndSession").asBoolean(true)) {
+            return;
+        }
+        String[] candidates = getCandidates(response);
+        if (candidates != null) {
+            String choice = candidates[random.nextInt(candidates.length)];
+            conversation.accept(send(report, start, conversation.intent(start, choice)));
+        } else if (response.path("response").path("outputSpeech").path("ssml").asText().contains("did you mean")) {
+            String answer = random.nextInt(5) > 0 ? YES_INTENT : NO_INTENT;
+            conversation.accept(send(report, answer, conversation.intent(answer, null)));
+        }
+    }
+
+    /**
+     * @return the presentations offered by a "did you mean A or B" prompt, which
+     *         are answered by name, or null if the response did not offer a choice
+     */
+    private static String[] getCandidates(final JsonNode response) throws IOException {
+        JsonNode candidates = response.path("sessionAttributes").path(PresenterSpeechlet.CANDIDATES_KEY);
+        return candidates.isTextual() ? JSON.readValue(candidates.asText(), String[].class) : null;
+    }
+
+    /**
+     * @return an exact name six times in ten, a misheard name three times and an unknown name once
+     */
+    private String utterance(final Random random) {
+        int kind = random.nextInt(10);
+        BenchmarkCatalogs.Utterance utterance = kind < 6 ? BenchmarkCatalogs.Utterance.EXACT :
+                kind < 9 ? BenchmarkCatalogs.Utterance.MISHEARD : BenchmarkCatalogs.Utterance.UNKNOWN;
+        String[] pool = utterances[utterance.ordinal()];
+        return pool[random.nextInt(pool.length)];
+    }
+
+    private byte[] send(final LatencyReport report, final String operation, final byte[] request) {
+        ByteArrayOutputStream response = new ByteArrayOutputStream(1024);
+        long start = System.nanoTime();
+        boolean failed;
+        try {
+            handler.handleRequest(new ByteArrayInputStream(request), response, null);
+            failed = response.size() == 0;
+        } catch (IOException | RuntimeException ex) {
+            failed = true;
+        }
+        report.record(operation, System.nanoTime() - start, failed);
+        return failed ? "{}".getBytes(StandardCharsets.UTF_8) : response.toByteArray();
+    }
+
+    private static String operationOf(final byte[] envelope) throws IOException {
+        JsonNode request = JSON.readTree(envelope).path("request");
+        return request.has("intent") ? request.path("intent").path("name").asText() : request.path("type").asText();
+    }
+
+    private static List<byte[]> readEnvelopes(final File file) throws IOException {
+        List<byte[]> envelopes = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                envelopes.add(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (envelopes.isEmpty()) {
+            throw new IllegalArgumentException("No request envelopes in " + file);
+        }
+        return envelopes;
+    }
+
+    private int option(final Map<String, String> options, final String name, final int defaultValue) {
+        String value = options.remove(name);
+        int parsed = value != null ? Integer.parseInt(value) : defaultValue;
+        settings.put(name, parsed);
+        return parsed;
+    }
+}
@@ -0,0 +1,406 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLServerSocketFactory;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accepts persistent connections from presenter agents so start messages can
+ * be pushed to a laptop directly instead of through SNS and SQS.
+ * <p>
+ * Agents connect over TCP, or TLS when a key store is configured with the
+ * standard {@code javax.net.ssl.keyStore} system properties, and exchange one
+ * JSON message per line. An agent first sends
+ * {@code {"type":"register","agentId":...,"token":...}}; the token must match
+ * the hub's token, which is required. The hub then
+ * sends {@code {"type":"start","id":...,"presentation":...}} messages, with
+ * the presentation in the same form as the SNS message, and the agent
+ * answers each with {@code {"type":"ack","id":...,"started":true|false}}.
+ * Starts are pushed to the agent that registered most recently. An agent
+ * that does not take a start message within the send timeout, or before the
+ * request's {@link Deadline}, is disconnected.
+ * <p>
+ * Connections are not trusted until they register, so the hub serves at most
+ * {@link #MAX_UNREGISTERED_AGENTS} of them at a time, closes any that have
+ * not registered within the registration timeout however slowly they keep
+ * sending, and refuses messages longer than {@link #MAX_MESSAGE_CHARS}.
+ */
+final class AgentHub implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentHub.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    static final String REGISTER = "register";
+    static final String START = "start";
+    static final String ACK = "ack";
+
+    /** The time an agent has to register after it connects. */
+    static final long REGISTRATION_TIMEOUT_MILLIS = 10000L;
+    /** The most connections that may be waiting to register at once. */
+    static final int MAX_UNREGISTERED_AGENTS = 8;
+    /** The longest message, in characters, that either end will read. */
+    static final int MAX_MESSAGE_CHARS = 64 * 1024;
+    /** The time a start message may take to write before the agent is disconnected. */
+    static final long SEND_TIMEOUT_MILLIS = 1000L;
+
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "agent-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ServerSocket serverSocket;
+    private final byte[] token;
+    private final long registrationTimeoutMillis;
+    private final Semaphore unregistered = new Semaphore(MAX_UNREGISTERED_AGENTS);
+    private final Deque<AgentConnection> agents = new ConcurrentLinkedDeque<>();
+    private final AtomicLong messageIds = new AtomicLong();
+    private volatile boolean closed;
+
+    private AgentHub(final ServerSocket serverSocket, final String token, final long registrationTimeoutMillis) {
+        this.serverSocket = serverSocket;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.registrationTimeoutMillis = registrationTimeoutMillis;
+    }
+
+    /**
+     * Listen for agents, over TLS if a key store is configured.
+     * @param address the address to listen on
+     * @param token the token agents must present
+     * @return the running hub
+     * @throws IOException if the hub cannot listen on the address
+     * @throws IllegalArgumentException if the token is missing
+     */
+    static AgentHub start(final InetSocketAddress address, final String token) throws IOException {
+        ServerSocketFactory factory = System.getProperty("javax.net.ssl.keyStore") != null ?
+                SSLServerSocketFactory.getDefault() : ServerSocketFactory.getDefault();
+        return start(address, token, factory);
+    }
+
+    /**
+     * Listen for agents.
+     * @param address the address to listen on
+     * @param token the token agents must present
+     * @param factory creates the socket to listen on
+     * @return the running hub
+     * @throws IOException if the hub cannot listen on the address
+     * @throws IllegalArgumentException if the token is missing
+     */
+    static AgentHub start(final InetSocketAddress address, final String token, final ServerSocketFactory factory)
+            throws IOException {
+        return start(address, token, factory, REGISTRATION_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Listen for agents.
+     * @param address the address to listen on
+     * @param token the token agents must present
+     * @param factory creates the socket to listen on
+     * @param registrationTimeoutMillis the time an agent has to register after it connects
+     * @return the running hub
+     * @throws IOException if the hub cannot listen on the address
+     * @throws IllegalArgumentException if the token is missing
+     */
+    static AgentHub start(final InetSocketAddress address, final String token, final ServerSocketFactory factory,
+                          final long registrationTimeoutMillis) throws IOException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("Presenter agents cannot be accepted without a token");
+        }
+        ServerSocket serverSocket = factory.createServerSocket();
+        serverSocket.bind(address);
+        AgentHub hub = new AgentHub(serverSocket, token, registrationTimeoutMillis);
+        daemon("presenter-agent-hub", hub::acceptAgents).start();
+        LOGGER.info("Waiting for presenter agents on {}", serverSocket.getLocalSocketAddress());
+        return hub;
+    }
+
+    /**
+     * @return the agent that registered most recently and is still connected, or null if none is
+     */
+    AgentConnection getAgent() {
+        for (AgentConnection agent : agents) {
+            if (agent.isOpen()) {
+                return agent;
+            }
+            agents.remove(agent);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of connected agents
+     */
+    int getAgentCount() {
+        agents.removeIf(agent -> !agent.isOpen());
+        return agents.size();
+    }
+
+    /**
+     * @return the port the hub listens on
+     */
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (AgentConnection agent : agents) {
+            agent.close();
+        }
+        agents.clear();
+    }
+
+    private void acceptAgents() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (!unregistered.tryAcquire()) {
+                    LOGGER.warn("Refused presenter agent at {}; {} connections are already waiting to register",
+                            socket.getRemoteSocketAddress(), MAX_UNREGISTERED_AGENTS);
+                    closeQuietly(socket);
+                    continue;
+                }
+                daemon("presenter-agent-" + socket.getRemoteSocketAddress(), () -> serve(socket)).start();
+            } catch (IOException ioe) {
+                if (!closed) {
+                    LOGGER.error("Unable to accept presenter agent", ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Register an agent and read its acknowledgements until it disconnects.
+     * The connection holds one of the unregistered slots until it registers
+     * or is closed, and is closed if it has not registered by the end of the
+     * registration timeout.
+     */
+    private void serve(final Socket socket) {
+        AgentConnection agent = null;
+        boolean registering = true;
+        ScheduledFuture<?> registrationTimeout = TIMEOUTS.schedule(() -> closeQuietly(socket),
+                registrationTimeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            socket.setKeepAlive(true);
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            JsonNode registration = readMessage(reader);
+            if (registration == null || !REGISTER.equals(registration.path("type").asText()) ||
+                    !isToken(registration.path("token").asText(""))) {
+                LOGGER.warn("Rejected presenter agent at {}", socket.getRemoteSocketAddress());
+                socket.close();
+                return;
+            }
+            if (!registrationTimeout.cancel(false)) {
+                throw new IOException("Registration arrived after the registration timeout");
+            }
+            registering = false;
+            unregistered.release();
+            agent = new AgentConnection(registration.path("agentId").asText("unknown"), socket);
+            agents.addFirst(agent);
+            LOGGER.info("Presenter agent {} connected from {}", agent.agentId, socket.getRemoteSocketAddress());
+            for (JsonNode message = readMessage(reader); message != null; message = readMessage(reader)) {
+                if (ACK.equals(message.path("type").asText())) {
+                    agent.acknowledge(message.path("id").asText(), message.path("started").asBoolean(false));
+                }
+            }
+        } catch (IOException ioe) {
+            if (registering && registrationTimeout.isDone()) {
+                LOGGER.warn("Presenter agent at {} did not register within {}ms", socket.getRemoteSocketAddress(),
+                        registrationTimeoutMillis);
+            } else if (!closed) {
+                LOGGER.warn("Lost presenter agent at {}", socket.getRemoteSocketAddress(), ioe);
+            }
+        } finally {
+            if (registering) {
+                registrationTimeout.cancel(false);
+                unregistered.release();
+            }
+            if (agent != null) {
+                agents.remove(agent);
+                agent.close();
+                LOGGER.info("Presenter agent {} disconnected", agent.agentId);
+            } else {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Compare a presented token with the hub's in time that does not depend
+     * on how much of it matches.
+     */
+    private boolean isToken(final String presented) {
+        return MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the next message, or null at the end of the stream
+     * @throws IOException if the message cannot be read or is longer than {@link #MAX_MESSAGE_CHARS}
+     */
+    static JsonNode readMessage(final BufferedReader reader) throws IOException {
+        String line = readLine(reader);
+        while (line != null && line.trim().isEmpty()) {
+            line = readLine(reader);
+        }
+        return line != null ? JSON.readTree(line) : null;
+    }
+
+    /**
+     * Read a line without holding more than {@link #MAX_MESSAGE_CHARS} of it.
+     * @return the line without its terminator, or null at the end of the stream
+     */
+    private static String readLine(final Reader reader) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = reader.read(); c != '\n'; c = reader.read()) {
+            if (c < 0) {
+                return line.length() > 0 ? line.toString() : null;
+            }
+            if (line.length() == MAX_MESSAGE_CHARS) {
+                throw new IOException(String.format("Message is longer than %d characters", MAX_MESSAGE_CHARS));
+            }
+            line.append((char) c);
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Write a message as a single line.
+     */
+    static void writeMessage(final OutputStream os, final JsonNode message) throws IOException {
+        os.write(JSON.writeValueAsBytes(message));
+        os.write('\n');
+        os.flush();
+    }
+
+    private static Thread daemon(final String name, final Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            LOGGER.debug("Error closing agent socket", ioe);
+        }
+    }
+
+    /**
+     * A registered agent and the start messages waiting for its acknowledgement.
+     */
+    final class AgentConnection {
+        private final String agentId;
+        private final Socket socket;
+        private final Map<String, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+
+        private AgentConnection(final String agentId, final Socket socket) {
+            this.agentId = agentId;
+            this.socket = socket;
+        }
+
+        /**
+         * Push a start message to the agent. If the message cannot be written
+         * within the send timeout, or before the request's deadline, the agent
+         * is disconnected.
+         * @param presentation the matched presentation
+         * @return a future that completes with the agent's acknowledgement, or
+         *         exceptionally if the connection is lost before the agent answers
+         * @throws IOException if the message could not be written, in which case the agent did not receive it
+         */
+        CompletableFuture<Boolean> push(final MatchedPresentation presentation) throws IOException {
+            if (Deadline.current().isExpired()) {
+                throw new IOException("No time left to push a start to " + this);
+            }
+            String id = Long.toString(messageIds.incrementAndGet());
+            CompletableFuture<Boolean> acknowledged = new CompletableFuture<>();
+            pending.put(id, acknowledged);
+            acknowledged.whenComplete((started, ex) -> pending.remove(id));
+            ObjectNode message = JSON.createObjectNode();
+            message.put("type", START);
+            message.put("id", id);
+            message.set("presentation", JSON.valueToTree(presentation));
+            long timeoutMillis = Deadline.current().clamp(SEND_TIMEOUT_MILLIS);
+            ScheduledFuture<?> timeout = TIMEOUTS.schedule(() -> {
+                LOGGER.warn("{} did not take a start message within {}ms; disconnecting", this, timeoutMillis);
+                close();
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                synchronized (this) {
+                    writeMessage(socket.getOutputStream(), message);
+                }
+            } catch (IOException ioe) {
+                pending.remove(id);
+                close();
+                throw ioe;
+            } finally {
+                timeout.cancel(false);
+            }
+            return acknowledged;
+        }
+
+        /**
+         * @return the ID the agent registered with
+         */
+        String getAgentId() {
+            return agentId;
+        }
+
+        private boolean isOpen() {
+            return !socket.isClosed();
+        }
+
+        private void acknowledge(final String id, final boolean started) {
+            CompletableFuture<Boolean> acknowledged = pending.get(id);
+            if (acknowledged != null) {
+                acknowledged.complete(started);
+            }
+        }
+
+        private void close() {
+            closeQuietly(socket);
+            IOException lost = new IOException("Presenter agent " + agentId + " disconnected");
+            pending.values().forEach(acknowledged -> acknowledged.completeExceptionally(lost));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s {agentId=%s, address=%s}", AgentConnection.class.getSimpleName(), agentId,
+                    socket.getRemoteSocketAddress());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.regions.DefaultAwsRegionProviderChain;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.AmazonSNSAsyncClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the AWS clients shared by every component in the container. The
+ * clients are created on first use and can be reset so that a container
+ * restored from a snapshot opens fresh connections and resolves fresh
+ * credentials.
+ * <p>
+ * The {@code presenter.s3.endpoint} and {@code presenter.sns.endpoint}
+ * system properties point the clients at another endpoint, such as a local
+ * stand-in for S3 or SNS. The clients use the region of the environment,
+ * such as the region a Lambda function runs in, or {@code us-east-1} if none
+ * is configured.
+ */
+final class AwsClients {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AwsClients.class);
+
+    static final String S3_ENDPOINT_PROPERTY = "presenter.s3.endpoint";
+    static final String SNS_ENDPOINT_PROPERTY = "presenter.sns.endpoint";
+
+    private static AmazonS3 s3;
+    private static AmazonSNSAsync sns;
+
+    private AwsClients() {
+    }
+
+    /**
+     * @return the shared S3 client
+     */
+    static synchronized AmazonS3 s3() {
+        if (s3 == null) {
+            AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard();
+            String endpoint = System.getProperty(S3_ENDPOINT_PROPERTY);
+            if (endpoint != null) {
+                LOGGER.info("Using S3 endpoint {}", endpoint);
+                builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, getRegion()))
+                        .withPathStyleAccessEnabled(true);
+            } else {
+                // the configuration bucket may be in another region, as the global client allowed
+                builder.withRegion(getRegion()).withForceGlobalBucketAccessEnabled(true);
+            }
+            s3 = builder.build();
+        }
+        return s3;
+    }
+
+    /**
+     * @return the shared SNS client
+     */
+    static synchronized AmazonSNSAsync sns() {
+        if (sns == null) {
+            AmazonSNSAsyncClientBuilder builder = AmazonSNSAsyncClientBuilder.standard();
+            String endpoint = System.getProperty(SNS_ENDPOINT_PROPERTY);
+            if (endpoint != null) {
+                LOGGER.info("Using SNS endpoint {}", endpoint);
+                builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, getRegion()));
+            } else {
+                builder.withRegion(getRegion());
+            }
+            sns = builder.build();
+        }
+        return sns;
+    }
+
+    /**
+     * @return the region of the environment, or {@code us-east-1} if none is configured
+     */
+    private static String getRegion() {
+        try {
+            String region = new DefaultAwsRegionProviderChain().getRegion();
+            if (region != null) {
+                return region;
+            }
+        } catch (SdkClientException sce) {
+            LOGGER.debug("No AWS region is configured", sce);
+        }
+        return Regions.US_EAST_1.getName();
+    }
+
+    /**
+     * Shut down the shared clients. New clients are created the next time they
+     * are requested.
+     */
+    static synchronized void reset() {
+        if (s3 != null) {
+            s3.shutdown();
+            s3 = null;
+        }
+        if (sns != null) {
+            sns.shutdown();
+            sns = null;
+        }
+        LOGGER.debug("Shared AWS clients have been reset");
+    }
+}
@@ -0,0 +1,255 @@
+package com.shankyank.alexa.presenter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.IntConsumer;
+
+/**
+ * Burkhard-Keller tree over the Levenshtein metric. Each node holds a key and
+ * the ids of every entry indexed under that key, so duplicate keys share a
+ * node. Distances are computed by the {@link EditDistance} supplied to each
+ * call so the tree itself holds no scratch state.
+ * <p>
+ * {@link #add} modifies the tree and is used while an index is built, before
+ * it is shared. {@link #plus} leaves the tree untouched and returns a new
+ * tree that shares every node except those on the path to the new entry, so
+ * a published tree can be extended while other threads search it.
+ * <p>
+ * A tree can be {@linkplain #write written} and {@linkplain #read read} back
+ * without computing any distance. Keys are not written; each node's key is
+ * the key of its first entry, looked up by id when the tree is read.
+ */
+final class BkTree {
+    private Node root;
+    private int size;
+
+    /**
+     * Index an entry.
+     * @param key the key to index
+     * @param id the id of the entry
+     * @param editDistance the edit distance calculator
+     */
+    void add(final String key, final int id, final EditDistance editDistance) {
+        size++;
+        if (root == null) {
+            root = new Node(key, id);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = editDistance.distance(key, node.key);
+            if (distance == 0) {
+                node.addId(id);
+                return;
+            }
+            Node child = node.getChild(distance);
+            if (child == null) {
+                node.setChild(distance, new Node(key, id));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Index an entry in a copy of this tree.
+     * @param key the key to index
+     * @param id the id of the entry
+     * @param editDistance the edit distance calculator
+     * @return a tree with the entries of this tree and the new entry
+     */
+    BkTree plus(final String key, final int id, final EditDistance editDistance) {
+        BkTree tree = new BkTree();
+        tree.size = size + 1;
+        if (root == null) {
+            tree.root = new Node(key, id);
+            return tree;
+        }
+        Node node = root.copy();
+        tree.root = node;
+        while (true) {
+            int distance = editDistance.distance(key, node.key);
+            if (distance == 0) {
+                node.addId(id);
+                return tree;
+            }
+            Node child = node.getChild(distance);
+            if (child == null) {
+                node.setChild(distance, new Node(key, id));
+                return tree;
+            }
+            child = child.copy();
+            node.children[distance] = child;
+            node = child;
+        }
+    }
+
+    /**
+     * Find every entry whose key is within the provided edit distance of the
+     * query.
+     * @param query the query string
+     * @param radius the maximum edit distance
+     * @param editDistance the edit distance calculator
+     * @param consumer receives the id of each matching entry
+     */
+    void search(final String query, final int radius, final EditDistance editDistance, final IntConsumer consumer) {
+        if (root == null) {
+            return;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            // past this bound neither the node nor any of its children can match
+            int maxChildDistance = node.children.length - 1;
+            int distance = editDistance.distance(query, node.key, radius + Math.max(0, maxChildDistance));
+            if (distance <= radius) {
+                for (int i = 0; i < node.idCount; i++) {
+                    consumer.accept(node.ids[i]);
+                }
+            }
+            int high = Math.min(distance + radius, node.children.length - 1);
+            for (int d = Math.max(1, distance - radius); d <= high; d++) {
+                if (node.children[d] != null) {
+                    pending.push(node.children[d]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in this tree
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Write the tree in depth-first order. Each node is written as its ids and
+     * its children, each child preceded by its distance.
+     * @param out the output
+     * @throws IOException if the tree cannot be written
+     */
+    void write(final DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeBoolean(root != null);
+        if (root != null) {
+            write(root, out);
+        }
+    }
+
+    private static void write(final Node node, final DataOutput out) throws IOException {
+        out.writeInt(node.idCount);
+        for (int i = 0; i < node.idCount; i++) {
+            out.writeInt(node.ids[i]);
+        }
+        int childCount = 0;
+        for (Node child : node.children) {
+            if (child != null) {
+                childCount++;
+            }
+        }
+        out.writeInt(childCount);
+        for (int distance = 0; distance < node.children.length; distance++) {
+            if (node.children[distance] != null) {
+                out.writeInt(distance);
+                write(node.children[distance], out);
+            }
+        }
+    }
+
+    /**
+     * Read a tree written by {@link #write}.
+     * @param in the input, positioned at the tree
+     * @param keys the key of each entry, by id
+     * @return the tree
+     * @throws IllegalArgumentException if the input does not hold a valid tree for the keys
+     */
+    static BkTree read(final ByteBuffer in, final String[] keys) {
+        BkTree tree = new BkTree();
+        try {
+            tree.size = in.getInt();
+            if (in.get() != 0) {
+                tree.root = readNode(in, keys);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Truncated or corrupt tree", ex);
+        }
+        return tree;
+    }
+
+    private static Node readNode(final ByteBuffer in, final String[] keys) {
+        int idCount = in.getInt();
+        if (idCount <= 0 || idCount > keys.length) {
+            throw new IllegalArgumentException("Invalid id count: " + idCount);
+        }
+        int[] ids = new int[idCount];
+        for (int i = 0; i < idCount; i++) {
+            ids[i] = in.getInt();
+        }
+        Node node = new Node(keys[ids[0]], ids[0]);
+        node.ids = ids;
+        node.idCount = idCount;
+        int childCount = in.getInt();
+        for (int i = 0; i < childCount; i++) {
+            int distance = in.getInt();
+            if (distance <= 0) {
+                throw new IllegalArgumentException("Invalid child distance: " + distance);
+            }
+            node.setChild(distance, readNode(in, keys));
+        }
+        return node;
+    }
+
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String key;
+        private int[] ids;
+        private int idCount;
+        private Node[] children = NO_CHILDREN;
+
+        private Node(final String key, final int id) {
+            this.key = key;
+            this.ids = new int[] { id };
+            this.idCount = 1;
+        }
+
+        private Node(final Node node) {
+            this.key = node.key;
+            this.ids = Arrays.copyOf(node.ids, node.idCount);
+            this.idCount = node.idCount;
+            this.children = node.children.length > 0 ? node.children.clone() : NO_CHILDREN;
+        }
+
+        /**
+         * @return a node with the same key, ids and children whose arrays can be modified
+         */
+        private Node copy() {
+            return new Node(this);
+        }
+
+        private void addId(final int id) {
+            if (idCount == ids.length) {
+                ids = Arrays.copyOf(ids, idCount * 2);
+            }
+            ids[idCount++] = id;
+        }
+
+        private Node getChild(final int distance) {
+            return distance < children.length ? children[distance] : null;
+        }
+
+        private void setChild(final int distance, final Node child) {
+            if (distance >= children.length) {
+                children = Arrays.copyOf(children, distance + 1);
+            }
+            children[distance] = child;
+        }
+    }
+}
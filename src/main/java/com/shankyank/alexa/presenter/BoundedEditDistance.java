@@ -0,0 +1,155 @@
+package com.shankyank.alexa.presenter;
+
+import java.util.Arrays;
+
+/**
+ * Threshold-bounded Levenshtein distance that reuses its scratch buffers
+ * between calls. When the shorter string fits in a 64-bit word the distance is
+ * computed with Myers' bit-parallel algorithm; longer strings fall back to a
+ * dynamic programming table restricted to the diagonal band that can stay
+ * within the bound. Both paths stop as soon as the bound can no longer be met.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class BoundedEditDistance implements EditDistance {
+    private static final int ASCII_SIZE = 128;
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /** Bit masks of the positions of each ASCII character in the pattern. */
+    private final long[] asciiMasks = new long[ASCII_SIZE];
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+
+    @Override
+    public int distance(final CharSequence left, final CharSequence right, final int maxDistance) {
+        CharSequence pattern = left.length() <= right.length() ? left : right;
+        CharSequence text = pattern == left ? right : left;
+        int bound = Math.min(maxDistance, text.length());
+        if (text.length() - pattern.length() > bound) {
+            return bound + 1;
+        }
+        if (pattern.length() == 0) {
+            return text.length();
+        }
+        return pattern.length() <= Long.SIZE ?
+                myersDistance(pattern, text, bound) :
+                bandedDistance(pattern, text, bound);
+    }
+
+    /**
+     * Myers' bit-vector algorithm, following Hyyro's formulation for the
+     * global edit distance. The score tracks the last row of the table and
+     * every remaining column can lower it by at most one.
+     */
+    private int myersDistance(final CharSequence pattern, final CharSequence text, final int bound) {
+        int patternLength = pattern.length();
+        for (int i = 0; i < patternLength; i++) {
+            char c = pattern.charAt(i);
+            if (c < ASCII_SIZE) {
+                asciiMasks[c] |= 1L << i;
+            }
+        }
+        try {
+            long lastBit = 1L << (patternLength - 1);
+            long positiveVertical = -1L;
+            long negativeVertical = 0L;
+            int score = patternLength;
+            int textLength = text.length();
+            for (int j = 0; j < textLength; j++) {
+                long equal = getMask(pattern, text.charAt(j));
+                long xVertical = equal | negativeVertical;
+                long xHorizontal = (((equal & positiveVertical) + positiveVertical) ^ positiveVertical) | equal;
+                long positiveHorizontal = negativeVertical | ~(xHorizontal | positiveVertical);
+                long negativeHorizontal = positiveVertical & xHorizontal;
+                if ((positiveHorizontal & lastBit) != 0) {
+                    score++;
+                } else if ((negativeHorizontal & lastBit) != 0) {
+                    score--;
+                }
+                if (score - (textLength - j - 1) > bound) {
+                    return bound + 1;
+                }
+                positiveHorizontal = (positiveHorizontal << 1) | 1L;
+                negativeHorizontal <<= 1;
+                positiveVertical = negativeHorizontal | ~(xVertical | positiveHorizontal);
+                negativeVertical = positiveHorizontal & xVertical;
+            }
+            return score <= bound ? score : bound + 1;
+        } finally {
+            for (int i = 0; i < patternLength; i++) {
+                char c = pattern.charAt(i);
+                if (c < ASCII_SIZE) {
+                    asciiMasks[c] = 0L;
+                }
+            }
+        }
+    }
+
+    private long getMask(final CharSequence pattern, final char c) {
+        if (c < ASCII_SIZE) {
+            return asciiMasks[c];
+        }
+        long mask = 0L;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == c) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Two-row dynamic programming restricted to cells within bound of the
+     * diagonal.
+     */
+    private int bandedDistance(final CharSequence pattern, final CharSequence text, final int bound) {
+        int patternLength = pattern.length();
+        ensureCapacity(patternLength + 1);
+        int[] previous = previousRow;
+        int[] current = currentRow;
+
+        int boundary = Math.min(patternLength, bound) + 1;
+        for (int i = 0; i < boundary; i++) {
+            previous[i] = i;
+        }
+        Arrays.fill(previous, boundary, patternLength + 1, INFINITY);
+        Arrays.fill(current, 0, patternLength + 1, INFINITY);
+
+        for (int j = 1; j <= text.length(); j++) {
+            char textChar = text.charAt(j - 1);
+            current[0] = j;
+            int low = Math.max(1, j - bound);
+            int high = Math.min(patternLength, j + bound);
+            if (low > 1) {
+                current[low - 1] = INFINITY;
+            }
+            int rowMin = low == 1 ? j : INFINITY;
+            for (int i = low; i <= high; i++) {
+                if (pattern.charAt(i - 1) == textChar) {
+                    current[i] = previous[i - 1];
+                } else {
+                    current[i] = 1 + Math.min(Math.min(current[i - 1], previous[i]), previous[i - 1]);
+                }
+                rowMin = Math.min(rowMin, current[i]);
+            }
+            if (high < patternLength) {
+                current[high + 1] = INFINITY;
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int distance = previous[patternLength];
+        return distance <= bound ? distance : bound + 1;
+    }
+
+    private void ensureCapacity(final int size) {
+        if (previousRow.length < size) {
+            previousRow = new int[size];
+            currentRow = new int[size];
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An entry in a presentation change log. The log is a text file with one
+ * JSON change per line, applied in order on top of a presentation snapshot:
+ * <pre>
+ * {"seq": 1, "op": "add", "name": "lambda", "filename": "lambda.key"}
+ * {"seq": 2, "op": "rename", "name": "lambda", "newName": "serverless"}
+ * {"seq": 3, "op": "remove", "name": "serverless"}
+ * </pre>
+ * Sequence numbers increase by one from line to line. Changes address
+ * presentations by name: adding a presentation that already exists replaces
+ * its filename and SSML, and removing or renaming one that does not exist
+ * does nothing. Changes are not idempotent, since a name freed by a rename
+ * may be taken by a later add, so a change must not be applied to a
+ * snapshot that already includes it.
+ */
+final class CatalogChange {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * The kinds of change.
+     */
+    enum Operation {
+        /** Append a presentation, or replace the presentation with the same name. */
+        ADD,
+        /** Remove the presentation with the name. */
+        REMOVE,
+        /** Rename the presentation with the name, keeping its position. */
+        RENAME
+    }
+
+    private final long sequence;
+    private final Operation operation;
+    private final String name;
+    private final String newName;
+    private final String filename;
+    private final String ssml;
+
+    CatalogChange(final long sequence, final Operation operation, final String name, final String newName,
+                  final String filename, final String ssml) {
+        this.sequence = sequence;
+        this.operation = operation;
+        this.name = name;
+        this.newName = newName;
+        this.filename = filename;
+        this.ssml = ssml != null && !ssml.trim().isEmpty() ? ssml : null;
+    }
+
+    static CatalogChange add(final long sequence, final String name, final String filename, final String ssml) {
+        return new CatalogChange(sequence, Operation.ADD, name, null, filename, ssml);
+    }
+
+    static CatalogChange remove(final long sequence, final String name) {
+        return new CatalogChange(sequence, Operation.REMOVE, name, null, null, null);
+    }
+
+    static CatalogChange rename(final long sequence, final String name, final String newName) {
+        return new CatalogChange(sequence, Operation.RENAME, name, newName, null, null);
+    }
+
+    /**
+     * Parse the complete lines of a change log. Text after the last line
+     * break is a change still being written and is not parsed.
+     * @param content the log content
+     * @param from the offset of the first line to parse
+     * @param to the end of the content
+     * @return the changes, in log order
+     * @throws IOException if a line is not a valid change
+     */
+    static List<CatalogChange> parse(final byte[] content, final int from, final int to) throws IOException {
+        List<CatalogChange> changes = new ArrayList<>();
+        int start = from;
+        for (int end = from; end < to; end++) {
+            if (content[end] == '\n') {
+                if (end > start) {
+                    CatalogChange change = parse(new String(content, start, end - start, StandardCharsets.UTF_8));
+                    if (change != null) {
+                        changes.add(change);
+                    }
+                }
+                start = end + 1;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @param content the log content
+     * @param from the offset to search from
+     * @param to the end of the content
+     * @return the offset just past the last line break, or {@code from} if there is none
+     */
+    static int endOfLastLine(final byte[] content, final int from, final int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (content[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @return the change on a line, or null if the line is blank
+     */
+    private static CatalogChange parse(final String line) throws IOException {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        JsonNode node = JSON.readTree(line);
+        Operation operation;
+        try {
+            operation = Operation.valueOf(node.path("op").asText().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException iae) {
+            throw new JsonParseException(String.format("Unknown operation in change: %s", line), null, iae);
+        }
+        if (!node.path("seq").canConvertToLong() || !node.path("seq").isIntegralNumber()) {
+            throw new JsonParseException(String.format("Change has no sequence number: %s", line), null);
+        }
+        CatalogChange change = new CatalogChange(node.get("seq").asLong(), operation, text(node, "name"),
+                text(node, "newName"), text(node, "filename"), text(node, "ssml"));
+        String missing = change.name == null ? "name" :
+                operation == Operation.ADD && change.filename == null ? "filename" :
+                operation == Operation.RENAME && change.newName == null ? "newName" : null;
+        if (missing != null) {
+            throw new JsonParseException(String.format("Change is missing %s: %s", missing, line), null);
+        }
+        return change;
+    }
+
+    private static String text(final JsonNode node, final String field) {
+        JsonNode value = node.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    Operation getOperation() {
+        return operation;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getNewName() {
+        return newName;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return the configured SSML, or null if it is derived from the name
+     */
+    String getSsml() {
+        return ssml;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogChange{" +
+                "sequence=" + sequence +
+                ", operation=" + operation +
+                ", name='" + name + '\'' +
+                (newName != null ? ", newName='" + newName + '\'' : "") +
+                (filename != null ? ", filename='" + filename + '\'' : "") +
+                '}';
+    }
+}
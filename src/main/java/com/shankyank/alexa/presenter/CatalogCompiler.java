@@ -0,0 +1,105 @@
+package com.shankyank.alexa.presenter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Build-time compiler of the presentation list. Reads the JSON presentation
+ * list and writes the {@link CompiledCatalog} bundled into the deployment
+ * zip, and the values of the {@code PRESENTATION_NAME} slot type of the
+ * interaction model, so the slot values always name the presentations in
+ * the catalog. The slot values also include the {@code aliases} of each
+ * presentation: other ways people say its name, which help Alexa recognize
+ * the name and which the match index maps to the presentation.
+ * <p>
+ * Usage: {@code CatalogCompiler <presentations.json> <compiled catalog> [<slot values>]}
+ */
+public final class CatalogCompiler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogCompiler.class);
+
+    private CatalogCompiler() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: CatalogCompiler <presentations.json> <compiled catalog> [<slot values>]");
+            System.exit(2);
+        }
+        compile(Paths.get(args[0]), Paths.get(args[1]), args.length > 2 ? Paths.get(args[2]) : null);
+    }
+
+    /**
+     * Compile a presentation list.
+     * @param presentationsJson the JSON presentation list
+     * @param compiledCatalog the compiled catalog to write
+     * @param slotValues the slot values file to write, or null to write none
+     * @return the compiled catalog
+     * @throws IOException if the presentation list cannot be read or the output cannot be written
+     */
+    static PresentationCatalog compile(final Path presentationsJson, final Path compiledCatalog,
+                                       final Path slotValues) throws IOException {
+        PresentationTable presentations;
+        try (InputStream in = Files.newInputStream(presentationsJson)) {
+            presentations = PresentationTable.read(in);
+        }
+        PresentationCatalog catalog = PresentationCatalog.of(presentations);
+        writeAtomically(compiledCatalog, out -> CompiledCatalog.write(catalog, out));
+        LOGGER.info("Compiled {} to {}", catalog, compiledCatalog);
+        if (slotValues != null) {
+            String values = toSlotValues(presentations);
+            writeAtomically(slotValues, out -> out.write(values.getBytes(StandardCharsets.UTF_8)));
+            LOGGER.info("Wrote slot values for {} presentations to {}", presentations.size(), slotValues);
+        }
+        return catalog;
+    }
+
+    /**
+     * @param presentations the presentations
+     * @return the distinct presentation names, each followed by its aliases, one per line, in catalog order
+     */
+    static String toSlotValues(final PresentationTable presentations) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < presentations.size(); i++) {
+            names.add(presentations.getName(i).trim());
+            names.addAll(presentations.getAliases(i));
+        }
+        StringBuilder values = new StringBuilder();
+        for (String name : names) {
+            values.append(name).append('\n');
+        }
+        return values.toString();
+    }
+
+    /**
+     * Write a file through a temporary file in the same directory, so a
+     * failed build never leaves a partial file behind.
+     */
+    private static void writeAtomically(final Path path, final Writer writer) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                writer.write(out);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+}
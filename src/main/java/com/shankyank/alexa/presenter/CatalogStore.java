@@ -0,0 +1,129 @@
+package com.shankyank.alexa.presenter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-container store of presentation catalogs keyed by version. Sessions
+ * carry only the catalog version and resolve it here; the store keeps the
+ * most recently used versions so a catalog and its match index are shared
+ * by every session in the container, and by every user with the same
+ * presentations. Catalogs that have not been used within the time to live
+ * are evicted, so the catalogs of users who have gone away do not hold on
+ * to memory.
+ */
+final class CatalogStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogStore.class);
+
+    /** The default number of catalog versions to keep. */
+    static final int DEFAULT_CAPACITY = 32;
+    /** The default time a catalog is kept after it was last used. */
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final Map<String, StoredCatalog> catalogs;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    CatalogStore() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param capacity the maximum number of catalog versions to keep
+     * @param ttlMillis the time a catalog is kept after it was last used
+     * @param clock the clock used to expire catalogs
+     */
+    CatalogStore(final int capacity, final long ttlMillis, final Clock clock) {
+        this.catalogs = new LinkedHashMap<String, StoredCatalog>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, StoredCatalog> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param version the catalog version
+     * @return the catalog with the requested version, or null if it is not stored
+     */
+    synchronized PresentationCatalog get(final String version) {
+        if (version == null) {
+            return null;
+        }
+        long now = clock.millis();
+        evictExpired(now);
+        StoredCatalog stored = catalogs.get(version);
+        if (stored == null) {
+            return null;
+        }
+        stored.lastUsed = now;
+        return stored.catalog;
+    }
+
+    /**
+     * Store the catalog for a list of presentations. If a catalog with the same
+     * content is already stored, the stored catalog is returned so its match
+     * index is reused.
+     * @param presentations the available presentations
+     * @return the stored catalog
+     */
+    PresentationCatalog put(final List<Presentation> presentations) {
+        PresentationCatalog catalog = PresentationCatalog.of(presentations);
+        synchronized (this) {
+            long now = clock.millis();
+            evictExpired(now);
+            StoredCatalog existing = catalogs.get(catalog.getVersion());
+            if (existing != null) {
+                existing.lastUsed = now;
+                return existing.catalog;
+            }
+            catalogs.put(catalog.getVersion(), new StoredCatalog(catalog, now));
+        }
+        LOGGER.debug("Stored {}", catalog);
+        return catalog;
+    }
+
+    /**
+     * @return the number of stored catalogs
+     */
+    synchronized int size() {
+        return catalogs.size();
+    }
+
+    /**
+     * Remove expired catalogs. The map is in access order, so they are all at
+     * the head.
+     */
+    private void evictExpired(final long now) {
+        for (Iterator<StoredCatalog> it = catalogs.values().iterator(); it.hasNext(); ) {
+            StoredCatalog stored = it.next();
+            if (now - stored.lastUsed < ttlMillis) {
+                break;
+            }
+            it.remove();
+            LOGGER.debug("Evicted {}", stored.catalog);
+        }
+    }
+
+    /**
+     * A stored catalog with the time it was last used.
+     */
+    private static final class StoredCatalog {
+        private final PresentationCatalog catalog;
+        private long lastUsed;
+
+        private StoredCatalog(final PresentationCatalog catalog, final long lastUsed) {
+            this.catalog = catalog;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
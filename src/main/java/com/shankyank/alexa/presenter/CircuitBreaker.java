@@ -0,0 +1,111 @@
+package com.shankyank.alexa.presenter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling a dependency that keeps failing. After a number of
+ * consecutive failures the breaker opens and callers skip the dependency,
+ * serving a fallback instead, until the open period has passed. Then a single
+ * trial call is let through: if it succeeds the breaker closes, and if it
+ * fails the breaker opens again.
+ */
+final class CircuitBreaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /** The default number of consecutive failures that open the breaker. */
+    static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    /** The default time the breaker stays open before a trial call. */
+    static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The states of the breaker.
+     */
+    enum State {
+        /** Calls are made. */
+        CLOSED,
+        /** Calls are skipped. */
+        OPEN,
+        /** A trial call is being made. */
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    /**
+     * @param name the name of the dependency, for logging
+     */
+    CircuitBreaker(final String name) {
+        this(name, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param name the name of the dependency, for logging
+     * @param failureThreshold the number of consecutive failures that open the breaker
+     * @param openMillis the time the breaker stays open before a trial call
+     * @param clock the clock used to time the open period
+     */
+    CircuitBreaker(final String name, final int failureThreshold, final long openMillis, final Clock clock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the dependency should be called; false if the caller should use its fallback
+     */
+    synchronized boolean allowRequest() {
+        // a trial call that never reported back is replaced after another open period
+        if (state != State.CLOSED && clock.millis() - openedAt >= openMillis) {
+            LOGGER.info("Trying {} again", name);
+            state = State.HALF_OPEN;
+            openedAt = clock.millis();
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Record a successful call, closing the breaker.
+     */
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("{} recovered; closing circuit", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Record a failed call, opening the breaker if the trial call failed or
+     * too many calls have failed in a row.
+     */
+    synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            LOGGER.warn("{} failed {} times in a row; opening circuit for {}ms", name, failures, openMillis);
+            state = State.OPEN;
+            openedAt = clock.millis();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s {name=%s, state=%s, failures=%d}", CircuitBreaker.class.getSimpleName(), name,
+                state, failures);
+    }
+}
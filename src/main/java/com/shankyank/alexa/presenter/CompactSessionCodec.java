@@ -0,0 +1,81 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.SpeechletException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Session codec that stores the selected presentation in a compact binary
+ * form, base64 encoded.
+ * <p>
+ * The first byte is the format version. The fields follow in a fixed order,
+ * so no property names are stored. The presentation's SSML is omitted when it
+ * is the default derived from its name. Values written as JSON by earlier
+ * releases are still decoded, so sessions survive a rolling deploy.
+ */
+final class CompactSessionCodec implements SessionCodec {
+    /** The version of the binary format written by this codec. */
+    static final byte FORMAT_VERSION = 1;
+
+    private static final int HAS_SPOKEN_NAME = 1;
+    private static final int HAS_SSML = 2;
+
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private final SessionCodec legacy = new JsonSessionCodec();
+
+    @Override
+    public String encode(final MatchedPresentation matched) throws SpeechletException {
+        Presentation presentation = matched.getPresentation();
+        boolean hasSsml = !SsmlTemplate.escape(presentation.getName()).equals(presentation.getSsml());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 2 * presentation.getName().length());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte((matched.getSpokenName() != null ? HAS_SPOKEN_NAME : 0) | (hasSsml ? HAS_SSML : 0));
+            out.writeDouble(matched.getConfidence());
+            if (matched.getSpokenName() != null) {
+                out.writeUTF(matched.getSpokenName());
+            }
+            out.writeUTF(presentation.getName());
+            out.writeUTF(presentation.getFilename());
+            if (hasSsml) {
+                out.writeUTF(presentation.getSsml());
+            }
+        } catch (IOException ioe) {
+            throw new SpeechletException("Serialization Error", ioe);
+        }
+        return ENCODER.encodeToString(bytes.toByteArray());
+    }
+
+    @Override
+    public MatchedPresentation decode(final Object value) throws SpeechletException {
+        if (value == null) {
+            return null;
+        }
+        String encoded = value.toString();
+        if (encoded.startsWith("{")) {
+            return legacy.decode(encoded);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(DECODER.decode(encoded)))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new SpeechletException(String.format("Unsupported session encoding version %d", version));
+            }
+            int flags = in.readUnsignedByte();
+            double confidence = in.readDouble();
+            String spokenName = (flags & HAS_SPOKEN_NAME) != 0 ? in.readUTF() : null;
+            String name = in.readUTF();
+            String filename = in.readUTF();
+            String ssml = (flags & HAS_SSML) != 0 ? in.readUTF() : null;
+            return new MatchedPresentation(spokenName, confidence, new Presentation(name, filename, ssml));
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new SpeechletException("Deserialization error.", ex);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.shankyank.alexa.presenter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+/**
+ * Binary form of a {@link PresentationCatalog} and its match index, compiled
+ * at build time by {@link CatalogCompiler} and bundled into the deployment
+ * zip. It is a binary serialization: loading reads the file, checks its
+ * header and checksum and deserializes the presentations, metaphone codes,
+ * BK-trees and word index onto the heap as they were built, instead of
+ * parsing a presentation list and building its index. Nothing is tokenized,
+ * encoded or hashed again; the catalog version is the one stored in the
+ * file, which the checksum covers.
+ * <p>
+ * The file starts with a header: the magic number {@code PCAT}, the format
+ * version and the CRC-32 of the rest of the file. The body holds the catalog
+ * version, the {@linkplain PresentationTable#write presentations} with
+ * their aliases and the {@linkplain PresentationIndex#write match index}. Strings are written as their UTF-8 length, or -1 for null,
+ * followed by their UTF-8 bytes.
+ */
+final class CompiledCatalog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledCatalog.class);
+
+    /** The file name of the compiled catalog in the deployment package. */
+    static final String FILE_NAME = "presentations.cat";
+    /** The system property naming a compiled catalog to load instead of the bundled one. */
+    static final String PATH_PROPERTY = "presenter.catalog";
+    /** The magic number that starts a compiled catalog: "PCAT". */
+    static final int MAGIC = 0x50434154;
+    /** The version of the format written by this class. */
+    static final int FORMAT_VERSION = 3;
+
+    private static final String TASK_ROOT_VARIABLE = "LAMBDA_TASK_ROOT";
+    private static final int HEADER_LENGTH = 12;
+
+    private CompiledCatalog() {
+    }
+
+    /**
+     * Find the compiled catalog to load: the file named by
+     * {@value #PATH_PROPERTY}, or the one bundled in the root of the
+     * deployment package.
+     * @return the path of the compiled catalog, or null if there is none
+     */
+    static Path locate() {
+        String path = System.getProperty(PATH_PROPERTY);
+        if (path == null) {
+            String taskRoot = System.getenv(TASK_ROOT_VARIABLE);
+            if (taskRoot == null) {
+                return null;
+            }
+            path = Paths.get(taskRoot, FILE_NAME).toString();
+        }
+        Path located = Paths.get(path);
+        return Files.isRegularFile(located) ? located : null;
+    }
+
+    /**
+     * Write the catalog and a newly built match index for it.
+     * @param catalog the catalog
+     * @param out the output
+     * @throws IOException if the catalog cannot be written
+     */
+    static void write(final PresentationCatalog catalog, final OutputStream out) throws IOException {
+        PresentationTable presentations = catalog.getPresentations();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        writeString(data, catalog.getVersion());
+        presentations.write(data);
+        PresentationIndex.build(presentations).write(data);
+        data.flush();
+
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeInt((int) crc.getValue());
+        header.write(bytes);
+        header.flush();
+    }
+
+    /**
+     * Read a compiled catalog file.
+     * @param path the compiled catalog
+     * @return the catalog, with its match index
+     * @throws IOException if the file cannot be read or is not a valid compiled catalog
+     */
+    static PresentationCatalog load(final Path path) throws IOException {
+        long start = System.nanoTime();
+        PresentationCatalog catalog = read(ByteBuffer.wrap(Files.readAllBytes(path)));
+        LOGGER.info("Loaded {} from {} in {} ms", catalog, path, (System.nanoTime() - start) / 1_000_000);
+        return catalog;
+    }
+
+    /**
+     * Read a compiled catalog.
+     * @param in the compiled catalog
+     * @return the catalog, with its match index
+     * @throws IOException if the content is not a valid compiled catalog
+     */
+    static PresentationCatalog read(final ByteBuffer in) throws IOException {
+        ByteBuffer buffer = in.duplicate();
+        if (buffer.remaining() < HEADER_LENGTH) {
+            throw new IOException("Compiled catalog is truncated");
+        }
+        int magic = buffer.getInt();
+        if (magic != MAGIC) {
+            throw new IOException(String.format("Not a compiled catalog: magic number %08x", magic));
+        }
+        int format = buffer.getInt();
+        if (format != FORMAT_VERSION) {
+            throw new IOException(String.format("Unsupported compiled catalog format %d, expected %d", format,
+                    FORMAT_VERSION));
+        }
+        int checksum = buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Compiled catalog checksum does not match its content");
+        }
+        try {
+            String version = readString(buffer);
+            PresentationTable table = PresentationTable.read(buffer);
+            PresentationIndex index = PresentationIndex.read(buffer, table);
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException(buffer.remaining() + " bytes follow the match index");
+            }
+            return table.isEmpty() ? PresentationCatalog.EMPTY : PresentationCatalog.of(table, version, index);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Invalid compiled catalog", ex);
+        }
+    }
+
+    /**
+     * Write a string as its UTF-8 length, or -1 for null, and its UTF-8 bytes.
+     * @param out the output
+     * @param value the string, may be null
+     * @throws IOException if the string cannot be written
+     */
+    static void writeString(final DataOutput out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString}.
+     * @param in the input, positioned at the string
+     * @return the string, may be null
+     * @throws IllegalArgumentException if the length is invalid
+     */
+    static String readString(final ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package com.shankyank.alexa.presenter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time by which the request being handled on the current thread must be
+ * answered. Alexa gives up on a skill that does not answer in time, so calls
+ * to S3 and SNS wait no longer than the time left.
+ * <p>
+ * Like {@link RequestMetrics}, the deadline of the current request is
+ * available from {@link #current()} rather than passed to every component;
+ * outside a request {@code current()} returns a deadline that never expires.
+ */
+final class Deadline {
+    /** The default time allowed for a request; Alexa waits at most eight seconds for a response. */
+    static final long DEFAULT_BUDGET_MILLIS = 6000L;
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long expiresAtNanos;
+
+    private Deadline(final long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Start the deadline for a request handled on the current thread,
+     * replacing any deadline left over from an earlier request.
+     * @param budgetMillis the time allowed for the request
+     * @return the deadline
+     */
+    static Deadline begin(final long budgetMillis) {
+        Deadline deadline = new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * @return the deadline of the request handled on the current thread, or a
+     * deadline that never expires if no request is being handled
+     */
+    static Deadline current() {
+        Deadline deadline = CURRENT.get();
+        return deadline != null ? deadline : NONE;
+    }
+
+    /**
+     * Finish the request handled on the current thread.
+     */
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return the time left before the deadline, never negative
+     */
+    long remainingMillis() {
+        if (this == NONE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return true if no time is left
+     */
+    boolean isExpired() {
+        return this != NONE && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * @param millis a timeout
+     * @return the timeout, or the time left before the deadline if that is shorter
+     */
+    long clamp(final long millis) {
+        return Math.min(millis, remainingMillis());
+    }
+
+    @Override
+    public String toString() {
+        return this == NONE ? "Deadline{none}" : String.format("Deadline{remainingMillis=%d}", remainingMillis());
+    }
+}
@@ -0,0 +1,106 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Presentation starter that pushes the matched presentation to a connected
+ * presenter agent over its {@link AgentHub} connection and waits for the
+ * agent to acknowledge the start.
+ * <p>
+ * When no agent is connected, or the start message cannot be written, the
+ * presentation is started by the fallback starter instead. A start the agent
+ * does not acknowledge within the timeout is reported as failed rather than
+ * sent to the fallback, because the agent may still start it. The timeout
+ * is cut short if the request's {@link Deadline} comes first.
+ */
+final class DirectPushPresentationStarter implements PresentationStarter {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectPushPresentationStarter.class);
+
+    /** The default time to wait for an agent to acknowledge a start. */
+    static final long DEFAULT_ACK_TIMEOUT_MILLIS = 1500L;
+
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "agent-ack-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final transient AgentHub hub;
+    private final PresentationStarter fallback;
+    private final long ackTimeoutMillis;
+
+    /**
+     * @param hub the hub agents connect to
+     * @param fallback the starter used when no agent is connected
+     * @param ackTimeoutMillis the time to wait for an agent to acknowledge a start
+     */
+    DirectPushPresentationStarter(final AgentHub hub, final PresentationStarter fallback,
+                                  final long ackTimeoutMillis) {
+        this.hub = hub;
+        this.fallback = fallback;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+    }
+
+    @Override
+    public boolean startPresentation(final Session session, final MatchedPresentation presentation) {
+        try {
+            return startPresentationAsync(session, presentation).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ee) {
+            LOGGER.error("[{}] Unable to start presentation {}", session.getSessionId(), presentation, ee.getCause());
+            return false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> startPresentationAsync(final Session session,
+                                                             final MatchedPresentation presentation) {
+        AgentHub.AgentConnection agent = hub != null ? hub.getAgent() : null;
+        if (agent == null) {
+            LOGGER.debug("[{}] No presenter agent connected; starting with {}", session.getSessionId(), fallback);
+            RequestMetrics.current().increment(RequestMetrics.AGENT_FALLBACK);
+            return fallback.startPresentationAsync(session, presentation);
+        }
+        CompletableFuture<Boolean> acknowledged;
+        try {
+            acknowledged = agent.push(presentation);
+        } catch (IOException ioe) {
+            LOGGER.warn("[{}] Unable to push start to {}; starting with {}", session.getSessionId(), agent,
+                    fallback, ioe);
+            RequestMetrics.current().increment(RequestMetrics.AGENT_FALLBACK);
+            return fallback.startPresentationAsync(session, presentation);
+        }
+        RequestMetrics.current().increment(RequestMetrics.AGENT_PUSH);
+        long timeoutMillis = Deadline.current().clamp(ackTimeoutMillis);
+        TIMEOUTS.schedule(() -> {
+            if (acknowledged.complete(false)) {
+                LOGGER.warn("[{}] {} did not acknowledge {} within {}ms.", session.getSessionId(), agent,
+                        presentation, timeoutMillis);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return acknowledged;
+    }
+
+    @Override
+    public void prime() {
+        fallback.prime();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s {agent=%s, fallback=%s}", DirectPushPresentationStarter.class.getSimpleName(),
+                hub != null ? hub.getAgent() : null, fallback);
+    }
+}
@@ -0,0 +1,54 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.SpeechletException;
+
+import java.util.List;
+
+/**
+ * Session initializer whose presentation starters push to a connected
+ * presenter agent, falling back to the wrapped initializer's starter when no
+ * agent is connected.
+ */
+final class DirectPushSessionInitializer implements SessionInitializer {
+    private final SessionInitializer delegate;
+    private final AgentHub hub;
+    private final long ackTimeoutMillis;
+
+    /**
+     * @param delegate the initializer providing the catalog and the fallback starter
+     * @param hub the hub agents connect to
+     * @param ackTimeoutMillis the time to wait for an agent to acknowledge a start
+     */
+    DirectPushSessionInitializer(final SessionInitializer delegate, final AgentHub hub,
+                                 final long ackTimeoutMillis) {
+        this.delegate = delegate;
+        this.hub = hub;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+    }
+
+    @Override
+    public List<Presentation> getAvailablePresentations() throws SpeechletException {
+        return delegate.getAvailablePresentations();
+    }
+
+    @Override
+    public List<Presentation> getAvailablePresentations(final String userId) throws SpeechletException {
+        return delegate.getAvailablePresentations(userId);
+    }
+
+    @Override
+    public PresentationStarter getPresentationStarter() throws SpeechletException {
+        PresentationStarter fallback = delegate.getPresentationStarter();
+        return fallback != null ? new DirectPushPresentationStarter(hub, fallback, ackTimeoutMillis) : null;
+    }
+
+    @Override
+    public void refresh() {
+        delegate.refresh();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
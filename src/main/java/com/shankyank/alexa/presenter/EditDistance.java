@@ -0,0 +1,28 @@
+package com.shankyank.alexa.presenter;
+
+/**
+ * Computes the Levenshtein edit distance between two strings, giving up once
+ * the distance exceeds a caller-supplied bound. Implementations may hold
+ * scratch state and are not required to be thread-safe.
+ */
+interface EditDistance {
+    /**
+     * Compute the edit distance between two strings.
+     * @param left the first string
+     * @param right the second string
+     * @param maxDistance the largest distance the caller is interested in
+     * @return the edit distance if it is no greater than maxDistance, otherwise
+     *         any value greater than maxDistance
+     */
+    int distance(final CharSequence left, final CharSequence right, final int maxDistance);
+
+    /**
+     * Compute the exact edit distance between two strings.
+     * @param left the first string
+     * @param right the second string
+     * @return the edit distance
+     */
+    default int distance(final CharSequence left, final CharSequence right) {
+        return distance(left, right, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,141 @@
+package com.shankyank.alexa.presenter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Makes an idempotent call with a hedge: if the first attempt has not
+ * finished once the usual latency of the call has passed, a second attempt
+ * is started and whichever succeeds first is used. The attempts run on a
+ * shared pool while the calling thread waits, at most until the request's
+ * {@link Deadline}. The result of an attempt that is not used, because the
+ * other attempt won or the caller stopped waiting, is handed to a discard
+ * callback so resources such as open connections are released.
+ * <p>
+ * The hedge delay is the 95th percentile of the call's past latencies, so
+ * about one call in twenty is hedged; until enough calls have been timed a
+ * fixed delay is used. Hedge only the call whose latency varies, such as a
+ * request to a remote service, not the work done with its result, which a
+ * hedge would only repeat.
+ */
+final class HedgedCall {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgedCall.class);
+
+    /** The hedge delay used until enough calls have been timed. */
+    static final long DEFAULT_HEDGE_DELAY_MILLIS = 500L;
+    /** The shortest hedge delay, so fast calls are not all hedged. */
+    static final long MIN_HEDGE_DELAY_MILLIS = 20L;
+    /** The number of timed calls needed before the hedge delay follows their latency. */
+    static final int MIN_SAMPLES = 20;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService ATTEMPTS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "hedged-call-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final MetricsRegistry.Timer latency = new MetricsRegistry.Timer();
+
+    /**
+     * @param name the name of the call, for logging
+     */
+    HedgedCall(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Make the call, hedging it if it is slow.
+     * @param call the call, which must be safe to make twice
+     * @param discard releases the result of an attempt that is not used
+     * @return the result of the first attempt to succeed
+     * @throws TimeoutException if no attempt succeeded before the deadline
+     * @throws Exception the failure of the last attempt, if every attempt failed
+     */
+    <T> T call(final Callable<T> call, final Consumer<? super T> discard) throws Exception {
+        Deadline deadline = Deadline.current();
+        if (deadline.isExpired()) {
+            RequestMetrics.current().increment(RequestMetrics.DEADLINE_EXCEEDED);
+            throw new TimeoutException(String.format("No time left to call %s", name));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        attempt(call, discard, result, pending);
+        try {
+            try {
+                return result.get(deadline.clamp(getHedgeDelayMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException te) {
+                if (pending.getAndIncrement() > 0) {
+                    LOGGER.debug("{} is slow; hedging", name);
+                    RequestMetrics.current().increment(RequestMetrics.HEDGED_CALL);
+                    attempt(call, discard, result, pending);
+                } else {
+                    // the first attempt failed at the same moment; take its failure
+                    pending.decrementAndGet();
+                }
+            }
+            return result.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException te) {
+            RequestMetrics.current().increment(RequestMetrics.DEADLINE_EXCEEDED);
+            throw new TimeoutException(String.format("%s did not finish before the request deadline", name));
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new CompletionException(cause);
+        } finally {
+            // an attempt that finishes after the caller stops waiting discards its result
+            result.cancel(false);
+        }
+    }
+
+    /**
+     * @return the time to wait before hedging
+     */
+    long getHedgeDelayMillis() {
+        if (latency.getCount() < MIN_SAMPLES) {
+            return DEFAULT_HEDGE_DELAY_MILLIS;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, TimeUnit.NANOSECONDS.toMillis(latency.getPercentileNanos(95)));
+    }
+
+    /**
+     * Run an attempt on the pool. A successful attempt completes the result,
+     * or discards its value if the result is already complete; a failed one
+     * only completes the result when no other attempt is still running.
+     */
+    private <T> void attempt(final Callable<T> call, final Consumer<? super T> discard,
+                             final CompletableFuture<T> result, final AtomicInteger pending) {
+        ATTEMPTS.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                T value = call.call();
+                latency.record(System.nanoTime() - start);
+                if (!result.complete(value)) {
+                    discard.accept(value);
+                }
+            } catch (Exception ex) {
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(ex);
+                } else {
+                    LOGGER.debug("Attempt to call {} failed; waiting for the other attempt", name, ex);
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s {name=%s, latency=%s}", HedgedCall.class.getSimpleName(), name, latency);
+    }
+}
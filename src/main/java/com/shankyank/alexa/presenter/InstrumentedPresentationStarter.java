@@ -0,0 +1,61 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.Session;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Presentation starter that records how long the wrapped starter takes to
+ * start a presentation, and whether it failed, in the current
+ * {@link RequestMetrics}.
+ */
+final class InstrumentedPresentationStarter implements PresentationStarter {
+    private static final long serialVersionUID = 1L;
+
+    private final PresentationStarter delegate;
+
+    InstrumentedPresentationStarter(final PresentationStarter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean startPresentation(final Session session, final MatchedPresentation presentation) {
+        RequestMetrics metrics = RequestMetrics.current();
+        long start = System.nanoTime();
+        boolean started = false;
+        try {
+            started = delegate.startPresentation(session, presentation);
+            return started;
+        } finally {
+            metrics.recordTime(RequestMetrics.PUBLISH_TIME, System.nanoTime() - start);
+            if (!started) {
+                metrics.increment(RequestMetrics.PUBLISH_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * Records only the time taken to hand the presentation to the wrapped
+     * starter; the request has usually ended by the time the start completes.
+     */
+    @Override
+    public CompletableFuture<Boolean> startPresentationAsync(final Session session,
+                                                             final MatchedPresentation presentation) {
+        long start = System.nanoTime();
+        try {
+            return delegate.startPresentationAsync(session, presentation);
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.PUBLISH_TIME, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void prime() {
+        delegate.prime();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.SpeechletException;
+
+import java.util.List;
+
+/**
+ * Session initializer that records how long the wrapped initializer takes to
+ * load the catalog and the presentation starter in the current
+ * {@link RequestMetrics}. Presentation starters it returns are instrumented
+ * as well.
+ */
+final class InstrumentedSessionInitializer implements SessionInitializer {
+    private final SessionInitializer delegate;
+
+    private InstrumentedSessionInitializer(final SessionInitializer delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param initializer the session initializer
+     * @return the instrumented initializer
+     */
+    static SessionInitializer wrap(final SessionInitializer initializer) {
+        return initializer instanceof InstrumentedSessionInitializer ? initializer :
+                new InstrumentedSessionInitializer(initializer);
+    }
+
+    @Override
+    public List<Presentation> getAvailablePresentations() throws SpeechletException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAvailablePresentations();
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.CATALOG_LOAD_TIME, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Presentation> getAvailablePresentations(final String userId) throws SpeechletException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAvailablePresentations(userId);
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.CATALOG_LOAD_TIME, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public PresentationStarter getPresentationStarter() throws SpeechletException {
+        long start = System.nanoTime();
+        try {
+            PresentationStarter starter = delegate.getPresentationStarter();
+            return starter != null ? new InstrumentedPresentationStarter(starter) : null;
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.STARTER_LOAD_TIME, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void refresh() {
+        delegate.refresh();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
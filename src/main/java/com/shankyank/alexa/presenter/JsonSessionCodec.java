@@ -0,0 +1,38 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.SpeechletException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+
+/**
+ * Session codec that stores the selected presentation as JSON, using a reader
+ * and writer bound to {@link MatchedPresentation} once rather than resolving
+ * the type on every call.
+ */
+final class JsonSessionCodec implements SessionCodec {
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final ObjectWriter WRITER = JSON.writerFor(MatchedPresentation.class);
+    private static final ObjectReader READER = JSON.readerFor(MatchedPresentation.class);
+
+    @Override
+    public String encode(final MatchedPresentation presentation) throws SpeechletException {
+        try {
+            return WRITER.writeValueAsString(presentation);
+        } catch (JsonProcessingException jpe) {
+            throw new SpeechletException("Serialization Error", jpe);
+        }
+    }
+
+    @Override
+    public MatchedPresentation decode(final Object value) throws SpeechletException {
+        try {
+            return value != null ? READER.readValue(value.toString()) : null;
+        } catch (IOException ioe) {
+            throw new SpeechletException("Deserialization error.", ioe);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Custom Lambda runtime for the Presenter application, used as the
+ * {@code bootstrap} of the native executable built by the
+ * {@code nativeImage} task.
+ * <p>
+ * The runtime creates a {@link PresenterSpeechletRequestStreamHandler} and
+ * then fetches events from the
+ * <a href="https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html">Lambda Runtime API</a>
+ * one at a time, posting each response or error back. It exits when the
+ * Runtime API cannot be reached, and Lambda starts a new container.
+ */
+public final class LambdaRuntime {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LambdaRuntime.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /** The environment variable holding the host and port of the Runtime API. */
+    static final String RUNTIME_API_VARIABLE = "AWS_LAMBDA_RUNTIME_API";
+    static final String REQUEST_ID_HEADER = "Lambda-Runtime-Aws-Request-Id";
+    static final String DEADLINE_HEADER = "Lambda-Runtime-Deadline-Ms";
+    private static final String ERROR_TYPE_HEADER = "Lambda-Runtime-Function-Error-Type";
+    private static final String API_PATH = "/2018-06-01/runtime";
+
+    private final String runtimeApi;
+    private final RequestStreamHandler handler;
+
+    /**
+     * @param runtimeApi the host and port of the Runtime API
+     * @param handler the handler for events
+     */
+    LambdaRuntime(final String runtimeApi, final RequestStreamHandler handler) {
+        this.runtimeApi = runtimeApi;
+        this.handler = handler;
+    }
+
+    public static void main(final String[] args) {
+        String runtimeApi = System.getenv(RUNTIME_API_VARIABLE);
+        if (runtimeApi == null) {
+            LOGGER.error("{} is not set; the runtime must be started by Lambda", RUNTIME_API_VARIABLE);
+            System.exit(1);
+        }
+        RequestStreamHandler handler;
+        try {
+            handler = new PresenterSpeechletRequestStreamHandler();
+        } catch (RuntimeException re) {
+            LOGGER.error("Unable to create handler", re);
+            try {
+                post(runtimeApi, "/init/error", error(re));
+            } catch (IOException ioe) {
+                LOGGER.error("Unable to report initialization error", ioe);
+            }
+            System.exit(1);
+            return;
+        }
+        try {
+            new LambdaRuntime(runtimeApi, handler).run();
+        } catch (IOException ioe) {
+            LOGGER.error("Lost connection to the Runtime API at {}", runtimeApi, ioe);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Handle events until the Runtime API cannot be reached.
+     * @throws IOException if the Runtime API cannot be reached
+     */
+    void run() throws IOException {
+        while (!Thread.currentThread().isInterrupted()) {
+            handleNext();
+        }
+    }
+
+    /**
+     * Fetch the next event, waiting until there is one, and post the response.
+     * @throws IOException if the Runtime API cannot be reached
+     */
+    void handleNext() throws IOException {
+        HttpURLConnection next = open(runtimeApi, "/invocation/next");
+        String requestId;
+        long deadlineMillis;
+        byte[] event;
+        try {
+            requestId = next.getHeaderField(REQUEST_ID_HEADER);
+            deadlineMillis = parseDeadline(next.getHeaderField(DEADLINE_HEADER));
+            try (InputStream is = next.getInputStream()) {
+                event = Streams.readFully(is);
+            }
+        } finally {
+            next.disconnect();
+        }
+        if (requestId == null) {
+            throw new IOException("Runtime API returned an event without a request ID");
+        }
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try {
+            handler.handleRequest(new ByteArrayInputStream(event), response,
+                    new InvocationContext(requestId, deadlineMillis));
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.error("[{}] Unable to handle event", requestId, ex);
+            post(runtimeApi, "/invocation/" + requestId + "/error", error(ex));
+            return;
+        }
+        post(runtimeApi, "/invocation/" + requestId + "/response", response.toByteArray());
+    }
+
+    private static long parseDeadline(final String header) {
+        try {
+            return header != null ? Long.parseLong(header) : Long.MAX_VALUE;
+        } catch (NumberFormatException nfe) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static byte[] error(final Exception ex) throws IOException {
+        ObjectNode error = JSON.createObjectNode();
+        error.put("errorMessage", String.valueOf(ex.getMessage()));
+        error.put("errorType", ex.getClass().getName());
+        return JSON.writeValueAsBytes(error);
+    }
+
+    private static HttpURLConnection open(final String runtimeApi, final String path) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL("http://" + runtimeApi + API_PATH + path).openConnection();
+        // the next event may be a long time coming
+        connection.setReadTimeout(0);
+        return connection;
+    }
+
+    private static void post(final String runtimeApi, final String path, final byte[] body) throws IOException {
+        HttpURLConnection connection = open(runtimeApi, path);
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            if (path.endsWith("/error")) {
+                connection.setRequestProperty(ERROR_TYPE_HEADER, "Unhandled");
+            }
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(body);
+            }
+            int status = connection.getResponseCode();
+            if (status >= 300) {
+                LOGGER.warn("Runtime API answered {} with {}", path, status);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+
+    /**
+     * The context of an event, from the Runtime API headers and the function's environment.
+     */
+    private static final class InvocationContext implements Context {
+        private static final LambdaLogger LOGGER = System.out::println;
+
+        private final String requestId;
+        private final long deadlineMillis;
+
+        private InvocationContext(final String requestId, final long deadlineMillis) {
+            this.requestId = requestId;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        public String getAwsRequestId() {
+            return requestId;
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return System.getenv("AWS_LAMBDA_LOG_GROUP_NAME");
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return System.getenv("AWS_LAMBDA_LOG_STREAM_NAME");
+        }
+
+        @Override
+        public String getFunctionName() {
+            return System.getenv("AWS_LAMBDA_FUNCTION_NAME");
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return (int) Math.max(0L, Math.min(Integer.MAX_VALUE, deadlineMillis - System.currentTimeMillis()));
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            String memory = System.getenv("AWS_LAMBDA_FUNCTION_MEMORY_SIZE");
+            return memory != null ? Integer.parseInt(memory) : 0;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return LOGGER;
+        }
+    }
+}
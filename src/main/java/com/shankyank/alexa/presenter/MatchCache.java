@@ -0,0 +1,205 @@
+package com.shankyank.alexa.presenter;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * In-container cache of match results keyed by catalog version and the
+ * normalized spoken name. Speech recognition returns the same few strings
+ * for a catalog over and over, so a repeated utterance is answered without
+ * scoring the catalog. A changed catalog has a new version, so results for
+ * an old catalog are never served; they age out of the cache instead.
+ * <p>
+ * The cache is split into segments, each a small LRU map with its own lock,
+ * so concurrent requests rarely wait on each other. Entries also expire a
+ * fixed time after they were scored.
+ */
+final class MatchCache {
+    /** The default number of match results to keep. */
+    static final int DEFAULT_CAPACITY = 4096;
+    /** The default time a match result is kept. */
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final int SEGMENTS = 16;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlMillis;
+    private final Clock clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    MatchCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param capacity the maximum number of match results to keep, spread over the segments
+     * @param ttlMillis the time a match result is kept
+     * @param clock the clock used to expire match results
+     */
+    MatchCache(final int capacity, final long ttlMillis, final Clock clock) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS));
+        }
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Match a spoken name against a catalog, scoring it only if the same
+     * normalized name has not been matched against this catalog version.
+     * @param catalog the catalog
+     * @param spokenName the spoken presentation name
+     * @param limit the maximum number of matches to return
+     * @return the best matches that reach the confirmation threshold
+     * @see PresentationIndex#match(String, int)
+     */
+    List<MatchedPresentation> match(final PresentationCatalog catalog, final String spokenName, final int limit) {
+        Key key = new Key(catalog.getVersion(), normalize(spokenName), limit);
+        Segment segment = segments[(key.hashCode() ^ (key.hashCode() >>> 16)) & (SEGMENTS - 1)];
+        long now = clock.millis();
+        // a traced name is always scored, so its trace explains the candidates
+        List<MatchedPresentation> matches = MatchTrace.current().isSampled() ? null : segment.get(key, now);
+        if (matches != null) {
+            hits.increment();
+            RequestMetrics.current().increment(RequestMetrics.MATCH_CACHE_HIT);
+        } else {
+            misses.increment();
+            RequestMetrics.current().increment(RequestMetrics.MATCH_CACHE_MISS);
+            matches = Collections.unmodifiableList(catalog.getIndex().match(key.spokenName, limit));
+            segment.put(key, matches, now + ttlMillis);
+        }
+        return withSpokenName(matches, spokenName);
+    }
+
+    /**
+     * @return the number of matches answered from the cache
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of matches that were scored
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of matches answered from the cache, or 0 if nothing has been matched
+     */
+    double getHitRate() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total > 0 ? (double) hitCount / total : 0.0;
+    }
+
+    /**
+     * Names that differ only in surrounding or repeated whitespace share a
+     * result. Case is kept because scoring is case sensitive.
+     * @param spokenName the spoken presentation name
+     * @return the name used as the cache key and scored on a miss
+     */
+    static String normalize(final String spokenName) {
+        return WHITESPACE.matcher(spokenName.trim()).replaceAll(" ");
+    }
+
+    /**
+     * Cached matches hold the normalized name; report the name as it was spoken.
+     */
+    private static List<MatchedPresentation> withSpokenName(final List<MatchedPresentation> matches,
+                                                            final String spokenName) {
+        if (matches.isEmpty() || matches.get(0).getSpokenName().equals(spokenName)) {
+            return matches;
+        }
+        List<MatchedPresentation> renamed = new ArrayList<>(matches.size());
+        for (MatchedPresentation match : matches) {
+            renamed.add(new MatchedPresentation(spokenName, match.getConfidence(), match.getPresentation()));
+        }
+        return renamed;
+    }
+
+    /**
+     * The catalog version, normalized spoken name and match limit.
+     */
+    private static final class Key {
+        private final String version;
+        private final String spokenName;
+        private final int limit;
+        private final int hash;
+
+        private Key(final String version, final String spokenName, final int limit) {
+            this.version = version;
+            this.spokenName = spokenName;
+            this.limit = limit;
+            this.hash = 31 * (31 * version.hashCode() + spokenName.hashCode()) + limit;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return limit == that.limit && spokenName.equals(that.spokenName) && version.equals(that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A match result with the time it expires.
+     */
+    private static final class CachedMatches {
+        private final List<MatchedPresentation> matches;
+        private final long expiresAt;
+
+        private CachedMatches(final List<MatchedPresentation> matches, final long expiresAt) {
+            this.matches = matches;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * One LRU segment of the cache.
+     */
+    private static final class Segment {
+        private final Map<Key, CachedMatches> entries;
+
+        private Segment(final int capacity) {
+            this.entries = new LinkedHashMap<Key, CachedMatches>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Key, CachedMatches> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized List<MatchedPresentation> get(final Key key, final long now) {
+            CachedMatches entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now >= entry.expiresAt) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.matches;
+        }
+
+        private synchronized void put(final Key key, final List<MatchedPresentation> matches, final long expiresAt) {
+            entries.put(key, new CachedMatches(matches, expiresAt));
+        }
+    }
+}
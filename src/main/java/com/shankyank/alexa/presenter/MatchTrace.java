@@ -0,0 +1,236 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact record of how a spoken name was matched: the best candidates with
+ * the confidence of each scorer, the matches offered to the user, the branch
+ * the speechlet took and the time spent. It replaces debug logging of every
+ * scored candidate, which floods the log and slows every request.
+ * <p>
+ * Like {@link RequestMetrics}, the trace of the spoken name being matched on
+ * the current thread is available from {@link #current()}. Only a sample of
+ * spoken names are traced; for the rest {@code current()} returns a trace that
+ * discards everything, so the index only explains its candidates when
+ * {@link #isSampled()}. Finished traces are added to a
+ * {@link MatchTraceBuffer}.
+ */
+final class MatchTrace {
+    /** The number of candidates explained, beyond those offered to the user. */
+    static final int CANDIDATES = 5;
+
+    private static final ThreadLocal<MatchTrace> CURRENT = new ThreadLocal<>();
+    private static final MatchTrace DISCARD = new MatchTrace(null, null, null);
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final MatchTraceBuffer buffer;
+    private final String sessionId;
+    private final String spokenName;
+    private final long timestamp = System.currentTimeMillis();
+    private final Map<String, Candidate> candidates = new LinkedHashMap<>();
+    private List<MatchedPresentation> matches = Collections.emptyList();
+    private int offered;
+    private long scored;
+    private long scoreNanos;
+    private long matchNanos;
+    private String branch;
+
+    private MatchTrace(final MatchTraceBuffer buffer, final String sessionId, final String spokenName) {
+        this.buffer = buffer;
+        this.sessionId = sessionId;
+        this.spokenName = spokenName;
+    }
+
+    /**
+     * Start tracing a spoken name matched on the current thread if it is
+     * sampled, replacing any trace left over from an earlier request.
+     * @param buffer the buffer the trace is added to when the request ends
+     * @param sessionId the session the name was spoken in
+     * @param spokenName the spoken presentation name
+     * @return the trace, which discards everything if the name is not sampled
+     */
+    static MatchTrace begin(final MatchTraceBuffer buffer, final String sessionId, final String spokenName) {
+        if (!buffer.sample()) {
+            CURRENT.remove();
+            return DISCARD;
+        }
+        MatchTrace trace = new MatchTrace(buffer, sessionId, spokenName);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * @return the trace of the spoken name matched on the current thread, or a
+     * trace that discards everything if it is not sampled
+     */
+    static MatchTrace current() {
+        MatchTrace trace = CURRENT.get();
+        return trace != null ? trace : DISCARD;
+    }
+
+    /**
+     * Finish the trace of the current thread, if any, and add it to its buffer.
+     */
+    static void end() {
+        MatchTrace trace = CURRENT.get();
+        if (trace != null) {
+            CURRENT.remove();
+            trace.buffer.add(trace.toJson());
+        }
+    }
+
+    /**
+     * @return true if the spoken name is traced; false if the trace discards everything
+     */
+    boolean isSampled() {
+        return buffer != null;
+    }
+
+    /**
+     * Record the scoring of an index's candidates.
+     * @param count the number of candidates scored
+     * @param nanos the time spent finding and scoring the candidates
+     * @param best the best candidates, explained
+     */
+    void recordScoring(final int count, final long nanos, final List<Candidate> best) {
+        if (isSampled()) {
+            scored += count;
+            scoreNanos += nanos;
+            for (Candidate candidate : best) {
+                candidates.put(candidate.name, candidate);
+            }
+        }
+    }
+
+    /**
+     * Record the matches offered to the user.
+     * @param offeredCount the number of presentations offered in an earlier prompt
+     * @param offeredMatches the best matches
+     * @param nanos the time spent matching
+     */
+    void recordMatches(final int offeredCount, final List<MatchedPresentation> offeredMatches, final long nanos) {
+        if (isSampled()) {
+            offered = offeredCount;
+            matches = offeredMatches;
+            matchNanos = nanos;
+        }
+    }
+
+    /**
+     * @param branch what the speechlet did with the matches
+     */
+    void setBranch(final String branch) {
+        if (isSampled()) {
+            this.branch = branch;
+        }
+    }
+
+    List<Candidate> getCandidates() {
+        return new ArrayList<>(candidates.values());
+    }
+
+    String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return the trace as a single-line JSON object
+     */
+    String toJson() {
+        ObjectNode record = JSON.createObjectNode();
+        record.put("timestamp", timestamp);
+        record.put("sessionId", sessionId);
+        record.put("spoken", spokenName);
+        record.put("branch", branch);
+        record.put("offered", offered);
+        record.put("scored", scored);
+        record.put("scoreMillis", scoreNanos / NANOS_PER_MILLI);
+        record.put("matchMillis", matchNanos / NANOS_PER_MILLI);
+        ArrayNode matched = record.putArray("matches");
+        for (MatchedPresentation match : matches) {
+            matched.addObject()
+                    .put("name", match.getPresentation().getName())
+                    .put("confidence", match.getConfidence());
+        }
+        ArrayNode explained = record.putArray("candidates");
+        List<Candidate> best = getCandidates();
+        best.sort(Comparator.comparingDouble((Candidate candidate) -> candidate.confidence).reversed());
+        for (Candidate candidate : best) {
+            explained.addObject()
+                    .put("name", candidate.name)
+                    .put("levenshtein", candidate.levenshtein)
+                    .put("metaphone", candidate.metaphone)
+                    .put("tokens", candidate.tokens)
+                    .put("confidence", candidate.confidence);
+        }
+        try {
+            return JSON.writeValueAsString(record);
+        } catch (JsonProcessingException jpe) {
+            throw new IllegalStateException("Unable to serialize match trace", jpe);
+        }
+    }
+
+    /**
+     * The confidence of each scorer for a candidate presentation.
+     */
+    static final class Candidate {
+        private final String name;
+        private final double levenshtein;
+        private final double metaphone;
+        private final double tokens;
+        private final double confidence;
+
+        /**
+         * @param name the presentation name
+         * @param levenshtein the confidence from the edit distance of the names
+         * @param metaphone the confidence from the edit distance of the metaphone codes
+         * @param tokens the confidence from the words of the names
+         * @param confidence the combined confidence
+         */
+        Candidate(final String name, final double levenshtein, final double metaphone, final double tokens,
+                  final double confidence) {
+            this.name = name;
+            this.levenshtein = levenshtein;
+            this.metaphone = metaphone;
+            this.tokens = tokens;
+            this.confidence = confidence;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        double getLevenshtein() {
+            return levenshtein;
+        }
+
+        double getMetaphone() {
+            return metaphone;
+        }
+
+        double getTokens() {
+            return tokens;
+        }
+
+        double getConfidence() {
+            return confidence;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s {name=%s, levenshtein=%s, metaphone=%s, tokens=%s, confidence=%s}",
+                    Candidate.class.getSimpleName(), name, levenshtein, metaphone, tokens, confidence);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.shankyank.alexa.presenter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded ring of the most recent {@link MatchTrace} records, shared by the
+ * requests of a container. Only a sample of the spoken names are traced.
+ * Records are written to the {@value #TRACE_LOGGER_NAME} logger in batches,
+ * one line per batch, once enough records are waiting or the oldest has waited
+ * for the flush interval. The ring keeps the last records after they are
+ * written, so they can also be read in place.
+ */
+final class MatchTraceBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MatchTraceBuffer.class);
+
+    /** The logger batches of trace records are written to. */
+    static final String TRACE_LOGGER_NAME = "com.shankyank.alexa.presenter.trace";
+    /** The default fraction of spoken names that are traced. */
+    static final double DEFAULT_SAMPLE_RATE = 0.01;
+    /** The default number of records kept. */
+    static final int DEFAULT_CAPACITY = 256;
+    /** The default number of records written together. */
+    static final int DEFAULT_BATCH_SIZE = 32;
+    /** The default time a record waits for a full batch before it is written anyway. */
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Logger TRACES = LoggerFactory.getLogger(TRACE_LOGGER_NAME);
+
+    private final double sampleRate;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Clock clock;
+    private final String[] records;
+    /** The number of records ever added. */
+    private long added;
+    /** The number of records ever written. */
+    private long written;
+    private long oldestPendingAt;
+
+    /**
+     * @param sampleRate the fraction of spoken names that are traced
+     */
+    MatchTraceBuffer(final double sampleRate) {
+        this(sampleRate, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param sampleRate the fraction of spoken names that are traced
+     * @param capacity the number of records kept
+     * @param batchSize the number of records written together, at most the capacity
+     * @param flushIntervalMillis the time a record waits for a full batch before it is written anyway
+     * @param clock the clock used to time the flush interval
+     */
+    MatchTraceBuffer(final double sampleRate, final int capacity, final int batchSize,
+                     final long flushIntervalMillis, final Clock clock) {
+        this.sampleRate = sampleRate;
+        this.records = new String[capacity];
+        this.batchSize = Math.min(batchSize, capacity);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the spoken name being matched should be traced
+     */
+    boolean sample() {
+        return sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Add a record, writing the waiting records if they fill a batch.
+     * @param record the trace record, as a JSON object
+     */
+    void add(final String record) {
+        List<String> batch = null;
+        synchronized (this) {
+            if (added == written) {
+                oldestPendingAt = clock.millis();
+            }
+            records[(int) (added++ % records.length)] = record;
+            if (added - written >= batchSize) {
+                batch = takePending();
+            }
+        }
+        write(batch);
+    }
+
+    /**
+     * Write the waiting records if the oldest has waited for the flush interval.
+     */
+    void flushIfDue() {
+        List<String> batch = null;
+        synchronized (this) {
+            if (added > written && clock.millis() - oldestPendingAt >= flushIntervalMillis) {
+                batch = takePending();
+            }
+        }
+        write(batch);
+    }
+
+    /**
+     * Write the waiting records.
+     */
+    void flush() {
+        List<String> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        write(batch);
+    }
+
+    /**
+     * @return the records kept, oldest first
+     */
+    synchronized List<String> getRecent() {
+        List<String> recent = new ArrayList<>();
+        for (long i = Math.max(0L, added - records.length); i < added; i++) {
+            recent.add(records[(int) (i % records.length)]);
+        }
+        return recent;
+    }
+
+    /**
+     * @return the number of records added but not yet written
+     */
+    synchronized int getPendingCount() {
+        return (int) (added - written);
+    }
+
+    private List<String> takePending() {
+        List<String> batch = new ArrayList<>((int) (added - written));
+        for (long i = written; i < added; i++) {
+            batch.add(records[(int) (i % records.length)]);
+        }
+        written = added;
+        return batch;
+    }
+
+    private static void write(final List<String> batch) {
+        if (batch == null || batch.isEmpty() || !TRACES.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(32 + 512 * batch.size()).append("{\"matchTraces\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(batch.get(i));
+        }
+        TRACES.info(line.append("]}").toString());
+        LOGGER.debug("Wrote {} match traces", batch.size());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s {sampleRate=%s, added=%d, written=%d}", MatchTraceBuffer.class.getSimpleName(),
+                sampleRate, added, written);
+    }
+}
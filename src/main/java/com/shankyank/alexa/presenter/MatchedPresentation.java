@@ -65,8 +65,20 @@ public class MatchedPresentation implements Comparable<MatchedPresentation> {
         return result;
     }
 
+    /**
+     * Orders matches by confidence. Matches with equal confidence are ordered
+     * by presentation name and file so distinct presentations never compare
+     * as equal.
+     */
     @Override
     public int compareTo(MatchedPresentation other) {
-        return Double.compare(confidence, other.confidence);
+        int compared = Double.compare(confidence, other.confidence);
+        if (compared == 0) {
+            compared = presentation.getName().compareTo(other.presentation.getName());
+        }
+        if (compared == 0) {
+            compared = presentation.getFilename().compareTo(other.presentation.getFilename());
+        }
+        return compared;
     }
 }
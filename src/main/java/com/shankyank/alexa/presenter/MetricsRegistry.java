@@ -0,0 +1,176 @@
+package com.shankyank.alexa.presenter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory registry of timers and counters aggregated across requests. Tests
+ * and local tooling query it directly; production metrics are emitted per
+ * request by {@link RequestMetrics}.
+ */
+final class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared by the container
+     */
+    static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name the timer name
+     * @return the timer, created if it does not exist
+     */
+    Timer timer(final String name) {
+        return timers.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /**
+     * @param name the counter name
+     * @param delta the amount to add
+     */
+    void increment(final String name, final long delta) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * @param name the counter name
+     * @return the current value of the counter, or 0 if it has never been incremented
+     */
+    long getCount(final String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0L;
+    }
+
+    /**
+     * @return the current value of every counter, sorted by name
+     */
+    Map<String, Long> getCounters() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * @return every timer, sorted by name
+     */
+    Map<String, Timer> getTimers() {
+        return Collections.unmodifiableMap(new TreeMap<>(timers));
+    }
+
+    /**
+     * Discard every timer and counter.
+     */
+    void reset() {
+        timers.clear();
+        counters.clear();
+    }
+
+    /**
+     * Records durations in log-linear nanosecond buckets so percentiles can be
+     * estimated without keeping every sample: each power of two is split into
+     * {@value #SUB_BUCKETS} equal buckets, so an estimate is at most about 6%
+     * above the true percentile.
+     */
+    static final class Timer {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        /**
+         * @param nanos the duration to record
+         */
+        void record(final long nanos) {
+            long duration = Math.max(0L, nanos);
+            count.increment();
+            totalNanos.add(duration);
+            maxNanos.accumulateAndGet(duration, Math::max);
+            histogram.incrementAndGet(bucketOf(duration));
+        }
+
+        /**
+         * @param duration a non-negative duration
+         * @return its bucket: durations below {@value #SUB_BUCKETS} have a bucket
+         *         each, and larger ones share a bucket with the durations that
+         *         have the same top {@value #SUB_BUCKET_BITS} + 1 bits
+         */
+        static int bucketOf(final long duration) {
+            if (duration < SUB_BUCKETS) {
+                return (int) duration;
+            }
+            int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(duration) - SUB_BUCKET_BITS;
+            return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((duration >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * @param bucket a bucket
+         * @return the largest duration in the bucket, or {@link Long#MAX_VALUE}
+         */
+        static long upperBoundOf(final int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+            long next = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)) + 1) << shift;
+            return next > 0 ? next - 1 : Long.MAX_VALUE;
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        double getMeanNanos() {
+            long samples = getCount();
+            return samples > 0 ? (double) getTotalNanos() / samples : 0.0;
+        }
+
+        /**
+         * @param percentile the percentile, between 0 and 100
+         * @return the upper bound of the bucket holding the requested percentile
+         */
+        long getPercentileNanos(final double percentile) {
+            long samples = getCount();
+            if (samples == 0) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(samples * percentile / 100.0);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += histogram.get(bucket);
+                if (seen >= Math.max(1L, rank)) {
+                    return Math.min(getMaxNanos(), upperBoundOf(bucket));
+                }
+            }
+            return getMaxNanos();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Timer{count=%d, meanNanos=%.0f, p50Nanos=%d, p99Nanos=%d, maxNanos=%d}",
+                    getCount(), getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99), getMaxNanos());
+        }
+    }
+}
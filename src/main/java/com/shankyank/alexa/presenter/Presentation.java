@@ -1,14 +1,18 @@
 package com.shankyank.alexa.presenter;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
 
 import java.util.List;
 
 /**
- * Domain object representing a presentation.
+ * Domain object representing a presentation. The {@code aliases} of a
+ * presentation in the presentation list are kept by the
+ * {@link PresentationTable} for matching and are ignored here.
  */
+@JsonIgnoreProperties("aliases")
 public class Presentation {
     /** The Jackson TypeReference for a List of Presentations. */
     public static final TypeReference<List<Presentation>> LIST_OF_PRESENTATIONS =
@@ -19,7 +23,8 @@ public class Presentation {
      */
     private final String name;
     /**
-     * The SSML pronunication markup for the presentation.
+     * The SSML pronunication markup for the presentation, or null to derive it
+     * from the name when it is requested.
      */
     private final String ssml;
     /**
@@ -28,7 +33,7 @@ public class Presentation {
     private final String filename;
 
     public Presentation(String name, String filename) {
-        this(name, filename, name);
+        this(name, filename, null);
     }
 
     @JsonCreator
@@ -37,11 +42,7 @@ public class Presentation {
                  @JsonProperty(value = "ssml", required = false) final String ssml) {
         this.name = name;
         this.filename = filename;
-        if (ssml == null || ssml.trim().isEmpty()) {
-            this.ssml = name;
-        } else {
-            this.ssml = ssml;
-        }
+        this.ssml = ssml == null || ssml.trim().isEmpty() ? null : ssml;
     }
 
     public String getName() {
@@ -53,14 +54,21 @@ public class Presentation {
     }
 
     public String getSsml() {
-        return ssml;
+        return ssml != null || name == null ? ssml : SsmlTemplate.escape(name);
+    }
+
+    /**
+     * @return true if the SSML was configured rather than derived from the name
+     */
+    boolean hasCustomSsml() {
+        return ssml != null;
     }
 
     @Override
     public String toString() {
         return "Presentation{" +
                 "name='" + name + '\'' +
-                ", ssml='" + ssml + '\'' +
+                ", ssml='" + getSsml() + '\'' +
                 ", filename='" + filename + '\'' +
                 '}';
     }
@@ -73,7 +81,9 @@ public class Presentation {
         Presentation that = (Presentation) o;
 
         if (name != null ? !name.equals(that.name) : that.name != null) return false;
-        if (ssml != null ? !ssml.equals(that.ssml) : that.ssml != null) return false;
+        String thisSsml = getSsml();
+        String thatSsml = that.getSsml();
+        if (thisSsml != null ? !thisSsml.equals(thatSsml) : thatSsml != null) return false;
         return filename != null ? filename.equals(that.filename) : that.filename == null;
 
     }
@@ -81,7 +91,8 @@ public class Presentation {
     @Override
     public int hashCode() {
         int result = name != null ? name.hashCode() : 0;
-        result = 31 * result + (ssml != null ? ssml.hashCode() : 0);
+        String thisSsml = getSsml();
+        result = 31 * result + (thisSsml != null ? thisSsml.hashCode() : 0);
         result = 31 * result + (filename != null ? filename.hashCode() : 0);
         return result;
     }
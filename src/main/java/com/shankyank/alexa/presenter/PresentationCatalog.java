@@ -0,0 +1,185 @@
+package com.shankyank.alexa.presenter;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * An immutable, versioned list of available presentations. The version is a
+ * digest of the presentation content, so every container that loads the same
+ * presentations agrees on the version.
+ * <p>
+ * Catalogs are copy-on-write. {@link #apply(List)} derives a new catalog and
+ * updates the new catalog's match index from this catalog's index rather than
+ * building it again, leaving this catalog and its index untouched for readers
+ * still using them.
+ */
+final class PresentationCatalog {
+    /** The catalog with no presentations. */
+    static final PresentationCatalog EMPTY = of(PresentationTable.EMPTY);
+
+    private final String version;
+    private final PresentationTable presentations;
+    private volatile PresentationIndex index;
+    private volatile PresentationListing listing;
+
+    private PresentationCatalog(final String version, final PresentationTable presentations) {
+        this.version = version;
+        this.presentations = presentations;
+    }
+
+    /**
+     * Create a catalog for a list of presentations. A {@link PresentationTable}
+     * is used as is, and the catalog created for it is remembered so it is
+     * only versioned and indexed once; any other list is copied into a table.
+     * @param presentations the available presentations, may be null
+     * @return the catalog
+     */
+    static PresentationCatalog of(final List<Presentation> presentations) {
+        PresentationTable table = PresentationTable.copyOf(presentations);
+        PresentationCatalog catalog = table.getCatalog();
+        if (catalog == null) {
+            catalog = new PresentationCatalog(computeVersion(table), table);
+            table.setCatalog(catalog);
+        }
+        return catalog;
+    }
+
+    /**
+     * Create a catalog whose version and match index were computed ahead of
+     * time, such as one read from a {@link CompiledCatalog}. The version is
+     * trusted rather than computed again, so the caller must ensure it is the
+     * content version of the presentations. The catalog is remembered by the
+     * table like one created by {@link #of}.
+     * @param presentations the available presentations
+     * @param version the content version of the presentations
+     * @param index the match index for the presentations
+     * @return the catalog
+     */
+    static PresentationCatalog of(final PresentationTable presentations, final String version,
+                                  final PresentationIndex index) {
+        PresentationCatalog catalog = new PresentationCatalog(version, presentations);
+        catalog.index = index;
+        presentations.setCatalog(catalog);
+        return catalog;
+    }
+
+    /**
+     * Derive the catalog with changes applied. If this catalog's match index
+     * has been built, the new catalog's index is updated from it.
+     * @param changes the changes to apply, in order
+     * @return the updated catalog, or this catalog if there are no changes
+     */
+    PresentationCatalog apply(final List<CatalogChange> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+        PresentationTable.Update update = presentations.apply(changes);
+        PresentationTable table = update.getTable();
+        if (table.isEmpty()) {
+            return EMPTY;
+        }
+        PresentationCatalog updated = new PresentationCatalog(computeVersion(table), table);
+        PresentationIndex current = index;
+        if (current != null) {
+            updated.index = current.update(update);
+        }
+        table.setCatalog(updated);
+        return updated;
+    }
+
+    /**
+     * @return the content version of this catalog
+     */
+    String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the presentations in this catalog
+     */
+    PresentationTable getPresentations() {
+        return presentations;
+    }
+
+    /**
+     * @return true if this catalog has no presentations
+     */
+    boolean isEmpty() {
+        return presentations.isEmpty();
+    }
+
+    /**
+     * @return the match index for this catalog, built on first use
+     */
+    PresentationIndex getIndex() {
+        PresentationIndex result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = PresentationIndex.build(presentations);
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the paged presentation list for this catalog, rendered on first use
+     */
+    PresentationListing getListing() {
+        PresentationListing result = listing;
+        if (result == null) {
+            synchronized (this) {
+                result = listing;
+                if (result == null) {
+                    result = PresentationListing.render(presentations);
+                    listing = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PresentationCatalog{" +
+                "version='" + version + '\'' +
+                ", size=" + presentations.size() +
+                '}';
+    }
+
+    private static String computeVersion(final PresentationTable presentations) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-1 is not supported", nsae);
+        }
+        for (int i = 0; i < presentations.size(); i++) {
+            String name = presentations.getName(i);
+            String ssml = presentations.getConfiguredSsml(i);
+            update(digest, name);
+            update(digest, presentations.getFilename(i));
+            update(digest, ssml != null || name == null ? ssml : SsmlTemplate.escape(name));
+            List<String> aliases = presentations.getAliases(i);
+            update(digest, Integer.toString(aliases.size()));
+            for (String alias : aliases) {
+                update(digest, alias);
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,645 @@
+package com.shankyank.alexa.presenter;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Precomputed match index over a list of presentations. Presentation names and
+ * their metaphone codes are computed once and stored in BK-trees bucketed by
+ * length, so a query only scores the presentations whose Levenshtein or
+ * metaphone confidence could reach the confirmation threshold.
+ * <p>
+ * Distances are computed by a pluggable {@link EditDistance}; each thread
+ * querying the index gets its own instance so scratch buffers are reused
+ * without synchronization, and likewise its own candidate set. Candidates are ranked in a bounded heap, and large
+ * candidate sets are scored in parallel on the common fork/join pool.
+ * <p>
+ * Spoken names that are only part of a presentation name, or say its words in
+ * another order, are found through a {@link TokenIndex} of the words of each
+ * name. The presentations sharing a word with the spoken name are scored as
+ * well, and their word confidence is blended into the whole-name confidence,
+ * raising it but never lowering it.
+ * <p>
+ * Each presentation is indexed under its name and under each of its
+ * {@linkplain PresentationTable#getAliases aliases}, as entries mapped to
+ * the same catalog position; a presentation is matched with the confidence
+ * of its best entry.
+ * <p>
+ * An index can be {@linkplain #update updated} for a changed catalog without
+ * being rebuilt. Entries in the trees are separate from catalog positions:
+ * an updated index adds entries for new and renamed presentations to copies
+ * of the affected trees, and leaves the entries of removed and renamed
+ * presentations in place, mapped to no position, until so many accumulate
+ * that the index is rebuilt.
+ * <p>
+ * A built index can be {@linkplain #write written} into a
+ * {@link CompiledCatalog} and {@linkplain #read read} back with its metaphone
+ * codes, trees and word index as they were built, so loading it computes no
+ * codes or distances.
+ */
+final class PresentationIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PresentationIndex.class);
+
+    /** The lowest confidence at which a presentation is considered a match. */
+    static final double CONFIRMATION_THRESHOLD = 0.50;
+
+    /** How strongly the word confidence raises the whole-name confidence. */
+    static final double TOKEN_WEIGHT = 0.9;
+
+    /** The number of candidates above which scoring is split across the fork/join pool. */
+    static final int PARALLEL_THRESHOLD = 2048;
+
+    private static final int MAX_METAPHONE_LENGTH = 20;
+    /** DoubleMetaphone keeps no state between calls once it is configured, so every thread shares one. */
+    private static final DoubleMetaphone METAPHONE = newMetaphone();
+    private static final ThreadLocal<Candidates> CANDIDATES = ThreadLocal.withInitial(Candidates::new);
+
+    private final PresentationTable presentations;
+    /** The name or alias and its metaphone code indexed for each entry. */
+    private final String[] names;
+    private final String[] metaphones;
+    /** The catalog position of each entry, or -1 if its presentation was removed or renamed. */
+    private final int[] positions;
+    private final BkTree[] namesByLength;
+    private final BkTree[] metaphonesByLength;
+    private final TokenIndex tokens;
+    private final Supplier<EditDistance> editDistanceFactory;
+    private final ThreadLocal<EditDistance> editDistance;
+
+    private PresentationIndex(final PresentationTable presentations, final String[] names, final String[] metaphones,
+                              final int[] positions, final BkTree[] namesByLength,
+                              final BkTree[] metaphonesByLength, final TokenIndex tokens,
+                              final Supplier<EditDistance> editDistanceFactory) {
+        this.presentations = presentations;
+        this.names = names;
+        this.metaphones = metaphones;
+        this.positions = positions;
+        this.namesByLength = namesByLength;
+        this.metaphonesByLength = metaphonesByLength;
+        this.tokens = tokens;
+        this.editDistanceFactory = editDistanceFactory;
+        this.editDistance = ThreadLocal.withInitial(editDistanceFactory);
+    }
+
+    /**
+     * Build the index for a list of presentations.
+     * @param presentations the available presentations
+     * @return the match index
+     */
+    static PresentationIndex build(final List<Presentation> presentations) {
+        return build(presentations, BoundedEditDistance::new);
+    }
+
+    /**
+     * Build the index for a list of presentations.
+     * @param presentations the available presentations
+     * @param editDistanceFactory creates the edit distance calculator for each querying thread
+     * @return the match index
+     */
+    static PresentationIndex build(final List<Presentation> presentations,
+                                   final Supplier<EditDistance> editDistanceFactory) {
+        EditDistance editDistance = editDistanceFactory.get();
+        PresentationTable indexed = PresentationTable.copyOf(presentations);
+        int[] positions = entryPositions(indexed);
+        String[] names = entryNames(indexed, positions);
+        String[] metaphones = new String[names.length];
+        List<BkTree> namesByLength = new ArrayList<>();
+        List<BkTree> metaphonesByLength = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            metaphones[id] = METAPHONE.doubleMetaphone(names[id]);
+            treeForLength(namesByLength, names[id].length()).add(names[id], id, editDistance);
+            if (metaphones[id] != null) {
+                treeForLength(metaphonesByLength, metaphones[id].length()).add(metaphones[id], id, editDistance);
+            }
+        }
+        LOGGER.debug("Indexed {} presentations as {} entries", indexed.size(), names.length);
+        return new PresentationIndex(indexed, names, metaphones, positions,
+                namesByLength.toArray(new BkTree[namesByLength.size()]),
+                metaphonesByLength.toArray(new BkTree[metaphonesByLength.size()]), TokenIndex.build(names),
+                editDistanceFactory);
+    }
+
+    /**
+     * @return the catalog position of each entry of a built index: each
+     *         presentation's name, followed by its aliases
+     */
+    private static int[] entryPositions(final PresentationTable presentations) {
+        int entries = presentations.size();
+        for (int i = 0; i < presentations.size(); i++) {
+            entries += presentations.getAliases(i).size();
+        }
+        int[] positions = new int[entries];
+        for (int i = 0, id = 0; i < presentations.size(); i++) {
+            for (int entry = 0; entry <= presentations.getAliases(i).size(); entry++) {
+                positions[id++] = i;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * @param positions the {@linkplain #entryPositions entry positions} of the presentations
+     * @return the name or alias of each entry of a built index
+     */
+    private static String[] entryNames(final PresentationTable presentations, final int[] positions) {
+        String[] names = new String[positions.length];
+        int id = 0;
+        for (int i = 0; i < presentations.size(); i++) {
+            names[id++] = presentations.getName(i);
+            for (String alias : presentations.getAliases(i)) {
+                names[id++] = alias;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Derive the index for an updated catalog. Entries of presentations that
+     * kept their name are carried over and only added or renamed
+     * presentations are indexed; the trees they are added to are copied along
+     * the path to the new entry, so this index is not modified. The index is
+     * rebuilt instead once entries of removed presentations outnumber live ones.
+     * @param update the updated catalog and where each presentation of this index's catalog ended up
+     * @return the index for the updated catalog
+     */
+    PresentationIndex update(final PresentationTable.Update update) {
+        PresentationTable updated = update.getTable();
+        int[] added = update.getAddedPositions();
+        int entries = names.length;
+        for (int position : added) {
+            entries += 1 + updated.getAliases(position).size();
+        }
+        int[] updatedPositions = new int[entries];
+        int[] removed = new int[names.length];
+        int removedCount = 0;
+        int deadCount = 0;
+        for (int id = 0; id < names.length; id++) {
+            updatedPositions[id] = positions[id] >= 0 ? update.getNewPosition(positions[id]) : -1;
+            if (positions[id] >= 0 && updatedPositions[id] < 0) {
+                removed[removedCount++] = id;
+            }
+            if (updatedPositions[id] < 0) {
+                deadCount++;
+            }
+        }
+        if (deadCount > entries - deadCount) {
+            LOGGER.debug("Rebuilding index with {} removed entries", deadCount);
+            return build(updated, editDistanceFactory);
+        }
+        String[] updatedNames = Arrays.copyOf(names, entries);
+        String[] updatedMetaphones = Arrays.copyOf(metaphones, entries);
+        List<BkTree> updatedNamesByLength = new ArrayList<>(Arrays.asList(namesByLength));
+        List<BkTree> updatedMetaphonesByLength = new ArrayList<>(Arrays.asList(metaphonesByLength));
+        EditDistance editDistance = this.editDistance.get();
+        int id = names.length;
+        for (int position : added) {
+            List<String> aliases = updated.getAliases(position);
+            for (int entry = 0; entry <= aliases.size(); entry++, id++) {
+                String name = entry == 0 ? updated.getName(position) : aliases.get(entry - 1);
+                updatedNames[id] = name;
+                updatedMetaphones[id] = METAPHONE.doubleMetaphone(name);
+                updatedPositions[id] = position;
+                plus(updatedNamesByLength, name, id, editDistance);
+                if (updatedMetaphones[id] != null) {
+                    plus(updatedMetaphonesByLength, updatedMetaphones[id], id, editDistance);
+                }
+            }
+        }
+        LOGGER.debug("Indexed {} new presentations of {}", added.length, updated.size());
+        return new PresentationIndex(updated, updatedNames, updatedMetaphones, updatedPositions,
+                updatedNamesByLength.toArray(new BkTree[updatedNamesByLength.size()]),
+                updatedMetaphonesByLength.toArray(new BkTree[updatedMetaphonesByLength.size()]),
+                tokens.update(updatedNames, names.length, Arrays.copyOf(removed, removedCount)), editDistanceFactory);
+    }
+
+    /**
+     * Write the metaphone codes, trees and word index of this index. Only an
+     * index whose entries are laid out as a built one's can be written, since
+     * the entries are derived from its catalog when it is read.
+     * @param out the output
+     * @throws IOException if the index cannot be written
+     */
+    void write(final DataOutput out) throws IOException {
+        if (!Arrays.equals(positions, entryPositions(presentations)) ||
+                !Arrays.equals(names, entryNames(presentations, positions))) {
+            throw new IllegalStateException("Only a built index can be written");
+        }
+        for (String metaphone : metaphones) {
+            CompiledCatalog.writeString(out, metaphone);
+        }
+        writeTrees(namesByLength, out);
+        writeTrees(metaphonesByLength, out);
+        tokens.write(out);
+    }
+
+    /**
+     * Read an index written by {@link #write}.
+     * @param in the input, positioned at the index
+     * @param presentations the presentations the index was built for
+     * @return the match index
+     * @throws IllegalArgumentException if the input does not hold a valid index for the presentations
+     */
+    static PresentationIndex read(final ByteBuffer in, final PresentationTable presentations) {
+        int[] positions = entryPositions(presentations);
+        String[] names = entryNames(presentations, positions);
+        String[] metaphones = new String[names.length];
+        for (int id = 0; id < names.length; id++) {
+            metaphones[id] = CompiledCatalog.readString(in);
+        }
+        BkTree[] namesByLength = readTrees(in, names);
+        BkTree[] metaphonesByLength = readTrees(in, metaphones);
+        return new PresentationIndex(presentations, names, metaphones, positions, namesByLength, metaphonesByLength,
+                TokenIndex.read(in, names.length), BoundedEditDistance::new);
+    }
+
+    /**
+     * @return the indexed presentations
+     */
+    List<Presentation> getPresentations() {
+        return presentations;
+    }
+
+    /**
+     * Find the best matching presentation for a spoken name. Ties are resolved
+     * in favor of the presentation that appears first in the list.
+     * @param spokenName the spoken presentation name
+     * @return the best match, or null if no presentation reaches the confirmation threshold
+     */
+    MatchedPresentation match(final String spokenName) {
+        List<MatchedPresentation> matches = match(spokenName, 1);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /**
+     * Find the best matching presentations for a spoken name, ordered by
+     * descending confidence. Ties are resolved in favor of the presentation
+     * that appears first in the list.
+     * @param spokenName the spoken presentation name
+     * @param limit the maximum number of matches to return
+     * @return the best matches that reach the confirmation threshold
+     */
+    List<MatchedPresentation> match(final String spokenName, final int limit) {
+        long start = System.nanoTime();
+        MatchTrace trace = MatchTrace.current();
+        // a traced name ranks a few more candidates, so near misses can be explained
+        int ranked = trace.isSampled() ? Math.max(limit, MatchTrace.CANDIDATES) : limit;
+        EditDistance editDistance = this.editDistance.get();
+        Candidates scratch = CANDIDATES.get();
+        BitSet candidates = scratch.entries;
+        candidates.clear();
+        collectCandidates(namesByLength, spokenName, editDistance, candidates);
+        String spokenMetaphone = METAPHONE.doubleMetaphone(spokenName);
+        if (spokenMetaphone != null) {
+            collectCandidates(metaphonesByLength, spokenMetaphone, editDistance, candidates);
+        }
+        TokenIndex.Query tokenQuery = tokens.query(spokenName);
+        tokenQuery.collectCandidates(candidates);
+
+        int[] ids = scratch.ids(candidates.cardinality());
+        int count = 0;
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            if (positions[id] >= 0) {
+                ids[count++] = id;
+            }
+        }
+        ScoringTask scoring = new ScoringTask(spokenName, spokenMetaphone, tokenQuery, ids, 0, count, ranked);
+        Ranking ranking = count > PARALLEL_THRESHOLD ? ForkJoinPool.commonPool().invoke(scoring) :
+                scoring.score(editDistance);
+        List<MatchedPresentation> matches = ranking.toMatches(spokenName);
+        if (trace.isSampled()) {
+            trace.recordScoring(count, System.nanoTime() - start,
+                    explain(spokenName, spokenMetaphone, tokenQuery, ids, count, matches, editDistance));
+            if (matches.size() > limit) {
+                matches = new ArrayList<>(matches.subList(0, limit));
+            }
+        }
+        RequestMetrics.current().increment(RequestMetrics.CANDIDATES_SCORED, count);
+        LOGGER.debug("spoken=\"{}\", scored {} of {} presentations, best matches={}", spokenName, count,
+                presentations.size(), matches);
+        return matches;
+    }
+
+    private double score(final String spokenName, final String spokenMetaphone, final TokenIndex.Query tokenQuery,
+                         final int id, final EditDistance editDistance) {
+        double levConfidence = getLevenshteinConfidence(spokenName, names[id], editDistance);
+        double metaConfidence = getMetaphoneConfidence(spokenMetaphone, metaphones[id], editDistance);
+        return blend(Math.max(levConfidence, metaConfidence), tokenQuery.getConfidence(id));
+    }
+
+    /**
+     * Score the matched candidates again, keeping the confidence of each scorer
+     * for the {@link MatchTrace}. This only runs for traced names, so scoring
+     * every candidate stays free of logging and allocation.
+     */
+    private List<MatchTrace.Candidate> explain(final String spokenName, final String spokenMetaphone,
+                                               final TokenIndex.Query tokenQuery, final int[] ids,
+                                               final int count, final List<MatchedPresentation> matches,
+                                               final EditDistance editDistance) {
+        List<MatchTrace.Candidate> explained = new ArrayList<>(matches.size());
+        for (MatchedPresentation match : matches) {
+            // the entry that gave the presentation its confidence, which may be an alias
+            for (int i = 0; i < count; i++) {
+                int id = ids[i];
+                if (presentations.getName(positions[id]).equals(match.getPresentation().getName()) &&
+                        score(spokenName, spokenMetaphone, tokenQuery, id, editDistance) == match.getConfidence()) {
+                    explained.add(new MatchTrace.Candidate(names[id],
+                            getLevenshteinConfidence(spokenName, names[id], editDistance),
+                            getMetaphoneConfidence(spokenMetaphone, metaphones[id], editDistance),
+                            tokenQuery.getConfidence(id), match.getConfidence()));
+                    break;
+                }
+            }
+        }
+        return explained;
+    }
+
+    /**
+     * Raise a whole-name confidence by a word confidence, treating them as
+     * independent evidence: a name matched exactly keeps full confidence, and
+     * a name sharing no word keeps its whole-name confidence. Whole-name
+     * confidences below the confirmation threshold are not computed exactly,
+     * so they count as none.
+     * @param confidence the whole-name confidence
+     * @param tokenConfidence the word confidence
+     * @return the blended confidence
+     */
+    static double blend(final double confidence, final double tokenConfidence) {
+        double nameConfidence = confidence >= CONFIRMATION_THRESHOLD ? confidence : 0.0;
+        return 1.0 - (1.0 - nameConfidence) * (1.0 - TOKEN_WEIGHT * tokenConfidence);
+    }
+
+    /**
+     * The candidates of a query, kept per thread and reused by every query on
+     * the thread so collecting them allocates nothing once the buffers have
+     * grown to the catalog.
+     */
+    private static final class Candidates {
+        private final BitSet entries = new BitSet();
+        private int[] ids = new int[64];
+
+        private int[] ids(final int count) {
+            if (ids.length < count) {
+                ids = new int[Math.max(count, 2 * ids.length)];
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Scores a range of candidates, splitting ranges larger than the parallel
+     * threshold in half and merging the rankings of each half.
+     */
+    private final class ScoringTask extends RecursiveTask<Ranking> {
+        private static final long serialVersionUID = 1L;
+
+        private final String spokenName;
+        private final String spokenMetaphone;
+        private final TokenIndex.Query tokenQuery;
+        private final int[] ids;
+        private final int from;
+        private final int to;
+        private final int limit;
+
+        private ScoringTask(final String spokenName, final String spokenMetaphone, final TokenIndex.Query tokenQuery,
+                            final int[] ids, final int from, final int to, final int limit) {
+            this.spokenName = spokenName;
+            this.spokenMetaphone = spokenMetaphone;
+            this.tokenQuery = tokenQuery;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+        }
+
+        @Override
+        protected Ranking compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return score(editDistance.get());
+            }
+            int middle = (from + to) >>> 1;
+            ScoringTask upper = new ScoringTask(spokenName, spokenMetaphone, tokenQuery, ids, middle, to, limit);
+            upper.fork();
+            Ranking ranking = new ScoringTask(spokenName, spokenMetaphone, tokenQuery, ids, from, middle, limit)
+                    .compute();
+            return ranking.merge(upper.join());
+        }
+
+        private Ranking score(final EditDistance editDistance) {
+            Ranking ranking = new Ranking(limit);
+            for (int i = from; i < to; i++) {
+                double confidence = PresentationIndex.this.score(spokenName, spokenMetaphone, tokenQuery, ids[i],
+                        editDistance);
+                if (confidence >= CONFIRMATION_THRESHOLD) {
+                    ranking.offer(positions[ids[i]], confidence);
+                }
+            }
+            return ranking;
+        }
+    }
+
+    /**
+     * Bounded min-heap holding the best scored candidates by catalog position.
+     * The root is the worst candidate kept, so a new candidate only needs to
+     * beat the root. Candidates are ordered by confidence and then by position.
+     * A position offered again, for another entry of the same presentation,
+     * keeps its best confidence.
+     */
+    private final class Ranking {
+        private final int limit;
+        private final int[] ids;
+        private final double[] confidences;
+        private int size;
+
+        private Ranking(final int limit) {
+            this.limit = limit;
+            this.ids = new int[limit];
+            this.confidences = new double[limit];
+        }
+
+        private void offer(final int id, final double confidence) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    if (confidence > confidences[i]) {
+                        confidences[i] = confidence;
+                        siftDown(i);
+                    }
+                    return;
+                }
+            }
+            if (size < limit) {
+                ids[size] = id;
+                confidences[size] = confidence;
+                siftUp(size++);
+            } else if (limit > 0 && isBetter(id, confidence, ids[0], confidences[0])) {
+                ids[0] = id;
+                confidences[0] = confidence;
+                siftDown(0);
+            }
+        }
+
+        private Ranking merge(final Ranking other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.ids[i], other.confidences[i]);
+            }
+            return this;
+        }
+
+        private List<MatchedPresentation> toMatches(final String spokenName) {
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            MatchedPresentation[] matches = new MatchedPresentation[size];
+            for (int i = size - 1; i >= 0; i--) {
+                matches[i] = new MatchedPresentation(spokenName, confidences[0], presentations.get(ids[0]));
+                swap(0, --size);
+                siftDown(0);
+            }
+            List<MatchedPresentation> ranked = new ArrayList<>(matches.length);
+            Collections.addAll(ranked, matches);
+            return ranked;
+        }
+
+        private void siftUp(final int position) {
+            for (int child = position, parent = (child - 1) / 2;
+                 child > 0 && isBetter(ids[parent], confidences[parent], ids[child], confidences[child]);
+                 child = parent, parent = (child - 1) / 2) {
+                swap(child, parent);
+            }
+        }
+
+        private void siftDown(final int position) {
+            int parent = position;
+            for (int child = 2 * parent + 1; child < size; parent = child, child = 2 * parent + 1) {
+                int sibling = child + 1;
+                if (sibling < size && isBetter(ids[child], confidences[child], ids[sibling], confidences[sibling])) {
+                    child = sibling;
+                }
+                if (!isBetter(ids[parent], confidences[parent], ids[child], confidences[child])) {
+                    return;
+                }
+                swap(parent, child);
+            }
+        }
+
+        private void swap(final int i, final int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double confidence = confidences[i];
+            confidences[i] = confidences[j];
+            confidences[j] = confidence;
+        }
+
+        private boolean isBetter(final int id, final double confidence, final int otherId,
+                                 final double otherConfidence) {
+            int compared = Double.compare(confidence, otherConfidence);
+            return compared > 0 || (compared == 0 && id < otherId);
+        }
+    }
+
+    /**
+     * Search every length bucket whose entries could be within half their own
+     * length of the query, the most edits that still reach the confirmation
+     * threshold.
+     */
+    private static void collectCandidates(final BkTree[] treesByLength, final String query,
+                                          final EditDistance editDistance, final BitSet candidates) {
+        int queryLength = query.length();
+        for (int length = 0; length < treesByLength.length; length++) {
+            int radius = getMaxDistance(length);
+            if (treesByLength[length] != null && Math.abs(queryLength - length) <= radius) {
+                treesByLength[length].search(query, radius, editDistance, candidates::set);
+            }
+        }
+    }
+
+    private static int getMaxDistance(final int length) {
+        return (int) Math.floor(length * (1.0 - CONFIRMATION_THRESHOLD));
+    }
+
+    /**
+     * Confidences that cannot reach the confirmation threshold are not computed
+     * exactly; they are reported as some value below the threshold.
+     */
+    private static double getLevenshteinConfidence(final String actual, final String expected,
+                                                   final EditDistance editDistance) {
+        int distance = editDistance.distance(actual, expected, getMaxDistance(expected.length()));
+        int nameLength = expected.length();
+        return (double) (nameLength - distance) / (double) nameLength;
+    }
+
+    private static double getMetaphoneConfidence(final String actualMetaphone, final String expectedMetaphone,
+                                                 final EditDistance editDistance) {
+        if (actualMetaphone == null || expectedMetaphone == null) {
+            return 0.0;
+        }
+        if (actualMetaphone.equals(expectedMetaphone)) {
+            return 1.0;
+        }
+        return getLevenshteinConfidence(actualMetaphone, expectedMetaphone, editDistance);
+    }
+
+    private static void plus(final List<BkTree> treesByLength, final String key, final int id,
+                             final EditDistance editDistance) {
+        while (treesByLength.size() <= key.length()) {
+            treesByLength.add(null);
+        }
+        BkTree tree = treesByLength.get(key.length());
+        treesByLength.set(key.length(), (tree != null ? tree : new BkTree()).plus(key, id, editDistance));
+    }
+
+    private static void writeTrees(final BkTree[] treesByLength, final DataOutput out) throws IOException {
+        out.writeInt(treesByLength.length);
+        for (BkTree tree : treesByLength) {
+            out.writeBoolean(tree != null);
+            if (tree != null) {
+                tree.write(out);
+            }
+        }
+    }
+
+    private static BkTree[] readTrees(final ByteBuffer in, final String[] keys) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Invalid tree count: " + count);
+        }
+        BkTree[] treesByLength = new BkTree[count];
+        for (int length = 0; length < count; length++) {
+            if (in.get() != 0) {
+                treesByLength[length] = BkTree.read(in, keys);
+            }
+        }
+        return treesByLength;
+    }
+
+    private static BkTree treeForLength(final List<BkTree> treesByLength, final int length) {
+        while (treesByLength.size() <= length) {
+            treesByLength.add(null);
+        }
+        BkTree tree = treesByLength.get(length);
+        if (tree == null) {
+            tree = new BkTree();
+            treesByLength.set(length, tree);
+        }
+        return tree;
+    }
+
+    private static DoubleMetaphone newMetaphone() {
+        DoubleMetaphone metaphone = new DoubleMetaphone();
+        metaphone.setMaxCodeLen(MAX_METAPHONE_LENGTH);
+        return metaphone;
+    }
+}
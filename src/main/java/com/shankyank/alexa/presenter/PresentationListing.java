@@ -0,0 +1,107 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.ui.SsmlOutputSpeech;
+
+import java.util.List;
+
+/**
+ * The presentation list, split into pages of SSML rendered once per catalog.
+ * A catalog that fits on a single page is listed in full; larger catalogs are
+ * read a page at a time and the user moves between pages with the next and
+ * previous intents.
+ */
+final class PresentationListing {
+    /** The default number of presentations read on each page. */
+    static final int DEFAULT_PAGE_SIZE = 10;
+
+    private static final String BREAK = "<break strength=\"medium\"/>";
+    private static final String CHOOSE_TEXT = "<s>which would you like?</s>";
+    private static final String MORE_TEXT = "<s>say next to hear more, or which would you like?</s>";
+    private static final SsmlTemplate PAGE = SsmlTemplate.compile("%s");
+
+    private final String[] pages;
+    private final SsmlOutputSpeech[] speeches;
+
+    private PresentationListing(final String[] pages) {
+        this.pages = pages;
+        this.speeches = new SsmlOutputSpeech[pages.length];
+        for (int page = 0; page < pages.length; page++) {
+            speeches[page] = PAGE.speech(pages[page]);
+        }
+    }
+
+    /**
+     * Render the listing for a list of presentations.
+     * @param presentations the available presentations
+     * @return the rendered listing
+     */
+    static PresentationListing render(final List<Presentation> presentations) {
+        return render(presentations, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Render the listing for a list of presentations.
+     * @param presentations the available presentations
+     * @param pageSize the number of presentations read on each page
+     * @return the rendered listing
+     */
+    static PresentationListing render(final List<Presentation> presentations, final int pageSize) {
+        int count = presentations.size();
+        int pageCount = Math.max(1, (count + pageSize - 1) / pageSize);
+        String[] pages = new String[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            int from = page * pageSize;
+            int to = Math.min(count, from + pageSize);
+            boolean last = page == pageCount - 1;
+            StringBuilder builder = new StringBuilder();
+            if (page == 0) {
+                builder.append("<s>i can start ").append(count).append(" presentations</s>");
+            } else {
+                builder.append("<s>presentations ").append(from + 1).append(" to ").append(to).append("</s>");
+            }
+            for (int i = from; i < to; i++) {
+                builder.append(presentations.get(i).getSsml());
+                if (i < to - 1) {
+                    builder.append(BREAK);
+                }
+                if (last && i == to - 2) {
+                    builder.append("or").append(BREAK).append(' ');
+                }
+            }
+            builder.append(last ? CHOOSE_TEXT : MORE_TEXT);
+            pages[page] = builder.toString();
+        }
+        return new PresentationListing(pages);
+    }
+
+    /**
+     * @return the number of pages, at least one
+     */
+    int getPageCount() {
+        return pages.length;
+    }
+
+    /**
+     * @param page the page number, clamped to the available pages
+     * @return the SSML for the page, without the enclosing speak element
+     */
+    String getPage(final int page) {
+        return pages[clamp(page)];
+    }
+
+    /**
+     * @param page the page number, clamped to the available pages
+     * @return the output speech for the page, shared by every response; it must not be modified
+     */
+    SsmlOutputSpeech getSpeech(final int page) {
+        return speeches[clamp(page)];
+    }
+
+    /**
+     * @param page a page number
+     * @return the nearest available page number
+     */
+    int clamp(final int page) {
+        return Math.max(0, Math.min(pages.length - 1, page));
+    }
+}
@@ -3,6 +3,7 @@ package com.shankyank.alexa.presenter;
 import com.amazon.speech.speechlet.Session;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Triggers the start of a presentation.
@@ -15,4 +16,23 @@ interface PresentationStarter extends Serializable {
      * @return true if the presentation was successfully started
      */
     boolean startPresentation(final Session session, final MatchedPresentation presentation);
+
+    /**
+     * Start the presentation without waiting for it to complete. Callers that
+     * do not need the outcome may ignore the returned future.
+     * @param session the speechlet session
+     * @param presentation the matched presentation
+     * @return a future that completes with true if the presentation was successfully started
+     */
+    default CompletableFuture<Boolean> startPresentationAsync(final Session session,
+                                                              final MatchedPresentation presentation) {
+        return CompletableFuture.completedFuture(startPresentation(session, presentation));
+    }
+
+    /**
+     * Create any clients or connections the starter needs so the first start
+     * does not pay for them.
+     */
+    default void prime() {
+    }
 }
@@ -0,0 +1,607 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, column-oriented list of presentations.
+ * <p>
+ * Presentations are not stored as objects. Names, which the match index
+ * needs as Strings, are kept in an array; filenames and configured SSML,
+ * which are only needed for the matched presentation, are packed into
+ * shared character chunks and addressed by position. SSML that is not
+ * configured is not stored; it is derived from the name when a
+ * {@link Presentation} is materialized by {@link #get(int)}.
+ * <p>
+ * Each presentation may have {@code aliases}, other ways people say its
+ * name. They are not part of a materialized presentation, but are kept with
+ * the names so the match index and the slot values of the interaction model
+ * both see them.
+ * <p>
+ * A table updated with {@link #apply(List)} shares the character chunks of
+ * the table it was derived from and only adds chunks for the values the
+ * changes introduce.
+ */
+final class PresentationTable extends AbstractList<Presentation> implements RandomAccess {
+    /** The table with no presentations. */
+    static final PresentationTable EMPTY = new Builder(0).build();
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    /** Updated tables stop sharing chunks and copy their values once they reach this many chunks. */
+    private static final int MAX_SHARED_CHUNKS = 256;
+    private static final String[] NO_ALIASES = new String[0];
+
+    private final String[] names;
+    /** The aliases of each presentation. */
+    private final String[][] aliases;
+    private final char[][] chunks;
+    /** For each presentation, the position and length of its filename and of its configured SSML. */
+    private final int[] positions;
+    private final int size;
+    /** The catalog created for this table, so it is versioned and indexed once. */
+    private volatile PresentationCatalog catalog;
+
+    private PresentationTable(final String[] names, final String[][] aliases, final char[][] chunks,
+                              final int[] positions, final int size) {
+        this.names = names;
+        this.aliases = aliases;
+        this.chunks = chunks;
+        this.positions = positions;
+        this.size = size;
+    }
+
+    /**
+     * @param presentations a list of presentations, may be null
+     * @return the list itself if it is already a table, otherwise a table with the same presentations
+     */
+    static PresentationTable copyOf(final List<Presentation> presentations) {
+        if (presentations instanceof PresentationTable) {
+            return (PresentationTable) presentations;
+        }
+        if (presentations == null || presentations.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = new Builder(presentations.size());
+        for (Presentation presentation : presentations) {
+            builder.add(presentation.getName(), presentation.getFilename(),
+                    presentation.hasCustomSsml() ? presentation.getSsml() : null, NO_ALIASES);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read a JSON array of presentations with the streaming parser, without
+     * binding an object for each entry.
+     * @param is the JSON content
+     * @return the presentations
+     * @throws IOException if the content cannot be read or is not a valid presentation list
+     */
+    static PresentationTable read(final InputStream is) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException("Expected an array of presentations", parser.getCurrentLocation());
+            }
+            Builder builder = new Builder(INITIAL_CAPACITY);
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException("Expected a presentation object", parser.getCurrentLocation());
+                }
+                readPresentation(parser, builder);
+            }
+            return builder.size == 0 ? EMPTY : builder.build();
+        }
+    }
+
+    private static void readPresentation(final JsonParser parser, final Builder builder) throws IOException {
+        String name = null;
+        boolean hasFilename = false;
+        builder.start();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "name":
+                    name = parser.getValueAsString();
+                    break;
+                case "filename":
+                    builder.setFilename(parser);
+                    hasFilename = true;
+                    break;
+                case "ssml":
+                    builder.setSsml(parser);
+                    break;
+                case "aliases":
+                    builder.setAliases(readAliases(parser, builder.size));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (name == null || !hasFilename) {
+            throw new JsonParseException(String.format("Presentation %d is missing %s", builder.size,
+                    name == null ? "name" : "filename"), parser.getCurrentLocation());
+        }
+        builder.finish(name);
+    }
+
+    /**
+     * Write the presentations of this table for a {@link CompiledCatalog}.
+     * @param out the output
+     * @throws IOException if the presentations cannot be written
+     */
+    void write(final DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            CompiledCatalog.writeString(out, names[i]);
+            CompiledCatalog.writeString(out, filename(i));
+            CompiledCatalog.writeString(out, configuredSsml(i));
+            out.writeInt(aliases[i].length);
+            for (String alias : aliases[i]) {
+                CompiledCatalog.writeString(out, alias);
+            }
+        }
+    }
+
+    /**
+     * Read presentations written by {@link #write}.
+     * @param in the input, positioned at the presentations
+     * @return the presentations
+     * @throws IllegalArgumentException if the input does not hold valid presentations
+     */
+    static PresentationTable read(final ByteBuffer in) {
+        int count = readCount(in);
+        Builder builder = new Builder(count);
+        for (int i = 0; i < count; i++) {
+            String name = CompiledCatalog.readString(in);
+            String filename = CompiledCatalog.readString(in);
+            String ssml = CompiledCatalog.readString(in);
+            String[] aliases = new String[readCount(in)];
+            for (int a = 0; a < aliases.length; a++) {
+                aliases[a] = CompiledCatalog.readString(in);
+                if (aliases[a] == null) {
+                    throw new IllegalArgumentException("Presentation " + i + " has a null alias");
+                }
+            }
+            if (name == null || filename == null) {
+                throw new IllegalArgumentException("Presentation " + i + " has no name or filename");
+            }
+            builder.add(name, filename, ssml, aliases.length > 0 ? aliases : NO_ALIASES);
+        }
+        return count == 0 ? EMPTY : builder.build();
+    }
+
+    private static int readCount(final ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * @return the distinct, non-blank aliases in a JSON array of names, trimmed
+     */
+    private static String[] readAliases(final JsonParser parser, final int index) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(String.format("The aliases of presentation %d are not a list", index),
+                    parser.getCurrentLocation());
+        }
+        List<String> aliases = new ArrayList<>();
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token != JsonToken.VALUE_STRING) {
+                throw new JsonParseException(String.format("Presentation %d has an alias that is not a name",
+                        index), parser.getCurrentLocation());
+            }
+            String alias = parser.getText().trim();
+            if (!alias.isEmpty() && !aliases.contains(alias)) {
+                aliases.add(alias);
+            }
+        }
+        return aliases.isEmpty() ? NO_ALIASES : aliases.toArray(new String[aliases.size()]);
+    }
+
+    /**
+     * Apply changes to the presentations in this table. Presentations keep
+     * their position unless an earlier presentation is removed, and added
+     * presentations are appended. The changes are applied in order; a change
+     * addressing a name that appears more than once applies to the first
+     * presentation with that name. A presentation keeps its aliases when it
+     * is replaced or renamed; added presentations have none.
+     * @param changes the changes to apply
+     * @return the updated table, with the mapping from positions in this table to positions in the updated table
+     */
+    Update apply(final List<CatalogChange> changes) {
+        int capacity = size + changes.size();
+        String[] rowNames = Arrays.copyOf(names, capacity);
+        int[] rowOrigins = new int[capacity];
+        CatalogChange[] rowContents = new CatalogChange[capacity];
+        boolean[] removed = new boolean[capacity];
+        for (int i = 0; i < size; i++) {
+            rowOrigins[i] = i;
+        }
+        int rows = size;
+        RowsByName rowsByName = new RowsByName(rowNames, rows, capacity);
+        for (CatalogChange change : changes) {
+            int row = rowsByName.find(change.getName());
+            switch (change.getOperation()) {
+                case ADD:
+                    if (row < 0) {
+                        row = rows++;
+                        rowNames[row] = change.getName();
+                        rowOrigins[row] = -1;
+                        rowsByName.link(change.getName(), row);
+                    }
+                    rowContents[row] = change;
+                    break;
+                case REMOVE:
+                    if (row >= 0) {
+                        removed[row] = true;
+                        rowsByName.unlinkFirst(change.getName());
+                    }
+                    break;
+                case RENAME:
+                    if (row >= 0 && !change.getNewName().equals(rowNames[row])) {
+                        rowsByName.unlinkFirst(change.getName());
+                        rowNames[row] = change.getNewName();
+                        rowOrigins[row] = -1;
+                        rowsByName.link(change.getNewName(), row);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported change: " + change);
+            }
+        }
+
+        boolean share = chunks.length < MAX_SHARED_CHUNKS;
+        Builder builder = share ? new Builder(rows, chunks) : new Builder(rows);
+        int[] newPositions = new int[size];
+        Arrays.fill(newPositions, -1);
+        int[] added = new int[rows];
+        int addedCount = 0;
+        for (int row = 0; row < rows; row++) {
+            if (removed[row]) {
+                continue;
+            }
+            int position = builder.size;
+            CatalogChange content = rowContents[row];
+            int source = row < size ? row : -1;
+            if (content != null) {
+                builder.add(rowNames[row], content.getFilename(), content.getSsml(),
+                        source >= 0 ? aliases[source] : NO_ALIASES);
+            } else if (share) {
+                builder.copy(this, source, rowNames[row]);
+            } else {
+                builder.add(rowNames[row], filename(source), configuredSsml(source), aliases[source]);
+            }
+            if (rowOrigins[row] >= 0) {
+                newPositions[rowOrigins[row]] = position;
+            } else {
+                added[addedCount++] = position;
+            }
+        }
+        return new Update(builder.size == 0 ? EMPTY : builder.build(), newPositions,
+                Arrays.copyOf(added, addedCount));
+    }
+
+    /**
+     * The rows of a table being changed that have each name, so a change
+     * finds its row without scanning the table. The first row with a name is
+     * kept in a map; later rows with the same name are chained from it in
+     * ascending order, and rows leave their chain when they are removed or
+     * renamed.
+     */
+    private static final class RowsByName {
+        private final Map<String, Integer> firstRows;
+        private final int[] nextRows;
+
+        private RowsByName(final String[] rowNames, final int rows, final int capacity) {
+            firstRows = new HashMap<>(Math.max(16, (int) (rows / 0.75f) + 1));
+            nextRows = new int[capacity];
+            for (int row = rows - 1; row >= 0; row--) {
+                link(rowNames[row], row);
+            }
+        }
+
+        /**
+         * @return the first row with the name, or -1 if there is none
+         */
+        private int find(final String name) {
+            Integer row = firstRows.get(name);
+            return row != null ? row : -1;
+        }
+
+        private void link(final String name, final int row) {
+            Integer first = firstRows.get(name);
+            if (first == null || first > row) {
+                nextRows[row] = first != null ? first : -1;
+                firstRows.put(name, row);
+                return;
+            }
+            int previous = first;
+            while (nextRows[previous] >= 0 && nextRows[previous] < row) {
+                previous = nextRows[previous];
+            }
+            nextRows[row] = nextRows[previous];
+            nextRows[previous] = row;
+        }
+
+        /**
+         * Remove the first row with the name, which is the row every change to the name addresses.
+         */
+        private void unlinkFirst(final String name) {
+            int next = nextRows[firstRows.get(name)];
+            if (next >= 0) {
+                firstRows.put(name, next);
+            } else {
+                firstRows.remove(name);
+            }
+        }
+    }
+
+    @Override
+    public Presentation get(final int index) {
+        checkIndex(index);
+        return new Presentation(names[index], filename(index), configuredSsml(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the presentation index
+     * @return the name of the presentation, without materializing it
+     */
+    String getName(final int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    /**
+     * @param index the presentation index
+     * @return the aliases of the presentation, in the order they were listed
+     */
+    List<String> getAliases(final int index) {
+        checkIndex(index);
+        return aliases[index].length == 0 ? Collections.emptyList() :
+                Collections.unmodifiableList(Arrays.asList(aliases[index]));
+    }
+
+    /**
+     * @param index the presentation index
+     * @return the filename of the presentation, without materializing it
+     */
+    String getFilename(final int index) {
+        checkIndex(index);
+        return filename(index);
+    }
+
+    /**
+     * @param index the presentation index
+     * @return the SSML configured for the presentation, or null if it is derived from the name
+     */
+    String getConfiguredSsml(final int index) {
+        checkIndex(index);
+        return configuredSsml(index);
+    }
+
+    /**
+     * @return the catalog created for this table, or null if none has been
+     */
+    PresentationCatalog getCatalog() {
+        return catalog;
+    }
+
+    void setCatalog(final PresentationCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    private String filename(final int index) {
+        return value(4 * index);
+    }
+
+    private String configuredSsml(final int index) {
+        String ssml = value(4 * index + 2);
+        return ssml == null || ssml.isEmpty() ? null : ssml;
+    }
+
+    private String value(final int column) {
+        int position = positions[column];
+        int length = positions[column + 1];
+        return length >= 0 ? new String(chunks[position >>> CHUNK_BITS], position & (CHUNK_SIZE - 1), length) : null;
+    }
+
+    /**
+     * A table with changes applied, and where each presentation of the
+     * original table ended up.
+     */
+    static final class Update {
+        private final PresentationTable table;
+        private final int[] newPositions;
+        private final int[] addedPositions;
+
+        private Update(final PresentationTable table, final int[] newPositions, final int[] addedPositions) {
+            this.table = table;
+            this.newPositions = newPositions;
+            this.addedPositions = addedPositions;
+        }
+
+        /**
+         * @return the updated table
+         */
+        PresentationTable getTable() {
+            return table;
+        }
+
+        /**
+         * @param position a position in the original table
+         * @return the position of the same presentation in the updated table,
+         *         or -1 if it was removed or renamed
+         */
+        int getNewPosition(final int position) {
+            return newPositions[position];
+        }
+
+        /**
+         * @return the positions in the updated table of presentations that
+         *         were added or renamed, in ascending order
+         */
+        int[] getAddedPositions() {
+            return addedPositions;
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+        }
+    }
+
+    /**
+     * Accumulates the name column and the character chunks. Values are
+     * appended as they are read, so the fields of a presentation may appear
+     * in any order. A value never spans chunks; one longer than a chunk is
+     * given a chunk of its own.
+     */
+    private static final class Builder {
+        private String[] names;
+        private String[][] aliases;
+        private int[] positions;
+        private char[][] chunks = new char[1][];
+        private int chunkCount;
+        private char[] chunk;
+        private int chunkUsed;
+        private int size;
+
+        private Builder(final int capacity) {
+            names = new String[capacity];
+            aliases = new String[capacity][];
+            positions = new int[4 * capacity];
+        }
+
+        /**
+         * Start with the chunks of an existing table, so its values can be
+         * copied by position.
+         */
+        private Builder(final int capacity, final char[][] sharedChunks) {
+            this(capacity);
+            chunks = Arrays.copyOf(sharedChunks, sharedChunks.length + 1);
+            chunkCount = sharedChunks.length;
+        }
+
+        private void add(final String name, final String filename, final String ssml, final String[] aliases) {
+            start();
+            setAliases(aliases);
+            if (filename != null) {
+                set(0, filename.toCharArray(), 0, filename.length());
+            }
+            if (ssml != null) {
+                set(2, ssml.toCharArray(), 0, ssml.length());
+            }
+            finish(name);
+        }
+
+        /**
+         * Begin the next presentation. Values that are not set are null.
+         */
+        private void start() {
+            if (size == names.length) {
+                int capacity = size + (size >> 1) + 1;
+                names = Arrays.copyOf(names, capacity);
+                aliases = Arrays.copyOf(aliases, capacity);
+                positions = Arrays.copyOf(positions, 4 * capacity);
+            }
+            aliases[size] = NO_ALIASES;
+            int column = 4 * size;
+            positions[column] = 0;
+            positions[column + 1] = -1;
+            positions[column + 2] = 0;
+            positions[column + 3] = -1;
+        }
+
+        /**
+         * Add a presentation whose values are stored in the shared chunks.
+         */
+        private void copy(final PresentationTable table, final int index, final String name) {
+            start();
+            System.arraycopy(table.positions, 4 * index, positions, 4 * size, 4);
+            setAliases(table.aliases[index]);
+            finish(name);
+        }
+
+        private void setAliases(final String[] aliases) {
+            this.aliases[size] = aliases;
+        }
+
+        private void setFilename(final JsonParser parser) throws IOException {
+            set(0, parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        }
+
+        private void setSsml(final JsonParser parser) throws IOException {
+            char[] chars = parser.getTextCharacters();
+            int offset = parser.getTextOffset();
+            int length = parser.getTextLength();
+            if (!isBlank(chars, offset, length)) {
+                set(2, chars, offset, length);
+            }
+        }
+
+        private void set(final int column, final char[] chars, final int offset, final int length) {
+            if (chunk == null || chunkUsed + length > chunk.length) {
+                if (chunkCount == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, 2 * chunkCount);
+                }
+                chunk = new char[Math.max(CHUNK_SIZE, length)];
+                chunks[chunkCount++] = chunk;
+                chunkUsed = 0;
+            }
+            System.arraycopy(chars, offset, chunk, chunkUsed, length);
+            positions[4 * size + column] = (chunkCount - 1) << CHUNK_BITS | chunkUsed;
+            positions[4 * size + column + 1] = length;
+            chunkUsed += length;
+        }
+
+        private void finish(final String name) {
+            names[size++] = name;
+        }
+
+        private PresentationTable build() {
+            if (chunk != null && chunkUsed < chunk.length) {
+                chunks[chunkCount - 1] = Arrays.copyOf(chunk, chunkUsed);
+            }
+            return new PresentationTable(Arrays.copyOf(names, size), Arrays.copyOf(aliases, size),
+                    Arrays.copyOf(chunks, chunkCount),
+                    Arrays.copyOf(positions, 4 * size), size);
+        }
+
+        private static boolean isBlank(final char[] chars, final int offset, final int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (!Character.isWhitespace(chars[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Reference presenter agent. Runs on the presenting laptop, keeps a
+ * connection open to the {@link AgentHub} of a standalone Presenter server
+ * and starts each presentation pushed to it, in place of the SQS polling
+ * script.
+ * <p>
+ * By default the agent only logs the presentations it is asked to start. Set
+ * {@code presenter.agent.command} to the command that opens a presentation,
+ * such as {@code open -a Keynote}; the path of the presentation file, resolved
+ * against {@code presenter.agent.documents}, is appended to it.
+ * <p>
+ * The agent registers with the token set with {@code presenter.agent.token}.
+ * Set {@code presenter.agent.tls} when the hub has a key store; the hub's
+ * certificate is checked against the standard {@code javax.net.ssl.trustStore}
+ * and the host name the agent connects to.
+ */
+public final class PresenterAgent implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PresenterAgent.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final String HOST_PROPERTY = "presenter.agent.host";
+    private static final String PORT_PROPERTY = "presenter.agent.port";
+    private static final String TOKEN_PROPERTY = "presenter.agent.token";
+    private static final String TLS_PROPERTY = "presenter.agent.tls";
+    private static final String ID_PROPERTY = "presenter.agent.id";
+    private static final String COMMAND_PROPERTY = "presenter.agent.command";
+    private static final String DOCUMENTS_PROPERTY = "presenter.agent.documents";
+
+    private static final long MAX_RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final InetSocketAddress hubAddress;
+    private final String agentId;
+    private final String token;
+    private final SocketFactory socketFactory;
+    private final Predicate<MatchedPresentation> launcher;
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    /**
+     * @param hubAddress the address of the hub
+     * @param agentId the ID the agent registers with
+     * @param token the token the hub requires
+     * @param launcher starts a presentation and returns true if it was started
+     */
+    PresenterAgent(final InetSocketAddress hubAddress, final String agentId, final String token,
+                   final Predicate<MatchedPresentation> launcher) {
+        this(hubAddress, agentId, token, SocketFactory.getDefault(), launcher);
+    }
+
+    /**
+     * @param hubAddress the address of the hub
+     * @param agentId the ID the agent registers with
+     * @param token the token the hub requires
+     * @param socketFactory creates the connection to the hub
+     * @param launcher starts a presentation and returns true if it was started
+     */
+    PresenterAgent(final InetSocketAddress hubAddress, final String agentId, final String token,
+                   final SocketFactory socketFactory, final Predicate<MatchedPresentation> launcher) {
+        this.hubAddress = hubAddress;
+        this.agentId = agentId;
+        this.token = token;
+        this.socketFactory = socketFactory;
+        this.launcher = launcher;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        InetSocketAddress hubAddress = new InetSocketAddress(System.getProperty(HOST_PROPERTY, "localhost"),
+                Integer.getInteger(PORT_PROPERTY, PresenterHttpServer.DEFAULT_AGENT_PORT));
+        String agentId = System.getProperty(ID_PROPERTY, InetAddress.getLocalHost().getHostName());
+        String command = System.getProperty(COMMAND_PROPERTY);
+        File documents = new File(System.getProperty(DOCUMENTS_PROPERTY, "."));
+        String token = System.getProperty(TOKEN_PROPERTY);
+        if (token == null || token.isEmpty()) {
+            throw new IllegalStateException(TOKEN_PROPERTY + " must be set to the token the presenter hub requires");
+        }
+        SocketFactory socketFactory = Boolean.getBoolean(TLS_PROPERTY) ?
+                SSLSocketFactory.getDefault() : SocketFactory.getDefault();
+        PresenterAgent agent = new PresenterAgent(hubAddress, agentId, token, socketFactory,
+                command != null ? commandLauncher(command, documents) : PresenterAgent::logOnly);
+        Runtime.getRuntime().addShutdownHook(new Thread(agent::close));
+        agent.run();
+    }
+
+    /**
+     * Connect to the hub and start pushed presentations until the agent is
+     * closed, reconnecting with backoff whenever the connection is lost.
+     */
+    void run() {
+        long delay = 0L;
+        while (!closed) {
+            try (Socket connection = socketFactory.createSocket()) {
+                socket = connection;
+                if (connection instanceof SSLSocket) {
+                    SSLParameters parameters = ((SSLSocket) connection).getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    ((SSLSocket) connection).setSSLParameters(parameters);
+                }
+                connection.setKeepAlive(true);
+                connection.setTcpNoDelay(true);
+                connection.connect(hubAddress);
+                LOGGER.info("Connected to presenter hub at {} as {}", hubAddress, agentId);
+                delay = 0L;
+                serve(connection);
+            } catch (IOException ioe) {
+                if (!closed) {
+                    LOGGER.warn("Lost connection to presenter hub at {}", hubAddress, ioe);
+                }
+            }
+            delay = Math.min(MAX_RECONNECT_DELAY_MILLIS, Math.max(500L, 2 * delay));
+            if (!closed) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void serve(final Socket connection) throws IOException {
+        OutputStream os = connection.getOutputStream();
+        ObjectNode registration = JSON.createObjectNode();
+        registration.put("type", AgentHub.REGISTER);
+        registration.put("agentId", agentId);
+        registration.put("token", token);
+        AgentHub.writeMessage(os, registration);
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        for (JsonNode message = AgentHub.readMessage(reader); message != null;
+             message = AgentHub.readMessage(reader)) {
+            if (AgentHub.START.equals(message.path("type").asText())) {
+                ObjectNode ack = JSON.createObjectNode();
+                ack.put("type", AgentHub.ACK);
+                ack.put("id", message.path("id").asText());
+                ack.put("started", start(JSON.treeToValue(message.get("presentation"), MatchedPresentation.class)));
+                AgentHub.writeMessage(os, ack);
+            }
+        }
+    }
+
+    private boolean start(final MatchedPresentation presentation) {
+        try {
+            return launcher.test(presentation);
+        } catch (RuntimeException re) {
+            LOGGER.error("Unable to start presentation {}", presentation, re);
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Socket connection = socket;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException ioe) {
+                LOGGER.debug("Error closing hub connection", ioe);
+            }
+        }
+    }
+
+    private static boolean logOnly(final MatchedPresentation presentation) {
+        LOGGER.info("Starting presentation: {}", presentation.getPresentation().getFilename());
+        return true;
+    }
+
+    private static Predicate<MatchedPresentation> commandLauncher(final String command, final File documents) {
+        return presentation -> {
+            File file = new File(documents, presentation.getPresentation().getFilename());
+            List<String> commandLine = new ArrayList<>(Arrays.asList(command.trim().split("\\s+")));
+            commandLine.add(file.getAbsolutePath());
+            LOGGER.info("Starting presentation: {}", file);
+            try {
+                new ProcessBuilder(commandLine).inheritIO().start();
+                return true;
+            } catch (IOException ioe) {
+                LOGGER.error("Unable to run {}", commandLine, ioe);
+                return false;
+            }
+        };
+    }
+}
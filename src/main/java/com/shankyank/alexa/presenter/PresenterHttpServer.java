@@ -0,0 +1,392 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.Sdk;
+import com.amazon.speech.speechlet.SpeechletException;
+import com.amazon.speech.speechlet.SpeechletRequestHandler;
+import com.amazon.speech.speechlet.SpeechletRequestHandlerException;
+import com.amazon.speech.speechlet.authentication.SpeechletRequestSignatureVerifier;
+import com.amazon.speech.speechlet.verifier.ApplicationIdSpeechletRequestVerifier;
+import com.amazon.speech.speechlet.verifier.CardSpeechletResponseVerifier;
+import com.amazon.speech.speechlet.verifier.OutputSpeechSpeechletResponseVerifier;
+import com.amazon.speech.speechlet.verifier.ResponseSizeSpeechletResponseVerifier;
+import com.amazon.speech.speechlet.verifier.TimestampSpeechletRequestVerifier;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Standalone HTTP endpoint for the Presenter application, for running the
+ * skill on our own hosts rather than on Lambda.
+ * <p>
+ * Requests are handled by a fixed pool of worker threads with a bounded
+ * queue. Requests that arrive while the queue is full are answered with 503
+ * on the accepting thread instead of waiting. Alexa requests are checked the
+ * same way as by the Alexa Skills Kit servlet: the request signature, the
+ * timestamp and the application ID, configured with the same system
+ * properties. Alexa requests are small, so a request body longer than
+ * {@value #MAX_REQUEST_BYTES} bytes is answered with 413 before its signature
+ * is checked, without reading more of it than that. {@code GET /stats}
+ * reports throughput and latency.
+ * <p>
+ * The server uses HTTPS when a key store is configured with the standard
+ * {@code javax.net.ssl.keyStore} system properties, and plain HTTP otherwise
+ * for use behind a proxy that terminates TLS.
+ * <p>
+ * When {@code presenter.agent.port} is set the server also accepts
+ * connections from {@link PresenterAgent}s on that port and pushes starts to
+ * them directly, using SNS only when no agent is connected. Agents must
+ * present the token set with {@code presenter.agent.token}, and connect over
+ * TLS when the server has a key store.
+ */
+public final class PresenterHttpServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PresenterHttpServer.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /** The path Alexa requests are posted to. */
+    static final String SKILL_PATH = "/alexa";
+    /** The path that reports throughput and latency. */
+    static final String STATS_PATH = "/stats";
+
+    /** Time to handle an HTTP request, including signature verification. */
+    static final String HTTP_REQUEST_TIME = "HttpRequestTime";
+    /** Requests answered with 503 because every worker was busy and the queue was full. */
+    static final String HTTP_REJECTED = "HttpRejected";
+    /** Requests answered with a 4xx or 5xx status. */
+    static final String HTTP_FAILURE = "HttpFailure";
+    /** The longest request body accepted. */
+    static final int MAX_REQUEST_BYTES = 128 * 1024;
+
+    private static final String PORT_PROPERTY = "presenter.http.port";
+    private static final String THREADS_PROPERTY = "presenter.http.threads";
+    private static final String QUEUE_CAPACITY_PROPERTY = "presenter.http.queueCapacity";
+    private static final String AGENT_PORT_PROPERTY = "presenter.agent.port";
+    private static final String AGENT_TOKEN_PROPERTY = "presenter.agent.token";
+    private static final String AGENT_ACK_TIMEOUT_PROPERTY = "presenter.agent.ackTimeoutMillis";
+    private static final int DEFAULT_PORT = 8443;
+    /** The port presenter agents connect to by default. */
+    static final int DEFAULT_AGENT_PORT = 8765;
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final long DEFAULT_TIMESTAMP_TOLERANCE_SECONDS = 150;
+
+    private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    /** Set while a request rejected by the worker pool runs on the accepting thread. */
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final PresenterSpeechlet speechlet;
+    private final SpeechletRequestHandler requestHandler;
+    private final boolean verifySignatures;
+    private final MetricsRegistry metricsRegistry;
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * @param server the unstarted server
+     * @param speechlet the speechlet that handles Alexa requests
+     * @param metricsRegistry the registry reported by the stats endpoint
+     * @param threads the number of worker threads
+     * @param queueCapacity the number of requests that may wait for a worker
+     * @param verifySignatures false to accept requests that are not signed by Alexa, for local testing
+     */
+    PresenterHttpServer(final HttpServer server, final PresenterSpeechlet speechlet,
+                        final MetricsRegistry metricsRegistry, final int threads, final int queueCapacity,
+                        final boolean verifySignatures) {
+        this.server = server;
+        this.speechlet = speechlet;
+        this.metricsRegistry = metricsRegistry;
+        this.verifySignatures = verifySignatures;
+        this.requestHandler = new SpeechletRequestHandler(
+                Arrays.asList(new ApplicationIdSpeechletRequestVerifier(getSupportedApplicationIds()),
+                        new TimestampSpeechletRequestVerifier(getTimestampToleranceSeconds(), TimeUnit.SECONDS)),
+                Arrays.asList(new ResponseSizeSpeechletResponseVerifier(),
+                        new OutputSpeechSpeechletResponseVerifier(), new CardSpeechletResponseVerifier()));
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ?
+                new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                new WorkerThreadFactory(), PresenterHttpServer::reject);
+        server.setExecutor(workers);
+        server.createContext(SKILL_PATH, handler(this::handleSkillRequest));
+        server.createContext(STATS_PATH, handler(this::handleStatsRequest));
+    }
+
+    public static void main(final String[] args) throws Exception {
+        int port = Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+        int threads = Integer.getInteger(THREADS_PROPERTY, 2 * Runtime.getRuntime().availableProcessors());
+        int queueCapacity = Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY);
+        boolean verifySignatures = !Boolean.getBoolean(Sdk.DISABLE_REQUEST_SIGNATURE_CHECK_SYSTEM_PROPERTY);
+        if (!verifySignatures) {
+            LOGGER.warn("Request signature verification is disabled");
+        }
+
+        SessionInitializer initializer = new S3SessionInitializer();
+        Integer agentPort = Integer.getInteger(AGENT_PORT_PROPERTY);
+        if (agentPort != null) {
+            String token = System.getProperty(AGENT_TOKEN_PROPERTY);
+            if (token == null || token.isEmpty()) {
+                throw new IllegalStateException(String.format("%s must be set to accept presenter agents on port %d",
+                        AGENT_TOKEN_PROPERTY, agentPort));
+            }
+            AgentHub hub = AgentHub.start(new InetSocketAddress(agentPort), token);
+            initializer = new DirectPushSessionInitializer(initializer, hub, Long.getLong(AGENT_ACK_TIMEOUT_PROPERTY,
+                    DirectPushPresentationStarter.DEFAULT_ACK_TIMEOUT_MILLIS));
+        }
+        PresenterSpeechlet speechlet = new PresenterSpeechlet(initializer);
+        try {
+            speechlet.prime();
+        } catch (SpeechletException se) {
+            LOGGER.warn("Unable to prime request path", se);
+        }
+        PresenterHttpServer server = new PresenterHttpServer(createServer(new InetSocketAddress(port)), speechlet,
+                MetricsRegistry.getDefault(), threads, queueCapacity, verifySignatures);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(5)));
+        server.start();
+    }
+
+    /**
+     * Start accepting requests.
+     */
+    void start() {
+        server.start();
+        LOGGER.info("Listening on {} with {} workers", getAddress(), workers.getCorePoolSize());
+    }
+
+    /**
+     * Stop accepting requests and wait for requests in progress to finish.
+     * @param delaySeconds the maximum time to wait
+     */
+    void stop(final int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdown();
+        try {
+            workers.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the address the server is bound to
+     */
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handleSkillRequest(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, METHOD_NOT_ALLOWED, "Alexa requests must be posted");
+            return;
+        }
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null && isLongerThan(contentLength, MAX_REQUEST_BYTES)) {
+            sendError(exchange, PAYLOAD_TOO_LARGE, "Request is longer than " + MAX_REQUEST_BYTES + " bytes");
+            return;
+        }
+        byte[] request;
+        try {
+            request = Streams.readFully(exchange.getRequestBody(), MAX_REQUEST_BYTES);
+        } catch (Streams.TooLargeException tle) {
+            sendError(exchange, PAYLOAD_TOO_LARGE, tle.getMessage());
+            return;
+        }
+        byte[] response;
+        try {
+            if (verifySignatures) {
+                SpeechletRequestSignatureVerifier.checkRequestSignature(request,
+                        exchange.getRequestHeaders().getFirst(Sdk.SIGNATURE_REQUEST_HEADER),
+                        exchange.getRequestHeaders().getFirst(Sdk.SIGNATURE_CERTIFICATE_CHAIN_URL_REQUEST_HEADER));
+            }
+            response = requestHandler.handleSpeechletCall(speechlet, request);
+        } catch (SecurityException | SpeechletRequestHandlerException ex) {
+            LOGGER.error("Rejected Alexa request", ex);
+            sendError(exchange, BAD_REQUEST, ex.getMessage());
+            return;
+        } catch (SpeechletException | RuntimeException ex) {
+            LOGGER.error("Unable to handle Alexa request", ex);
+            sendError(exchange, INTERNAL_SERVER_ERROR, ex.getMessage());
+            return;
+        }
+        send(exchange, OK, response);
+    }
+
+    /**
+     * @return true if a Content-Length header is longer than the limit; a malformed one is left to the body limit
+     */
+    private static boolean isLongerThan(final String contentLength, final int limit) {
+        try {
+            return Long.parseLong(contentLength.trim()) > limit;
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    private void handleStatsRequest(final HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, METHOD_NOT_ALLOWED, "Stats must be read with GET");
+            return;
+        }
+        send(exchange, OK, JSON.writeValueAsBytes(getStats()));
+    }
+
+    /**
+     * @return throughput and latency since the server started
+     */
+    ObjectNode getStats() {
+        double uptimeSeconds = (System.nanoTime() - startedAt) / 1e9;
+        MetricsRegistry.Timer requests = metricsRegistry.timer(HTTP_REQUEST_TIME);
+        ObjectNode stats = JSON.createObjectNode();
+        stats.put("uptimeSeconds", uptimeSeconds);
+        stats.put("requests", requests.getCount());
+        stats.put("requestsPerSecond", uptimeSeconds > 0 ? requests.getCount() / uptimeSeconds : 0.0);
+        stats.put("workers", workers.getCorePoolSize());
+        stats.put("activeWorkers", workers.getActiveCount());
+        stats.put("queuedRequests", workers.getQueue().size());
+        ObjectNode counters = stats.putObject("counters");
+        metricsRegistry.getCounters().forEach(counters::put);
+        ObjectNode timers = stats.putObject("timers");
+        for (Map.Entry<String, MetricsRegistry.Timer> entry : metricsRegistry.getTimers().entrySet()) {
+            MetricsRegistry.Timer timer = entry.getValue();
+            ObjectNode node = timers.putObject(entry.getKey());
+            node.put("count", timer.getCount());
+            node.put("meanMillis", timer.getMeanNanos() / 1e6);
+            node.put("p50Millis", timer.getPercentileNanos(50) / 1e6);
+            node.put("p95Millis", timer.getPercentileNanos(95) / 1e6);
+            node.put("p99Millis", timer.getPercentileNanos(99) / 1e6);
+            node.put("maxMillis", timer.getMaxNanos() / 1e6);
+        }
+        return stats;
+    }
+
+    /**
+     * Wrap a request handler to time it and to answer requests rejected by
+     * the worker pool without handling them.
+     */
+    private HttpHandler handler(final HttpHandler delegate) {
+        return exchange -> {
+            try {
+                if (Boolean.TRUE.equals(REJECTED.get())) {
+                    metricsRegistry.increment(HTTP_REJECTED, 1L);
+                    sendError(exchange, SERVICE_UNAVAILABLE, "Server is busy");
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    delegate.handle(exchange);
+                } finally {
+                    metricsRegistry.timer(HTTP_REQUEST_TIME).record(System.nanoTime() - start);
+                }
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private void sendError(final HttpExchange exchange, final int status, final String message) throws IOException {
+        metricsRegistry.increment(HTTP_FAILURE, 1L);
+        ObjectNode error = JSON.createObjectNode();
+        error.put("status", status);
+        error.put("message", message);
+        send(exchange, status, JSON.writeValueAsBytes(error));
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+
+    /**
+     * Run a request that the worker pool cannot accept on the accepting
+     * thread, flagged so that it is answered with 503 immediately.
+     */
+    private static void reject(final Runnable exchange, final ThreadPoolExecutor workers) {
+        if (workers.isShutdown()) {
+            return;
+        }
+        REJECTED.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            REJECTED.remove();
+        }
+    }
+
+    /**
+     * @return an HTTPS server if a key store is configured, otherwise an HTTP server
+     */
+    static HttpServer createServer(final InetSocketAddress address) throws IOException {
+        if (System.getProperty("javax.net.ssl.keyStore") == null) {
+            return HttpServer.create(address, 0);
+        }
+        HttpsServer server = HttpsServer.create(address, 0);
+        try {
+            server.setHttpsConfigurator(new HttpsConfigurator(SSLContext.getDefault()));
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException("Unable to configure TLS", nsae);
+        }
+        return server;
+    }
+
+    private static Set<String> getSupportedApplicationIds() {
+        String ids = System.getProperty(Sdk.SUPPORTED_APPLICATION_IDS_SYSTEM_PROPERTY);
+        if (ids == null || ids.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> supported = new HashSet<>();
+        for (String id : ids.split(",")) {
+            if (!id.trim().isEmpty()) {
+                supported.add(id.trim());
+            }
+        }
+        return supported;
+    }
+
+    private static long getTimestampToleranceSeconds() {
+        return Long.getLong(Sdk.TIMESTAMP_TOLERANCE_SYSTEM_PROPERTY, DEFAULT_TIMESTAMP_TOLERANCE_SECONDS);
+    }
+
+    /**
+     * Names the worker threads.
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(runnable, "presenter-http-" + count.incrementAndGet());
+        }
+    }
+}
@@ -6,18 +6,14 @@ import com.amazon.speech.speechlet.*;
 import com.amazon.speech.ui.Reprompt;
 import com.amazon.speech.ui.SsmlOutputSpeech;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.codec.language.DoubleMetaphone;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 
-import static com.shankyank.alexa.presenter.Presentation.LIST_OF_PRESENTATIONS;
-
 /**
  * The Presenter Speechlet application.
  */
@@ -28,17 +24,51 @@ public class PresenterSpeechlet implements Speechlet {
     public static final String PRESENTATION_SLOT = "Presentation";
     public static final String LIST_PRESENTATIONS_INTENT = "ListPresentations";
     public static final String PRESENTATION_KEY = "presenter.selectedPresentation";
-    public static final String PRESENTATIONS_KEY = "presenter.presentations";
+    public static final String CATALOG_VERSION_KEY = "presenter.catalogVersion";
+    public static final String CANDIDATES_KEY = "presenter.candidates";
+    public static final String LIST_PAGE_KEY = "presenter.listPage";
 
     private static final String HELP_TEXT =
             "<s>you can list presentations or start a presentation</s><s>what would you like?</s>";
-    private static final String NO_PRESENTATIONS_TEXT = "<s>no presentations are available</s><s>goodbye</s>";
-    private static final String HELP_REPROMPT = "what would you like?";
-    private static final String START_REPROMPT = "which presentation should I start?";
+
+    private static final SsmlTemplate HELP = SsmlTemplate.compile(HELP_TEXT);
+    private static final SsmlTemplate NO_PRESENTATIONS =
+            SsmlTemplate.compile("<s>no presentations are available</s><s>goodbye</s>");
+    private static final SsmlTemplate GOODBYE = SsmlTemplate.compile("goodbye");
+    private static final SsmlTemplate UNRECOGNIZED =
+            SsmlTemplate.compile("<s>i don't recognize that presentation</s>" + HELP_TEXT);
+    private static final SsmlTemplate CONFIRM = SsmlTemplate.compile("did you mean %s");
+    private static final SsmlTemplate DISAMBIGUATE = SsmlTemplate.compile("did you mean %s or %s");
+    private static final SsmlTemplate CHOOSE = SsmlTemplate.compile("which one, %s or %s?");
+    private static final SsmlTemplate STARTING = SsmlTemplate.compile("starting %s");
+    private static final SsmlTemplate START_FAILED =
+            SsmlTemplate.compile("<s>unable to start presentation</s><s>please try again later</s>");
+
+    private static final Reprompt HELP_REPROMPT = SsmlTemplate.reprompt("what would you like?");
+    private static final Reprompt START_REPROMPT = SsmlTemplate.reprompt("which presentation should I start?");
+
+    /** The number of matches offered when the best matches are too close to pick one. */
+    private static final int DISAMBIGUATION_CANDIDATES = 2;
+    /** Matches whose confidence is within this margin of the best match are offered to the user. */
+    private static final double DISAMBIGUATION_MARGIN = 0.05;
 
     private static final ObjectMapper JSON = new ObjectMapper();
 
+    private static final String SESSION_STARTED_OPERATION = "SessionStarted";
+    /** The time allowed to answer a request, including the calls to S3 and SNS. */
+    private static final long REQUEST_BUDGET_MILLIS =
+            Long.getLong("presenter.requestBudgetMillis", Deadline.DEFAULT_BUDGET_MILLIS);
+    /** The fraction of spoken names whose matching is traced. */
+    private static final double MATCH_TRACE_RATE = Double.parseDouble(System.getProperty(
+            "presenter.matchTraceRate", String.valueOf(MatchTraceBuffer.DEFAULT_SAMPLE_RATE)));
+
     private final SessionInitializer sessionInitializer;
+    private final MetricsRegistry metricsRegistry;
+    private final SessionCodec sessionCodec;
+    private final MatchTraceBuffer matchTraces;
+    private final CatalogStore catalogStore = new CatalogStore();
+    private final MatchCache matchCache = new MatchCache();
+    private final ResponseCache responseCache = new ResponseCache();
 
     PresenterSpeechlet() {
         this(new SessionInitializer() {
@@ -57,227 +87,469 @@ public class PresenterSpeechlet implements Speechlet {
     }
 
     public PresenterSpeechlet(final SessionInitializer sessionInitializer) {
-        this.sessionInitializer = sessionInitializer;
+        this(sessionInitializer, MetricsRegistry.getDefault());
+    }
+
+    PresenterSpeechlet(final SessionInitializer sessionInitializer, final MetricsRegistry metricsRegistry) {
+        this(sessionInitializer, metricsRegistry, new CompactSessionCodec());
+    }
+
+    PresenterSpeechlet(final SessionInitializer sessionInitializer, final MetricsRegistry metricsRegistry,
+                       final SessionCodec sessionCodec) {
+        this(sessionInitializer, metricsRegistry, sessionCodec, new MatchTraceBuffer(MATCH_TRACE_RATE));
+    }
+
+    PresenterSpeechlet(final SessionInitializer sessionInitializer, final MetricsRegistry metricsRegistry,
+                       final SessionCodec sessionCodec, final MatchTraceBuffer matchTraces) {
+        this.sessionInitializer = InstrumentedSessionInitializer.wrap(sessionInitializer);
+        this.metricsRegistry = metricsRegistry;
+        this.sessionCodec = sessionCodec;
+        this.matchTraces = matchTraces;
     }
 
     public void onSessionStarted(SessionStartedRequest request, Session session) throws SpeechletException {
-        loadPresentations(session);
+        RequestMetrics metrics = RequestMetrics.begin(SESSION_STARTED_OPERATION, metricsRegistry);
+        Deadline.begin(REQUEST_BUDGET_MILLIS);
+        try {
+            loadPresentations(session);
+        } catch (SpeechletException | RuntimeException ex) {
+            endRequest(metrics);
+            throw ex;
+        }
     }
 
     public SpeechletResponse onLaunch(LaunchRequest request, Session session) throws SpeechletException {
-        return hasPresentations(session) ?
-                createContinueSessionResponse(HELP_REPROMPT, HELP_TEXT) :
-                createEndSessionResponse(NO_PRESENTATIONS_TEXT);
+        RequestMetrics metrics = beginRequest("Launch");
+        try {
+            PresentationCatalog catalog = getCatalog(session);
+            return !catalog.isEmpty() ?
+                    responseCache.get("Help", null, 0,
+                            () -> createContinueSessionResponse(HELP_REPROMPT, HELP.speech())) :
+                    createNoPresentationsResponse();
+        } finally {
+            endRequest(metrics);
+        }
     }
 
     public SpeechletResponse onIntent(IntentRequest request, Session session) throws SpeechletException {
         Intent intent = request.getIntent();
         LOGGER.debug("[{}] Handling intent: {}", session.getSessionId(), intent.getName());
 
-        if (!hasPresentations(session)) {
-            return createEndSessionResponse(NO_PRESENTATIONS_TEXT);
+        RequestMetrics metrics = beginRequest(intent.getName());
+        try {
+            return handleIntent(intent, session);
+        } finally {
+            endRequest(metrics);
+        }
+    }
+
+    private SpeechletResponse handleIntent(final Intent intent, final Session session) throws SpeechletException {
+        PresentationCatalog catalog = getCatalog(session);
+        if (catalog.isEmpty()) {
+            return createNoPresentationsResponse();
         }
 
         switch (intent.getName()) {
             case START_PRESENTATION_INTENT:
-                return onStartPresentation(intent, session);
+                return onStartPresentation(intent, session, catalog);
             case LIST_PRESENTATIONS_INTENT:
-                return listPresentations(session);
+                return listPresentations(session, catalog, 0);
+            case "AMAZON.NextIntent":
+                return listPresentations(session, catalog, getListPage(session) + 1);
+            case "AMAZON.PreviousIntent":
+                return listPresentations(session, catalog, getListPage(session) - 1);
             case "AMAZON.YesIntent":
-                return startPresentation(session);
+                return session.getAttribute(CANDIDATES_KEY) != null ?
+                        askToChoose(session, catalog) : startPresentation(session, catalog);
             case "AMAZON.NoIntent":
                 session.removeAttribute(PRESENTATION_KEY);
-                return listPresentations(session);
+                session.removeAttribute(CANDIDATES_KEY);
+                return listPresentations(session, catalog, 0);
             case "AMAZON.StopIntent":
             case "AMAZON.CancelIntent":
-                return createEndSessionResponse("goodbye");
+                return responseCache.get("Goodbye", null, 0, () -> createEndSessionResponse(GOODBYE.speech()));
         }
         return null;
     }
 
     public void onSessionEnded(SessionEndedRequest request, Session session) throws SpeechletException {
-        session.removeAttribute(PRESENTATION_KEY);
+        RequestMetrics metrics = beginRequest("SessionEnded");
+        try {
+            session.removeAttribute(PRESENTATION_KEY);
+            session.removeAttribute(CANDIDATES_KEY);
+            session.removeAttribute(LIST_PAGE_KEY);
+        } finally {
+            endRequest(metrics);
+        }
+    }
+
+    /**
+     * The SDK calls {@link #onSessionStarted(SessionStartedRequest, Session)}
+     * before the handler for the first request of a session; both callbacks
+     * are reported as a single request, and share a single {@link Deadline}.
+     */
+    private RequestMetrics beginRequest(final String operation) {
+        RequestMetrics metrics = RequestMetrics.current();
+        if (SESSION_STARTED_OPERATION.equals(metrics.getOperation())) {
+            metrics.setOperation(operation);
+            return metrics;
+        }
+        Deadline.begin(REQUEST_BUDGET_MILLIS);
+        return RequestMetrics.begin(operation, metricsRegistry);
+    }
+
+    private void endRequest(final RequestMetrics metrics) {
+        Deadline.end();
+        MatchTrace.end();
+        matchTraces.flushIfDue();
+        metrics.end();
+    }
+
+    /**
+     * Exercise the request path before the first request arrives: load the
+     * catalog, build its match index, round-trip a match through the session
+     * serializer and create the clients used to start presentations.
+     * <p>
+     * The {@link CompiledCatalog} bundled with the skill is stored first, so a
+     * catalog with the same content uses its precompiled match index.
+     * @throws SpeechletException if the catalog or presentation starter cannot be loaded
+     */
+    void prime() throws SpeechletException {
+        loadCompiledCatalog();
+        PresentationCatalog catalog = catalogStore.put(sessionInitializer.getAvailablePresentations());
+        if (!catalog.isEmpty()) {
+            MatchedPresentation matched = catalog.getIndex().match(catalog.getPresentations().get(0).getName());
+            if (matched != null) {
+                sessionCodec.decode(sessionCodec.encode(matched));
+            }
+            catalog.getListing();
+        }
+        PresentationStarter starter = sessionInitializer.getPresentationStarter();
+        if (starter != null) {
+            starter.prime();
+        }
+    }
+
+    private void loadCompiledCatalog() {
+        Path compiled = CompiledCatalog.locate();
+        if (compiled == null) {
+            LOGGER.debug("No compiled catalog is bundled");
+            return;
+        }
+        try {
+            catalogStore.put(CompiledCatalog.load(compiled).getPresentations());
+        } catch (IOException ioe) {
+            LOGGER.warn("Ignoring compiled catalog {}; the match index will be built instead", compiled, ioe);
+        }
     }
 
-    private void loadPresentations(final Session session) throws SpeechletException {
-            List<Presentation> presentations = sessionInitializer.getAvailablePresentations();
-            LOGGER.debug("[{}]: presentations={}", session.getSessionId(), presentations);
-            session.setAttribute(PRESENTATIONS_KEY, toJson(presentations));
+    /**
+     * Discard state that may be stale, such as after the container is restored
+     * from a snapshot.
+     */
+    void refresh() {
+        sessionInitializer.refresh();
     }
 
-    private boolean hasPresentations(final Session session) throws SpeechletException {
-        return !getPresentationList(session).isEmpty();
+    /**
+     * @return the cache of the responses that are the same for every request with the same catalog
+     */
+    ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Load the presentations available to the session's user.
+     */
+    private PresentationCatalog loadPresentations(final Session session) throws SpeechletException {
+        String userId = session.getUser() != null ? session.getUser().getUserId() : null;
+        List<Presentation> presentations = userId != null ?
+                sessionInitializer.getAvailablePresentations(userId) :
+                sessionInitializer.getAvailablePresentations();
+        LOGGER.debug("[{}]: presentations={}", session.getSessionId(), presentations);
+        PresentationCatalog catalog = catalogStore.put(presentations);
+        session.setAttribute(CATALOG_VERSION_KEY, catalog.getVersion());
+        return catalog;
+    }
+
+    /**
+     * Resolve the session's catalog version against the catalog store, reloading
+     * the presentations if this container does not have that version.
+     */
+    private PresentationCatalog getCatalog(final Session session) throws SpeechletException {
+        Object version = session.getAttribute(CATALOG_VERSION_KEY);
+        PresentationCatalog catalog = version != null ? catalogStore.get(version.toString()) : null;
+        RequestMetrics.current().increment(catalog != null ?
+                RequestMetrics.CATALOG_STORE_HIT : RequestMetrics.CATALOG_STORE_MISS);
+        if (catalog == null) {
+            LOGGER.debug("[{}] Catalog version {} is not cached; reloading presentations", session.getSessionId(),
+                    version);
+            catalog = loadPresentations(session);
+        }
+        return catalog;
     }
 
     private boolean isSlotEmpty(final Slot slot) {
         return slot == null || slot.getValue() == null || slot.getValue().trim().isEmpty();
     }
 
-    private SpeechletResponse onStartPresentation(final Intent intent, final Session session) throws SpeechletException {
+    private SpeechletResponse onStartPresentation(final Intent intent, final Session session,
+                                                  final PresentationCatalog catalog) throws SpeechletException {
         SpeechletResponse response;
         Slot presentationSlot = intent.getSlot(PRESENTATION_SLOT);
         if (isSlotEmpty(presentationSlot)) {
             LOGGER.debug("[{}] {} Slot was not provided. Prompting for presentation name.", session.getSessionId(),
                     PRESENTATION_SLOT);
-            response = listPresentations(session);
+            response = listPresentations(session, catalog, 0);
         } else {
-            MatchedPresentation matched = matchPresentation(presentationSlot, session);
+            List<MatchedPresentation> matches = matchPresentation(presentationSlot, session, catalog);
+            MatchedPresentation matched = matches.isEmpty() ? null : matches.get(0);
             LOGGER.debug("[{}] Found match: {}", session.getSessionId(), matched);
-            if (matched.getConfidence() >= 0.85) {
+            if (matched == null) {
+                setConfidenceBucket("none");
+                LOGGER.debug("[{}] Unrecognized presentation. No match with confidence >= {}",
+                        session.getSessionId(), PresentationIndex.CONFIRMATION_THRESHOLD);
+                response = createContinueSessionResponse(START_REPROMPT, UNRECOGNIZED.speech());
+            } else if (isAmbiguous(matches)) {
+                setConfidenceBucket("ambiguous");
+                MatchedPresentation alternative = matches.get(1);
+                LOGGER.debug("[{}] Match confidence {} is within {} of {}; requesting disambiguation",
+                        session.getSessionId(), matched.getConfidence(), DISAMBIGUATION_MARGIN, alternative);
+                session.removeAttribute(PRESENTATION_KEY);
+                session.setAttribute(CANDIDATES_KEY, toJson(new String[] {
+                        matched.getPresentation().getName(), alternative.getPresentation().getName() }));
+                response = createContinueSessionResponse(START_REPROMPT, DISAMBIGUATE.speech(
+                        matched.getPresentation().getSsml(), alternative.getPresentation().getSsml()));
+            } else if (matched.getConfidence() >= 0.85) {
+                setConfidenceBucket("high");
                 LOGGER.debug("[{}] Match confidence {} >= 0.85; starting presentation", session.getSessionId(),
                         matched.getConfidence());
-                session.setAttribute(PRESENTATION_KEY, toJson(matched));
-                response = startPresentation(session);
-            } else if (matched.getConfidence() >= 0.50) {
+                setSelectedPresentation(session, matched);
+                response = startPresentation(session, catalog);
+            } else {
+                setConfidenceBucket("confirm");
                 LOGGER.debug("[{}] 0.85 > Match Confidence {} >= 0.5; requesting confirmation", session.getSessionId(),
                         matched.getConfidence());
-                session.setAttribute(PRESENTATION_KEY, toJson(matched));
-                response = createContinueSessionResponse(START_REPROMPT, "did you mean %s", matched.getPresentation().getSsml());
-            } else {
-                LOGGER.debug("[{}] Unrecognized presentation. Confidence < 0.5 for best match: {}",
-                        session.getSessionId(), matched);
-                response = createContinueSessionResponse(START_REPROMPT, "<s>i don't recognize that presentation</s>%s",
-                        HELP_TEXT);
+                setSelectedPresentation(session, matched);
+                response = createContinueSessionResponse(START_REPROMPT,
+                        CONFIRM.speech(matched.getPresentation().getSsml()));
             }
         }
         return response;
     }
 
-    private SpeechletResponse startPresentation(final Session session) throws SpeechletException {
-        MatchedPresentation presentation = getSessionAttribute(session, PRESENTATION_KEY, MatchedPresentation.class);
+    /**
+     * Record what was done with the matches, in the request metrics and the match trace.
+     */
+    private static void setConfidenceBucket(final String bucket) {
+        RequestMetrics.current().setProperty(RequestMetrics.CONFIDENCE_BUCKET, bucket);
+        MatchTrace.current().setBranch(bucket);
+    }
+
+    private SpeechletResponse startPresentation(final Session session, final PresentationCatalog catalog)
+            throws SpeechletException {
+        MatchedPresentation presentation = getSelectedPresentation(session);
         LOGGER.info("[{}] Starting Presentation: {}", session.getSessionId(), presentation);
         SpeechletResponse response;
         if (presentation == null) {
-            response = listPresentations(session);
+            response = listPresentations(session, catalog, 0);
         } else {
             PresentationStarter starter = sessionInitializer.getPresentationStarter();
             if (starter == null) {
                 throw new SpeechletException("No presentation starter configured");
             }
             if (starter.startPresentation(session, presentation)) {
-                response = createEndSessionResponse("starting %s", presentation.getPresentation().getSsml());
+                response = createEndSessionResponse(STARTING.speech(presentation.getPresentation().getSsml()));
             } else {
-                response = createEndSessionResponse("<s>unable to start presentation</s><s>please try again later</s>");
+                response = createEndSessionResponse(START_FAILED.speech());
             }
         }
         return response;
     }
 
-    private SpeechletResponse listPresentations(final Session session) throws SpeechletException {
-        return createContinueSessionResponse(HELP_REPROMPT, generatePresentationListText(session));
-    }
-
-    private MatchedPresentation matchPresentation(final Slot slot, final Session session) throws SpeechletException {
-        List<Presentation> presentations = getPresentationList(session);
-        SortedSet<MatchedPresentation> matches = new TreeSet<>();
-        String spokenName = slot.getValue();
-        for (Presentation presentation : presentations) {
-            String name = presentation.getName();
-            double levConfidence = getLevenshteinConfidence(spokenName, name);
-            double metaConfidence = getMetaphoneConfidence(spokenName, name);
-            double confidence = Math.max(levConfidence, metaConfidence);
-            LOGGER.debug("[{}] presentation name=\"{}\", spoken=\"{}\", levenshtein={}, metaphone={}, confidence={}",
-                    session.getSessionId(), presentation.getName(), spokenName, levConfidence, metaConfidence,
-                    confidence);
-            matches.add(new MatchedPresentation(spokenName, confidence, presentation));
+    /**
+     * Yes does not answer a "did you mean A or B" prompt, so ask again which
+     * of the offered presentations to start. No is taken as neither, and
+     * lists the presentations like any other no.
+     */
+    private SpeechletResponse askToChoose(final Session session, final PresentationCatalog catalog)
+            throws SpeechletException {
+        List<Presentation> offered = getOfferedCandidates(session, catalog);
+        if (offered.size() < DISAMBIGUATION_CANDIDATES) {
+            session.removeAttribute(CANDIDATES_KEY);
+            return listPresentations(session, catalog, 0);
         }
-        MatchedPresentation bestMatch = matches.last();
-        LOGGER.debug("[{}] spoken=\"{}\", best match={}", session.getSessionId(), spokenName, bestMatch);
-        return bestMatch;
+        return createContinueSessionResponse(START_REPROMPT,
+                CHOOSE.speech(offered.get(0).getSsml(), offered.get(1).getSsml()));
     }
 
-    private double getLevenshteinConfidence(final String actual, final String expected) {
-        int distance = StringUtils.getLevenshteinDistance(actual, expected);
-        LOGGER.debug("levenshteinDistance({}, {}) = {}", actual, expected, distance);
-        int nameLength = expected.length();
-        return (double) (nameLength - distance) / (double) nameLength;
+    /**
+     * Read a page of the presentation list and remember it so the next and
+     * previous intents can move from it.
+     */
+    private SpeechletResponse listPresentations(final Session session, final PresentationCatalog catalog,
+                                                final int page) {
+        PresentationListing listing = catalog.getListing();
+        int current = listing.clamp(page);
+        session.setAttribute(LIST_PAGE_KEY, current);
+        return responseCache.get("List", catalog.getVersion(), current,
+                () -> createContinueSessionResponse(HELP_REPROMPT, listing.getSpeech(current)));
     }
 
-    private double getMetaphoneConfidence(final String actual, final String expected) {
-        DoubleMetaphone metaphone = new DoubleMetaphone();
-        metaphone.setMaxCodeLen(20);
-        if (metaphone.isDoubleMetaphoneEqual(actual, expected)) {
-            LOGGER.debug("metaphone({}, {}) matches!", actual, expected);
-            return 1.0;
+    /**
+     * @return the page of the presentation list last read in the session, or -1 if it has not been listed
+     */
+    private static int getListPage(final Session session) {
+        Object page = session.getAttribute(LIST_PAGE_KEY);
+        if (page instanceof Number) {
+            return ((Number) page).intValue();
+        }
+        try {
+            return page != null ? Integer.parseInt(page.toString()) : -1;
+        } catch (NumberFormatException nfe) {
+            return -1;
         }
-        String actualMetaphone = metaphone.doubleMetaphone(actual);
-        String expectedMetaphone = metaphone.doubleMetaphone(expected);
-        LOGGER.debug("metaphone({}, {}) == '{}', '{}'", actual, expected, actualMetaphone, expectedMetaphone);
-        return getLevenshteinConfidence(actualMetaphone, expectedMetaphone);
     }
 
-    private List<Presentation> getPresentationList(final Session session) throws SpeechletException {
-        List<Presentation> presentations = getSessionAttribute(session, PRESENTATIONS_KEY, LIST_OF_PRESENTATIONS);
-        return presentations != null ? presentations : Collections.EMPTY_LIST;
+    /**
+     * Match the spoken name, preferring the presentations offered in a previous
+     * "did you mean" prompt unless another presentation is clearly a better
+     * match.
+     */
+    private List<MatchedPresentation> matchPresentation(final Slot slot, final Session session,
+                                                        final PresentationCatalog catalog)
+            throws SpeechletException {
+        String spokenName = slot.getValue();
+        List<Presentation> offered = getOfferedCandidates(session, catalog);
+        session.removeAttribute(CANDIDATES_KEY);
+
+        MatchTrace trace = MatchTrace.begin(matchTraces, session.getSessionId(), spokenName);
+        long start = System.nanoTime();
+        List<MatchedPresentation> matches = matchCache.match(catalog, spokenName, DISAMBIGUATION_CANDIDATES);
+        if (!offered.isEmpty()) {
+            List<MatchedPresentation> offeredMatches =
+                    PresentationIndex.build(offered).match(spokenName, DISAMBIGUATION_CANDIDATES);
+            if (!offeredMatches.isEmpty() && (matches.isEmpty() ||
+                    matches.get(0).getConfidence() - offeredMatches.get(0).getConfidence() <= DISAMBIGUATION_MARGIN)) {
+                matches = offeredMatches;
+            }
+        }
+        long matchNanos = System.nanoTime() - start;
+        RequestMetrics.current().recordTime(RequestMetrics.MATCH_TIME, matchNanos);
+        trace.recordMatches(offered.size(), matches, matchNanos);
+        LOGGER.debug("[{}] spoken=\"{}\", offered={}, best matches={}", session.getSessionId(), spokenName,
+                offered, matches);
+        return matches;
     }
 
-    private String generatePresentationListText(final Session session) throws SpeechletException {
-        List<Presentation> presentations = getPresentationList(session);
-        int count = presentations.size();
-        StringBuilder builder = new StringBuilder(String.format("<s>i can start %d presentations</s>", count));
-        for (int i = 0; i < count; i++) {
-            builder.append(presentations.get(i).getSsml());
-            if (i < count - 1) {
-                builder.append("<break strength=\"medium\"/>");
+    /**
+     * @return the presentations offered in the last "did you mean" prompt that
+     *         are still in the catalog, in the order they were offered
+     */
+    private List<Presentation> getOfferedCandidates(final Session session, final PresentationCatalog catalog)
+            throws SpeechletException {
+        String[] names = getSessionAttribute(session, CANDIDATES_KEY, String[].class);
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        Map<String, Presentation> offeredByName = new HashMap<>();
+        Set<String> offeredNames = new HashSet<>(Arrays.asList(names));
+        PresentationTable presentations = catalog.getPresentations();
+        for (int i = 0; i < presentations.size(); i++) {
+            if (offeredNames.contains(presentations.getName(i))) {
+                offeredByName.putIfAbsent(presentations.getName(i), presentations.get(i));
             }
-            if (i == count - 2) {
-                builder.append("or<break strength=\"medium\"/> ");
+        }
+        List<Presentation> offered = new ArrayList<>(names.length);
+        for (String name : names) {
+            Presentation presentation = offeredByName.get(name);
+            if (presentation != null) {
+                offered.add(presentation);
             }
         }
-        builder.append("<s>which would you like?</s>");
-        return builder.toString();
+        return offered;
     }
 
-    private SpeechletResponse createContinueSessionResponse(final String repromptText, final String format,
-                                                            final Object... args) {
-        SsmlOutputSpeech repromptSpeech = asSsml(repromptText);
-        SsmlOutputSpeech speech = asSsml(format, args);
-        LOGGER.debug("Generating Ask response: \"{}\" with reprompt: \"{}\"", speech.getSsml(),
-                repromptSpeech.getSsml());
+    /**
+     * The best matches are ambiguous when the runner-up is within the
+     * disambiguation margin of the best match and can be told apart by name.
+     */
+    private static boolean isAmbiguous(final List<MatchedPresentation> matches) {
+        if (matches.size() < DISAMBIGUATION_CANDIDATES) {
+            return false;
+        }
+        MatchedPresentation best = matches.get(0);
+        MatchedPresentation alternative = matches.get(1);
+        return best.getConfidence() - alternative.getConfidence() <= DISAMBIGUATION_MARGIN &&
+                !best.getPresentation().getName().equalsIgnoreCase(alternative.getPresentation().getName());
+    }
 
-        Reprompt reprompt = new Reprompt();
-        reprompt.setOutputSpeech(repromptSpeech);
+    private SpeechletResponse createNoPresentationsResponse() {
+        return responseCache.get("NoPresentations", null, 0,
+                () -> createEndSessionResponse(NO_PRESENTATIONS.speech()));
+    }
+
+    private SpeechletResponse createContinueSessionResponse(final Reprompt reprompt, final SsmlOutputSpeech speech) {
+        LOGGER.debug("Generating Ask response: \"{}\" with reprompt: \"{}\"", speech.getSsml(),
+                ((SsmlOutputSpeech) reprompt.getOutputSpeech()).getSsml());
         return SpeechletResponse.newAskResponse(speech, reprompt);
     }
 
-    private SpeechletResponse createEndSessionResponse(final String format, final Object... args) {
-        SsmlOutputSpeech speech = asSsml(format, args);
+    private SpeechletResponse createEndSessionResponse(final SsmlOutputSpeech speech) {
         LOGGER.debug("Generating Tell reponse: \"{}\"", speech.getSsml());
         return SpeechletResponse.newTellResponse(speech);
     }
 
-    private static SsmlOutputSpeech asSsml(final String format, final Object... args) {
-        SsmlOutputSpeech speech = new SsmlOutputSpeech();
-        String speechFormat = String.format("<speak>%s</speak>", format);
-        speech.setSsml(String.format(speechFormat, args));
-        return speech;
+    private void setSelectedPresentation(final Session session, final MatchedPresentation presentation)
+            throws SpeechletException {
+        long start = System.nanoTime();
+        try {
+            session.setAttribute(PRESENTATION_KEY, sessionCodec.encode(presentation));
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.SESSION_ENCODE_TIME, System.nanoTime() - start);
+        }
     }
 
-    private static String toJson(final Object obj) throws SpeechletException {
+    private MatchedPresentation getSelectedPresentation(final Session session) throws SpeechletException {
+        Object value = session.getAttribute(PRESENTATION_KEY);
+        if (value == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            return sessionCodec.decode(value);
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.SESSION_DECODE_TIME, System.nanoTime() - start);
+        }
+    }
+
+    static String toJson(final Object obj) throws SpeechletException {
+        long start = System.nanoTime();
         try {
             return JSON.writeValueAsString(obj);
         } catch (JsonProcessingException jpe) {
             throw new SpeechletException("Serialization Error", jpe);
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.SESSION_ENCODE_TIME, System.nanoTime() - start);
         }
     }
 
     private static <T> T getSessionAttribute(final Session session, final String key, final Class<T> type)
             throws SpeechletException {
-        try {
-            Object value = session.getAttribute(key);
-            return value != null ? JSON.readValue(value.toString(), type) : null;
-        } catch (IOException ioe) {
-            throw new SpeechletException("Deserialization error.", ioe);
-        }
+        return getSessionAttribute(session.getAttribute(key), type);
     }
 
-    private static <T> T getSessionAttribute(final Session session, final String key, final TypeReference<T> type)
-            throws SpeechletException {
+    static <T> T getSessionAttribute(final Object value, final Class<T> type) throws SpeechletException {
+        if (value == null) {
+            return null;
+        }
+        long start = System.nanoTime();
         try {
-            Object value = session.getAttribute(key);
-            return value != null ? JSON.readValue(value.toString(), type) : null;
+            return JSON.readValue(value.toString(), type);
         } catch (IOException ioe) {
             throw new SpeechletException("Deserialization error.", ioe);
+        } finally {
+            RequestMetrics.current().recordTime(RequestMetrics.SESSION_DECODE_TIME, System.nanoTime() - start);
         }
     }
 }
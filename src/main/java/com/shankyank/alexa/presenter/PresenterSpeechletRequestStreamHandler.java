@@ -1,14 +1,63 @@
 package com.shankyank.alexa.presenter;
 
-import com.amazon.speech.speechlet.lambda.SpeechletRequestStreamHandler;
+import com.amazon.speech.json.SpeechletRequestEnvelope;
+import com.amazon.speech.json.SpeechletResponseEnvelope;
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.SpeechletException;
+import com.amazon.speech.speechlet.SpeechletRequest;
+import com.amazon.speech.speechlet.SpeechletRequestDispatcher;
+import com.amazon.speech.speechlet.SpeechletRequestHandlerException;
+import com.amazon.speech.speechlet.SpeechletResponse;
+import com.amazon.speech.speechlet.verifier.ApplicationIdSpeechletRequestVerifier;
+import com.amazon.speech.speechlet.verifier.CardSpeechletResponseVerifier;
+import com.amazon.speech.speechlet.verifier.OutputSpeechSpeechletResponseVerifier;
+import com.amazon.speech.speechlet.verifier.ResponseSizeSpeechletResponseVerifier;
+import com.amazon.speech.speechlet.verifier.SpeechletRequestVerifier;
+import com.amazon.speech.speechlet.verifier.SpeechletResponseVerifier;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.IOUtils;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Lambda handler for Presenter application.
+ * <p>
+ * The handler primes itself when it is constructed, loading the catalog,
+ * creating the AWS clients and pushing a synthetic ListPresentations request
+ * through the full request path so the first real request does not pay for
+ * class loading and Jackson introspection. The synthetic request has no user,
+ * so it reads the shared presentations that were just loaded rather than
+ * looking for a list of its own, and it records no metrics. It also registers for
+ * checkpoint/restore notifications so that a container restored from a
+ * snapshot opens new connections and revalidates its configuration.
+ * <p>
+ * Requests are verified and dispatched like the Alexa Skills Kit's
+ * {@code SpeechletRequestStreamHandler} does, but responses from the
+ * speechlet's {@link ResponseCache} are written as stored, with only the
+ * session attributes of the request serialized.
  */
-public final class PresenterSpeechletRequestStreamHandler extends SpeechletRequestStreamHandler {
+public final class PresenterSpeechletRequestStreamHandler implements RequestStreamHandler, Resource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PresenterSpeechletRequestStreamHandler.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
     /**
      * The Alexa application ID for the Presenter application.
      */
@@ -17,8 +66,129 @@ public final class PresenterSpeechletRequestStreamHandler extends SpeechletReque
      * The set of application IDs that are valid for this service.
      */
     private static final Set<String> SUPPORTED_APPLICATION_IDS = Collections.emptySet();
+    /**
+     * The session and request ID used by the synthetic priming request.
+     */
+    private static final String PRIMING_ID = "presenter.priming";
+
+    private final PresenterSpeechlet speechlet;
+    private final ResponseCache responseCache;
+    private final List<SpeechletRequestVerifier> requestVerifiers =
+            Collections.singletonList(new ApplicationIdSpeechletRequestVerifier(SUPPORTED_APPLICATION_IDS));
+    private final List<SpeechletResponseVerifier> responseVerifiers = Arrays.asList(
+            new ResponseSizeSpeechletResponseVerifier(), new OutputSpeechSpeechletResponseVerifier(),
+            new CardSpeechletResponseVerifier());
 
     public PresenterSpeechletRequestStreamHandler() {
-        super(new PresenterSpeechlet(new S3SessionInitializer()), SUPPORTED_APPLICATION_IDS);
+        this(new PresenterSpeechlet(new S3SessionInitializer()));
+    }
+
+    PresenterSpeechletRequestStreamHandler(final PresenterSpeechlet speechlet) {
+        this.speechlet = speechlet;
+        this.responseCache = speechlet.getResponseCache();
+        prime();
+        Core.getGlobalContext().register(this);
+    }
+
+    @Override
+    public void handleRequest(final InputStream input, final OutputStream output,
+                              final com.amazonaws.services.lambda.runtime.Context context) throws IOException {
+        byte[] request = IOUtils.toByteArray(input);
+        try {
+            output.write(handleSpeechletCall(request));
+        } catch (SpeechletRequestHandlerException | SpeechletException ex) {
+            // as the Alexa Skills Kit's handler does, so Lambda reports the request as failed
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Verify and dispatch a request, and serialize the response.
+     * @param request the serialized request envelope
+     * @return the serialized response envelope
+     */
+    byte[] handleSpeechletCall(final byte[] request)
+            throws IOException, SpeechletRequestHandlerException, SpeechletException {
+        SpeechletRequestEnvelope requestEnvelope = SpeechletRequestEnvelope.fromJson(request);
+        SpeechletRequest speechletRequest = requestEnvelope.getRequest();
+        Session session = requestEnvelope.getSession();
+        for (SpeechletRequestVerifier verifier : requestVerifiers) {
+            if (!verifier.verify(speechletRequest, session)) {
+                throw new SpeechletRequestHandlerException(String.format(
+                        "Could not validate SpeechletRequest %s using verifier %s, rejecting request",
+                        speechletRequest != null ? speechletRequest.getRequestId() : null,
+                        verifier.getClass().getSimpleName()));
+            }
+        }
+
+        SpeechletResponseEnvelope responseEnvelope =
+                new SpeechletRequestDispatcher(speechlet).dispatchSpeechletCall(requestEnvelope, session);
+        SpeechletResponse response = responseEnvelope.getResponse();
+        byte[] body = response != null ? responseCache.getBody(response) : null;
+        if (body != null) {
+            Map<String, Object> attributes = responseEnvelope.getSessionAttributes();
+            return ResponseCache.toEnvelope(body, attributes != null ? JSON.writeValueAsBytes(attributes) : null);
+        }
+        for (SpeechletResponseVerifier verifier : responseVerifiers) {
+            if (!verifier.verify(responseEnvelope, session)) {
+                throw new SpeechletRequestHandlerException(String.format(
+                        "Could not validate SpeechletResponse %s using verifier %s, rejecting response",
+                        speechletRequest != null ? speechletRequest.getRequestId() : null,
+                        verifier.getClass().getSimpleName()));
+            }
+        }
+        if (response != null) {
+            responseCache.storeBody(response);
+        }
+        return responseEnvelope.toJsonBytes();
+    }
+
+    /**
+     * Warm the request path. Failures are logged and otherwise ignored; the
+     * first request will initialize anything priming could not.
+     */
+    void prime() {
+        long start = System.nanoTime();
+        try {
+            speechlet.prime();
+            byte[] request = createPrimingRequest();
+            RequestMetrics.discarding(() -> handleSpeechletCall(request));
+            LOGGER.info("Primed request path in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception ex) {
+            LOGGER.warn("Unable to prime request path", ex);
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint(final Context<? extends Resource> context) {
+        LOGGER.info("Closing AWS clients before checkpoint");
+        AwsClients.reset();
+    }
+
+    @Override
+    public void afterRestore(final Context<? extends Resource> context) {
+        LOGGER.info("Refreshing configuration after restore");
+        speechlet.refresh();
+        prime();
+    }
+
+    private static byte[] createPrimingRequest() throws IOException {
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        timestamp.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        ObjectNode envelope = JSON.createObjectNode();
+        envelope.put("version", "1.0");
+        ObjectNode session = envelope.putObject("session");
+        session.put("new", true);
+        session.put("sessionId", PRIMING_ID);
+        session.putObject("application").put("applicationId",
+                SUPPORTED_APPLICATION_IDS.isEmpty() ? PRIMING_ID : SUPPORTED_APPLICATION_IDS.iterator().next());
+        session.putObject("attributes");
+        ObjectNode request = envelope.putObject("request");
+        request.put("type", "IntentRequest");
+        request.put("requestId", PRIMING_ID);
+        request.put("timestamp", timestamp.format(new Date()));
+        request.putObject("intent").put("name", PresenterSpeechlet.LIST_PRESENTATIONS_INTENT).putObject("slots");
+        return JSON.writeValueAsBytes(envelope);
     }
 }
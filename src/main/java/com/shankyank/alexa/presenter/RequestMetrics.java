@@ -0,0 +1,251 @@
+package com.shankyank.alexa.presenter;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Timers, counters and properties collected while handling a single request.
+ * <p>
+ * The metrics for the request being handled on the current thread are
+ * available from {@link #current()}, so components record into them without
+ * having the collector passed around; outside a request {@code current()}
+ * returns a collector that discards everything. When the request ends its
+ * metrics are added to a {@link MetricsRegistry} and written as a single
+ * CloudWatch embedded metric format line to the
+ * {@value #METRICS_LOGGER_NAME} logger. Synthetic requests, such as the one
+ * that primes the request path, are handled {@link #discarding} so they do
+ * not show up in the metrics.
+ */
+final class RequestMetrics {
+    /** The logger embedded metric format lines are written to. */
+    static final String METRICS_LOGGER_NAME = "com.shankyank.alexa.presenter.metrics";
+    /** The CloudWatch namespace metrics are published in. */
+    static final String NAMESPACE = "AlexaPresenter";
+    /** The dimension identifying the request type or intent. */
+    static final String OPERATION = "Operation";
+
+    static final String REQUEST_TIME = "RequestTime";
+    static final String CATALOG_LOAD_TIME = "CatalogLoadTime";
+    static final String STARTER_LOAD_TIME = "StarterLoadTime";
+    static final String SESSION_DECODE_TIME = "SessionDecodeTime";
+    static final String SESSION_ENCODE_TIME = "SessionEncodeTime";
+    static final String MATCH_TIME = "MatchTime";
+    static final String PUBLISH_TIME = "PublishTime";
+
+    static final String CANDIDATES_SCORED = "CandidatesScored";
+    static final String CATALOG_STORE_HIT = "CatalogStoreHit";
+    static final String CATALOG_STORE_MISS = "CatalogStoreMiss";
+    static final String MATCH_CACHE_HIT = "MatchCacheHit";
+    static final String MATCH_CACHE_MISS = "MatchCacheMiss";
+    static final String CONFIG_CACHE_HIT = "ConfigCacheHit";
+    static final String CONFIG_CACHE_MISS = "ConfigCacheMiss";
+    static final String CONFIG_NOT_MODIFIED = "ConfigNotModified";
+    static final String PUBLISH_FAILURE = "PublishFailure";
+    static final String AGENT_PUSH = "AgentPush";
+    static final String AGENT_FALLBACK = "AgentFallback";
+    static final String HEDGED_CALL = "HedgedCall";
+    static final String DEADLINE_EXCEEDED = "DeadlineExceeded";
+    static final String CIRCUIT_OPEN = "CircuitOpen";
+    static final String STALE_CONFIG_SERVED = "StaleConfigServed";
+
+    /** The property holding the confidence bucket of the best match. */
+    static final String CONFIDENCE_BUCKET = "ConfidenceBucket";
+
+    private static final Logger METRICS = LoggerFactory.getLogger(METRICS_LOGGER_NAME);
+    private static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<>();
+    /** Set while requests handled on the current thread discard their metrics. */
+    private static final ThreadLocal<Boolean> DISCARDING = new ThreadLocal<>();
+    private static final RequestMetrics DISCARD = new RequestMetrics(null, null);
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final MetricsRegistry registry;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> timers = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    private String operation;
+
+    private RequestMetrics(final String operation, final MetricsRegistry registry) {
+        this.operation = operation;
+        this.registry = registry;
+    }
+
+    /**
+     * Start collecting metrics for a request handled on the current thread,
+     * replacing any collector left over from an earlier request.
+     * @param operation the request type or intent
+     * @param registry the registry the metrics are added to when the request ends
+     * @return the metrics for the request
+     */
+    static RequestMetrics begin(final String operation, final MetricsRegistry registry) {
+        if (DISCARDING.get() != null) {
+            CURRENT.remove();
+            return DISCARD;
+        }
+        RequestMetrics metrics = new RequestMetrics(operation, registry);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * @return the metrics for the request handled on the current thread, or a
+     * collector that discards everything if no request is being handled
+     */
+    static RequestMetrics current() {
+        RequestMetrics metrics = CURRENT.get();
+        return metrics != null ? metrics : DISCARD;
+    }
+
+    /**
+     * Handle a request on the current thread without recording its metrics.
+     * @param request handles the request
+     * @return the result of the request
+     * @throws Exception if the request fails
+     */
+    static <T> T discarding(final Callable<T> request) throws Exception {
+        DISCARDING.set(Boolean.TRUE);
+        try {
+            return request.call();
+        } finally {
+            DISCARDING.remove();
+        }
+    }
+
+    private boolean isDiscarding() {
+        return registry == null;
+    }
+
+    String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param operation the request type or intent
+     */
+    void setOperation(final String operation) {
+        if (!isDiscarding()) {
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * Add time spent in a phase of the request. Time recorded more than once
+     * for the same phase is summed.
+     * @param name the timer name
+     * @param nanos the elapsed time
+     */
+    void recordTime(final String name, final long nanos) {
+        if (!isDiscarding()) {
+            timers.merge(name, nanos, Long::sum);
+        }
+    }
+
+    /**
+     * @param name the counter name
+     */
+    void increment(final String name) {
+        increment(name, 1L);
+    }
+
+    /**
+     * @param name the counter name
+     * @param delta the amount to add
+     */
+    void increment(final String name, final long delta) {
+        if (!isDiscarding()) {
+            counters.merge(name, delta, Long::sum);
+        }
+    }
+
+    /**
+     * @param name the property name
+     * @param value the property value
+     */
+    void setProperty(final String name, final String value) {
+        if (!isDiscarding()) {
+            properties.put(name, value);
+        }
+    }
+
+    Long getTime(final String name) {
+        return timers.get(name);
+    }
+
+    Long getCount(final String name) {
+        return counters.get(name);
+    }
+
+    String getProperty(final String name) {
+        return properties.get(name);
+    }
+
+    /**
+     * Finish the request: record its total time, add its metrics to the
+     * registry and write them to the metrics log.
+     */
+    void end() {
+        if (isDiscarding()) {
+            return;
+        }
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        recordTime(REQUEST_TIME, System.nanoTime() - startNanos);
+        timers.forEach((name, nanos) -> registry.timer(name).record(nanos));
+        counters.forEach(registry::increment);
+        if (METRICS.isInfoEnabled()) {
+            METRICS.info(toEmf(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @param timestamp the time the metrics were collected, in epoch milliseconds
+     * @return the metrics as a CloudWatch embedded metric format document
+     */
+    String toEmf(final long timestamp) {
+        StringBuilder emf = new StringBuilder(256 + 32 * (timers.size() + counters.size()));
+        emf.append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":\"").append(NAMESPACE)
+                .append("\",\"Dimensions\":[[\"").append(OPERATION).append("\"]],\"Metrics\":[");
+        boolean first = true;
+        for (String name : timers.keySet()) {
+            first = appendDefinition(emf, name, "Milliseconds", first);
+        }
+        for (String name : counters.keySet()) {
+            first = appendDefinition(emf, name, "Count", first);
+        }
+        emf.append("]}]}");
+        appendString(emf, OPERATION, operation);
+        timers.forEach((name, nanos) -> appendName(emf, name).append(nanos / NANOS_PER_MILLI));
+        counters.forEach((name, count) -> appendName(emf, name).append(count));
+        properties.forEach((name, value) -> appendString(emf, name, value));
+        return emf.append('}').toString();
+    }
+
+    private static boolean appendDefinition(final StringBuilder emf, final String name, final String unit,
+                                            final boolean first) {
+        if (!first) {
+            emf.append(',');
+        }
+        emf.append("{\"Name\":\"").append(name).append("\",\"Unit\":\"").append(unit).append("\"}");
+        return false;
+    }
+
+    private static StringBuilder appendName(final StringBuilder emf, final String name) {
+        return emf.append(",\"").append(name).append("\":");
+    }
+
+    private static void appendString(final StringBuilder emf, final String name, final String value) {
+        appendName(emf, name);
+        if (value == null) {
+            emf.append("null");
+        } else {
+            emf.append('"').append(JsonStringEncoder.getInstance().quoteAsString(value)).append('"');
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.json.SpeechletResponseEnvelope;
+import com.amazon.speech.speechlet.SpeechletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-container cache of the responses that are the same for every request
+ * with the same catalog: help, goodbye, the no-presentations message and each
+ * page of the presentation list. The speechlet returns a single shared
+ * {@link SpeechletResponse} for each, and the stream handler writes the
+ * serialized response as stored, adding only the session attributes of the
+ * request, instead of serializing the response every time.
+ * <p>
+ * A response is serialized the first time it is written, after it has been
+ * verified. Responses for an old catalog are never served, because a changed
+ * catalog has a new version; the least recently used responses are evicted.
+ */
+final class ResponseCache {
+    /** The default number of responses to keep. */
+    static final int DEFAULT_CAPACITY = 256;
+    /** The response envelope version written by the Alexa Skills Kit. */
+    static final String VERSION = "1.0";
+
+    private static final byte[] ENVELOPE_PREFIX =
+            ("{\"version\":\"" + VERSION + "\",\"response\":").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SESSION_ATTRIBUTES = ",\"sessionAttributes\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOT_SERIALIZED = new byte[0];
+
+    private final Map<Key, SpeechletResponse> responses;
+    /** The serialized form of each cached response, or {@link #NOT_SERIALIZED} until it is written. */
+    private final Map<SpeechletResponse, byte[]> bodies = new IdentityHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ResponseCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of responses to keep
+     */
+    ResponseCache(final int capacity) {
+        this.responses = new LinkedHashMap<Key, SpeechletResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, SpeechletResponse> eldest) {
+                if (size() > capacity) {
+                    bodies.remove(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a response, creating it if it is not cached.
+     * @param name the name of the response
+     * @param catalogVersion the version of the catalog the response was created from, or null if it depends on none
+     * @param page the page of the presentation list, or 0
+     * @param create creates the response
+     * @return the cached response
+     */
+    SpeechletResponse get(final String name, final String catalogVersion, final int page,
+                          final Supplier<SpeechletResponse> create) {
+        Key key = new Key(name, catalogVersion, page);
+        synchronized (this) {
+            SpeechletResponse response = responses.get(key);
+            if (response != null) {
+                return response;
+            }
+        }
+        SpeechletResponse response = create.get();
+        synchronized (this) {
+            SpeechletResponse raced = responses.get(key);
+            if (raced != null) {
+                return raced;
+            }
+            responses.put(key, response);
+            bodies.put(response, NOT_SERIALIZED);
+        }
+        return response;
+    }
+
+    /**
+     * @param response a response
+     * @return true if the response is cached, whether or not it has been serialized
+     */
+    synchronized boolean contains(final SpeechletResponse response) {
+        return bodies.containsKey(response);
+    }
+
+    /**
+     * @param response a response
+     * @return the serialized response, or null if it is not cached or has not been serialized
+     */
+    byte[] getBody(final SpeechletResponse response) {
+        byte[] body;
+        synchronized (this) {
+            body = bodies.get(response);
+        }
+        if (body == null || body == NOT_SERIALIZED) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return body;
+    }
+
+    /**
+     * Serialize a cached response, so later requests write it as stored.
+     * Responses that are not cached are ignored.
+     * @param response a verified response
+     * @throws IOException if the response cannot be serialized
+     */
+    void storeBody(final SpeechletResponse response) throws IOException {
+        if (!contains(response)) {
+            return;
+        }
+        SpeechletResponseEnvelope envelope = new SpeechletResponseEnvelope();
+        envelope.setVersion(VERSION);
+        envelope.setResponse(response);
+        byte[] json = envelope.toJsonBytes();
+        if (!startsWith(json, ENVELOPE_PREFIX) || json[json.length - 1] != '}') {
+            throw new IOException("Unexpected response envelope: " + new String(json, StandardCharsets.UTF_8));
+        }
+        byte[] body = Arrays.copyOfRange(json, ENVELOPE_PREFIX.length, json.length - 1);
+        synchronized (this) {
+            bodies.replace(response, body);
+        }
+    }
+
+    /**
+     * Write the response envelope of a serialized response, as the Alexa
+     * Skills Kit would.
+     * @param body the serialized response
+     * @param sessionAttributes the serialized session attributes, or null if the session ends
+     * @return the serialized response envelope
+     */
+    static byte[] toEnvelope(final byte[] body, final byte[] sessionAttributes) {
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream(ENVELOPE_PREFIX.length + body.length +
+                (sessionAttributes != null ? SESSION_ATTRIBUTES.length + sessionAttributes.length : 0) + 1);
+        envelope.write(ENVELOPE_PREFIX, 0, ENVELOPE_PREFIX.length);
+        envelope.write(body, 0, body.length);
+        if (sessionAttributes != null) {
+            envelope.write(SESSION_ATTRIBUTES, 0, SESSION_ATTRIBUTES.length);
+            envelope.write(sessionAttributes, 0, sessionAttributes.length);
+        }
+        envelope.write('}');
+        return envelope.toByteArray();
+    }
+
+    /**
+     * @return the number of responses written as stored
+     */
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of responses that had to be serialized
+     */
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    private static boolean startsWith(final byte[] bytes, final byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s {size=%d, hits=%d, misses=%d}", ResponseCache.class.getSimpleName(),
+                responses.size(), hits.sum(), misses.sum());
+    }
+
+    /**
+     * The name of a response, the catalog version and the list page.
+     */
+    private static final class Key {
+        private final String name;
+        private final String catalogVersion;
+        private final int page;
+
+        private Key(final String name, final String catalogVersion, final int page) {
+            this.name = name;
+            this.catalogVersion = catalogVersion;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return page == key.page && name.equals(key.name) && Objects.equals(catalogVersion, key.catalogVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, catalogVersion, page);
+        }
+    }
+}
@@ -1,65 +1,570 @@
 package com.shankyank.alexa.presenter;
 
 import com.amazon.speech.speechlet.SpeechletException;
-import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import static com.shankyank.alexa.presenter.Presentation.LIST_OF_PRESENTATIONS;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * Session initializer that reads its configuration from S3.
+ * <p>
+ * Parsed configuration objects are cached for a fixed time to live. Once an
+ * entry expires it is revalidated with a conditional GET on its ETag, so an
+ * unchanged object is not downloaded or parsed again. Concurrent loads of
+ * the same key share a single request. The presentation list is streamed
+ * straight into a compact {@link PresentationTable}.
+ * <p>
+ * Each user may have their own presentation list under
+ * {@code config/<userId>/presentations.json}; users without one get the
+ * shared default list. Users without their own list are cached as well, so
+ * they do not cost a request to S3 each session. The cache holds a bounded
+ * number of objects and evicts the least recently used.
+ * <p>
+ * A presentation list may be followed by a change log,
+ * {@code presentations.changes.jsonl} next to it, of {@link CatalogChange}s
+ * appended since the list was written. The log is applied on top of the list
+ * and revalidated with the same time to live; only the last change applied
+ * and the bytes appended after it are downloaded, and only the new changes
+ * are applied, to a copy of the catalog that is swapped in once complete.
+ * Rewriting the list, or rewriting the log rather than appending to it,
+ * applies the log to the list again. Changes are not idempotent, so a list
+ * compacted with the changes merged in records the sequence number of the
+ * last change it includes in its {@value #CHANGE_SEQUENCE_METADATA} user
+ * metadata, and only the changes after it are applied.
+ * <p>
+ * Requests to S3 wait no longer than the request's {@link Deadline}, and a
+ * GET still waiting for its response after the usual S3 latency is hedged
+ * with a second one (see {@link HedgedCall}); the object is read and parsed
+ * once, from whichever response arrives first. When S3 fails, or keeps
+ * failing so that the {@link CircuitBreaker} is open, the last configuration
+ * loaded is served even though it has expired; only configuration that was
+ * never loaded fails the request. Requests cut short by the deadline do not
+ * count as failures of S3.
  */
 public class S3SessionInitializer implements SessionInitializer {
     private static final Logger LOGGER = LoggerFactory.getLogger(S3SessionInitializer.class);
 
-    private static final ObjectMapper JSON = new ObjectMapper();
-
     private static final String BUCKET = "bti-presenter";
     private static final String PRESENTATIONS_OBJECT_KEY = "config/presentations.json";
+    private static final String USER_PRESENTATIONS_OBJECT_KEY = "config/%s/presentations.json";
     private static final String TOPIC_OBJECT_KEY = "config/topic.txt";
+    private static final String CHANGES_OBJECT_SUFFIX = ".changes.jsonl";
+    /** The user metadata of a presentation list holding the sequence number of the last change merged into it. */
+    static final String CHANGE_SEQUENCE_METADATA = "change-sequence";
+
+    /** The default time to live for cached configuration. */
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /** The default number of configuration objects to cache. */
+    static final int DEFAULT_CACHE_CAPACITY = 256;
+
+    /** User IDs that can be used in an object key; other users get the default presentations. */
+    private static final Pattern USER_ID = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final int NOT_FOUND = 404;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<String, CachedObject<?>> cache;
+    private final CircuitBreaker breaker;
+    private final HedgedCall hedgedGet = new HedgedCall("S3 GET");
+    private final ConcurrentMap<String, CompletableFuture<CachedObject<?>>> inFlight = new ConcurrentHashMap<>();
+
+    public S3SessionInitializer() {
+        this(null, BUCKET, DEFAULT_TTL_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param s3 the S3 client, or null to use the client shared by the container
+     * @param bucket the configuration bucket
+     * @param ttlMillis the time to live for cached configuration
+     * @param clock the clock used to expire cached configuration
+     */
+    S3SessionInitializer(final AmazonS3 s3, final String bucket, final long ttlMillis, final Clock clock) {
+        this(s3, bucket, ttlMillis, clock, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * @param s3 the S3 client, or null to use the client shared by the container
+     * @param bucket the configuration bucket
+     * @param ttlMillis the time to live for cached configuration
+     * @param clock the clock used to expire cached configuration
+     * @param cacheCapacity the maximum number of configuration objects to cache
+     */
+    S3SessionInitializer(final AmazonS3 s3, final String bucket, final long ttlMillis, final Clock clock,
+                         final int cacheCapacity) {
+        this(s3, bucket, ttlMillis, clock, cacheCapacity, new CircuitBreaker("S3"));
+    }
+
+    /**
+     * @param s3 the S3 client, or null to use the client shared by the container
+     * @param bucket the configuration bucket
+     * @param ttlMillis the time to live for cached configuration
+     * @param clock the clock used to expire cached configuration
+     * @param cacheCapacity the maximum number of configuration objects to cache
+     * @param breaker the circuit breaker guarding requests to S3
+     */
+    S3SessionInitializer(final AmazonS3 s3, final String bucket, final long ttlMillis, final Clock clock,
+                         final int cacheCapacity, final CircuitBreaker breaker) {
+        this.s3 = s3;
+        this.breaker = breaker;
+        this.bucket = bucket;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.cache = new LinkedHashMap<String, CachedObject<?>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedObject<?>> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
 
     @Override
     public List<Presentation> getAvailablePresentations() throws SpeechletException {
-        try (InputStream is = openS3Stream(BUCKET, PRESENTATIONS_OBJECT_KEY)) {
-            List<Presentation> presentations = JSON.readValue(is, LIST_OF_PRESENTATIONS);
-            LOGGER.debug("Loaded presentations: {}", presentations);
-            return presentations;
-        } catch (IOException | AmazonS3Exception ex) {
-            String msg = String.format("Unable to load presentations from s3://%s/%s",
-                    BUCKET, PRESENTATIONS_OBJECT_KEY);
-            LOGGER.error(msg, ex);
-            throw new SpeechletException(msg, ex);
+        return loadPresentations(PRESENTATIONS_OBJECT_KEY, false);
+    }
+
+    @Override
+    public List<Presentation> getAvailablePresentations(final String userId) throws SpeechletException {
+        if (userId == null || !USER_ID.matcher(userId).matches()) {
+            return getAvailablePresentations();
+        }
+        List<Presentation> presentations = loadPresentations(String.format(USER_PRESENTATIONS_OBJECT_KEY, userId),
+                true);
+        return presentations != null ? presentations : getAvailablePresentations();
+    }
+
+    /**
+     * Load a presentation list and apply its change log.
+     * @param optional true to return null, rather than fail, if the list does not exist
+     */
+    private PresentationTable loadPresentations(final String key, final boolean optional)
+            throws SpeechletException {
+        Snapshot snapshot = load(key, "presentations", optional, S3SessionInitializer::readSnapshot);
+        if (snapshot == null) {
+            return null;
         }
+        String changesKey = key.substring(0, key.length() - ".json".length()) + CHANGES_OBJECT_SUFFIX;
+        return this.<ChangedCatalog>load(changesKey, "presentation changes", applied -> applied.snapshot == snapshot,
+                cached -> fetchChanges(changesKey, cached, snapshot)).current;
     }
 
     @Override
     public PresentationStarter getPresentationStarter() throws SpeechletException {
-        try (InputStream is = openS3Stream(BUCKET, TOPIC_OBJECT_KEY)) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
-            for (int read_count = is.read(buffer); read_count > 0; read_count = is.read(buffer)) {
-                baos.write(buffer, 0, read_count);
-            }
-            String topic = baos.toString("UTF-8");
+        return load(TOPIC_OBJECT_KEY, "topic", false, (is, metadata) -> {
+            String topic = new String(Streams.readFully(is), StandardCharsets.UTF_8);
             LOGGER.debug("Creating SnsPresentationStarter for Topic: {}", topic);
             return new SnsPresentationStarter(topic);
-        } catch (IOException | AmazonS3Exception ex) {
-            String msg = String.format("Unable to load topic from s3://%s/%s",
-                    BUCKET, TOPIC_OBJECT_KEY);
-            LOGGER.error(msg, ex);
-            throw new SpeechletException(msg, ex);
+        });
+    }
+
+    /**
+     * Expire every cached object so the next request revalidates it against S3.
+     * Unchanged objects are still not downloaded again.
+     */
+    @Override
+    public void refresh() {
+        synchronized (cache) {
+            cache.replaceAll((key, cached) -> cached.expire());
+        }
+        LOGGER.debug("Expired cached configuration for s3://{}", bucket);
+    }
+
+    private static Snapshot readSnapshot(final InputStream is, final ObjectMetadata metadata) throws IOException {
+        PresentationTable presentations = PresentationTable.read(is);
+        String sequence = metadata != null ? metadata.getUserMetaDataOf(CHANGE_SEQUENCE_METADATA) : null;
+        long changeSequence;
+        try {
+            changeSequence = sequence != null ? Long.parseLong(sequence.trim()) : 0L;
+        } catch (NumberFormatException nfe) {
+            throw new IOException(String.format("Invalid %s metadata: %s", CHANGE_SEQUENCE_METADATA, sequence), nfe);
+        }
+        LOGGER.debug("Loaded {} presentations through change {}", presentations.size(), changeSequence);
+        return new Snapshot(presentations, changeSequence);
+    }
+
+    /**
+     * Load a configuration object, serving it from the cache while it is fresh
+     * and revalidating it against S3 once it expires.
+     * @param optional true to return null, rather than fail, if the object does not exist
+     */
+    private <T> T load(final String key, final String description, final boolean optional,
+                       final ObjectParser<T> parser) throws SpeechletException {
+        return load(key, description, value -> true, cached -> fetch(key, cached, optional, parser));
+    }
+
+    /**
+     * Load a configuration object with a custom fetch, serving it from the
+     * cache while it is fresh, and serving it once it has expired if S3
+     * cannot be reached.
+     * @param current false for a cached value that must be fetched again even though it has not expired
+     * @param fetcher fetches the object, given the cached object if there is one
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T load(final String key, final String description, final Predicate<T> current,
+                       final ObjectFetcher<T> fetcher) throws SpeechletException {
+        CachedObject<T> cached;
+        synchronized (cache) {
+            cached = (CachedObject<T>) cache.get(key);
+        }
+        if (cached != null && !cached.isExpired(clock.millis()) && current.test(cached.value)) {
+            RequestMetrics.current().increment(RequestMetrics.CONFIG_CACHE_HIT);
+            return cached.value;
+        }
+        RequestMetrics.current().increment(RequestMetrics.CONFIG_CACHE_MISS);
+        if (!breaker.allowRequest()) {
+            RequestMetrics.current().increment(RequestMetrics.CIRCUIT_OPEN);
+            return lastKnownGood(key, description, cached, new IOException(String.format("%s is open", breaker)));
+        }
+
+        CompletableFuture<CachedObject<?>> load = new CompletableFuture<>();
+        CompletableFuture<CachedObject<?>> existing = inFlight.putIfAbsent(key, load);
+        if (existing != null) {
+            LOGGER.debug("Waiting for in-flight load of s3://{}/{}", bucket, key);
+            return await(existing, key, description, cached);
+        }
+        try {
+            CachedObject<T> loaded = fetcher.fetch(cached);
+            breaker.recordSuccess();
+            if (cached != null && loaded.value == cached.value && Objects.equals(loaded.eTag, cached.eTag)) {
+                RequestMetrics.current().increment(RequestMetrics.CONFIG_NOT_MODIFIED);
+            }
+            synchronized (cache) {
+                cache.put(key, loaded);
+            }
+            load.complete(loaded);
+            return loaded.value;
+        } catch (Exception ex) {
+            load.completeExceptionally(ex);
+            if (ex instanceof RuntimeException && !(ex instanceof AmazonClientException)) {
+                throw (RuntimeException) ex;
+            }
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (isS3Failure(ex)) {
+                breaker.recordFailure();
+            }
+            return lastKnownGood(key, description, cached, ex);
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    /**
+     * A request that ran out of the request's deadline, or was interrupted,
+     * says nothing about the health of S3, so only errors from the client and
+     * timeouts reading from S3 count towards opening the circuit.
+     * @param ex the failure of a load
+     * @return true if S3 failed
+     */
+    private static boolean isS3Failure(final Exception ex) {
+        return ex instanceof AmazonClientException || ex instanceof SocketTimeoutException;
+    }
+
+    private <T> CachedObject<T> fetch(final String key, final CachedObject<T> cached, final boolean optional,
+                                      final ObjectParser<T> parser) throws Exception {
+        GetObjectRequest request = new GetObjectRequest(bucket, key);
+        if (cached != null && cached.eTag != null) {
+            request.setNonmatchingETagConstraints(Collections.singletonList(cached.eTag));
+        }
+        long expiresAt = clock.millis() + ttlMillis;
+        try (S3Object object = getObject(request)) {
+            if (object == null) {
+                LOGGER.debug("s3://{}/{} is unchanged (ETag {})", bucket, key, cached.eTag);
+                return new CachedObject<>(cached.value, cached.eTag, expiresAt);
+            }
+            T value;
+            try (InputStream is = object.getObjectContent()) {
+                value = parser.parse(is, object.getObjectMetadata());
+            }
+            String eTag = object.getObjectMetadata() != null ? object.getObjectMetadata().getETag() : null;
+            LOGGER.debug("Loaded s3://{}/{} (ETag {})", bucket, key, eTag);
+            return new CachedObject<>(value, eTag, expiresAt);
+        } catch (AmazonS3Exception ase) {
+            if (!optional || ase.getStatusCode() != NOT_FOUND) {
+                throw ase;
+            }
+            LOGGER.debug("s3://{}/{} does not exist", bucket, key);
+            return new CachedObject<>(null, null, expiresAt);
+        }
+    }
+
+    /**
+     * Read the changes appended to a change log since it was last read and
+     * apply them to the catalog. The changes are read with a ranged GET from
+     * the start of the last change applied, conditional on the log's ETag; if
+     * that change no longer matches, the log was rewritten.
+     * @param cached the changes applied so far, or null
+     * @param snapshot the presentation list the log applies to
+     */
+    private CachedObject<ChangedCatalog> fetchChanges(final String key, final CachedObject<ChangedCatalog> cached,
+                                                      final Snapshot snapshot) throws Exception {
+        boolean resume = cached != null && cached.value.snapshot == snapshot && cached.value.lastLine.length > 0;
+        ChangedCatalog applied = resume ? cached.value : new ChangedCatalog(snapshot);
+        GetObjectRequest request = new GetObjectRequest(bucket, key);
+        if (resume) {
+            request.setRange(applied.offset - applied.lastLine.length);
+            request.setNonmatchingETagConstraints(Collections.singletonList(cached.eTag));
+        }
+        long expiresAt = clock.millis() + ttlMillis;
+        try (S3Object object = getObject(request)) {
+            if (object == null) {
+                LOGGER.debug("s3://{}/{} is unchanged (ETag {})", bucket, key, cached.eTag);
+                return new CachedObject<>(applied, cached.eTag, expiresAt);
+            }
+            byte[] content;
+            try (InputStream is = object.getObjectContent()) {
+                content = Streams.readFully(is);
+            }
+            String eTag = object.getObjectMetadata() != null ? object.getObjectMetadata().getETag() : null;
+            ChangedCatalog updated = applied.apply(content, resume);
+            if (updated == null) {
+                LOGGER.info("s3://{}/{} was rewritten; applying it from the start", bucket, key);
+                return fetchChanges(key, null, snapshot);
+            }
+            LOGGER.debug("Applied s3://{}/{} through change {} (ETag {})", bucket, key, updated.sequence, eTag);
+            return new CachedObject<>(updated, eTag, expiresAt);
+        } catch (AmazonS3Exception ase) {
+            if (ase.getStatusCode() == NOT_FOUND) {
+                LOGGER.debug("s3://{}/{} does not exist", bucket, key);
+                return new CachedObject<>(new ChangedCatalog(snapshot), null, expiresAt);
+            }
+            if (resume && ase.getStatusCode() == RANGE_NOT_SATISFIABLE) {
+                LOGGER.info("s3://{}/{} was truncated; applying it from the start", bucket, key);
+                return fetchChanges(key, null, snapshot);
+            }
+            throw ase;
+        }
+    }
+
+    /**
+     * Send a GET to S3, hedged if S3 is slow to respond. The response of the
+     * attempt that is not used is aborted rather than read.
+     * @return the object, or null if it matches the ETag constraint
+     */
+    private S3Object getObject(final GetObjectRequest request) throws Exception {
+        return hedgedGet.call(() -> getS3().getObject(request), object -> {
+            if (object != null) {
+                object.getObjectContent().abort();
+            }
+        });
+    }
+
+
+    /**
+     * Wait for another thread's load of an object, at most until the request's deadline.
+     * @param cached the cached object to serve if the load fails, or null
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T await(final CompletableFuture<CachedObject<?>> load, final String key, final String description,
+                        final CachedObject<T> cached) throws SpeechletException {
+        try {
+            return ((CachedObject<T>) load.get(Deadline.current().remainingMillis(), TimeUnit.MILLISECONDS)).value;
+        } catch (TimeoutException te) {
+            RequestMetrics.current().increment(RequestMetrics.DEADLINE_EXCEEDED);
+            return lastKnownGood(key, description, cached, te);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return lastKnownGood(key, description, cached, ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException && !(ee.getCause() instanceof AmazonClientException)) {
+                throw (RuntimeException) ee.getCause();
+            }
+            return lastKnownGood(key, description, cached, ee.getCause());
+        }
+    }
+
+    /**
+     * Serve an expired object when it cannot be loaded from S3.
+     * @param cached the cached object, or null if it was never loaded
+     * @param cause the reason it cannot be loaded
+     * @throws SpeechletException if the object was never loaded
+     */
+    private <T> T lastKnownGood(final String key, final String description, final CachedObject<T> cached,
+                                final Throwable cause) throws SpeechletException {
+        if (cached == null) {
+            throw loadFailure(key, description, cause);
+        }
+        RequestMetrics.current().increment(RequestMetrics.STALE_CONFIG_SERVED);
+        LOGGER.warn("Unable to load {} from s3://{}/{}; serving the last known good copy (ETag {}): {}",
+                description, bucket, key, cached.eTag, cause.toString());
+        return cached.value;
+    }
+
+    private SpeechletException loadFailure(final String key, final String description, final Throwable cause) {
+        String msg = String.format("Unable to load %s from s3://%s/%s", description, bucket, key);
+        LOGGER.error(msg, cause);
+        return new SpeechletException(msg, cause);
+    }
+
+    /**
+     * Fetches an S3 object for the cache.
+     */
+    @FunctionalInterface
+    private interface ObjectFetcher<T> {
+        /**
+         * @param cached the cached object, or null if it is not cached
+         * @return the object to cache
+         */
+        CachedObject<T> fetch(final CachedObject<T> cached) throws Exception;
+    }
+
+    /**
+     * Parses the content of an S3 object.
+     */
+    @FunctionalInterface
+    private interface ObjectParser<T> {
+        /**
+         * @param is the object content
+         * @param metadata the object metadata, or null if there is none
+         */
+        T parse(final InputStream is, final ObjectMetadata metadata) throws IOException;
+    }
+
+    /**
+     * A presentation list and the sequence number of the last change merged into it.
+     */
+    private static final class Snapshot {
+        private final PresentationTable presentations;
+        private final long changeSequence;
+
+        private Snapshot(final PresentationTable presentations, final long changeSequence) {
+            this.presentations = presentations;
+            this.changeSequence = changeSequence;
+        }
+    }
+
+    /**
+     * A parsed configuration object with the ETag it was loaded from.
+     */
+    private static final class CachedObject<T> {
+        private final T value;
+        private final String eTag;
+        private final long expiresAt;
+
+        private CachedObject(final T value, final String eTag, final long expiresAt) {
+            this.value = value;
+            this.eTag = eTag;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(final long now) {
+            return now >= expiresAt;
+        }
+
+        private CachedObject<T> expire() {
+            return new CachedObject<>(value, eTag, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * A presentation list with the changes applied to it so far, how far
+     * into the change log they were read and the last line read.
+     */
+    private static final class ChangedCatalog {
+        private static final byte[] NO_LINE = new byte[0];
+
+        private final Snapshot snapshot;
+        private final PresentationTable current;
+        private final long offset;
+        /** The sequence number of the last change read, whether or not the snapshot already included it. */
+        private final long sequence;
+        private final byte[] lastLine;
+
+        private ChangedCatalog(final Snapshot snapshot) {
+            this(snapshot, snapshot.presentations, 0L, 0L, NO_LINE);
+        }
+
+        private ChangedCatalog(final Snapshot snapshot, final PresentationTable current, final long offset,
+                               final long sequence, final byte[] lastLine) {
+            this.snapshot = snapshot;
+            this.current = current;
+            this.offset = offset;
+            this.sequence = sequence;
+            this.lastLine = lastLine;
+        }
+
+        /**
+         * Apply the complete lines of the log.
+         * @param content the log content, from the start of the last line read if resuming
+         * @param resume true if the content starts with the last line read
+         * @return the catalog with the changes applied, or null if the content
+         *         does not continue the changes applied so far
+         */
+        private ChangedCatalog apply(final byte[] content, final boolean resume) throws IOException {
+            int from = resume ? lastLine.length : 0;
+            if (resume && (content.length < from ||
+                    !Arrays.equals(lastLine, Arrays.copyOf(content, from)))) {
+                return null;
+            }
+            int to = CatalogChange.endOfLastLine(content, from, content.length);
+            if (to == from) {
+                return this;
+            }
+            List<CatalogChange> changes;
+            try {
+                changes = CatalogChange.parse(content, from, to);
+            } catch (IOException ioe) {
+                if (resume) {
+                    return null;
+                }
+                throw ioe;
+            }
+            long expected = sequence + 1;
+            for (CatalogChange change : changes) {
+                if (resume && change.getSequence() != expected) {
+                    return null;
+                }
+                expected = change.getSequence() + 1;
+            }
+            int lineStart = CatalogChange.endOfLastLine(content, from, to - 1);
+            byte[] line = Arrays.copyOfRange(content, lineStart, to);
+            List<CatalogChange> unmerged = new ArrayList<>(changes.size());
+            for (CatalogChange change : changes) {
+                if (change.getSequence() > snapshot.changeSequence) {
+                    unmerged.add(change);
+                }
+            }
+            PresentationTable presentations = current;
+            if (!unmerged.isEmpty()) {
+                PresentationCatalog updated = PresentationCatalog.of(current).apply(unmerged);
+                LOGGER.debug("Applied {} changes to {}", unmerged.size(), updated);
+                presentations = updated.getPresentations();
+            }
+            return new ChangedCatalog(snapshot, presentations, offset + to - from,
+                    changes.isEmpty() ? sequence : expected - 1, line);
         }
     }
 
-    private InputStream openS3Stream(final String bucket, final String key) {
-        return new AmazonS3Client().getObject(bucket, key).getObjectContent();
+    private AmazonS3 getS3() {
+        return s3 != null ? s3 : AwsClients.s3();
     }
 }
@@ -0,0 +1,22 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.speechlet.SpeechletException;
+
+/**
+ * Encodes the presentation selected in a session as a session attribute.
+ */
+interface SessionCodec {
+    /**
+     * @param presentation the selected presentation
+     * @return the session attribute value
+     * @throws SpeechletException if the presentation cannot be encoded
+     */
+    String encode(final MatchedPresentation presentation) throws SpeechletException;
+
+    /**
+     * @param value the session attribute value, may be null
+     * @return the selected presentation, or null if the value is null
+     * @throws SpeechletException if the value cannot be decoded
+     */
+    MatchedPresentation decode(final Object value) throws SpeechletException;
+}
@@ -14,9 +14,26 @@ interface SessionInitializer {
      */
     List<Presentation> getAvailablePresentations() throws SpeechletException;
 
+    /**
+     * @param userId the Alexa user ID of the session, may be null
+     * @return the list of presentations available to the user, which defaults
+     *         to the presentations available to everyone
+     * @throws SpeechletException if the presentations cannot be retrieved
+     */
+    default List<Presentation> getAvailablePresentations(final String userId) throws SpeechletException {
+        return getAvailablePresentations();
+    }
+
     /**
      * @return the presentation starter
      * @throws SpeechletException if the starter cannot be configured
      */
     PresentationStarter getPresentationStarter() throws SpeechletException;
+
+    /**
+     * Discard any cached state that may be stale, such as configuration cached
+     * before the container was snapshotted.
+     */
+    default void refresh() {
+    }
 }
@@ -1,54 +1,208 @@
 package com.shankyank.alexa.presenter;
 
 import com.amazon.speech.speechlet.Session;
-import com.amazonaws.services.sns.AmazonSNSClient;
-import com.amazonaws.services.sns.model.AmazonSNSException;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.model.PublishRequest;
 import com.amazonaws.services.sns.model.PublishResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Presentation starter that publishes the matched presentation to an SNS
  * topic.
+ * <p>
+ * Messages are published asynchronously on the SNS client shared by the
+ * container. The blocking {@link #startPresentation(Session, MatchedPresentation)}
+ * waits at most the latency budget for SNS to accept the message; if the budget
+ * runs out the start is reported as failed and the message is not retried. A
+ * Lambda container is frozen once the response is sent, so a publish left
+ * running in the background cannot be counted on. Failed publishes are
+ * retried with exponential backoff while the caller waits, and retries are
+ * dropped once too many are already waiting.
+ * <p>
+ * The wait is also bounded by the request's {@link Deadline}. Publishes are
+ * not hedged, since a second message would start the presentation twice;
+ * instead, once publishes keep failing, or keep running out of time, a
+ * {@link CircuitBreaker} opens and starts fail straight away until SNS is
+ * tried again.
  */
 public class SnsPresentationStarter implements PresentationStarter {
+    private static final long serialVersionUID = 1L;
     private static final Logger LOGGER = LoggerFactory.getLogger(SnsPresentationStarter.class);
     private static final String DEFAULT_SNS_TOPIC_ARN = "arn:aws:sns:us-east-1:616223318980:bti-presenter";
-    private static final ObjectMapper JSON = new ObjectMapper();
+    /** Start messages stay JSON; the presentation script reads them with a JSON parser. */
+    private static final ObjectWriter MESSAGE_WRITER = new ObjectMapper().writerFor(MatchedPresentation.class);
+
+    /** The default time to wait for SNS to accept a message. */
+    static final long DEFAULT_LATENCY_BUDGET_MILLIS = 1500L;
+    /** The default number of times a message is published before giving up. */
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /** The maximum number of retries waiting to be published. */
+    static final int MAX_PENDING_RETRIES = 32;
+
+    private static final long RETRY_BACKOFF_MILLIS = 100L;
+    private static final Semaphore RETRY_PERMITS = new Semaphore(MAX_PENDING_RETRIES);
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sns-publish-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** The breaker shared by the starters in the container, which all publish through the same client. */
+    private static final CircuitBreaker SNS_BREAKER = new CircuitBreaker("SNS");
 
     private final String topicArn;
+    private final long latencyBudgetMillis;
+    private final int maxAttempts;
+    private final transient AmazonSNSAsync sns;
+    private final transient CircuitBreaker breaker;
 
     public SnsPresentationStarter() {
         this(DEFAULT_SNS_TOPIC_ARN);
     }
 
     public SnsPresentationStarter(String topicArn) {
+        this(topicArn, null, DEFAULT_LATENCY_BUDGET_MILLIS, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    SnsPresentationStarter(final String topicArn, final AmazonSNSAsync sns, final long latencyBudgetMillis,
+                           final int maxAttempts) {
+        this(topicArn, sns, latencyBudgetMillis, maxAttempts, null);
+    }
+
+    /**
+     * @param breaker the circuit breaker guarding publishes, or null to use the breaker shared by the container
+     */
+    SnsPresentationStarter(final String topicArn, final AmazonSNSAsync sns, final long latencyBudgetMillis,
+                           final int maxAttempts, final CircuitBreaker breaker) {
         this.topicArn = topicArn.trim();
+        this.sns = sns;
+        this.breaker = breaker;
+        this.latencyBudgetMillis = latencyBudgetMillis;
+        this.maxAttempts = maxAttempts;
     }
 
     @Override
     public boolean startPresentation(final Session session, final MatchedPresentation presentation) {
+        CompletableFuture<Boolean> started = startPresentationAsync(session, presentation);
+        long waitMillis = Deadline.current().clamp(latencyBudgetMillis);
+        try {
+            return started.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException te) {
+            if (waitMillis < latencyBudgetMillis) {
+                RequestMetrics.current().increment(RequestMetrics.DEADLINE_EXCEEDED);
+            }
+            // stop retrying; a publish still in flight may yet be accepted
+            started.complete(false);
+            // a publish that hangs is as much a failure of SNS as one that errors
+            getBreaker().recordFailure();
+            LOGGER.warn("[{}] SNS publish to {} not accepted within {}ms; reporting the start as failed.",
+                    session.getSessionId(), topicArn, waitMillis);
+            return false;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ee) {
+            LOGGER.error("[{}] Unable to start presentation {}", session.getSessionId(), presentation, ee.getCause());
+            return false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> startPresentationAsync(final Session session,
+                                                             final MatchedPresentation presentation) {
         String message;
         try {
-            message = JSON.writeValueAsString(presentation);
+            message = MESSAGE_WRITER.writeValueAsString(presentation);
         } catch (JsonProcessingException jpe) {
             LOGGER.error("[{}] Error serializing presentation {}", session.getSessionId(), presentation, jpe);
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
+        if (!getBreaker().allowRequest()) {
+            RequestMetrics.current().increment(RequestMetrics.CIRCUIT_OPEN);
+            LOGGER.error("[{}] Not publishing start message '{}' to SNS topic {}: {}", session.getSessionId(),
+                    message, topicArn, getBreaker());
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Boolean> published = new CompletableFuture<>();
+        publish(session.getSessionId(), message, 1, published);
+        return published;
+    }
+
+    private void publish(final String sessionId, final String message, final int attempt,
+                         final CompletableFuture<Boolean> published) {
+        AsyncHandler<PublishRequest, PublishResult> handler = new AsyncHandler<PublishRequest, PublishResult>() {
+            @Override
+            public void onError(final Exception ex) {
+                retry(sessionId, message, attempt, published, ex);
+            }
+
+            @Override
+            public void onSuccess(final PublishRequest request, final PublishResult result) {
+                LOGGER.debug("[{}] Published message [{}] '{}' to topic {}.", sessionId,
+                        result.getMessageId(), message, topicArn);
+                getBreaker().recordSuccess();
+                published.complete(true);
+            }
+        };
         try {
-            PublishResult result = new AmazonSNSClient().publish(topicArn, message);
-            LOGGER.debug("[{}] Published message [{}] '{}' to topic {}.", session.getSessionId(),
-                    result.getMessageId(), message, topicArn);
-            return true;
-        } catch (AmazonSNSException ase) {
-            LOGGER.error("[{}] Unable to publish start message '{}' to SNS topic {}.",
-                    session.getSessionId(), message, topicArn, ase);
-            return false;
+            getSns().publishAsync(new PublishRequest(topicArn, message), handler);
+        } catch (RuntimeException re) {
+            handler.onError(re);
+        }
+    }
+
+    private void retry(final String sessionId, final String message, final int attempt,
+                       final CompletableFuture<Boolean> published, final Exception cause) {
+        if (published.isDone()) {
+            LOGGER.warn("[{}] Attempt {} to publish to SNS topic {} failed after the start was given up.",
+                    sessionId, attempt, topicArn, cause);
+        } else if (attempt >= maxAttempts) {
+            LOGGER.error("[{}] Unable to publish start message '{}' to SNS topic {} after {} attempts.",
+                    sessionId, message, topicArn, attempt, cause);
+            getBreaker().recordFailure();
+            published.complete(false);
+        } else if (!RETRY_PERMITS.tryAcquire()) {
+            LOGGER.error("[{}] Retry queue is full; dropping start message '{}' to SNS topic {}.",
+                    sessionId, message, topicArn, cause);
+            published.complete(false);
+        } else {
+            long backoff = RETRY_BACKOFF_MILLIS << (attempt - 1);
+            LOGGER.warn("[{}] Attempt {} to publish to SNS topic {} failed; retrying in {}ms.",
+                    sessionId, attempt, topicArn, backoff, cause);
+            RETRY_SCHEDULER.schedule(() -> {
+                RETRY_PERMITS.release();
+                if (!published.isDone()) {
+                    publish(sessionId, message, attempt + 1, published);
+                }
+            }, backoff, TimeUnit.MILLISECONDS);
         }
     }
 
+    private AmazonSNSAsync getSns() {
+        return sns != null ? sns : AwsClients.sns();
+    }
+
+    private CircuitBreaker getBreaker() {
+        return breaker != null ? breaker : SNS_BREAKER;
+    }
+
+    @Override
+    public void prime() {
+        getSns();
+    }
+
     @Override
     public String toString() {
         return String.format("%s {topic=%s}", SnsPresentationStarter.class.getSimpleName(), topicArn);
@@ -0,0 +1,192 @@
+package com.shankyank.alexa.presenter;
+
+import com.amazon.speech.ui.Reprompt;
+import com.amazon.speech.ui.SsmlOutputSpeech;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An SSML response template, parsed once into literal segments and slots.
+ * <p>
+ * Templates use {@code %s} for a slot that holds an SSML fragment, such as a
+ * presentation's pronunciation markup, which is inserted as is; {@code %t}
+ * for a slot that holds plain text, which is escaped; and {@code %%} for a
+ * literal percent sign. The rendered text is wrapped in a {@code speak}
+ * element. Templates without slots render their speech once and share it.
+ */
+final class SsmlTemplate {
+    private static final int MAX_RETAINED_BUILDER_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private final String template;
+    private final String[] literals;
+    private final boolean[] escapeSlot;
+    private final int literalLength;
+    private final SsmlOutputSpeech speech;
+
+    private SsmlTemplate(final String template, final String[] literals, final boolean[] escapeSlot) {
+        this.template = template;
+        this.literals = literals;
+        this.escapeSlot = escapeSlot;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+        this.speech = escapeSlot.length == 0 ? newSpeech(literals[0]) : null;
+    }
+
+    /**
+     * Parse a template.
+     * @param template the template text, without the enclosing speak element
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template contains an unsupported placeholder
+     */
+    static SsmlTemplate compile(final String template) {
+        List<String> literals = new ArrayList<>();
+        List<Boolean> escapeSlot = new ArrayList<>();
+        StringBuilder literal = new StringBuilder("<speak>");
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            char type = ++i < template.length() ? template.charAt(i) : '\0';
+            switch (type) {
+                case '%':
+                    literal.append('%');
+                    break;
+                case 's':
+                case 't':
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    escapeSlot.add(type == 't');
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unsupported placeholder at %d in \"%s\"",
+                            i - 1, template));
+            }
+        }
+        literals.add(literal.append("</speak>").toString());
+        boolean[] escape = new boolean[escapeSlot.size()];
+        for (int i = 0; i < escape.length; i++) {
+            escape[i] = escapeSlot.get(i);
+        }
+        return new SsmlTemplate(template, literals.toArray(new String[literals.size()]), escape);
+    }
+
+    /**
+     * Create a reprompt with static text.
+     * @param template the reprompt template, which may not have slots
+     * @return the reprompt
+     */
+    static Reprompt reprompt(final String template) {
+        Reprompt reprompt = new Reprompt();
+        reprompt.setOutputSpeech(compile(template).speech());
+        return reprompt;
+    }
+
+    /**
+     * @return the number of slots in the template
+     */
+    int getSlotCount() {
+        return escapeSlot.length;
+    }
+
+    /**
+     * Render the template.
+     * @param values the slot values
+     * @return the rendered SSML
+     * @throws IllegalArgumentException if the number of values does not match the number of slots
+     */
+    String render(final Object... values) {
+        if (values.length != escapeSlot.length) {
+            throw new IllegalArgumentException(String.format("\"%s\" has %d slots but %d values were provided",
+                    template, escapeSlot.length, values.length));
+        }
+        if (speech != null) {
+            return speech.getSsml();
+        }
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        builder.ensureCapacity(literalLength + 64 * values.length);
+        builder.append(literals[0]);
+        for (int i = 0; i < values.length; i++) {
+            String value = String.valueOf(values[i]);
+            if (escapeSlot[i]) {
+                escape(value, builder);
+            } else {
+                builder.append(value);
+            }
+            builder.append(literals[i + 1]);
+        }
+        String ssml = builder.toString();
+        if (builder.capacity() > MAX_RETAINED_BUILDER_CAPACITY) {
+            BUILDER.remove();
+        }
+        return ssml;
+    }
+
+    /**
+     * Render the template as output speech. Templates without slots return
+     * the same shared instance on every call; it must not be modified.
+     * @param values the slot values
+     * @return the output speech
+     */
+    SsmlOutputSpeech speech(final Object... values) {
+        return speech != null && values.length == 0 ? speech : newSpeech(render(values));
+    }
+
+    /**
+     * Escape the characters that are not allowed in SSML text.
+     * @param text plain text
+     * @return the text, safe to embed in SSML
+     */
+    static String escape(final String text) {
+        StringBuilder builder = null;
+        for (int i = 0; i < text.length(); i++) {
+            if (needsEscape(text.charAt(i))) {
+                builder = new StringBuilder(text.length() + 16);
+                break;
+            }
+        }
+        return builder != null ? escape(text, builder).toString() : text;
+    }
+
+    private static StringBuilder escape(final String text, final StringBuilder builder) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder;
+    }
+
+    private static boolean needsEscape(final char c) {
+        return c == '&' || c == '<' || c == '>';
+    }
+
+    private static SsmlOutputSpeech newSpeech(final String ssml) {
+        SsmlOutputSpeech speech = new SsmlOutputSpeech();
+        speech.setSsml(ssml);
+        return speech;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
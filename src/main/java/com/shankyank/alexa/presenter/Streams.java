@@ -0,0 +1,55 @@
+package com.shankyank.alexa.presenter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads streams into memory, optionally refusing content longer than a limit
+ * so a client cannot make the server hold an arbitrarily large body.
+ */
+final class Streams {
+    private static final int BUFFER_SIZE = 4096;
+
+    private Streams() {
+    }
+
+    /**
+     * @param is the stream, read to its end but not closed
+     * @return the content of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    static byte[] readFully(final InputStream is) throws IOException {
+        return readFully(is, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * @param is the stream, read to its end or past the limit but not closed
+     * @param maxBytes the most bytes to read
+     * @return the content of the stream
+     * @throws TooLargeException if the stream holds more than {@code maxBytes}
+     * @throws IOException if the stream cannot be read
+     */
+    static byte[] readFully(final InputStream is, final int maxBytes) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int read_count = is.read(buffer); read_count > 0; read_count = is.read(buffer)) {
+            if (read_count > maxBytes - baos.size()) {
+                throw new TooLargeException(maxBytes);
+            }
+            baos.write(buffer, 0, read_count);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Thrown when a stream holds more than the bytes allowed.
+     */
+    static final class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private TooLargeException(final int maxBytes) {
+            super(String.format("Content is longer than %d bytes", maxBytes));
+        }
+    }
+}
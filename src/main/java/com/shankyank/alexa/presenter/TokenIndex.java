@@ -0,0 +1,472 @@
+package com.shankyank.alexa.presenter;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from the words of presentation names to the entries that
+ * contain them, for spoken names that are partial or out of order, such as
+ * "the pikachu one" or "dummies knock knock".
+ * <p>
+ * Names are split into lower-case words, dropping apostrophes and stop words
+ * such as "the" and "for"; spoken names also drop words like "one" that only
+ * point at a presentation. Each word is indexed under itself and under its
+ * metaphone code, so a misheard word still finds the names that sound like it.
+ * Words and codes are numbered as terms when an entry is indexed, and each
+ * entry keeps the terms of its words, so scoring an entry compares numbers and
+ * allocates nothing.
+ * <p>
+ * A query only looks at the entries that share a term with the spoken name,
+ * leaving out terms so common that they would make most of the catalog a
+ * candidate. Entries are scored BM25-style: words shared by few names count
+ * for more, and a word counts for less in a long name than in a short one.
+ * The confidence of an entry combines how much of the spoken name it covers
+ * with how much of the entry's name was spoken.
+ * <p>
+ * Entries are numbered like those of {@link PresentationIndex}, and an index
+ * can be updated with new and removed entries without being rebuilt. Removed
+ * entries stay in the posting lists, but no longer count towards the term
+ * statistics, so an updated index scores like a rebuilt one. A built index
+ * can be {@linkplain #write written} to a {@link CompiledCatalog} and read
+ * back without tokenizing the names again.
+ */
+final class TokenIndex {
+    /** BM25 term frequency saturation. */
+    private static final double K1 = 1.2;
+    /** BM25 length normalization. */
+    private static final double B = 0.75;
+    /** The credit for a word that only matches by its metaphone code. */
+    static final double PHONETIC_WEIGHT = 0.8;
+    /**
+     * The share of the confidence from covering the spoken name; the rest is
+     * from covering the entry's name. Saying only the rare word of a name, as
+     * in "the pikachu one", covers little of the name, so covering the spoken
+     * name counts for most of the confidence.
+     */
+    static final double QUERY_COVERAGE_WEIGHT = 0.75;
+    /** Terms in more than this share of the entries do not make entries candidates. */
+    static final double COMMON_TERM_FRACTION = 0.02;
+    /** Terms in at most this many entries always make entries candidates, however small the catalog. */
+    static final int MIN_COMMON_TERM_FREQUENCY = 64;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "at", "by", "for", "from", "in", "of", "on", "or", "the", "to", "with"));
+    private static final Set<String> SPOKEN_STOP_WORDS = new HashSet<>(STOP_WORDS);
+    static {
+        SPOKEN_STOP_WORDS.addAll(Arrays.asList("one", "presentation"));
+    }
+    /** DoubleMetaphone keeps no state between calls once it is configured, so every thread shares one. */
+    private static final DoubleMetaphone METAPHONE = new DoubleMetaphone();
+    private static final int[] NO_ENTRIES = new int[0];
+    private static final int NO_TERM = -1;
+    /** Per-thread counts of the spoken words found in an entry, reused for every entry scored. */
+    private static final ThreadLocal<int[]> COUNTS = ThreadLocal.withInitial(() -> new int[16]);
+
+    /** The number of each lower-case word and upper-case metaphone code; the two never collide. */
+    private final Map<String, Integer> terms;
+    /** The entries containing each term. */
+    private final int[][] postings;
+    /** The number of entries that have not been removed containing each term. */
+    private final int[] frequencies;
+    /** The term of each word of each entry's name, in order. */
+    private final int[][] entryWords;
+    /** The term of the metaphone code of each word of each entry's name, or {@link #NO_TERM}. */
+    private final int[][] entryMetaphones;
+    /** The number of entries that have not been removed. */
+    private final int entries;
+    /** The number of words in the entries that have not been removed. */
+    private final long totalWords;
+
+    private TokenIndex(final Map<String, Integer> terms, final int[][] postings, final int[] frequencies,
+                       final int[][] entryWords, final int[][] entryMetaphones, final int entries,
+                       final long totalWords) {
+        this.terms = terms;
+        this.postings = postings;
+        this.frequencies = frequencies;
+        this.entryWords = entryWords;
+        this.entryMetaphones = entryMetaphones;
+        this.entries = entries;
+        this.totalWords = totalWords;
+    }
+
+    /**
+     * @param names the name of each entry
+     * @return the index of the names
+     */
+    static TokenIndex build(final String[] names) {
+        return new TokenIndex(Collections.emptyMap(), new int[0][], NO_ENTRIES, new int[0][], new int[0][], 0, 0L)
+                .update(names, 0, NO_ENTRIES);
+    }
+
+    /**
+     * Derive an index with new and removed entries. Only the posting lists of
+     * the new entries' terms are copied, each once, so this index is not
+     * modified.
+     * @param names the name of each entry, starting with the entries of this index
+     * @param from the first new entry
+     * @param removed the entries of this index that have been removed
+     * @return the updated index
+     */
+    TokenIndex update(final String[] names, final int from, final int[] removed) {
+        Map<String, Integer> updatedTerms = new HashMap<>(terms);
+        int[][] updatedEntryWords = Arrays.copyOf(entryWords, names.length);
+        int[][] updatedEntryMetaphones = Arrays.copyOf(entryMetaphones, names.length);
+        int[][] entryTerms = new int[names.length - from][];
+        long words = totalWords;
+        for (int id = from; id < names.length; id++) {
+            List<String> tokens = tokenize(names[id]);
+            int[] wordTerms = new int[tokens.size()];
+            int[] metaphoneTerms = new int[tokens.size()];
+            for (int i = 0; i < tokens.size(); i++) {
+                wordTerms[i] = termFor(updatedTerms, tokens.get(i));
+                String metaphone = metaphone(tokens.get(i));
+                metaphoneTerms[i] = metaphone != null ? termFor(updatedTerms, metaphone) : NO_TERM;
+            }
+            updatedEntryWords[id] = wordTerms;
+            updatedEntryMetaphones[id] = metaphoneTerms;
+            entryTerms[id - from] = distinctTerms(wordTerms, metaphoneTerms);
+            words += tokens.size();
+        }
+
+        int termCount = updatedTerms.size();
+        int[] updatedFrequencies = Arrays.copyOf(frequencies, termCount);
+        int[] added = new int[termCount];
+        for (int[] entryTermIds : entryTerms) {
+            for (int term : entryTermIds) {
+                added[term]++;
+                updatedFrequencies[term]++;
+            }
+        }
+        for (int id : removed) {
+            words -= updatedEntryWords[id].length;
+            for (int term : distinctTerms(updatedEntryWords[id], updatedEntryMetaphones[id])) {
+                updatedFrequencies[term]--;
+            }
+        }
+        int[][] updatedPostings = Arrays.copyOf(postings, termCount);
+        int[] filled = new int[termCount];
+        for (int term = 0; term < termCount; term++) {
+            if (added[term] > 0) {
+                int[] ids = term < postings.length ? postings[term] : NO_ENTRIES;
+                updatedPostings[term] = Arrays.copyOf(ids, ids.length + added[term]);
+                filled[term] = ids.length;
+            }
+        }
+        for (int id = from; id < names.length; id++) {
+            for (int term : entryTerms[id - from]) {
+                updatedPostings[term][filled[term]++] = id;
+            }
+        }
+        int live = entries - removed.length + names.length - from;
+        return new TokenIndex(updatedTerms, updatedPostings, updatedFrequencies, updatedEntryWords,
+                updatedEntryMetaphones, live, words);
+    }
+
+    /**
+     * Write the terms, posting lists and entry terms of this index.
+     * @param out the output
+     * @throws IOException if the index cannot be written
+     */
+    void write(final DataOutput out) throws IOException {
+        String[] values = new String[terms.size()];
+        terms.forEach((value, term) -> values[term] = value);
+        out.writeInt(values.length);
+        for (int term = 0; term < values.length; term++) {
+            CompiledCatalog.writeString(out, values[term]);
+            out.writeInt(frequencies[term]);
+            writeInts(out, postings[term]);
+        }
+        out.writeInt(entryWords.length);
+        for (int id = 0; id < entryWords.length; id++) {
+            writeInts(out, entryWords[id]);
+            writeInts(out, entryMetaphones[id]);
+        }
+        out.writeInt(entries);
+        out.writeLong(totalWords);
+    }
+
+    /**
+     * Read an index written by {@link #write}.
+     * @param in the input, positioned at the index
+     * @param entryCount the number of entries the index was built for
+     * @return the index
+     * @throws IllegalArgumentException if the input does not hold a valid index for the entries
+     */
+    static TokenIndex read(final ByteBuffer in, final int entryCount) {
+        int termCount = readCount(in);
+        Map<String, Integer> terms = new HashMap<>(termCount * 4 / 3 + 1);
+        int[][] postings = new int[termCount][];
+        int[] frequencies = new int[termCount];
+        for (int term = 0; term < termCount; term++) {
+            String value = CompiledCatalog.readString(in);
+            if (value == null || terms.put(value, term) != null) {
+                throw new IllegalArgumentException("Invalid term " + term + ": " + value);
+            }
+            frequencies[term] = in.getInt();
+            postings[term] = readInts(in, 0, entryCount);
+        }
+        if (readCount(in) != entryCount) {
+            throw new IllegalArgumentException("Word index does not have " + entryCount + " entries");
+        }
+        int[][] entryWords = new int[entryCount][];
+        int[][] entryMetaphones = new int[entryCount][];
+        for (int id = 0; id < entryCount; id++) {
+            entryWords[id] = readInts(in, 0, termCount);
+            entryMetaphones[id] = readInts(in, NO_TERM, termCount);
+            if (entryMetaphones[id].length != entryWords[id].length) {
+                throw new IllegalArgumentException("Entry " + id + " does not have a metaphone term for each word");
+            }
+        }
+        return new TokenIndex(terms, postings, frequencies, entryWords, entryMetaphones, in.getInt(), in.getLong());
+    }
+
+    private static void writeInts(final DataOutput out, final int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * @return the values, each of which must be at least {@code min} and less than {@code limit}
+     */
+    private static int[] readInts(final ByteBuffer in, final int min, final int limit) {
+        int[] values = new int[readCount(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.getInt();
+            if (values[i] < min || values[i] >= limit) {
+                throw new IllegalArgumentException("Invalid value: " + values[i]);
+            }
+        }
+        return values;
+    }
+
+    private static int readCount(final ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        return count;
+    }
+
+    private static int termFor(final Map<String, Integer> terms, final String value) {
+        Integer term = terms.get(value);
+        if (term == null) {
+            term = terms.size();
+            terms.put(value, term);
+        }
+        return term;
+    }
+
+    /**
+     * @return the distinct terms of the words and metaphone codes of an entry, in ascending order
+     */
+    private static int[] distinctTerms(final int[] wordTerms, final int[] metaphoneTerms) {
+        int[] all = Arrays.copyOf(wordTerms, wordTerms.length + metaphoneTerms.length);
+        System.arraycopy(metaphoneTerms, 0, all, wordTerms.length, metaphoneTerms.length);
+        Arrays.sort(all);
+        int count = 0;
+        for (int term : all) {
+            if (term != NO_TERM && (count == 0 || all[count - 1] != term)) {
+                all[count++] = term;
+            }
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    /**
+     * Prepare to score the entries for a spoken name.
+     * @param spokenName the spoken presentation name
+     * @return the query
+     */
+    Query query(final String spokenName) {
+        return new Query(tokenize(spokenName, SPOKEN_STOP_WORDS));
+    }
+
+    /**
+     * The terms of the words of a spoken name and their weights.
+     */
+    final class Query {
+        private final int[] wordTerms;
+        private final int[] metaphoneTerms;
+        private final double[] weights;
+        private final double totalWeight;
+        private final double averageWords;
+
+        private Query(final List<String> tokens) {
+            List<String> distinct = new ArrayList<>(new LinkedHashSet<>(tokens));
+            wordTerms = new int[distinct.size()];
+            metaphoneTerms = new int[distinct.size()];
+            weights = new double[distinct.size()];
+            double total = 0.0;
+            for (int i = 0; i < wordTerms.length; i++) {
+                String metaphone = metaphone(distinct.get(i));
+                wordTerms[i] = terms.getOrDefault(distinct.get(i), NO_TERM);
+                metaphoneTerms[i] = metaphone != null ? terms.getOrDefault(metaphone, NO_TERM) : NO_TERM;
+                // a word no entry contains weighs as much as the rarest word, so it lowers every confidence
+                int wordCount = frequency(wordTerms[i]);
+                weights[i] = idf(wordCount > 0 ? wordCount : frequency(metaphoneTerms[i]));
+                total += weights[i];
+            }
+            totalWeight = total;
+            averageWords = entries > 0 ? totalWords / (double) entries : 0.0;
+        }
+
+        /**
+         * Add the entries sharing a term with the spoken name to a set, except
+         * for the terms shared by so many entries that they tell little apart.
+         * @param ids the set of entries
+         */
+        void collectCandidates(final BitSet ids) {
+            int limit = Math.max(MIN_COMMON_TERM_FREQUENCY, (int) (COMMON_TERM_FRACTION * entries));
+            for (int i = 0; i < wordTerms.length; i++) {
+                collectCandidates(wordTerms[i], limit, ids);
+                collectCandidates(metaphoneTerms[i], limit, ids);
+            }
+        }
+
+        private void collectCandidates(final int term, final int limit, final BitSet ids) {
+            if (term != NO_TERM && frequencies[term] <= limit) {
+                for (int id : postings[term]) {
+                    ids.set(id);
+                }
+            }
+        }
+
+        /**
+         * @param id an entry
+         * @return the confidence that the entry is the one spoken, or 0 if it shares no word with the spoken name
+         */
+        double getConfidence(final int id) {
+            int[] words = entryWords[id];
+            int[] metaphones = entryMetaphones[id];
+            int spoken = wordTerms.length;
+            int[] counts = COUNTS.get();
+            if (counts.length < 2 * spoken) {
+                counts = new int[2 * spoken];
+                COUNTS.set(counts);
+            }
+            Arrays.fill(counts, 0, 2 * spoken, 0);
+            double entryWeight = 0.0;
+            double spokenEntryWeight = 0.0;
+            for (int w = 0; w < words.length; w++) {
+                double weight = idf(frequencies[words[w]]);
+                entryWeight += weight;
+                int word = indexOf(wordTerms, words[w]);
+                if (word >= 0) {
+                    counts[word]++;
+                    spokenEntryWeight += weight;
+                    continue;
+                }
+                boolean heard = false;
+                if (metaphones[w] != NO_TERM) {
+                    for (int i = 0; i < spoken; i++) {
+                        if (metaphoneTerms[i] == metaphones[w]) {
+                            counts[spoken + i]++;
+                            heard = true;
+                        }
+                    }
+                }
+                if (heard) {
+                    spokenEntryWeight += PHONETIC_WEIGHT * weight;
+                }
+            }
+            if (spokenEntryWeight == 0.0) {
+                return 0.0;
+            }
+            double lengthNorm = 1.0 - B + B * words.length / averageWords;
+            double spokenWeight = 0.0;
+            for (int i = 0; i < spoken; i++) {
+                if (counts[i] > 0) {
+                    spokenWeight += weights[i] * saturate(counts[i], lengthNorm);
+                } else if (counts[spoken + i] > 0) {
+                    spokenWeight += PHONETIC_WEIGHT * weights[i] * saturate(counts[spoken + i], lengthNorm);
+                }
+            }
+            double queryCoverage = totalWeight > 0.0 ? spokenWeight / totalWeight : 0.0;
+            double entryCoverage = entryWeight > 0.0 ? spokenEntryWeight / entryWeight : 0.0;
+            return QUERY_COVERAGE_WEIGHT * queryCoverage + (1.0 - QUERY_COVERAGE_WEIGHT) * entryCoverage;
+        }
+    }
+
+    private static int indexOf(final int[] values, final int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of entries that have not been removed containing a term, or 0 for no term
+     */
+    private int frequency(final int term) {
+        return term != NO_TERM ? frequencies[term] : 0;
+    }
+
+    /**
+     * @param count the number of entries containing a term
+     * @return the BM25 inverse document frequency of the term
+     */
+    private double idf(final int count) {
+        return Math.log(1.0 + (entries - count + 0.5) / (count + 0.5));
+    }
+
+    /**
+     * BM25 term frequency, scaled so a word appearing once in a name of
+     * average length counts fully, and capped there.
+     */
+    private static double saturate(final int count, final double lengthNorm) {
+        return Math.min(1.0, count * (K1 + 1.0) / (count + K1 * lengthNorm));
+    }
+
+    /**
+     * @return the lower-case words of a presentation name, without apostrophes and stop words
+     */
+    static List<String> tokenize(final String name) {
+        return tokenize(name, STOP_WORDS);
+    }
+
+    /**
+     * @return the lower-case words of a name, without apostrophes and the given stop words
+     */
+    private static List<String> tokenize(final String name, final Set<String> stopWords) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= name.length(); i++) {
+            char c = i < name.length() ? name.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (c != '\'' && token.length() > 0) {
+                String word = token.toString();
+                if (!stopWords.contains(word)) {
+                    tokens.add(word);
+                }
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @return the metaphone code of a word, or null if it has none
+     */
+    private static String metaphone(final String word) {
+        String metaphone = METAPHONE.doubleMetaphone(word);
+        return metaphone != null && !metaphone.isEmpty() ? metaphone : null;
+    }
+}
@@ -0,0 +1,61 @@
+package com.shankyank.alexa.presenter
+
+import org.apache.commons.lang.StringUtils
+import spock.lang.Specification
+
+/**
+ * Tests for the BoundedEditDistance.
+ */
+class BoundedEditDistanceSpec extends Specification {
+    private static final String LONG_NAME = 'lambda serverless architecture and the case of the missing servers, part two'
+
+    BoundedEditDistance instance = new BoundedEditDistance()
+
+    def 'exact distance matches commons-lang'() {
+        expect:
+        instance.distance(left, right) == StringUtils.getLevenshteinDistance(left, right)
+        instance.distance(right, left) == StringUtils.getLevenshteinDistance(left, right)
+
+        where:
+        left                  | right
+        ''                    | ''
+        ''                    | 'lambda'
+        'lambda'              | 'lambda'
+        'kitten'              | 'sitting'
+        'pikachu'             | 'peek at you'
+        'KNKN'                | 'KNKNJKSFRTMS'
+        'caf\u00e9 r\u00e9sum\u00e9'  | 'cafe resume'
+        LONG_NAME             | LONG_NAME.reverse()
+        LONG_NAME             | LONG_NAME.replace('server', 'service')
+        LONG_NAME + LONG_NAME | LONG_NAME
+    }
+
+    def 'distance within the bound is exact and beyond the bound exceeds it'() {
+        expect:
+        int actual = StringUtils.getLevenshteinDistance(left, right)
+        int bounded = instance.distance(left, right, bound)
+        actual <= bound ? bounded == actual : bounded > bound
+
+        where:
+        [left, right, bound] << [
+                ['kitten', 'sitting', LONG_NAME.toUpperCase(), LONG_NAME.replace('a', 'e')],
+                ['sitting', 'kitchen', LONG_NAME, LONG_NAME.replace('e', 'i')],
+                [0, 1, 2, 3, 5, 10]
+        ].combinations()
+    }
+
+    def 'scratch buffers are reused across calls without leaking state'() {
+        given:
+        Random random = new Random(360)
+        def randomString = { int length ->
+            (1..length).collect { (char) (97 + random.nextInt(4)) }.join('')
+        }
+
+        expect:
+        (1..500).every {
+            String left = randomString(random.nextInt(90) + 1)
+            String right = randomString(random.nextInt(90))
+            instance.distance(left, right) == StringUtils.getLevenshteinDistance(left, right)
+        }
+    }
+}
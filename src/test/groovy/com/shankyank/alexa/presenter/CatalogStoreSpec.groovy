@@ -0,0 +1,66 @@
+package com.shankyank.alexa.presenter
+
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+/**
+ * Tests for the CatalogStore.
+ */
+class CatalogStoreSpec extends Specification {
+    private static final long TTL = 60000L
+
+    Instant now = Instant.parse('2016-07-20T12:00:00Z')
+    Clock clock = Stub(Clock) {
+        millis() >> { now.toEpochMilli() }
+        getZone() >> ZoneOffset.UTC
+    }
+    CatalogStore instance = new CatalogStore(2, TTL, clock)
+
+    def 'catalogs with the same presentations are shared'() {
+        when:
+        PresentationCatalog first = instance.put([new Presentation('lambda', 'lambda.key')])
+        PresentationCatalog second = instance.put([new Presentation('lambda', 'lambda.key')])
+
+        then:
+        second.is(first)
+        instance.get(first.version).is(first)
+        instance.size() == 1
+    }
+
+    def 'the least recently used catalog is evicted once the store is full'() {
+        given:
+        PresentationCatalog first = instance.put(catalog('first'))
+        PresentationCatalog second = instance.put(catalog('second'))
+
+        when:
+        instance.get(first.version)
+        instance.put(catalog('third'))
+
+        then:
+        instance.get(first.version).is(first)
+        instance.get(second.version) == null
+    }
+
+    def 'catalogs that are not used within the time to live are evicted'() {
+        given:
+        PresentationCatalog first = instance.put(catalog('first'))
+        PresentationCatalog second = instance.put(catalog('second'))
+
+        when:
+        now = now.plusMillis(TTL - 1)
+        instance.get(second.version)
+        now = now.plusMillis(1)
+
+        then:
+        instance.get(first.version) == null
+        instance.get(second.version).is(second)
+        instance.size() == 1
+    }
+
+    private static List<Presentation> catalog(final String name) {
+        [new Presentation(name, "${name}.key")]
+    }
+}
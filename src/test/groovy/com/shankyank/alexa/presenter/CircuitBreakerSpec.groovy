@@ -0,0 +1,76 @@
+package com.shankyank.alexa.presenter
+
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+class CircuitBreakerSpec extends Specification {
+    private static final long OPEN_MILLIS = 30000L
+
+    Instant now = Instant.parse('2016-07-20T12:00:00Z')
+    Clock clock = Stub(Clock) {
+        millis() >> { now.toEpochMilli() }
+        getZone() >> ZoneOffset.UTC
+    }
+    CircuitBreaker instance = new CircuitBreaker('test', 3, OPEN_MILLIS, clock)
+
+    def 'the circuit opens after consecutive failures'() {
+        when:
+        2.times { instance.recordFailure() }
+
+        then:
+        instance.allowRequest()
+
+        when:
+        instance.recordFailure()
+
+        then:
+        instance.state == CircuitBreaker.State.OPEN
+        !instance.allowRequest()
+    }
+
+    def 'a success resets the count of failures'() {
+        when:
+        2.times { instance.recordFailure() }
+        instance.recordSuccess()
+        2.times { instance.recordFailure() }
+
+        then:
+        instance.state == CircuitBreaker.State.CLOSED
+        instance.allowRequest()
+    }
+
+    def 'a single trial call is let through once the circuit has been open for its open period'() {
+        given:
+        3.times { instance.recordFailure() }
+        now = now.plusMillis(OPEN_MILLIS)
+
+        expect:
+        instance.allowRequest()
+        instance.state == CircuitBreaker.State.HALF_OPEN
+        !instance.allowRequest()
+
+        when: 'the trial call succeeds'
+        instance.recordSuccess()
+
+        then:
+        instance.state == CircuitBreaker.State.CLOSED
+        instance.allowRequest()
+    }
+
+    def 'the circuit opens again when the trial call fails'() {
+        given:
+        3.times { instance.recordFailure() }
+        now = now.plusMillis(OPEN_MILLIS)
+        instance.allowRequest()
+
+        when:
+        instance.recordFailure()
+
+        then:
+        instance.state == CircuitBreaker.State.OPEN
+        !instance.allowRequest()
+    }
+}
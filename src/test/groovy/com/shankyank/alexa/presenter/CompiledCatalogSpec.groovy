@@ -0,0 +1,205 @@
+package com.shankyank.alexa.presenter
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+/**
+ * Tests for the CompiledCatalog and CatalogCompiler.
+ */
+class CompiledCatalogSpec extends Specification {
+    private static final List<String> NAMES = [
+            'knock knock jokes for dummies', 'pikachu where are you', "peek at you i can't see you",
+            'peek at you where are you', 'pikachu', 'peek at you', 'lambda', 'lambda serverless architecture',
+            'programming with alexa', 'bti360 august orange slice', 'knock knock jokes', "pikachu i don't see you",
+            'lambda orange slice', 'Situation FooBar', 'Enterprise FizzBuzz', 'lambda'
+    ]
+
+    List<Presentation> presentations = NAMES.withIndex().collect { name, i ->
+        new Presentation(name, "${i}.key", i == 2 ? 'peek at you<break strength="medium"/>i can\'t see you' : null)
+    }
+    PresentationCatalog catalog = PresentationCatalog.of(presentations)
+    Path file = Files.createTempFile('presentations', '.cat')
+
+    def cleanup() {
+        Files.deleteIfExists(file)
+    }
+
+    def 'a loaded catalog matches the same as a built index'() {
+        given:
+        compile(catalog)
+
+        when:
+        PresentationCatalog loaded = CompiledCatalog.load(file)
+
+        then:
+        loaded.index.match(spoken, 3) == PresentationIndex.build(presentations).match(spoken, 3)
+
+        where:
+        spoken << NAMES + ['pick a chew', 'lamb da', 'knock jokes', 'dummies knock knock', 'fizz buzz', 'x']
+    }
+
+    def 'a loaded catalog has the presentations and version it was compiled from'() {
+        given:
+        compile(catalog)
+
+        when:
+        PresentationCatalog loaded = CompiledCatalog.load(file)
+
+        then:
+        loaded.version == catalog.version
+        loaded.presentations == presentations
+        loaded.presentations[2].ssml == presentations[2].ssml
+        loaded.presentations[0].ssml == presentations[0].ssml
+    }
+
+    def 'the catalog store reuses the index of a loaded catalog for the same presentations'() {
+        given:
+        compile(catalog)
+        CatalogStore store = new CatalogStore()
+        PresentationCatalog loaded = store.put(CompiledCatalog.load(file).presentations)
+
+        when:
+        PresentationCatalog stored = store.put(presentations.collect {
+            new Presentation(it.name, it.filename, it.hasCustomSsml() ? it.ssml : null)
+        })
+
+        then:
+        stored.is(loaded)
+    }
+
+    def 'invalid content is rejected'() {
+        given:
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        CompiledCatalog.write(catalog, out)
+        byte[] content = out.toByteArray()
+        int position = offset >= 0 ? offset : content.length + offset
+        content[position] = (byte) (content[position] ^ 1)
+
+        when:
+        CompiledCatalog.read(ByteBuffer.wrap(content))
+
+        then:
+        IOException ex = thrown()
+        ex.message.contains(message)
+
+        where:
+        offset | message
+        0      | 'Not a compiled catalog'
+        7      | 'Unsupported compiled catalog format'
+        -9     | 'checksum'
+    }
+
+    def 'a truncated catalog is rejected'() {
+        given:
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        CompiledCatalog.write(catalog, out)
+
+        when:
+        CompiledCatalog.read(ByteBuffer.wrap(Arrays.copyOf(out.toByteArray(), length)))
+
+        then:
+        thrown(IOException)
+
+        where:
+        length << [0, 11, 100]
+    }
+
+    def 'the compiler writes the catalog and the slot values from the same presentations'() {
+        given:
+        Path slotValues = Files.createTempFile('presentation_names', '.txt')
+
+        when:
+        PresentationCatalog compiled = CatalogCompiler.compile(Paths.get('src/main/config/presentations.json'),
+                file, slotValues)
+
+        then:
+        CompiledCatalog.load(file).version == compiled.version
+        Files.readAllLines(slotValues).containsAll(compiled.presentations*.name)
+        Files.readAllLines(slotValues).containsAll(['pikachu', 'peek at you where are you', 'knock knock jokes',
+                                                    'bti360 august orange slice'])
+        Files.readAllLines(Paths.get('src/main/alexa/presentation_names.txt')) == Files.readAllLines(slotValues)
+
+        cleanup:
+        Files.deleteIfExists(slotValues)
+    }
+
+    def 'slot values list each presentation followed by its aliases once'() {
+        given:
+        byte[] json = '''[
+            {"name": "lambda", "filename": "lambda.key", "aliases": ["serverless", " lambda ", ""]},
+            {"name": "pikachu", "filename": "pikachu.key"},
+            {"name": "serverless", "filename": "serverless.key", "aliases": null}
+        ]'''.getBytes('UTF-8')
+
+        when:
+        String values = CatalogCompiler.toSlotValues(PresentationTable.read(new ByteArrayInputStream(json)))
+
+        then:
+        values == 'lambda\nserverless\npikachu\n'
+    }
+
+    def 'every slot value matches the presentation it names'() {
+        given:
+        Path slotValues = Files.createTempFile('presentation_names', '.txt')
+        PresentationCatalog compiled = CatalogCompiler.compile(Paths.get('src/main/config/presentations.json'),
+                file, slotValues)
+        PresentationTable table = compiled.presentations
+        Map<String, Presentation> named = [:]
+        table.eachWithIndex { presentation, i ->
+            ([presentation.name] + table.getAliases(i)).each { named.putIfAbsent(it, presentation) }
+        }
+        PresentationCatalog loaded = CompiledCatalog.load(file)
+
+        expect:
+        Files.readAllLines(slotValues).every { value ->
+            compiled.index.match(value)?.presentation == named[value] &&
+                    loaded.index.match(value)?.presentation == named[value]
+        }
+        named.size() == Files.readAllLines(slotValues).size()
+
+        cleanup:
+        Files.deleteIfExists(slotValues)
+    }
+
+    def 'a loaded catalog matches presentations by their aliases'() {
+        given:
+        byte[] json = '''[
+            {"name": "lambda orange slice", "filename": "lambda.key", "aliases": ["programming with alexa"]},
+            {"name": "pikachu i can't see you", "filename": "pikachu.key", "aliases": ["peek at you"]}
+        ]'''.getBytes('UTF-8')
+        compile(PresentationCatalog.of(PresentationTable.read(new ByteArrayInputStream(json))))
+
+        when:
+        PresentationCatalog loaded = CompiledCatalog.load(file)
+
+        then:
+        loaded.presentations.getAliases(0) == ['programming with alexa']
+        loaded.index.match('programming with alexa').presentation.filename == 'lambda.key'
+        loaded.index.match('peek at you').presentation.filename == 'pikachu.key'
+    }
+
+    def 'aliases that are not a list of names are rejected'() {
+        when:
+        PresentationTable.read(new ByteArrayInputStream(
+                "[{\"name\": \"lambda\", \"filename\": \"lambda.key\", \"aliases\": ${aliases}}]".getBytes('UTF-8')))
+
+        then:
+        thrown(IOException)
+
+        where:
+        aliases << ['"serverless"', '[1]', '{"name": "serverless"}']
+    }
+
+    private void compile(final PresentationCatalog catalog) {
+        OutputStream out = Files.newOutputStream(file)
+        try {
+            CompiledCatalog.write(catalog, out)
+        } finally {
+            out.close()
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.shankyank.alexa.presenter
+
+import com.amazon.speech.speechlet.Session
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import javax.net.ServerSocketFactory
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for the DirectPushPresentationStarter, with a PresenterAgent connected
+ * to a local AgentHub.
+ */
+class DirectPushPresentationStarterSpec extends Specification {
+    private static final String TOKEN = 'agent-token'
+    private static final MatchedPresentation PRESENTATION =
+            new MatchedPresentation('lambda', 1.0d, new Presentation('lambda', 'lambda.key'))
+
+    Session session = Session.builder().withSessionId('test-session-id').build()
+    PresentationStarter fallback = Mock(PresentationStarter)
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+    AgentHub hub = AgentHub.start(new InetSocketAddress(InetAddress.loopbackAddress, 0), TOKEN)
+    List<PresenterAgent> agents = []
+
+    def cleanup() {
+        agents*.close()
+        hub.close()
+    }
+
+    def 'presentation is pushed to the connected agent'() {
+        given:
+        List<MatchedPresentation> received = []
+        connect('laptop', TOKEN) { received << it; true }
+        DirectPushPresentationStarter instance = new DirectPushPresentationStarter(hub, fallback, 5000L)
+
+        when:
+        boolean started = instance.startPresentation(session, PRESENTATION)
+
+        then:
+        started
+        received == [PRESENTATION]
+        0*fallback._
+    }
+
+    def 'start fails when the agent cannot start the presentation'() {
+        given:
+        connect('laptop', TOKEN) { false }
+        DirectPushPresentationStarter instance = new DirectPushPresentationStarter(hub, fallback, 5000L)
+
+        expect:
+        !instance.startPresentation(session, PRESENTATION)
+    }
+
+    def 'presentation is started by the fallback when no agent is connected'() {
+        given:
+        DirectPushPresentationStarter instance = new DirectPushPresentationStarter(hub, fallback, 5000L)
+
+        when:
+        boolean started = instance.startPresentation(session, PRESENTATION)
+
+        then:
+        1*fallback.startPresentationAsync(session, PRESENTATION) >> CompletableFuture.completedFuture(true)
+        started
+    }
+
+    def 'agents with the wrong token are rejected'() {
+        given:
+        connect('intruder', 'wrong-token') { true }
+        DirectPushPresentationStarter instance = new DirectPushPresentationStarter(hub, fallback, 5000L)
+
+        when:
+        Thread.sleep(200)
+        boolean started = instance.startPresentation(session, PRESENTATION)
+
+        then:
+        hub.agentCount == 0
+        1*fallback.startPresentationAsync(session, PRESENTATION) >> CompletableFuture.completedFuture(true)
+        started
+    }
+
+    def 'the hub does not start without a token'() {
+        when:
+        AgentHub.start(new InetSocketAddress(InetAddress.loopbackAddress, 0), token)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        token << [null, '']
+    }
+
+    def 'agents without a token are rejected'() {
+        given:
+        connect('intruder', '') { true }
+
+        when:
+        Thread.sleep(200)
+
+        then:
+        hub.agentCount == 0
+    }
+
+    def 'start fails without falling back when the agent does not acknowledge in time'() {
+        given:
+        CountDownLatch release = new CountDownLatch(1)
+        connect('laptop', TOKEN) { release.await(5, TimeUnit.SECONDS) }
+        DirectPushPresentationStarter instance = new DirectPushPresentationStarter(hub, fallback, 100L)
+
+        when:
+        boolean started = instance.startPresentation(session, PRESENTATION)
+
+        then:
+        !started
+        0*fallback._
+
+        cleanup:
+        release.countDown()
+    }
+
+    def 'starts go to the most recently connected agent'() {
+        given:
+        List<String> startedBy = []
+        connect('old-laptop', TOKEN) { startedBy << 'old-laptop'; true }
+        connect('new-laptop', TOKEN) { startedBy << 'new-laptop'; true }
+        DirectPushPresentationStarter instance = new DirectPushPresentationStarter(hub, fallback, 5000L)
+
+        when:
+        instance.startPresentation(session, PRESENTATION)
+
+        then:
+        startedBy == ['new-laptop']
+    }
+
+    def 'connections that send a line longer than the message limit are closed'() {
+        given:
+        Socket socket = openSocket(hub)
+
+        when:
+        try {
+            socket.outputStream.write(('x' * (AgentHub.MAX_MESSAGE_CHARS + 1)).bytes)
+            socket.outputStream.flush()
+        } catch (IOException ignored) {
+            // the hub may close the connection before all of the line is written
+        }
+
+        then:
+        isClosedByHub(socket)
+        hub.agentCount == 0
+
+        cleanup:
+        socket.close()
+    }
+
+    def 'connections that keep sending without registering are closed at the registration timeout'() {
+        given:
+        AgentHub slowHub = AgentHub.start(new InetSocketAddress(InetAddress.loopbackAddress, 0), TOKEN,
+                ServerSocketFactory.default, 300L)
+        Socket socket = openSocket(slowHub)
+        long started = System.nanoTime()
+
+        when:
+        try {
+            for (int i = 0; i < 40; i++) {
+                socket.outputStream.write(' '.bytes)
+                socket.outputStream.flush()
+                Thread.sleep(50)
+            }
+        } catch (IOException ignored) {
+            // the hub closed the connection
+        }
+
+        then:
+        isClosedByHub(socket)
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1500
+
+        cleanup:
+        socket.close()
+        slowHub.close()
+    }
+
+    def 'connections beyond the unregistered limit are refused until a waiting one closes'() {
+        given:
+        List<Socket> waiting = (1..AgentHub.MAX_UNREGISTERED_AGENTS).collect { openSocket(hub) }
+        Socket refused = openSocket(hub)
+        List<Socket> attempts = []
+
+        expect:
+        isClosedByHub(refused)
+
+        when:
+        waiting*.close()
+        conditions.eventually {
+            register(attempts, 'laptop')
+            assert hub.agentCount == 1
+        }
+
+        then:
+        hub.agent.agentId == 'laptop'
+
+        cleanup:
+        refused.close()
+        attempts*.close()
+    }
+
+    /**
+     * Close earlier attempts and register again over a raw socket.
+     */
+    private void register(final List<Socket> attempts, final String agentId) {
+        attempts*.close()
+        Socket socket = openSocket(hub)
+        attempts << socket
+        socket.outputStream.write("{\"type\":\"register\",\"agentId\":\"$agentId\",\"token\":\"$TOKEN\"}\n".bytes)
+        Thread.sleep(100)
+    }
+
+    private static Socket openSocket(final AgentHub hub) {
+        Socket socket = new Socket(InetAddress.loopbackAddress, hub.port)
+        socket.soTimeout = 5000
+        socket
+    }
+
+    private static boolean isClosedByHub(final Socket socket) {
+        try {
+            socket.inputStream.read() == -1
+        } catch (SocketException ignored) {
+            true
+        }
+    }
+
+    private void connect(final String agentId, final String token, final Closure<Boolean> launcher) {
+        int connected = hub.agentCount
+        PresenterAgent agent = new PresenterAgent(new InetSocketAddress(InetAddress.loopbackAddress, hub.port),
+                agentId, token, { launcher.call(it) as boolean })
+        agents << agent
+        Thread thread = new Thread(agent.&run, "test-agent-$agentId")
+        thread.daemon = true
+        thread.start()
+        if (token == TOKEN) {
+            conditions.eventually {
+                assert hub.agentCount == connected + 1
+                assert hub.agent.agentId == agentId
+            }
+        }
+    }
+}
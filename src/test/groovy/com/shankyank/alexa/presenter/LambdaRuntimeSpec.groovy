@@ -0,0 +1,117 @@
+package com.shankyank.alexa.presenter
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+import java.text.SimpleDateFormat
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs a session through the custom Lambda runtime, as a JVM process and as
+ * the native executable built by the {@code nativeImage} task, against local
+ * stand-ins for the Runtime API, S3 and SNS.
+ */
+class LambdaRuntimeSpec extends Specification {
+    private static final String BUCKET = 'bti-presenter'
+    private static final String NATIVE_IMAGE_PROPERTY = 'presenter.nativeImage'
+
+    LocalAwsEndpoint aws = new LocalAwsEndpoint(new LocalS3().
+            put(BUCKET, 'config/presentations.json', new File('src/main/config/presentations.json')).
+            put(BUCKET, 'config/topic.txt', new File('src/main/config/topic.txt')))
+
+    def cleanup() {
+        aws.close()
+    }
+
+    def 'the runtime answers a session on the JVM'() {
+        when:
+        List<Map> responses = runSession([javaCommand(), '-cp', System.getProperty('java.class.path')])
+
+        then:
+        speech(responses[0]).contains('what would you like')
+        speech(responses[1]).contains('knock knock jokes for dummies')
+        speech(responses[2]).contains('starting lambda orange slice')
+        speech(responses[3]).contains('goodbye')
+        aws.published.size() == 1
+        aws.published[0].contains('lambda.key')
+    }
+
+    @IgnoreIf({ !new File(System.getProperty('presenter.nativeImage', '')).canExecute() })
+    def 'the native runtime answers a session the same as the JVM'() {
+        given:
+        List<Map> expected = runSession([javaCommand(), '-cp', System.getProperty('java.class.path')])
+
+        when:
+        List<Map> responses = runSession([System.getProperty(NATIVE_IMAGE_PROPERTY)])
+
+        then:
+        responses == expected
+        aws.published.size() == 2
+        aws.published[1] == aws.published[0]
+    }
+
+    /**
+     * Start the runtime, send it a session and stop it.
+     * @param command the command that starts the runtime, before its system properties
+     * @return the responses
+     */
+    private List<Map> runSession(final List<String> command) {
+        LocalRuntimeApi runtimeApi = new LocalRuntimeApi()
+        File log = File.createTempFile('lambda-runtime', '.log')
+        ProcessBuilder builder = new ProcessBuilder(command + [
+                "-D${AwsClients.S3_ENDPOINT_PROPERTY}=${aws.url}".toString(),
+                "-D${AwsClients.SNS_ENDPOINT_PROPERTY}=${aws.url}".toString(),
+                LambdaRuntime.name])
+        builder.environment().putAll((LambdaRuntime.RUNTIME_API_VARIABLE): runtimeApi.address,
+                AWS_ACCESS_KEY_ID: 'local', AWS_SECRET_ACCESS_KEY: 'local', AWS_REGION: 'us-east-1')
+        builder.redirectErrorStream(true).redirectOutput(log)
+        Process process = builder.start()
+        try {
+            Map session = [new: true, sessionId: 'runtime-session', application: [applicationId: 'runtime'],
+                           attributes: [:], user: [userId: 'runtime-user']]
+            [launch(),
+             intent(PresenterSpeechlet.LIST_PRESENTATIONS_INTENT, [:]),
+             intent(PresenterSpeechlet.START_PRESENTATION_INTENT,
+                     [(PresenterSpeechlet.PRESENTATION_SLOT): 'lambda orange slice']),
+             intent('AMAZON.StopIntent', [:])].collect { Map request ->
+                String event = JsonOutput.toJson([version: '1.0', session: session, request: request])
+                Map response = new JsonSlurper().parseText(runtimeApi.invoke(event).get(30, TimeUnit.SECONDS))
+                session = session + [new: false, attributes: response.sessionAttributes ?: [:]]
+                response
+            }
+        } catch (Exception ex) {
+            println log.text
+            throw ex
+        } finally {
+            process.destroy()
+            process.waitFor(10, TimeUnit.SECONDS)
+            runtimeApi.close()
+            log.delete()
+        }
+    }
+
+    private static Map launch() {
+        [type: 'LaunchRequest', requestId: UUID.randomUUID().toString(), timestamp: timestamp()]
+    }
+
+    private static Map intent(final String name, final Map<String, String> slots) {
+        [type: 'IntentRequest', requestId: UUID.randomUUID().toString(), timestamp: timestamp(),
+         intent: [name: name, slots: slots.collectEntries { slot, value -> [(slot): [name: slot, value: value]] }]]
+    }
+
+    private static String timestamp() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
+        format.timeZone = TimeZone.getTimeZone('UTC')
+        format.format(new Date())
+    }
+
+    private static String speech(final Map response) {
+        response.response.outputSpeech.ssml
+    }
+
+    private static String javaCommand() {
+        "${System.getProperty('java.home')}/bin/java"
+    }
+}
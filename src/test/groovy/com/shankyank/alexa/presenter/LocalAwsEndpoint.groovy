@@ -0,0 +1,93 @@
+package com.shankyank.alexa.presenter
+
+import com.amazonaws.services.s3.model.AmazonS3Exception
+import com.amazonaws.services.s3.model.GetObjectRequest
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Local HTTP endpoint for S3 and SNS, for AWS clients running in another
+ * process. S3 GETs are answered from a {@link LocalS3}; SNS publishes are
+ * accepted and recorded.
+ */
+class LocalAwsEndpoint implements Closeable {
+    private final HttpServer server
+
+    final LocalS3 s3
+    /** The messages published to SNS. */
+    final List<String> published = new CopyOnWriteArrayList<>()
+
+    LocalAwsEndpoint(final LocalS3 s3) {
+        this.s3 = s3
+        server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+        server.createContext('/') { HttpExchange exchange ->
+            exchange.requestMethod == 'POST' ? publish(exchange) : getObject(exchange)
+        }
+        server.start()
+    }
+
+    /**
+     * @return the URL to configure as the S3 and SNS endpoint
+     */
+    String getUrl() {
+        "http://${server.address.hostString}:${server.address.port}"
+    }
+
+    private void getObject(final HttpExchange exchange) {
+        String path = URLDecoder.decode(exchange.requestURI.rawPath.substring(1), 'UTF-8')
+        int slash = path.indexOf('/')
+        GetObjectRequest request = new GetObjectRequest(path.substring(0, slash), path.substring(slash + 1))
+        String eTag = exchange.requestHeaders.getFirst('If-None-Match')
+        if (eTag) {
+            request.nonmatchingETagConstraints = [eTag.replace('"', '')]
+        }
+        String range = exchange.requestHeaders.getFirst('Range')
+        if (range) {
+            request.setRange((range =~ /bytes=(\d+)-/)[0][1] as long)
+        }
+        try {
+            def object = s3.getObject(request)
+            if (object == null) {
+                exchange.sendResponseHeaders(304, -1)
+                exchange.close()
+                return
+            }
+            byte[] content = object.objectContent.bytes
+            exchange.responseHeaders.add('ETag', "\"${object.objectMetadata.ETag}\"")
+            respond(exchange, range ? 206 : 200, content)
+        } catch (AmazonS3Exception ase) {
+            respond(exchange, ase.statusCode,
+                    "<Error><Code>${ase.errorCode}</Code><Message>${ase.errorMessage}</Message></Error>".toString())
+        }
+    }
+
+    private void publish(final HttpExchange exchange) {
+        Map<String, String> form = exchange.requestBody.getText('UTF-8').split('&').collectEntries {
+            it.split('=', 2).collect { URLDecoder.decode(it, 'UTF-8') }
+        }
+        published << form.Message
+        respond(exchange, 200, '<PublishResponse xmlns="http://sns.amazonaws.com/doc/2010-03-31/">' +
+                "<PublishResult><MessageId>${UUID.randomUUID()}</MessageId></PublishResult>" +
+                "<ResponseMetadata><RequestId>${UUID.randomUUID()}</RequestId></ResponseMetadata>" +
+                '</PublishResponse>'.toString())
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) {
+        respond(exchange, status, body.getBytes('UTF-8'))
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body) {
+        exchange.sendResponseHeaders(status, body.length ?: -1)
+        if (body) {
+            exchange.responseBody.write(body)
+        }
+        exchange.close()
+    }
+
+    @Override
+    void close() {
+        server.stop(0)
+    }
+}
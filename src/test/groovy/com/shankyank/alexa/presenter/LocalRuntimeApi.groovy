@@ -0,0 +1,96 @@
+package com.shankyank.alexa.presenter
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Local stand-in for the Lambda Runtime API that hands queued events to a
+ * custom runtime and collects its responses.
+ */
+class LocalRuntimeApi implements Closeable {
+    private static final String API_PATH = '/2018-06-01/runtime'
+
+    private final HttpServer server
+    private final ExecutorService executor = Executors.newCachedThreadPool()
+    private final BlockingQueue<Map<String, String>> events = new LinkedBlockingQueue<>()
+    private final Map<String, CompletableFuture<String>> responses = new ConcurrentHashMap<>()
+
+    /** Completed with the error the runtime reports if it cannot start. */
+    final CompletableFuture<String> initError = new CompletableFuture<>()
+
+    LocalRuntimeApi() {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+        server.executor = executor
+        server.createContext(API_PATH) { HttpExchange exchange -> handle(exchange) }
+        server.start()
+    }
+
+    /**
+     * @return the host and port to pass to the runtime in {@code AWS_LAMBDA_RUNTIME_API}
+     */
+    String getAddress() {
+        "${server.address.hostString}:${server.address.port}"
+    }
+
+    /**
+     * Queue an event for the runtime.
+     * @return the response body, completed exceptionally if the runtime reports an error
+     */
+    CompletableFuture<String> invoke(final String event) {
+        String requestId = UUID.randomUUID().toString()
+        CompletableFuture<String> response = new CompletableFuture<>()
+        responses[requestId] = response
+        events.put([requestId: requestId, event: event])
+        response
+    }
+
+    private void handle(final HttpExchange exchange) {
+        String path = exchange.requestURI.path - API_PATH
+        String body = exchange.requestBody.getText('UTF-8')
+        if (path == '/invocation/next') {
+            Map<String, String> next = events.poll(1, TimeUnit.MINUTES)
+            if (next == null) {
+                respond(exchange, 500, '')
+                return
+            }
+            exchange.responseHeaders.add(LambdaRuntime.REQUEST_ID_HEADER, next.requestId)
+            exchange.responseHeaders.add(LambdaRuntime.DEADLINE_HEADER,
+                    String.valueOf(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10)))
+            respond(exchange, 200, next.event)
+        } else if (path == '/init/error') {
+            initError.complete(body)
+            respond(exchange, 202, '')
+        } else {
+            def (_, requestId, outcome) = (path =~ '^/invocation/([^/]+)/(response|error)$')[0]
+            if (outcome == 'response') {
+                responses[requestId]?.complete(body)
+            } else {
+                responses[requestId]?.completeExceptionally(new IllegalStateException(body))
+            }
+            respond(exchange, 202, '')
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) {
+        byte[] content = body.getBytes('UTF-8')
+        exchange.sendResponseHeaders(status, content.length ?: -1)
+        if (content) {
+            exchange.responseBody.write(content)
+        }
+        exchange.close()
+    }
+
+    @Override
+    void close() {
+        server.stop(0)
+        executor.shutdownNow()
+    }
+}
@@ -0,0 +1,99 @@
+package com.shankyank.alexa.presenter
+
+import com.amazonaws.services.s3.AbstractAmazonS3
+import com.amazonaws.services.s3.model.AmazonS3Exception
+import com.amazonaws.services.s3.model.GetObjectRequest
+import com.amazonaws.services.s3.model.ObjectMetadata
+import com.amazonaws.services.s3.model.S3Object
+import org.apache.commons.codec.digest.DigestUtils
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * In-memory stand-in for S3 that honors ETag constraints and ranges on GET
+ * requests, with injectable latency and faults.
+ */
+class LocalS3 extends AbstractAmazonS3 {
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>()
+    private final Map<String, Map<String, String>> userMetadata = new ConcurrentHashMap<>()
+
+    /** The number of GET requests received. */
+    final AtomicInteger getCount = new AtomicInteger()
+    /** The number of GET requests that downloaded an object. */
+    final AtomicInteger downloadCount = new AtomicInteger()
+    /** The number of bytes downloaded. */
+    final AtomicInteger downloadedBytes = new AtomicInteger()
+    /** Delay applied to every GET request, in milliseconds. */
+    volatile long latencyMillis = 0
+    /**
+     * Called with the number of each GET request before it is answered; may
+     * sleep to slow the request down or throw to fail it.
+     */
+    volatile Closure fault
+
+    LocalS3 put(final String bucket, final String key, final String content) {
+        put(bucket, key, content, [:])
+    }
+
+    LocalS3 put(final String bucket, final String key, final String content, final Map<String, String> metadata) {
+        userMetadata[path(bucket, key)] = metadata
+        objects[path(bucket, key)] = content.getBytes('UTF-8')
+        this
+    }
+
+    LocalS3 put(final String bucket, final String key, final File file) {
+        put(bucket, key, file.getText('UTF-8'))
+    }
+
+    LocalS3 append(final String bucket, final String key, final String content) {
+        byte[] existing = objects[path(bucket, key)] ?: new byte[0]
+        put(bucket, key, new String(existing, 'UTF-8') + content, userMetadata[path(bucket, key)] ?: [:])
+    }
+
+    @Override
+    S3Object getObject(final GetObjectRequest request) {
+        int count = getCount.incrementAndGet()
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis)
+        }
+        fault?.call(count)
+        byte[] content = objects[path(request.bucketName, request.key)]
+        if (content == null) {
+            AmazonS3Exception notFound = new AmazonS3Exception("NoSuchKey: ${request.key}")
+            notFound.statusCode = 404
+            notFound.errorCode = 'NoSuchKey'
+            throw notFound
+        }
+        String eTag = DigestUtils.md5Hex(content)
+        if (request.nonmatchingETagConstraints?.contains(eTag)) {
+            return null
+        }
+        if (request.range) {
+            int start = request.range[0] as int
+            if (start >= content.length) {
+                AmazonS3Exception notSatisfiable = new AmazonS3Exception("InvalidRange: ${request.key}")
+                notSatisfiable.statusCode = 416
+                notSatisfiable.errorCode = 'InvalidRange'
+                throw notSatisfiable
+            }
+            content = Arrays.copyOfRange(content, start, content.length)
+        }
+        downloadCount.incrementAndGet()
+        downloadedBytes.addAndGet(content.length)
+        ObjectMetadata metadata = new ObjectMetadata()
+        metadata.setHeader('ETag', eTag)
+        metadata.contentLength = content.length
+        metadata.userMetadata = userMetadata[path(request.bucketName, request.key)] ?: [:]
+        S3Object object = new S3Object()
+        object.bucketName = request.bucketName
+        object.key = request.key
+        object.objectMetadata = metadata
+        object.objectContent = new ByteArrayInputStream(content)
+        object
+    }
+
+    private static String path(final String bucket, final String key) {
+        "${bucket}/${key}"
+    }
+}
@@ -0,0 +1,101 @@
+package com.shankyank.alexa.presenter
+
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+/**
+ * Tests for the MatchCache.
+ */
+class MatchCacheSpec extends Specification {
+    private static final long TTL = 60000L
+
+    Instant now = Instant.parse('2016-07-20T12:00:00Z')
+    Clock clock = Stub(Clock) {
+        millis() >> { now.toEpochMilli() }
+        getZone() >> ZoneOffset.UTC
+    }
+    MetricsRegistry registry = new MetricsRegistry()
+    PresentationCatalog catalog = PresentationCatalog.of([
+            new Presentation('lambda', 'lambda.key'), new Presentation('pikachu where are you', 'pikachu.key')])
+    MatchCache instance = new MatchCache(64, TTL, clock)
+
+    def 'repeated utterances are not scored again'() {
+        given:
+        RequestMetrics metrics = RequestMetrics.begin('StartPresentation', registry)
+
+        when:
+        def first = instance.match(catalog, 'lambda', 2)
+        long scored = metrics.getCount(RequestMetrics.CANDIDATES_SCORED)
+        def second = instance.match(catalog, 'lambda', 2)
+
+        then:
+        second.is(first)
+        metrics.getCount(RequestMetrics.CANDIDATES_SCORED) == scored
+        metrics.getCount(RequestMetrics.MATCH_CACHE_HIT) == 1L
+        metrics.getCount(RequestMetrics.MATCH_CACHE_MISS) == 1L
+        instance.hitRate == 0.5d
+        first == catalog.index.match('lambda', 2)
+
+        cleanup:
+        metrics.end()
+    }
+
+    def 'names that differ only in whitespace share a result but keep the spoken name'() {
+        when:
+        instance.match(catalog, 'pikachu where are you', 2)
+        def matches = instance.match(catalog, '  pikachu  where are\tyou ', 2)
+
+        then:
+        instance.hits == 1L
+        matches*.spokenName == ['  pikachu  where are\tyou ']
+        matches*.presentation*.name == ['pikachu where are you']
+    }
+
+    def 'a changed catalog is matched again'() {
+        given:
+        PresentationCatalog changed = PresentationCatalog.of([new Presentation('lambda', 'lambda-v2.key')])
+
+        when:
+        instance.match(catalog, 'lambda', 2)
+        def matches = instance.match(changed, 'lambda', 2)
+
+        then:
+        instance.misses == 2L
+        matches*.presentation*.filename == ['lambda-v2.key']
+    }
+
+    def 'results expire after the time to live'() {
+        when:
+        instance.match(catalog, 'lambda', 2)
+        now = now.plusMillis(TTL - 1)
+        instance.match(catalog, 'lambda', 2)
+        now = now.plusMillis(1)
+        instance.match(catalog, 'lambda', 2)
+
+        then:
+        instance.hits == 1L
+        instance.misses == 2L
+    }
+
+    def 'the least recently used results are evicted once the cache is full'() {
+        given:
+        instance = new MatchCache(1, TTL, clock)
+        List<String> spoken = (0..<64).collect { "unknown ${it}".toString() }
+
+        when:
+        spoken.each { instance.match(catalog, it, 2) }
+        spoken.each { instance.match(catalog, it, 2) }
+
+        then:
+        instance.hits < 32L
+        instance.misses > 96L
+    }
+
+    def 'no results are cached until something is matched'() {
+        expect:
+        instance.hitRate == 0.0d
+    }
+}
@@ -0,0 +1,65 @@
+package com.shankyank.alexa.presenter
+
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+
+class MatchTraceBufferSpec extends Specification {
+    private static final long FLUSH_INTERVAL_MILLIS = 60000L
+
+    Instant now = Instant.parse('2016-07-20T12:00:00Z')
+    Clock clock = Stub(Clock) {
+        millis() >> { now.toEpochMilli() }
+        getZone() >> ZoneOffset.UTC
+    }
+    MatchTraceBuffer instance = new MatchTraceBuffer(1.0, 8, 4, FLUSH_INTERVAL_MILLIS, clock)
+
+    def 'records are written once they fill a batch'() {
+        when:
+        3.times { instance.add("{\"n\":${it}}") }
+
+        then:
+        instance.pendingCount == 3
+
+        when:
+        instance.add('{"n":3}')
+
+        then:
+        instance.pendingCount == 0
+    }
+
+    def 'records are written once the oldest has waited for the flush interval'() {
+        given:
+        instance.add('{"n":0}')
+
+        when:
+        now = now.plusMillis(FLUSH_INTERVAL_MILLIS - 1)
+        instance.flushIfDue()
+
+        then:
+        instance.pendingCount == 1
+
+        when:
+        now = now.plusMillis(1)
+        instance.flushIfDue()
+
+        then:
+        instance.pendingCount == 0
+    }
+
+    def 'the most recent records are kept after they are written'() {
+        when:
+        10.times { instance.add("{\"n\":${it}}") }
+
+        then:
+        instance.recent == (2..9).collect { "{\"n\":${it}}" as String }
+    }
+
+    def 'nothing is sampled at a zero rate'() {
+        expect:
+        !new MatchTraceBuffer(0.0).sample()
+        new MatchTraceBuffer(1.0).sample()
+    }
+}
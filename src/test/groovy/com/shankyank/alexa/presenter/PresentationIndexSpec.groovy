@@ -0,0 +1,252 @@
+package com.shankyank.alexa.presenter
+
+import org.apache.commons.codec.language.DoubleMetaphone
+import org.apache.commons.lang.StringUtils
+import spock.lang.Specification
+
+/**
+ * Tests for the PresentationIndex.
+ */
+class PresentationIndexSpec extends Specification {
+    private static final List<String> NAMES = [
+            'knock knock jokes for dummies', 'pikachu where are you', "peek at you i can't see you",
+            'peek at you where are you', 'pikachu', 'peek at you', 'lambda', 'lambda serverless architecture',
+            'programming with alexa', 'bti360 august orange slice', 'knock knock jokes', "pikachu i don't see you",
+            'lambda orange slice', 'low confidence', 'Situation FooBar', 'Enterprise FizzBuzz', 'lambda'
+    ]
+
+    private static final List<String> SPOKEN = NAMES + [
+            'can feed', 'condense', 'unknown presentation', 'pick a chew', 'lamb da', 'knock jokes',
+            'programing alexa', 'orange slice', 'where are you', 'peak at you', 'situation', 'fizz buzz', 'x'
+    ]
+
+    List<Presentation> presentations = NAMES.withIndex().collect { name, i -> new Presentation(name, "${i}.key") }
+    PresentationIndex instance = PresentationIndex.build(presentations)
+
+    def 'index returns the same match as scoring every presentation'() {
+        expect:
+        instance.match(spoken) == bruteForceMatch(spoken)
+
+        where:
+        spoken << SPOKEN
+    }
+
+    def 'exact name is matched with full confidence'() {
+        when:
+        MatchedPresentation match = instance.match('pikachu')
+
+        then:
+        match.confidence == 1.0d
+        match.presentation == presentations[4]
+    }
+
+    def 'ties are resolved in favor of the first presentation'() {
+        when:
+        MatchedPresentation match = instance.match('lambda')
+
+        then:
+        match.presentation == presentations[6]
+    }
+
+    def 'no match is returned below the confirmation threshold'() {
+        expect:
+        instance.match('unknown presentation') == null
+    }
+
+    def 'top matches are ordered by confidence and then by catalog position'() {
+        when:
+        List<MatchedPresentation> matches = instance.match('lambda', 2)
+
+        then:
+        matches[0].presentation == presentations[6]
+        matches[1].presentation == presentations[16]
+        matches*.confidence == [1.0d, 1.0d]
+    }
+
+    def 'top matches are the best scoring presentations'() {
+        expect:
+        instance.match(spoken, 3) == bruteForceMatches(spoken).take(3)
+
+        where:
+        spoken << SPOKEN
+    }
+
+    def 'large candidate sets are scored in parallel with the same result'() {
+        given:
+        presentations = (0..<PresentationIndex.PARALLEL_THRESHOLD * 3).collect {
+            new Presentation(String.format('presentation %05d', it), "${it}.key")
+        }
+        instance = PresentationIndex.build(presentations)
+
+        expect:
+        instance.match('presentation 01234', 5) == bruteForceMatches('presentation 01234').take(5)
+    }
+
+    def 'updated index matches the same as a rebuilt index'() {
+        given:
+        PresentationCatalog catalog = PresentationCatalog.of(presentations)
+        catalog.index
+
+        when:
+        PresentationCatalog updated = catalog.apply([
+                CatalogChange.remove(1, 'pikachu'),
+                CatalogChange.rename(2, 'lambda', 'lamb duh'),
+                CatalogChange.add(3, 'pick a chew', 'chew.key', null),
+                CatalogChange.add(4, 'fizz buzz', 'fizz.key', null),
+                CatalogChange.remove(5, 'fizz buzz')
+        ])
+
+        then:
+        updated.index.match(spoken, 3) == PresentationIndex.build(updated.presentations).match(spoken, 3)
+        catalog.index.match(spoken, 3) == bruteForceMatches(spoken).take(3)
+
+        where:
+        spoken << SPOKEN + ['lamb duh']
+    }
+
+    def 'partial and reordered names are matched by their words'() {
+        when:
+        MatchedPresentation match = instance.match(spoken)
+
+        then:
+        match.presentation.name == expected
+
+        where:
+        spoken                    | expected
+        'the pikachu one'         | 'pikachu'
+        'dummies knock knock'     | 'knock knock jokes for dummies'
+        'the orange slice lambda' | 'lambda orange slice'
+        'fizzbuzz enterprise'     | 'Enterprise FizzBuzz'
+        'serverless'              | 'lambda serverless architecture'
+    }
+
+    def 'partial names of the shipped presentations are matched by their words'() {
+        given:
+        instance = new File('src/main/config/presentations.json').withInputStream {
+            PresentationIndex.build(PresentationTable.read(it))
+        }
+
+        when:
+        MatchedPresentation match = instance.match(spoken)
+
+        then:
+        match.presentation.name == expected
+
+        where:
+        spoken                | expected
+        'pikachu'             | "pikachu i can't see you"
+        'the pikachu one'     | "pikachu i can't see you"
+        'dummies knock knock' | 'knock knock jokes for dummies'
+        'knock knock jokes'   | 'knock knock jokes for dummies'
+        'lambda'              | 'lambda orange slice'
+        'orange slice'        | 'lambda orange slice'
+    }
+
+    def 'presentations are matched by their aliases'() {
+        given:
+        instance = new File('src/main/config/presentations.json').withInputStream {
+            PresentationIndex.build(PresentationTable.read(it))
+        }
+
+        when:
+        List<MatchedPresentation> matches = instance.match(spoken, 3)
+
+        then:
+        matches[0].presentation.name == expected
+        matches[0].confidence == 1.0d
+        // a presentation matched by its name and several aliases is ranked once
+        matches*.presentation.name.unique(false) == matches*.presentation.name
+
+        where:
+        spoken                   | expected
+        'peek at you'            | "pikachu i can't see you"
+        'programming with alexa' | 'lambda orange slice'
+    }
+
+    def 'aliases of added presentations are indexed and those of removed ones are not'() {
+        given:
+        PresentationTable table = PresentationTable.read(new ByteArrayInputStream('''[
+            {"name": "lambda orange slice", "filename": "lambda.key", "aliases": ["programming with alexa"]},
+            {"name": "pikachu i can't see you", "filename": "pikachu.key", "aliases": ["peek at you"]},
+            {"name": "knock knock jokes for dummies", "filename": "knock.key"}
+        ]'''.getBytes('UTF-8')))
+        PresentationCatalog catalog = PresentationCatalog.of(table)
+        catalog.index
+
+        when:
+        PresentationCatalog updated = catalog.apply([
+                CatalogChange.remove(1, 'lambda orange slice'),
+                CatalogChange.rename(2, "pikachu i can't see you", 'pikachu')
+        ])
+
+        then:
+        updated.index.match('programming with alexa') == null
+        updated.index.match('peek at you').presentation.name == 'pikachu'
+        updated.index.match('peek at you') == PresentationIndex.build(updated.presentations).match('peek at you')
+    }
+
+    def 'a spoken name sharing only one of its words with a presentation is not matched'() {
+        given:
+        instance = new File('src/main/config/presentations.json').withInputStream {
+            PresentationIndex.build(PresentationTable.read(it))
+        }
+
+        expect:
+        instance.match(spoken) == null
+
+        where:
+        spoken << ['jokes about cats', 'where are my slides']
+    }
+
+    def 'only presentations sharing a word with the spoken name are scored for it'() {
+        given:
+        presentations = (0..<1000).collect {
+            new Presentation("talk number ${it} about topic ${it % 10}", "${it}.key")
+        } + [new Presentation('pikachu i can\'t see you', 'pikachu.key')]
+        instance = PresentationIndex.build(presentations)
+        RequestMetrics metrics = RequestMetrics.begin('Test', new MetricsRegistry())
+
+        when:
+        MatchedPresentation match = instance.match('pikachu the one where i can\'t see')
+
+        then:
+        match.presentation.filename == 'pikachu.key'
+        metrics.getCount(RequestMetrics.CANDIDATES_SCORED) == 1
+
+        cleanup:
+        metrics.end()
+    }
+
+    def 'empty index matches nothing'() {
+        expect:
+        PresentationIndex.build([]).match('anything') == null
+    }
+
+    /**
+     * Reference implementation that scores every presentation.
+     */
+    private MatchedPresentation bruteForceMatch(final String spoken) {
+        bruteForceMatches(spoken)[0]
+    }
+
+    /**
+     * Reference implementation that scores and sorts every presentation.
+     */
+    private List<MatchedPresentation> bruteForceMatches(final String spoken) {
+        TokenIndex.Query tokens = TokenIndex.build(presentations*.name as String[]).query(spoken)
+        DoubleMetaphone metaphone = new DoubleMetaphone()
+        metaphone.maxCodeLen = 20
+        def levenshtein = { String actual, String expected ->
+            (expected.length() - StringUtils.getLevenshteinDistance(actual, expected)) / (double) expected.length()
+        }
+        List<MatchedPresentation> matches = presentations.withIndex().collect { presentation, i ->
+            double meta = metaphone.isDoubleMetaphoneEqual(spoken, presentation.name) ? 1.0d :
+                    levenshtein(metaphone.doubleMetaphone(spoken), metaphone.doubleMetaphone(presentation.name))
+            double confidence = Math.max(levenshtein(spoken, presentation.name), meta)
+            new MatchedPresentation(spoken, PresentationIndex.blend(confidence, tokens.getConfidence(i)), presentation)
+        }
+        // stable sort keeps catalog order for equal confidence
+        matches.findAll { it.confidence >= PresentationIndex.CONFIRMATION_THRESHOLD }.
+                sort(false) { a, b -> b.confidence <=> a.confidence }
+    }
+}
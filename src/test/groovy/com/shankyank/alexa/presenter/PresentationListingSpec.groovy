@@ -0,0 +1,69 @@
+package com.shankyank.alexa.presenter
+
+import spock.lang.Specification
+
+/**
+ * Tests for the PresentationListing.
+ */
+class PresentationListingSpec extends Specification {
+    private static final String BREAK = '<break strength="medium"/>'
+
+    def 'catalog that fits on one page is listed in full'() {
+        given:
+        List<Presentation> presentations = createPresentations(3)
+
+        when:
+        PresentationListing listing = PresentationListing.render(presentations)
+
+        then:
+        listing.pageCount == 1
+        listing.getPage(0) == "<s>i can start 3 presentations</s>" +
+                "presentation 0${BREAK}presentation 1${BREAK}or${BREAK} presentation 2" +
+                "<s>which would you like?</s>"
+    }
+
+    def 'large catalog is split into pages of bounded size'() {
+        given:
+        List<Presentation> presentations = createPresentations(25)
+
+        when:
+        PresentationListing listing = PresentationListing.render(presentations, 10)
+
+        then:
+        listing.pageCount == 3
+        listing.getPage(0).startsWith('<s>i can start 25 presentations</s>presentation 0')
+        listing.getPage(0).endsWith("presentation 9<s>say next to hear more, or which would you like?</s>")
+        listing.getPage(1).startsWith('<s>presentations 11 to 20</s>presentation 10')
+        !listing.getPage(1).contains('or<break')
+        listing.getPage(2) == "<s>presentations 21 to 25</s>presentation 20${BREAK}presentation 21${BREAK}" +
+                "presentation 22${BREAK}presentation 23${BREAK}or${BREAK} presentation 24<s>which would you like?</s>"
+    }
+
+    def 'page numbers are clamped to the available pages'() {
+        given:
+        PresentationListing listing = PresentationListing.render(createPresentations(25), 10)
+
+        expect:
+        listing.clamp(page) == expected
+        listing.getPage(page).is(listing.getPage(expected))
+
+        where:
+        page | expected
+        -1   | 0
+        0    | 0
+        2    | 2
+        3    | 2
+    }
+
+    def 'catalog renders its listing once'() {
+        given:
+        PresentationCatalog catalog = PresentationCatalog.of(createPresentations(3))
+
+        expect:
+        catalog.listing.is(catalog.listing)
+    }
+
+    private static List<Presentation> createPresentations(final int count) {
+        (0..<count).collect { new Presentation("presentation ${it}", "${it}.pptx") }
+    }
+}
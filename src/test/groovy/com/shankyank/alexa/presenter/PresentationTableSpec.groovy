@@ -0,0 +1,168 @@
+package com.shankyank.alexa.presenter
+
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+import static com.shankyank.alexa.presenter.Presentation.LIST_OF_PRESENTATIONS
+
+/**
+ * Tests for the PresentationTable.
+ */
+class PresentationTableSpec extends Specification {
+    private static final ObjectMapper JSON = new ObjectMapper()
+
+    def 'streamed catalog matches the data-bound catalog'() {
+        given:
+        File config = new File('src/main/config/presentations.json')
+
+        when:
+        PresentationTable table = config.withInputStream { PresentationTable.read(it) }
+
+        then:
+        table == JSON.readValue(config, LIST_OF_PRESENTATIONS)
+        table.size() == 3
+        table.getConfiguredSsml(0) == 'pikachu<break strength="medium"/>i can\'t see you'
+        table.getConfiguredSsml(1) == null
+        table[1].ssml == table[1].name
+    }
+
+    def 'unknown fields are skipped and blank ssml is derived from the name'() {
+        when:
+        PresentationTable table = read('''[
+            {"name": "Q&A", "tags": ["a", {"b": 1}], "filename": "qa.key", "ssml": " "},
+            {"filename": "x.key", "name": "x", "ssml": null, "owner": {"name": "someone"}}
+        ]''')
+
+        then:
+        table == [new Presentation('Q&A', 'qa.key'), new Presentation('x', 'x.key')]
+        table[0].ssml == 'Q&amp;A'
+    }
+
+    def 'fields are read in any order and blank ssml is derived from the name'() {
+        when:
+        PresentationTable table = read('''[
+            {"ssml": "<p>first</p>", "filename": "first.key", "name": "first"},
+            {"filename": "second.key", "ssml": "  ", "name": "second & more"},
+            {"name": "third", "ssml": null, "filename": "third.key"}
+        ]''')
+
+        then:
+        (0..2).collect { table.getFilename(it) } == ['first.key', 'second.key', 'third.key']
+        (0..2).collect { table.getConfiguredSsml(it) } == ['<p>first</p>', null, null]
+        table[1].ssml == 'second &amp; more'
+    }
+
+    def 'invalid catalogs are rejected'() {
+        when:
+        read(json)
+
+        then:
+        thrown(JsonParseException)
+
+        where:
+        json << ['{"name": "x", "filename": "x.key"}', '[{"name": "x"}]', '[{"filename": "x.key"}]', '["x"]']
+    }
+
+    def 'empty catalog is the empty table'() {
+        expect:
+        read('[]').is(PresentationTable.EMPTY)
+        PresentationTable.copyOf(null).is(PresentationTable.EMPTY)
+    }
+
+    def 'catalogs use a table without copying it'() {
+        given:
+        PresentationTable table = read('[{"name": "x", "filename": "x.key"}]')
+
+        expect:
+        PresentationTable.copyOf(table).is(table)
+        PresentationCatalog.of(table).presentations.is(table)
+        PresentationCatalog.of(table).version == PresentationCatalog.of([new Presentation('x', 'x.key')]).version
+    }
+
+    def 'changes are applied in order and presentations keep their position'() {
+        given:
+        PresentationTable table = read('''[
+            {"name": "a", "filename": "a.key"},
+            {"name": "b", "filename": "b.key", "ssml": "bee"},
+            {"name": "c", "filename": "c.key"}
+        ]''')
+
+        when:
+        PresentationTable.Update update = table.apply([
+                CatalogChange.add(1, 'd', 'd.key', null),
+                CatalogChange.remove(2, 'a'),
+                CatalogChange.rename(3, 'b', 'be'),
+                CatalogChange.add(4, 'c', 'c2.key', null),
+                CatalogChange.remove(5, 'missing')
+        ])
+
+        then:
+        update.table == [new Presentation('be', 'b.key', 'bee'), new Presentation('c', 'c2.key'),
+                new Presentation('d', 'd.key')]
+        (0..2).collect { update.getNewPosition(it) } == [-1, -1, 1]
+        update.addedPositions as List == [0, 2]
+        PresentationCatalog.of(update.table).version == PresentationCatalog.of(new ArrayList(update.table)).version
+    }
+
+    def 'changes to a name shared by several presentations apply to the first of them'() {
+        given:
+        PresentationTable table = read('''[
+            {"name": "x", "filename": "x1.key"},
+            {"name": "y", "filename": "y.key"},
+            {"name": "x", "filename": "x2.key"},
+            {"name": "z", "filename": "z.key"}
+        ]''')
+
+        when:
+        PresentationTable.Update update = table.apply([
+                CatalogChange.remove(1, 'x'),
+                CatalogChange.rename(2, 'z', 'x'),
+                CatalogChange.add(3, 'x', 'x3.key', null),
+                CatalogChange.rename(4, 'x', 'w'),
+                CatalogChange.rename(5, 'x', 'v')
+        ])
+
+        then:
+        update.table*.name == ['y', 'w', 'v']
+        update.table*.filename == ['y.key', 'x3.key', 'z.key']
+    }
+
+    def 'presentations keep their aliases when they are replaced or renamed'() {
+        given:
+        PresentationTable table = read('''[
+            {"name": "a", "filename": "a.key", "aliases": ["ay", " ", "ay", " eh "]},
+            {"name": "b", "filename": "b.key", "aliases": ["bee"]},
+            {"name": "c", "filename": "c.key"}
+        ]''')
+
+        when:
+        PresentationTable updated = table.apply([
+                CatalogChange.add(1, 'a', 'a2.key', null),
+                CatalogChange.rename(2, 'b', 'be'),
+                CatalogChange.add(3, 'd', 'd.key', null)
+        ]).table
+
+        then:
+        (0..2).collect { table.getAliases(it) } == [['ay', 'eh'], ['bee'], []]
+        (0..3).collect { updated.getAliases(it) } == [['ay', 'eh'], ['bee'], [], []]
+        PresentationCatalog.of(table).version != PresentationCatalog.of(new ArrayList(table)).version
+    }
+
+    def 'table is immutable'() {
+        given:
+        PresentationTable table = PresentationTable.copyOf([new Presentation('x', 'x.key')])
+
+        when:
+        table.add(new Presentation('y', 'y.key'))
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    private static PresentationTable read(final String json) {
+        PresentationTable.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))
+    }
+}
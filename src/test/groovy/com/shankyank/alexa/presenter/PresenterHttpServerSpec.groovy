@@ -0,0 +1,162 @@
+package com.shankyank.alexa.presenter
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import com.sun.net.httpserver.HttpServer
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.text.SimpleDateFormat
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for the PresenterHttpServer.
+ */
+class PresenterHttpServerSpec extends Specification {
+    private static final ObjectMapper JSON = new ObjectMapper()
+
+    private static final List<Presentation> TEST_PRESENTATIONS = [
+            new Presentation('Situation FooBar', 'foobar.pptx'),
+            new Presentation('Enterprise FizzBuzz', 'fizzbuzz.pptx')
+    ]
+
+    MetricsRegistry registry = new MetricsRegistry()
+    SessionInitializer initializer = Stub(SessionInitializer) {
+        getAvailablePresentations() >> TEST_PRESENTATIONS
+    }
+    PresenterHttpServer server
+
+    def cleanup() {
+        server?.stop(0)
+    }
+
+    def 'alexa requests are handled by the speechlet'() {
+        given:
+        start(2, 4, false)
+
+        when:
+        HttpURLConnection connection = post(createListRequest())
+
+        then:
+        connection.responseCode == 200
+        JSON.readTree(connection.inputStream).response.outputSpeech.ssml.asText().contains('Situation FooBar')
+        registry.timer(PresenterHttpServer.HTTP_REQUEST_TIME).count == 1L
+    }
+
+    def 'unsigned requests are rejected when signatures are verified'() {
+        given:
+        start(2, 4, true)
+
+        when:
+        HttpURLConnection connection = post(createListRequest())
+
+        then:
+        connection.responseCode == 400
+        registry.getCount(PresenterHttpServer.HTTP_FAILURE) == 1L
+    }
+
+    def 'requests longer than the limit are rejected before they are read'() {
+        given:
+        start(2, 4, true)
+        byte[] body = new byte[PresenterHttpServer.MAX_REQUEST_BYTES + 1]
+        Arrays.fill(body, (byte) ' ')
+
+        when:
+        HttpURLConnection connection = post(body, chunked)
+
+        then:
+        connection.responseCode == 413
+        registry.getCount(PresenterHttpServer.HTTP_FAILURE) == 1L
+
+        where:
+        chunked << [false, true]
+    }
+
+    def 'requests are answered with 503 when every worker is busy'() {
+        given:
+        CountDownLatch entered = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        initializer = Stub(SessionInitializer) {
+            getAvailablePresentations() >> {
+                entered.countDown()
+                release.await(10, TimeUnit.SECONDS)
+                TEST_PRESENTATIONS
+            }
+        }
+        start(1, 0, false)
+        def pool = Executors.newSingleThreadExecutor()
+
+        when:
+        Future<Integer> first = pool.submit({ post(createListRequest()).responseCode } as Callable)
+        entered.await(10, TimeUnit.SECONDS)
+        int second = post(createListRequest()).responseCode
+        release.countDown()
+
+        then:
+        second == 503
+        first.get(10, TimeUnit.SECONDS) == 200
+        registry.getCount(PresenterHttpServer.HTTP_REJECTED) == 1L
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    def 'stats report throughput and latency'() {
+        given:
+        start(2, 4, false)
+        post(createListRequest()).responseCode
+
+        URL url = new URL("http://localhost:${server.address.port}${PresenterHttpServer.STATS_PATH}")
+
+        expect:
+        // the request is timed once its response has been sent, so its stats may lag behind
+        new PollingConditions(timeout: 5).eventually {
+            def stats = JSON.readTree(url.openStream())
+            assert stats.requests.asLong() == 1L
+            assert stats.workers.asInt() == 2
+            assert stats.timers[PresenterHttpServer.HTTP_REQUEST_TIME].count.asLong() == 1L
+            assert stats.timers[RequestMetrics.REQUEST_TIME].p99Millis.asDouble() > 0.0d
+        }
+    }
+
+    private void start(final int threads, final int queueCapacity, final boolean verifySignatures) {
+        server = new PresenterHttpServer(HttpServer.create(new InetSocketAddress('localhost', 0), 0),
+                new PresenterSpeechlet(initializer, registry), registry, threads, queueCapacity, verifySignatures)
+        server.start()
+    }
+
+    private HttpURLConnection post(final byte[] body, final boolean chunked = false) {
+        URL url = new URL("http://localhost:${server.address.port}${PresenterHttpServer.SKILL_PATH}")
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection()
+        connection.requestMethod = 'POST'
+        connection.doOutput = true
+        if (chunked) {
+            connection.setChunkedStreamingMode(4096)
+        }
+        connection.setRequestProperty('Content-Type', 'application/json')
+        connection.outputStream.withStream { it.write(body) }
+        connection
+    }
+
+    private static byte[] createListRequest() {
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
+        timestamp.timeZone = TimeZone.getTimeZone('UTC')
+        ObjectNode envelope = JSON.createObjectNode()
+        envelope.put('version', '1.0')
+        ObjectNode session = envelope.putObject('session')
+        session.put('new', false)
+        session.put('sessionId', 'test-session-id')
+        session.putObject('application').put('applicationId', 'test-application-id')
+        session.putObject('attributes')
+        ObjectNode request = envelope.putObject('request')
+        request.put('type', 'IntentRequest')
+        request.put('requestId', 'test-id')
+        request.put('timestamp', timestamp.format(new Date()))
+        request.putObject('intent').put('name', PresenterSpeechlet.LIST_PRESENTATIONS_INTENT).putObject('slots')
+        JSON.writeValueAsBytes(envelope)
+    }
+}
@@ -0,0 +1,144 @@
+package com.shankyank.alexa.presenter
+
+import com.amazon.speech.speechlet.SpeechletException
+import com.amazon.speech.speechlet.SpeechletRequestHandler
+import com.amazon.speech.speechlet.verifier.ApplicationIdSpeechletRequestVerifier
+import com.amazon.speech.speechlet.verifier.CardSpeechletResponseVerifier
+import com.amazon.speech.speechlet.verifier.OutputSpeechSpeechletResponseVerifier
+import com.amazon.speech.speechlet.verifier.ResponseSizeSpeechletResponseVerifier
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+/**
+ * Tests for the PresenterSpeechletRequestStreamHandler.
+ */
+class PresenterSpeechletRequestStreamHandlerSpec extends Specification {
+    private static final List<Presentation> TEST_PRESENTATIONS = [
+            new Presentation('Situation FooBar', 'foobar.pptx'),
+            new Presentation('Enterprise FizzBuzz', 'fizzbuzz.pptx')
+    ]
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+
+    PresentationStarter starter = Mock(PresentationStarter)
+    SessionInitializer initializer = Mock(SessionInitializer)
+
+    def 'catalog and presentation starter are primed when the handler is created'() {
+        when:
+        new PresenterSpeechletRequestStreamHandler(new PresenterSpeechlet(initializer))
+
+        then:
+        (1.._)*initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        (1.._)*initializer.getPresentationStarter() >> starter
+        1*starter.prime()
+        0*starter.startPresentation(_, _)
+    }
+
+    def 'priming reads the shared presentations and records no metrics'() {
+        given:
+        MetricsRegistry registry = new MetricsRegistry()
+
+        when:
+        new PresenterSpeechletRequestStreamHandler(new PresenterSpeechlet(initializer, registry))
+
+        then:
+        (1.._)*initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        0*initializer.getAvailablePresentations(_)
+        (1.._)*initializer.getPresentationStarter() >> starter
+        registry.counters.isEmpty()
+        registry.timers.isEmpty()
+    }
+
+    def 'priming failures do not prevent the handler from being created'() {
+        when:
+        def handler = new PresenterSpeechletRequestStreamHandler(new PresenterSpeechlet(initializer))
+
+        then:
+        initializer.getAvailablePresentations() >> { throw new SpeechletException('S3 is unavailable') }
+        handler
+    }
+
+    def 'configuration is refreshed and primed again after restore'() {
+        given:
+        initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        initializer.getPresentationStarter() >> starter
+        def handler = new PresenterSpeechletRequestStreamHandler(new PresenterSpeechlet(initializer))
+
+        when:
+        handler.afterRestore(null)
+
+        then:
+        1*initializer.refresh()
+
+        then:
+        1*starter.prime()
+    }
+
+    def 'cached responses are written as the Alexa Skills Kit would write them'() {
+        given:
+        initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        initializer.getPresentationStarter() >> starter
+        PresenterSpeechlet speechlet = new PresenterSpeechlet(initializer)
+        def handler = new PresenterSpeechletRequestStreamHandler(speechlet)
+        def reference = new SpeechletRequestHandler(
+                [new ApplicationIdSpeechletRequestVerifier([] as Set)],
+                [new ResponseSizeSpeechletResponseVerifier(), new OutputSpeechSpeechletResponseVerifier(),
+                 new CardSpeechletResponseVerifier()])
+        byte[] request = createRequest(intent, [(PresenterSpeechlet.LIST_PAGE_KEY): 0, other: 'value'])
+        long hits = speechlet.responseCache.hitCount
+
+        when:
+        byte[] first = handle(handler, request)
+        byte[] second = handle(handler, request)
+
+        then:
+        speechlet.responseCache.hitCount - hits >= 1
+        JSON.readTree(second) == JSON.readTree(first)
+        JSON.readTree(second) == JSON.readTree(reference.handleSpeechletCall(speechlet, request))
+
+        where:
+        intent << [PresenterSpeechlet.LIST_PRESENTATIONS_INTENT, 'AMAZON.NextIntent', 'AMAZON.StopIntent']
+    }
+
+    def 'session attributes are written for each request with a cached response'() {
+        given:
+        initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        initializer.getPresentationStarter() >> starter
+        def handler = new PresenterSpeechletRequestStreamHandler(new PresenterSpeechlet(initializer))
+
+        when:
+        def first = JSON.readTree(handle(handler, createRequest(PresenterSpeechlet.LIST_PRESENTATIONS_INTENT,
+                [other: 'first'])))
+        def second = JSON.readTree(handle(handler, createRequest(PresenterSpeechlet.LIST_PRESENTATIONS_INTENT,
+                [other: 'second'])))
+
+        then:
+        first.get('response') == second.get('response')
+        first.get('sessionAttributes').get('other').asText() == 'first'
+        second.get('sessionAttributes').get('other').asText() == 'second'
+    }
+
+    private static byte[] handle(final PresenterSpeechletRequestStreamHandler handler, final byte[] request) {
+        ByteArrayOutputStream response = new ByteArrayOutputStream()
+        handler.handleRequest(new ByteArrayInputStream(request), response, null)
+        response.toByteArray()
+    }
+
+    private static byte[] createRequest(final String intentName, final Map attributes) {
+        JSON.writeValueAsBytes([
+                version: '1.0',
+                session: [
+                        new: false,
+                        sessionId: 'test-session-id',
+                        application: [applicationId: 'test-application'],
+                        attributes: attributes
+                ],
+                request: [
+                        type: 'IntentRequest',
+                        requestId: 'test-request-id',
+                        timestamp: '2016-07-20T12:00:00Z',
+                        intent: [name: intentName, slots: [:]]
+                ]
+        ])
+    }
+}
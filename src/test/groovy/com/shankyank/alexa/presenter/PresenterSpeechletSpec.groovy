@@ -7,7 +7,6 @@ import com.amazon.speech.ui.SsmlOutputSpeech
 import com.fasterxml.jackson.databind.ObjectMapper
 import spock.lang.Specification
 
-import static com.shankyank.alexa.presenter.Presentation.LIST_OF_PRESENTATIONS
 import static com.shankyank.alexa.presenter.PresenterSpeechlet.*
 
 /**
@@ -23,6 +22,7 @@ class PresenterSpeechletSpec extends Specification {
             new Presentation('Lambda: Where did all the servers go?', 'lambda.pptx')
     ]
 
+    List<Presentation> availablePresentations = TEST_PRESENTATIONS
     Session session
     PresentationStarter starter
     SessionInitializer initializer
@@ -32,10 +32,9 @@ class PresenterSpeechletSpec extends Specification {
         starter = Mock(PresentationStarter)
         starter.startPresentation(_, _) >> true
         initializer = Mock(SessionInitializer)
-        initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        initializer.getAvailablePresentations() >> { availablePresentations }
         initializer.getPresentationStarter() >> starter
         session = Session.builder().withSessionId(TEST_SESSION_ID).build()
-        session.setAttribute(PRESENTATIONS_KEY, JSON.writeValueAsString(TEST_PRESENTATIONS))
         instance = new PresenterSpeechlet(initializer)
     }
 
@@ -48,10 +47,53 @@ class PresenterSpeechletSpec extends Specification {
         instance.onSessionStarted(request, session)
 
         then:
-        getJsonAttribute(session, PRESENTATIONS_KEY, LIST_OF_PRESENTATIONS) == TEST_PRESENTATIONS
+        session.getAttribute(CATALOG_VERSION_KEY) == PresentationCatalog.of(TEST_PRESENTATIONS).version
         !session.getAttribute(PRESENTATION_KEY)
     }
 
+    def 'presentations are loaded once per session and resolved by catalog version'() {
+        given:
+        SessionStartedRequest request = SessionStartedRequest.builder().
+                withRequestId("test-id").withTimestamp(new Date()).build()
+
+        when:
+        instance.onSessionStarted(request, session)
+        instance.onIntent(createIntentRequest(LIST_PRESENTATIONS_INTENT), session)
+        def result = instance.onIntent(createStartRequest(TEST_PRESENTATIONS.first().name), session)
+
+        then:
+        1*initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        result.shouldEndSession
+    }
+
+    def 'presentations are reloaded when the session catalog version is not cached'() {
+        given:
+        session.setAttribute(CATALOG_VERSION_KEY, 'unknown-version')
+
+        when:
+        def result = instance.onIntent(createIntentRequest(LIST_PRESENTATIONS_INTENT), session)
+
+        then:
+        1*initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        result.outputSpeech.ssml == getPresentationSsml()
+        session.getAttribute(CATALOG_VERSION_KEY) == PresentationCatalog.of(TEST_PRESENTATIONS).version
+    }
+
+    def 'presentations are loaded for the session user'() {
+        given:
+        session = Session.builder().withSessionId(TEST_SESSION_ID).
+                withUser(User.builder().withUserId('test-user').build()).build()
+        List<Presentation> userPresentations = [new Presentation('lambda', 'lambda.pptx')]
+
+        when:
+        instance.onIntent(createIntentRequest(LIST_PRESENTATIONS_INTENT), session)
+
+        then:
+        1*initializer.getAvailablePresentations('test-user') >> userPresentations
+        0*initializer.getAvailablePresentations()
+        session.getAttribute(CATALOG_VERSION_KEY) == PresentationCatalog.of(userPresentations).version
+    }
+
     def 'help message returned when launched with no intent'() {
         given:
         LaunchRequest request = LaunchRequest.builder().
@@ -65,12 +107,30 @@ class PresenterSpeechletSpec extends Specification {
         result.outputSpeech.ssml == '<speak><s>you can list presentations or start a presentation</s><s>what would you like?</s></speak>'
     }
 
+    def 'help message is shared by sessions with different catalogs'() {
+        given:
+        LaunchRequest request = LaunchRequest.builder().
+                withRequestId("test-id").withTimestamp(new Date()).build()
+        Session otherSession = Session.builder().withSessionId('other-session-id').build()
+
+        when:
+        def first = instance.onLaunch(request, session)
+        availablePresentations = [new Presentation('lambda', 'lambda.pptx')]
+        def second = instance.onLaunch(request, otherSession)
+
+        then:
+        session.getAttribute(CATALOG_VERSION_KEY) != otherSession.getAttribute(CATALOG_VERSION_KEY)
+        first.is(second)
+    }
+
     def 'user is informed by launch event if no presentations are available and session is terminated'() {
-        expect:
-        session.setAttribute(PRESENTATIONS_KEY, presentations)
+        given:
+        availablePresentations = presentations
         LaunchRequest request = LaunchRequest.builder().
                 withRequestId("test-id").withTimestamp(new Date()).build()
         def result = instance.onLaunch(request, session)
+
+        expect:
         result.shouldEndSession
         result.outputSpeech.ssml == '<speak><s>no presentations are available</s><s>goodbye</s></speak>'
 
@@ -79,9 +139,11 @@ class PresenterSpeechletSpec extends Specification {
     }
 
     def 'user is informed by all actionable intents when no presentations are available and session is terminated'() {
-        expect:
-        session.setAttribute(PRESENTATIONS_KEY, presentations)
+        given:
+        availablePresentations = presentations
         def result = instance.onIntent(createIntentRequest(intent), session)
+
+        expect:
         result.shouldEndSession
         result.outputSpeech.ssml == '<speak><s>no presentations are available</s><s>goodbye</s></speak>'
 
@@ -134,7 +196,7 @@ class PresenterSpeechletSpec extends Specification {
         1*starter.startPresentation(session, { it.presentation == presentation }) >> true
         result.shouldEndSession
         result.outputSpeech.ssml == "<speak>starting ${presentation.ssml}</speak>"
-        getJsonAttribute(session, PRESENTATION_KEY, MatchedPresentation).presentation == presentation
+        getSelectedPresentation(session).presentation == presentation
     }
 
     def 'error message is generated when starting presentation fails'() {
@@ -149,7 +211,7 @@ class PresenterSpeechletSpec extends Specification {
         1*starter.startPresentation(session, { it.presentation == presentation }) >> false
         result.shouldEndSession
         result.outputSpeech.ssml == "<speak><s>unable to start presentation</s><s>please try again later</s></speak>"
-        getJsonAttribute(session, PRESENTATION_KEY, MatchedPresentation).presentation == presentation
+        getSelectedPresentation(session).presentation == presentation
     }
 
     def 'exception thrown if no presentation starter is configured'() {
@@ -166,19 +228,126 @@ class PresenterSpeechletSpec extends Specification {
     }
 
     def 'user is prompted for confirmation when recognized presentation is low confidence'() {
-        expect:
+        given:
         Presentation presentation = new Presentation('low confidence', 'low_confidence.pptx')
-        session.setAttribute(PRESENTATIONS_KEY, JSON.writeValueAsString([presentation] + TEST_PRESENTATIONS))
+        availablePresentations = [presentation] + TEST_PRESENTATIONS
         IntentRequest request = createStartRequest(name)
         def result = instance.onIntent(request, session)
+
+        expect:
         !result.shouldEndSession
-        getJsonAttribute(session, PRESENTATION_KEY, MatchedPresentation)?.presentation == presentation
+        getSelectedPresentation(session)?.presentation == presentation
         result.outputSpeech.ssml == "<speak>did you mean ${presentation.ssml}</speak>"
 
         where:
         name << [ 'can feed', 'condense' ]
     }
 
+    def 'user is asked to choose when the best matches are too close to pick one'() {
+        given:
+        availablePresentations = [new Presentation('lambda one', 'one.pptx'), new Presentation('lambda two', 'two.pptx')]
+
+        when:
+        def result = instance.onIntent(createStartRequest('lambda'), session)
+
+        then:
+        0*starter.startPresentation(_, _)
+        !result.shouldEndSession
+        result.outputSpeech.ssml == "<speak>did you mean lambda one or lambda two</speak>"
+        !session.getAttribute(PRESENTATION_KEY)
+        getJsonAttribute(session, CANDIDATES_KEY, String[]) == ['lambda one', 'lambda two'] as String[]
+    }
+
+    def 'a sampled spoken name is traced with the score of each candidate'() {
+        given:
+        MatchTraceBuffer traces = new MatchTraceBuffer(1.0)
+        instance = new PresenterSpeechlet(initializer, new MetricsRegistry(), new CompactSessionCodec(), traces)
+
+        when:
+        instance.onIntent(createStartRequest('enterprise fizz buzz'), session)
+        def trace = JSON.readTree(traces.recent.last())
+
+        then:
+        traces.recent.size() == 1
+        trace.get('sessionId').asText() == TEST_SESSION_ID
+        trace.get('spoken').asText() == 'enterprise fizz buzz'
+        trace.get('branch').asText() == 'high'
+        trace.get('scored').asInt() > 0
+        trace.get('matches')*.get('name')*.asText() == ['Enterprise FizzBuzz']
+        trace.get('candidates')[0].get('name').asText() == 'Enterprise FizzBuzz'
+        trace.get('candidates')[0].has('levenshtein')
+        trace.get('candidates')[0].has('metaphone')
+        trace.get('candidates')[0].has('tokens')
+    }
+
+    def 'unsampled spoken names are not traced'() {
+        given:
+        MatchTraceBuffer traces = new MatchTraceBuffer(0.0)
+        instance = new PresenterSpeechlet(initializer, new MetricsRegistry(), new CompactSessionCodec(), traces)
+
+        when:
+        instance.onIntent(createStartRequest('enterprise fizz buzz'), session)
+
+        then:
+        traces.recent.empty
+        MatchTrace.current().candidates.empty
+    }
+
+    def 'the follow-up to a disambiguation prompt starts the chosen presentation'() {
+        given:
+        availablePresentations = [new Presentation('lambda one', 'one.pptx'), new Presentation('lambda two', 'two.pptx'),
+                                  new Presentation('lambda three', 'three.pptx')]
+        instance.onIntent(createStartRequest('lambda'), session)
+
+        when:
+        def result = instance.onIntent(createStartRequest(choice), session)
+
+        then:
+        1*starter.startPresentation(session, { it.presentation.name == choice }) >> true
+        result.shouldEndSession
+        !session.getAttribute(CANDIDATES_KEY)
+
+        where:
+        choice << ['lambda two', 'lambda three']
+    }
+
+    def 'yes to a disambiguation prompt asks again which of the offered presentations to start'() {
+        given:
+        availablePresentations = [new Presentation('lambda one', 'one.pptx'), new Presentation('lambda two', 'two.pptx')]
+        instance.onIntent(createStartRequest('lambda'), session)
+
+        when:
+        def result = instance.onIntent(createIntentRequest('AMAZON.YesIntent'), session)
+
+        then:
+        0*starter.startPresentation(_, _)
+        !result.shouldEndSession
+        result.outputSpeech.ssml == '<speak>which one, lambda one or lambda two?</speak>'
+        getJsonAttribute(session, CANDIDATES_KEY, String[]) == ['lambda one', 'lambda two'] as String[]
+
+        when:
+        result = instance.onIntent(createStartRequest('lambda two'), session)
+
+        then:
+        1*starter.startPresentation(session, { it.presentation.name == 'lambda two' }) >> true
+        result.shouldEndSession
+    }
+
+    def 'no to a disambiguation prompt lists the presentations'() {
+        given:
+        availablePresentations = [new Presentation('lambda one', 'one.pptx'), new Presentation('lambda two', 'two.pptx')]
+        instance.onIntent(createStartRequest('lambda'), session)
+
+        when:
+        def result = instance.onIntent(createIntentRequest('AMAZON.NoIntent'), session)
+
+        then:
+        0*starter.startPresentation(_, _)
+        !result.shouldEndSession
+        result.outputSpeech.ssml == getPresentationSsml(availablePresentations)
+        !session.getAttribute(CANDIDATES_KEY)
+    }
+
     def 'presentations are listed for yes intent with no previously requested presentation'() {
         given:
         IntentRequest request = createIntentRequest('AMAZON.YesIntent')
@@ -244,6 +413,42 @@ class PresenterSpeechletSpec extends Specification {
         result.outputSpeech.ssml == getPresentationSsml()
     }
 
+    def 'next and previous intents move between pages of a large catalog'() {
+        given:
+        availablePresentations = (0..<25).collect { new Presentation("presentation ${it}", "${it}.pptx") }
+        instance.onIntent(createIntentRequest(LIST_PRESENTATIONS_INTENT), session)
+
+        when:
+        List<String> headings = intents.collect {
+            instance.onIntent(createIntentRequest(it), session).outputSpeech.ssml.find(/<s>(.*?)<\/s>/) { it[1] }
+        }
+
+        then:
+        headings == expected
+        session.getAttribute(LIST_PAGE_KEY) == page
+
+        where:
+        intents                              | page | expected
+        ['AMAZON.NextIntent'] * 3            | 2    | ['presentations 11 to 20', 'presentations 21 to 25',
+                                                       'presentations 21 to 25']
+        ['AMAZON.PreviousIntent', 'AMAZON.NextIntent',
+         'AMAZON.PreviousIntent']            | 0    | ['i can start 25 presentations', 'presentations 11 to 20',
+                                                       'i can start 25 presentations']
+    }
+
+    def 'next intent starts the list when it has not been read'() {
+        when:
+        def result = instance.onIntent(createIntentRequest('AMAZON.NextIntent'), session)
+
+        then:
+        result.outputSpeech.ssml == getPresentationSsml()
+        session.getAttribute(LIST_PAGE_KEY) == 0
+    }
+
+    private static MatchedPresentation getSelectedPresentation(final Session session) {
+        new CompactSessionCodec().decode(session.getAttribute(PRESENTATION_KEY))
+    }
+
     private static def getJsonAttribute = { session, key, type ->
         session.getAttribute(key)?.with {
             JSON.readValue(it, type)
@@ -0,0 +1,159 @@
+package com.shankyank.alexa.presenter
+
+import com.amazon.speech.slu.Intent
+import com.amazon.speech.slu.Slot
+import com.amazon.speech.speechlet.IntentRequest
+import com.amazon.speech.speechlet.Session
+import com.amazon.speech.speechlet.SessionStartedRequest
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+import static com.shankyank.alexa.presenter.PresenterSpeechlet.*
+import static com.shankyank.alexa.presenter.RequestMetrics.*
+
+/**
+ * Tests for RequestMetrics and the instrumentation of the PresenterSpeechlet.
+ */
+class RequestMetricsSpec extends Specification {
+    private static final ObjectMapper JSON = new ObjectMapper()
+
+    private static final List<Presentation> TEST_PRESENTATIONS = [
+            new Presentation('Situation FooBar', 'foobar.pptx'),
+            new Presentation('Enterprise FizzBuzz', 'fizzbuzz.pptx')
+    ]
+
+    MetricsRegistry registry = new MetricsRegistry()
+    PresentationStarter starter = Mock(PresentationStarter)
+    SessionInitializer initializer = Stub(SessionInitializer)
+    Session session = Session.builder().withSessionId('test-session-id').build()
+    PresenterSpeechlet instance
+
+    def setup() {
+        initializer.getAvailablePresentations() >> TEST_PRESENTATIONS
+        initializer.getPresentationStarter() >> starter
+        instance = new PresenterSpeechlet(initializer, registry)
+    }
+
+    def 'metrics are written in embedded metric format'() {
+        given:
+        RequestMetrics metrics = begin('StartPresentation', registry)
+        metrics.recordTime(MATCH_TIME, 1_500_000L)
+        metrics.increment(CANDIDATES_SCORED, 3)
+        metrics.setProperty(CONFIDENCE_BUCKET, 'high "match"')
+
+        when:
+        def emf = JSON.readTree(metrics.toEmf(1234L))
+        def definition = emf._aws.CloudWatchMetrics[0]
+
+        then:
+        emf._aws.Timestamp.asLong() == 1234L
+        definition.Namespace.asText() == NAMESPACE
+        definition.Dimensions[0]*.asText() == [OPERATION]
+        definition.Metrics.collectEntries { [(it.Name.asText()): it.Unit.asText()] } ==
+                [(MATCH_TIME): 'Milliseconds', (CANDIDATES_SCORED): 'Count']
+        emf.Operation.asText() == 'StartPresentation'
+        emf.MatchTime.asDouble() == 1.5d
+        emf.CandidatesScored.asLong() == 3L
+        emf.ConfidenceBucket.asText() == 'high "match"'
+
+        cleanup:
+        metrics.end()
+    }
+
+    def 'metrics recorded outside a request are discarded'() {
+        when:
+        current().increment(CANDIDATES_SCORED)
+        current().recordTime(MATCH_TIME, 100L)
+
+        then:
+        current().getCount(CANDIDATES_SCORED) == null
+        current().getTime(MATCH_TIME) == null
+    }
+
+    def 'ending a request adds its metrics to the registry'() {
+        given:
+        RequestMetrics metrics = begin('ListPresentations', registry)
+        metrics.recordTime(CATALOG_LOAD_TIME, 2_000L)
+        metrics.increment(CATALOG_STORE_MISS)
+
+        when:
+        metrics.end()
+
+        then:
+        current().is(current())
+        current().operation == null
+        registry.getCount(CATALOG_STORE_MISS) == 1L
+        registry.timers[CATALOG_LOAD_TIME].count == 1L
+        registry.timers[CATALOG_LOAD_TIME].totalNanos == 2_000L
+        registry.timers[REQUEST_TIME].count == 1L
+    }
+
+    def 'a new session and its first intent are reported as one request'() {
+        given:
+        SessionStartedRequest started = SessionStartedRequest.builder().
+                withRequestId('test-id').withTimestamp(new Date()).build()
+
+        when:
+        instance.onSessionStarted(started, session)
+        instance.onIntent(createStartRequest('Situation FooBar'), session)
+
+        then:
+        1*starter.startPresentation(_, _) >> true
+        registry.timers[REQUEST_TIME].count == 1L
+        [CATALOG_LOAD_TIME, MATCH_TIME, SESSION_ENCODE_TIME, SESSION_DECODE_TIME, STARTER_LOAD_TIME, PUBLISH_TIME].
+                every { registry.timers[it]?.count == 1L }
+        registry.getCount(CATALOG_STORE_HIT) == 1L
+        registry.getCount(CANDIDATES_SCORED) >= 1L
+        registry.getCount(PUBLISH_FAILURE) == 0L
+    }
+
+    def 'catalog store misses and failed publishes are counted'() {
+        given:
+        session.setAttribute(CATALOG_VERSION_KEY, 'unknown-version')
+
+        when:
+        instance.onIntent(createStartRequest('Enterprise FizzBuzz'), session)
+
+        then:
+        1*starter.startPresentation(_, _) >> false
+        registry.getCount(CATALOG_STORE_MISS) == 1L
+        registry.getCount(PUBLISH_FAILURE) == 1L
+    }
+
+    def 'timer percentiles are bounded by the recorded durations'() {
+        given:
+        MetricsRegistry.Timer timer = registry.timer('test')
+        (1..100).each { timer.record(it * 1_000L) }
+
+        expect:
+        timer.count == 100L
+        timer.maxNanos == 100_000L
+        timer.getPercentileNanos(50) >= 50_000L
+        timer.getPercentileNanos(50) < 100_000L
+        timer.getPercentileNanos(99) == 100_000L
+        timer.meanNanos == 50_500d
+    }
+
+    def 'timer percentiles are within a sixteenth of the recorded durations'() {
+        given:
+        MetricsRegistry.Timer timer = registry.timer('test')
+        (1..1000).each { timer.record(it * 37_000L) }
+
+        expect:
+        timer.getPercentileNanos(percentile) >= exact
+        timer.getPercentileNanos(percentile) <= exact + exact.intdiv(16)
+
+        where:
+        percentile | exact
+        50         | 500 * 37_000L
+        95         | 950 * 37_000L
+        99         | 990 * 37_000L
+    }
+
+    private static IntentRequest createStartRequest(final String presentationName) {
+        Slot slot = Slot.builder().withName(PRESENTATION_SLOT).withValue(presentationName).build()
+        Intent intent = Intent.builder().withName(START_PRESENTATION_INTENT).
+                withSlots([(PRESENTATION_SLOT): slot]).build()
+        IntentRequest.builder().withRequestId('test-id').withTimestamp(new Date()).withIntent(intent).build()
+    }
+}
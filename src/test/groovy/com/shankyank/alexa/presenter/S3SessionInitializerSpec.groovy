@@ -1,9 +1,29 @@
 package com.shankyank.alexa.presenter
 
+import com.amazon.speech.speechlet.SpeechletException
+import com.amazonaws.AmazonClientException
 import spock.lang.Specification
 
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
 class S3SessionInitializerSpec extends Specification {
-    S3SessionInitializer instance = new S3SessionInitializer()
+    private static final String BUCKET = 'test-bucket'
+    private static final long TTL = 60000L
+
+    LocalS3 s3 = new LocalS3().
+            put(BUCKET, 'config/presentations.json', new File('src/main/config/presentations.json')).
+            put(BUCKET, 'config/topic.txt', new File('src/main/config/topic.txt'))
+    Instant now = Instant.parse('2016-07-20T12:00:00Z')
+    Clock clock = Stub(Clock) {
+        millis() >> { now.toEpochMilli() }
+        getZone() >> ZoneOffset.UTC
+    }
+    S3SessionInitializer instance = new S3SessionInitializer(s3, BUCKET, TTL, clock)
 
     def 'can load presentations'() {
         expect:
@@ -14,4 +34,316 @@ class S3SessionInitializerSpec extends Specification {
         expect:
         instance.presentationStarter
     }
+
+    def 'configuration is served from the cache until it expires'() {
+        when:
+        def first = instance.availablePresentations
+        def starter = instance.presentationStarter
+        now = now.plusMillis(TTL - 1)
+
+        then:
+        instance.availablePresentations.is(first)
+        instance.presentationStarter.is(starter)
+        // the presentations, their change log and the topic
+        s3.getCount.get() == 3
+    }
+
+    def 'expired configuration is revalidated without downloading unchanged objects'() {
+        given:
+        def first = instance.availablePresentations
+
+        when:
+        now = now.plusMillis(TTL)
+        def second = instance.availablePresentations
+
+        then:
+        second.is(first)
+        s3.getCount.get() == 4
+        s3.downloadCount.get() == 1
+    }
+
+    def 'changed objects are reloaded after the cache expires'() {
+        given:
+        instance.availablePresentations
+
+        when:
+        s3.put(BUCKET, 'config/presentations.json', '[{"name": "lambda", "filename": "lambda.key"}]')
+        now = now.plusMillis(TTL)
+
+        then:
+        instance.availablePresentations == [new Presentation('lambda', 'lambda.key')]
+        s3.downloadCount.get() == 2
+    }
+
+    def 'concurrent loads of the same object share a single request'() {
+        given:
+        s3.latencyMillis = 200
+        def pool = Executors.newFixedThreadPool(8)
+
+        when:
+        def results = pool.invokeAll((1..8).collect { { -> instance.availablePresentations } as Callable }).
+                collect { it.get() }
+
+        then:
+        results.every { it.is(results.first()) }
+        // the presentations and their change log
+        s3.getCount.get() == 2
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    def 'missing configuration is reported as a speechlet exception'() {
+        given:
+        instance = new S3SessionInitializer(new LocalS3(), BUCKET, TTL, clock)
+
+        when:
+        instance.availablePresentations
+
+        then:
+        SpeechletException ex = thrown()
+        ex.message == "Unable to load presentations from s3://${BUCKET}/config/presentations.json"
+    }
+
+    def 'users with their own presentations get their own catalog'() {
+        given:
+        s3.put(BUCKET, 'config/amzn1.ask.account.USER1/presentations.json',
+                '[{"name": "lambda", "filename": "lambda.key"}]')
+
+        expect:
+        instance.getAvailablePresentations('amzn1.ask.account.USER1') == [new Presentation('lambda', 'lambda.key')]
+        instance.getAvailablePresentations('amzn1.ask.account.USER2') == instance.availablePresentations
+    }
+
+    def 'users without their own presentations are cached with the default catalog'() {
+        when:
+        def first = instance.getAvailablePresentations('amzn1.ask.account.USER2')
+        def second = instance.getAvailablePresentations('amzn1.ask.account.USER2')
+
+        then:
+        second.is(first)
+        first.is(instance.availablePresentations)
+        s3.getCount.get() == 3
+    }
+
+    def 'user IDs that cannot be used in an object key get the default catalog'() {
+        when:
+        def presentations = instance.getAvailablePresentations('../config')
+
+        then:
+        presentations.is(instance.availablePresentations)
+        s3.getCount.get() == 2
+    }
+
+    def 'appended changes are applied without downloading the presentations again'() {
+        given:
+        s3.put(BUCKET, 'config/presentations.json', '[{"name": "lambda", "filename": "lambda.key"}]')
+        String added = '{"seq": 1, "op": "add", "name": "kafka", "filename": "kafka.key"}\n'
+        s3.put(BUCKET, 'config/presentations.changes.jsonl', added)
+        def first = instance.availablePresentations
+        int downloaded = s3.downloadedBytes.get()
+
+        when:
+        String appended = '{"seq": 2, "op": "rename", "name": "lambda", "newName": "serverless"}\n'
+        s3.append(BUCKET, 'config/presentations.changes.jsonl', appended)
+        now = now.plusMillis(TTL)
+        def second = instance.availablePresentations
+
+        then:
+        first == [new Presentation('lambda', 'lambda.key'), new Presentation('kafka', 'kafka.key')]
+        second == [new Presentation('serverless', 'lambda.key'), new Presentation('kafka', 'kafka.key')]
+        // the last change applied is read again to check the log was appended to
+        s3.downloadedBytes.get() - downloaded == added.length() + appended.length()
+    }
+
+    def 'a change still being written is applied once its line is complete'() {
+        given:
+        s3.put(BUCKET, 'config/presentations.json', '[{"name": "lambda", "filename": "lambda.key"}]')
+        s3.put(BUCKET, 'config/presentations.changes.jsonl', '{"seq": 1, "op": "remove", "name": "lam')
+
+        when:
+        def first = instance.availablePresentations
+        s3.append(BUCKET, 'config/presentations.changes.jsonl', 'bda"}\n')
+        now = now.plusMillis(TTL)
+
+        then:
+        first == [new Presentation('lambda', 'lambda.key')]
+        instance.availablePresentations.empty
+    }
+
+    def 'a rewritten change log is applied from the start'() {
+        given:
+        s3.put(BUCKET, 'config/presentations.json', '[{"name": "lambda", "filename": "lambda.key"}]')
+        s3.put(BUCKET, 'config/presentations.changes.jsonl',
+                '{"seq": 1, "op": "add", "name": "kafka", "filename": "kafka.key"}\n')
+        instance.availablePresentations
+
+        when:
+        s3.put(BUCKET, 'config/presentations.changes.jsonl',
+                '{"seq": 1, "op": "add", "name": "spark", "filename": "spark.key"}\n' +
+                        '{"seq": 2, "op": "add", "name": "flink", "filename": "flink.key"}\n')
+        now = now.plusMillis(TTL)
+
+        then:
+        instance.availablePresentations == [new Presentation('lambda', 'lambda.key'),
+                new Presentation('spark', 'spark.key'), new Presentation('flink', 'flink.key')]
+    }
+
+    def 'the change log is applied again when the presentations are rewritten'() {
+        given:
+        s3.put(BUCKET, 'config/presentations.json', '[{"name": "lambda", "filename": "lambda.key"}]')
+        s3.put(BUCKET, 'config/presentations.changes.jsonl', '{"seq": 1, "op": "remove", "name": "lambda"}\n')
+        instance.availablePresentations
+
+        when:
+        s3.put(BUCKET, 'config/presentations.json',
+                '[{"name": "lambda", "filename": "lambda.key"}, {"name": "kafka", "filename": "kafka.key"}]')
+        now = now.plusMillis(TTL)
+
+        then:
+        instance.availablePresentations == [new Presentation('kafka', 'kafka.key')]
+    }
+
+    def 'changes merged into rewritten presentations are not applied again'() {
+        given:
+        s3.put(BUCKET, 'config/presentations.json', '[{"name": "lambda", "filename": "lambda.key"}]')
+        s3.put(BUCKET, 'config/presentations.changes.jsonl',
+                '{"seq": 1, "op": "rename", "name": "lambda", "newName": "serverless"}\n' +
+                        '{"seq": 2, "op": "add", "name": "lambda", "filename": "lambda2.key"}\n')
+        def first = instance.availablePresentations
+
+        when:
+        s3.put(BUCKET, 'config/presentations.json',
+                '[{"name": "serverless", "filename": "lambda.key"}, {"name": "lambda", "filename": "lambda2.key"}]',
+                [(S3SessionInitializer.CHANGE_SEQUENCE_METADATA): '2'])
+        now = now.plusMillis(TTL)
+        def second = instance.availablePresentations
+        s3.append(BUCKET, 'config/presentations.changes.jsonl',
+                '{"seq": 3, "op": "add", "name": "kafka", "filename": "kafka.key"}\n')
+        now = now.plusMillis(TTL)
+        def third = instance.availablePresentations
+
+        then:
+        first == [new Presentation('serverless', 'lambda.key'), new Presentation('lambda', 'lambda2.key')]
+        second == first
+        third == first + [new Presentation('kafka', 'kafka.key')]
+    }
+
+    def 'the least recently used objects are evicted once the cache is full'() {
+        given:
+        instance = new S3SessionInitializer(s3, BUCKET, TTL, clock, 3)
+
+        when:
+        instance.availablePresentations
+        instance.getAvailablePresentations('user1')
+        instance.availablePresentations
+        instance.getAvailablePresentations('user2')
+        instance.getAvailablePresentations('user1')
+
+        then:
+        // user1 and the default list and its change log are loaded, then user2 evicts user1
+        s3.getCount.get() == 5
+    }
+
+    def 'a slow request to S3 is hedged with a second request'() {
+        given:
+        s3.fault = { int count -> if (count == 1) { Thread.sleep(5000) } }
+
+        when:
+        long start = System.nanoTime()
+        def presentations = instance.availablePresentations
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        presentations
+        elapsedMillis < 2000
+        // the slow request and its hedge, then the change log
+        s3.getCount.get() == 3
+    }
+
+    def 'the last known good configuration is served when S3 fails'() {
+        given:
+        def presentations = instance.availablePresentations
+        def starter = instance.presentationStarter
+        s3.fault = { throw new AmazonClientException('Connection refused') }
+        now = now.plusMillis(TTL)
+
+        expect:
+        instance.availablePresentations.is(presentations)
+        instance.presentationStarter.is(starter)
+    }
+
+    def 'S3 is not called while the circuit is open'() {
+        given:
+        instance = new S3SessionInitializer(s3, BUCKET, TTL, clock, 16, new CircuitBreaker('S3', 2, TTL, clock))
+        def presentations = instance.availablePresentations
+        s3.fault = { throw new AmazonClientException('Connection refused') }
+        now = now.plusMillis(TTL)
+        // the presentations and their change log both fail, opening the circuit
+        instance.availablePresentations
+        int failedCount = s3.getCount.get()
+
+        when:
+        instance.refresh()
+
+        then:
+        instance.availablePresentations.is(presentations)
+        s3.getCount.get() == failedCount
+
+        when:
+        s3.fault = null
+        now = now.plusMillis(TTL)
+        instance.availablePresentations
+
+        then:
+        // the circuit is tried again once it has been open for its open period
+        s3.getCount.get() == failedCount + 2
+    }
+
+    def 'requests to S3 wait no longer than the request deadline'() {
+        given:
+        def presentations = instance.availablePresentations
+        s3.fault = { Thread.sleep(5000) }
+        now = now.plusMillis(TTL)
+        Deadline.begin(300L)
+
+        when:
+        long start = System.nanoTime()
+        def served = instance.availablePresentations
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        served.is(presentations)
+        elapsedMillis < 2000
+
+        when:
+        instance.getAvailablePresentations('user1')
+
+        then:
+        // nothing was loaded for the user before the deadline ran out
+        thrown(SpeechletException)
+
+        cleanup:
+        Deadline.end()
+    }
+
+    def 'requests cut short by the request deadline do not open the circuit'() {
+        given:
+        CircuitBreaker breaker = new CircuitBreaker('S3', 1, TTL, clock)
+        instance = new S3SessionInitializer(s3, BUCKET, TTL, clock, 16, breaker)
+        def presentations = instance.availablePresentations
+        s3.fault = { Thread.sleep(5000) }
+        now = now.plusMillis(TTL)
+        Deadline.begin(300L)
+
+        when:
+        def served = instance.availablePresentations
+
+        then:
+        served.is(presentations)
+        breaker.state == CircuitBreaker.State.CLOSED
+
+        cleanup:
+        Deadline.end()
+    }
 }
@@ -0,0 +1,67 @@
+package com.shankyank.alexa.presenter
+
+import com.amazon.speech.speechlet.SpeechletException
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+/**
+ * Tests for the session codecs.
+ */
+class SessionCodecSpec extends Specification {
+    private static final ObjectMapper JSON = new ObjectMapper()
+
+    private static final List<MatchedPresentation> MATCHES = [
+            new MatchedPresentation('lamb da', 0.75d, new Presentation('lambda', 'lambda.pptx')),
+            new MatchedPresentation(null, 1.0d, new Presentation('Q&A', 'qa.pptx')),
+            new MatchedPresentation('pick a chew', 0.5d,
+                    new Presentation('pikachu', 'pikachu.pptx', '<phoneme ph="pi.ka.t\u0283u">pikachu</phoneme>')),
+            new MatchedPresentation('caf\u00e9', 0.9d, new Presentation('caf\u00e9 talk', 'caf\u00e9.key'))
+    ]
+
+    def 'selected presentation survives a round trip'() {
+        expect:
+        codec.decode(codec.encode(matched)) == matched
+
+        where:
+        [codec, matched] << [[new JsonSessionCodec(), new CompactSessionCodec()], MATCHES].combinations()
+    }
+
+    def 'compact encoding is versioned and smaller than json'() {
+        given:
+        MatchedPresentation matched = MATCHES.first()
+
+        when:
+        String encoded = new CompactSessionCodec().encode(matched)
+
+        then:
+        Base64.decoder.decode(encoded)[0] == CompactSessionCodec.FORMAT_VERSION
+        encoded.length() < new JsonSessionCodec().encode(matched).length() / 2
+    }
+
+    def 'compact codec decodes values written as json'() {
+        expect:
+        new CompactSessionCodec().decode(JSON.writeValueAsString(matched)) == matched
+
+        where:
+        matched << MATCHES
+    }
+
+    def 'null values decode to null'() {
+        expect:
+        codec.decode(null) == null
+
+        where:
+        codec << [new JsonSessionCodec(), new CompactSessionCodec()]
+    }
+
+    def 'unknown versions and corrupt values are rejected'() {
+        when:
+        new CompactSessionCodec().decode(value)
+
+        then:
+        thrown(SpeechletException)
+
+        where:
+        value << [Base64.encoder.encodeToString([2, 0] as byte[]), 'not base64!', 'AQ']
+    }
+}
@@ -0,0 +1,161 @@
+package com.shankyank.alexa.presenter
+
+import com.amazon.speech.speechlet.Session
+import com.amazonaws.AmazonServiceException
+import com.amazonaws.services.sns.AmazonSNSAsync
+import com.amazonaws.services.sns.model.PublishResult
+import spock.lang.Specification
+
+import java.time.Clock
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for the SnsPresentationStarter.
+ */
+class SnsPresentationStarterSpec extends Specification {
+    private static final String TOPIC = 'arn:aws:sns:us-east-1:123456789012:test-topic'
+    private static final MatchedPresentation PRESENTATION =
+            new MatchedPresentation('lambda', 1.0d, new Presentation('lambda', 'lambda.key'))
+
+    Session session = Session.builder().withSessionId('test-session-id').build()
+    AmazonSNSAsync sns = Mock(AmazonSNSAsync)
+    /** Each test gets its own breaker, so starts given up by one test do not open the circuit for the next. */
+    CircuitBreaker snsBreaker = new CircuitBreaker('SNS')
+
+    def 'presentation is started when SNS accepts the message'() {
+        given:
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 1000L, 3, snsBreaker)
+
+        when:
+        boolean started = instance.startPresentation(session, PRESENTATION)
+
+        then:
+        1*sns.publishAsync({ it.topicArn == TOPIC && it.message.contains('lambda.key') }, _) >> { request, handler ->
+            handler.onSuccess(request, new PublishResult().withMessageId('message-id'))
+            null
+        }
+        started
+    }
+
+    def 'failed publishes are retried in the background'() {
+        given:
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 1000L, 3, snsBreaker)
+
+        when:
+        boolean started = instance.startPresentationAsync(session, PRESENTATION).get(5, TimeUnit.SECONDS)
+
+        then:
+        2*sns.publishAsync(_, _) >> { request, handler ->
+            handler.onError(new AmazonServiceException('throttled'))
+            null
+        }
+        1*sns.publishAsync(_, _) >> { request, handler ->
+            handler.onSuccess(request, new PublishResult().withMessageId('message-id'))
+            null
+        }
+        started
+    }
+
+    def 'start fails once every attempt has failed'() {
+        given:
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 1000L, 2, snsBreaker)
+
+        when:
+        boolean started = instance.startPresentationAsync(session, PRESENTATION).get(5, TimeUnit.SECONDS)
+
+        then:
+        2*sns.publishAsync(_, _) >> { request, handler ->
+            handler.onError(new AmazonServiceException('unavailable'))
+            null
+        }
+        !started
+    }
+
+    def 'blocking start fails once the latency budget runs out'() {
+        given:
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 50L, 3, snsBreaker)
+        sns.publishAsync(_, _) >> null
+
+        when:
+        long start = System.nanoTime()
+        boolean started = instance.startPresentation(session, PRESENTATION)
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        !started
+        elapsedMillis < 1000
+    }
+
+    def 'blocking start waits no longer than the request deadline'() {
+        given:
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 5000L, 3, snsBreaker)
+        sns.publishAsync(_, _) >> null
+        Deadline.begin(100L)
+
+        when:
+        long start = System.nanoTime()
+        boolean started = instance.startPresentation(session, PRESENTATION)
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        !started
+        elapsedMillis < 1000
+
+        cleanup:
+        Deadline.end()
+    }
+
+    def 'a start that was given up is not retried'() {
+        given:
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 50L, 3, snsBreaker)
+        def handlers = []
+        sns.publishAsync(_, _) >> { request, handler -> handlers << handler; null }
+
+        when:
+        boolean started = instance.startPresentation(session, PRESENTATION)
+        handlers[0].onError(new AmazonServiceException('throttled'))
+        Thread.sleep(300)
+
+        then:
+        !started
+        handlers.size() == 1
+    }
+
+    def 'publishes that never complete open the circuit'() {
+        given:
+        CircuitBreaker breaker = new CircuitBreaker('SNS', 1, 60000L, Clock.systemUTC())
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 50L, 3, breaker)
+
+        when:
+        boolean first = instance.startPresentation(session, PRESENTATION)
+        long start = System.nanoTime()
+        boolean second = instance.startPresentation(session, PRESENTATION)
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        1*sns.publishAsync(_, _) >> null
+        !first
+        !second
+        elapsedMillis < 50
+        breaker.state == CircuitBreaker.State.OPEN
+    }
+
+    def 'starts fail without publishing while the circuit is open'() {
+        given:
+        CircuitBreaker breaker = new CircuitBreaker('SNS', 1, 60000L, Clock.systemUTC())
+        SnsPresentationStarter instance = new SnsPresentationStarter(TOPIC, sns, 1000L, 1, breaker)
+
+        when:
+        boolean first = instance.startPresentation(session, PRESENTATION)
+        boolean second = instance.startPresentation(session, PRESENTATION)
+
+        then:
+        1*sns.publishAsync(_, _) >> { request, handler ->
+            handler.onError(new AmazonServiceException('unavailable'))
+            null
+        }
+        !first
+        !second
+        breaker.state == CircuitBreaker.State.OPEN
+    }
+}
@@ -0,0 +1,66 @@
+package com.shankyank.alexa.presenter
+
+import spock.lang.Specification
+
+/**
+ * Tests for the SsmlTemplate.
+ */
+class SsmlTemplateSpec extends Specification {
+    def 'templates are rendered inside a speak element'() {
+        expect:
+        SsmlTemplate.compile(template).render(values as Object[]) == expected
+
+        where:
+        template                | values                            | expected
+        'goodbye'               | []                                | '<speak>goodbye</speak>'
+        'starting %s'           | ['<phoneme ph="x">y</phoneme>']   | '<speak>starting <phoneme ph="x">y</phoneme></speak>'
+        'did you mean %s or %s' | ['a', 'b']                        | '<speak>did you mean a or b</speak>'
+        '%s'                    | ['100%']                          | '<speak>100%</speak>'
+        '%% done'               | []                                | '<speak>% done</speak>'
+        'you said %t'           | ['Q&A <draft>']                   | '<speak>you said Q&amp;A &lt;draft&gt;</speak>'
+    }
+
+    def 'templates without slots share their speech'() {
+        given:
+        SsmlTemplate template = SsmlTemplate.compile('goodbye')
+
+        expect:
+        template.slotCount == 0
+        template.speech().is(template.speech())
+        template.speech().ssml == '<speak>goodbye</speak>'
+    }
+
+    def 'templates with slots create new speech for each response'() {
+        given:
+        SsmlTemplate template = SsmlTemplate.compile('starting %s')
+
+        expect:
+        !template.speech('a').is(template.speech('a'))
+        template.speech('b').ssml == '<speak>starting b</speak>'
+    }
+
+    def 'unsupported placeholders are rejected when the template is compiled'() {
+        when:
+        SsmlTemplate.compile(template)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        template << ['%d presentations', 'trailing %']
+    }
+
+    def 'rendering requires a value for every slot'() {
+        when:
+        SsmlTemplate.compile('did you mean %s or %s').render('a')
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def 'presentation names are escaped when no ssml is configured'() {
+        expect:
+        new Presentation('Q&A', 'qa.pptx').ssml == 'Q&amp;A'
+        new Presentation('lambda', 'lambda.pptx').ssml == 'lambda'
+    }
+}